@@ -0,0 +1,49 @@
+package com.ramblingpenguin.icefloe.aws.s3;
+
+import com.ramblingpenguin.icefloe.context.BlobStore;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+/**
+ * A {@link BlobStore} that keeps offloaded context values in an Amazon S3 bucket, one object per digest.
+ */
+public class S3BlobStore implements BlobStore {
+
+    private final S3Client s3Client;
+    private final String bucket;
+    private final String prefix;
+
+    /**
+     * Constructs a new S3BlobStore.
+     *
+     * @param s3Client The S3Client to use for the operations.
+     * @param bucket   The bucket holding the blobs.
+     * @param prefix   The key prefix for the blobs, e.g. {@code "ice-floe/blobs/"}.
+     */
+    public S3BlobStore(S3Client s3Client, String bucket, String prefix) {
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.prefix = prefix;
+    }
+
+    @Override
+    public void put(String digest, byte[] content) {
+        String key = prefix + digest;
+        try {
+            s3Client.headObject(HeadObjectRequest.builder().bucket(bucket).key(key).build());
+            return; // Content-addressed, so an existing object already holds the same bytes.
+        } catch (NoSuchKeyException e) {
+            // Not stored yet.
+        }
+        s3Client.putObject(PutObjectRequest.builder().bucket(bucket).key(key).build(), RequestBody.fromBytes(content));
+    }
+
+    @Override
+    public byte[] get(String digest) {
+        return s3Client.getObjectAsBytes(GetObjectRequest.builder().bucket(bucket).key(prefix + digest).build()).asByteArray();
+    }
+}
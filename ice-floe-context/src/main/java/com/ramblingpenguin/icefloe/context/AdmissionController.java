@@ -0,0 +1,431 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Decides when the executions submitted to a {@link SequenceService} start.
+ * <p>
+ * At most {@code maxInFlight} executions run at once. Further executions wait in a bounded queue per
+ * sequence and are started as running executions finish: strictly by priority class, and within a class
+ * by deficit round-robin across flows. A flow is the execution's tenant tag, or its sequence for untagged
+ * executions, and receives a share of the starts proportional to its weight. The scheduler is
+ * work-conserving, so a flow with nothing queued leaves its share to the others.
+ * <p>
+ * A full sequence queue applies the {@link RejectionPolicy}. Executions that waited longer than the maximum
+ * queue time are failed instead of started, since their callers have most likely given up on them, so an
+ * overloaded service sheds its backlog rather than letting latency grow without bound.
+ */
+final class AdmissionController {
+
+    private static final class Task<T> {
+        private final SequenceQueue queue;
+        private final String flow;
+        private final Counters flowCounters;
+        private final Priority priority;
+        private final Supplier<T> work;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final long enqueuedAt = System.nanoTime();
+        private Thread runner; // Guarded by this task.
+        private boolean interrupted;
+
+        private Task(SequenceQueue queue, String flow, Counters flowCounters, Priority priority, Supplier<T> work) {
+            this.queue = queue;
+            this.flow = flow;
+            this.flowCounters = flowCounters;
+            this.priority = priority;
+            this.work = work;
+            future.whenComplete((result, error) -> {
+                if (future.isCancelled()) {
+                    interrupt();
+                }
+            });
+        }
+
+        private void run() {
+            synchronized (this) {
+                if (future.isDone()) {
+                    return; // Cancelled before it started.
+                }
+                runner = Thread.currentThread();
+            }
+            try {
+                future.complete(work.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                    if (interrupted) {
+                        // The cancellation was meant for this execution only, not for whatever the thread runs next.
+                        Thread.interrupted();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Interrupts the thread running the execution, which cancels the nodes running on it and the branches they forked.
+         */
+        private synchronized void interrupt() {
+            if (runner != null) {
+                interrupted = true;
+                runner.interrupt();
+            }
+        }
+    }
+
+    private static final class Counters {
+        private int queued;
+        private long admitted;
+        private long rejected;
+        private long shed;
+        private long totalQueueNanos;
+        private long maxQueueNanos;
+
+        private QueueStats snapshot() {
+            return new QueueStats(queued, admitted, rejected, shed,
+                    Duration.ofNanos(admitted == 0 ? 0 : totalQueueNanos / admitted), Duration.ofNanos(maxQueueNanos));
+        }
+    }
+
+    /**
+     * The queued executions of one sequence, which bound how many may wait.
+     */
+    private static final class SequenceQueue {
+        private final String sequenceId;
+        private final Deque<Task<?>> tasks = new ArrayDeque<>();
+        private final Counters counters = new Counters();
+
+        private SequenceQueue(String sequenceId) {
+            this.sequenceId = sequenceId;
+        }
+    }
+
+    /**
+     * The queued executions of one flow within a priority class.
+     */
+    private static final class Flow {
+        private final String id;
+        private final double weight;
+        private final Deque<Task<?>> tasks = new ArrayDeque<>();
+        private double deficit;
+
+        private Flow(String id, double weight) {
+            this.id = id;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Deficit round-robin over the flows of one priority class. Every start costs one unit; a flow at the
+     * head of the rotation earns its weight in credit whenever it has less than one unit left.
+     */
+    private final class FairQueue {
+        private final Map<String, Flow> flows = new HashMap<>();
+        private final Deque<Flow> active = new ArrayDeque<>();
+
+        private void add(Task<?> task) {
+            Flow flow = flows.computeIfAbsent(task.flow, id -> new Flow(id, weights.getOrDefault(id, defaultWeight)));
+            if (flow.tasks.isEmpty()) {
+                active.addLast(flow);
+            }
+            flow.tasks.addLast(task);
+        }
+
+        private void remove(Task<?> task) {
+            Flow flow = flows.get(task.flow);
+            if (flow != null && flow.tasks.remove(task) && flow.tasks.isEmpty()) {
+                active.remove(flow);
+                flows.remove(flow.id);
+            }
+        }
+
+        private Task<?> poll() {
+            while (!active.isEmpty()) {
+                Flow flow = active.peekFirst();
+                if (flow.deficit < 1) {
+                    flow.deficit += flow.weight;
+                    if (flow.deficit < 1) {
+                        active.addLast(active.pollFirst());
+                        continue;
+                    }
+                }
+                Task<?> task = flow.tasks.pollFirst();
+                flow.deficit -= 1;
+                if (flow.tasks.isEmpty()) {
+                    // An idle flow keeps no credit, so it cannot save up a burst.
+                    active.pollFirst();
+                    flows.remove(flow.id);
+                } else if (flow.deficit < 1) {
+                    active.addLast(active.pollFirst());
+                }
+                return task;
+            }
+            return null;
+        }
+    }
+
+    private final Executor executor;
+    private final int maxInFlight;
+    private final int maxQueuedPerSequence;
+    private final RejectionPolicy rejectionPolicy;
+    private final long maxQueueNanos;
+    private final Map<String, Double> weights;
+    private final double defaultWeight;
+    private final Map<String, SequenceQueue> queues = new HashMap<>();
+    private final Map<String, Counters> flowCounters = new HashMap<>();
+    private final EnumMap<Priority, FairQueue> ready = new EnumMap<>(Priority.class);
+    private int inFlight;
+
+    /**
+     * @param executor             Runs admitted executions.
+     * @param maxInFlight          The maximum number of executions running at once.
+     * @param maxQueuedPerSequence The maximum number of executions waiting per sequence.
+     * @param rejectionPolicy      Applied when a sequence's queue is full.
+     * @param maxQueueTime         How long an execution may wait before it is shed, or {@code null} for no limit.
+     * @param weights              The weights of individual flows.
+     * @param defaultWeight        The weight of flows without an explicit weight.
+     */
+    AdmissionController(Executor executor,
+                        int maxInFlight,
+                        int maxQueuedPerSequence,
+                        RejectionPolicy rejectionPolicy,
+                        Duration maxQueueTime,
+                        Map<String, Double> weights,
+                        double defaultWeight) {
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.maxQueuedPerSequence = maxQueuedPerSequence;
+        this.rejectionPolicy = rejectionPolicy;
+        this.maxQueueNanos = maxQueueTime == null ? Long.MAX_VALUE : maxQueueTime.toNanos();
+        this.weights = Map.copyOf(weights);
+        this.defaultWeight = defaultWeight;
+        for (Priority priority : Priority.values()) {
+            ready.put(priority, new FairQueue());
+        }
+    }
+
+    /**
+     * Submits an untagged execution of the given sequence.
+     */
+    <T> CompletableFuture<T> submit(String sequenceId, Priority priority, Supplier<T> work) {
+        return submit(sequenceId, null, priority, work);
+    }
+
+    /**
+     * Submits an execution of the given sequence.
+     *
+     * @param tenant The tenant tag, or {@code null} to share fairly per sequence instead.
+     * @return A future completing with the result, or failing with a {@link RejectedExecutionException} if the
+     * execution was rejected, dropped or shed.
+     */
+    <T> CompletableFuture<T> submit(String sequenceId, String tenant, Priority priority, Supplier<T> work) {
+        String flow = tenant != null ? tenant : sequenceId;
+        Task<T> task;
+        Task<?> dropped = null;
+        boolean start = false;
+        boolean runInCaller = false;
+        boolean rejected = false;
+        synchronized (this) {
+            SequenceQueue queue = queues.computeIfAbsent(sequenceId, SequenceQueue::new);
+            task = new Task<>(queue, flow, flowCounters.computeIfAbsent(flow, id -> new Counters()), priority, work);
+            if (inFlight < maxInFlight) {
+                inFlight++;
+                admit(task, System.nanoTime());
+                start = true;
+            } else if (queue.tasks.size() < maxQueuedPerSequence) {
+                enqueue(task);
+            } else if (rejectionPolicy == RejectionPolicy.CALLER_RUNS) {
+                // Runs right away on the caller, but counts against the limit like any other started execution.
+                inFlight++;
+                admit(task, System.nanoTime());
+                runInCaller = true;
+            } else {
+                queue.counters.rejected++;
+                task.flowCounters.rejected++;
+                switch (rejectionPolicy) {
+                    case FAIL_FAST, CALLER_RUNS -> rejected = true;
+                    case DROP_OLDEST -> {
+                        dropped = oldestAtOrBelow(queue, priority);
+                        if (dropped != null) {
+                            dequeue(dropped);
+                            ready.get(dropped.priority).remove(dropped);
+                            enqueue(task);
+                        } else {
+                            rejected = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        task.future.whenComplete((result, error) -> {
+            if (task.future.isCancelled()) {
+                withdraw(task);
+            }
+        });
+        if (start) {
+            start(task);
+        } else if (runInCaller) {
+            try {
+                task.run();
+            } finally {
+                finished();
+            }
+        } else if (rejected) {
+            task.future.completeExceptionally(new RejectedExecutionException(
+                    "The queue of sequence '" + sequenceId + "' is full."));
+        }
+        if (dropped != null) {
+            dropped.future.completeExceptionally(new RejectedExecutionException(
+                    "Dropped to make room for a newer execution of sequence '" + sequenceId + "'."));
+        }
+        return task.future;
+    }
+
+    /**
+     * Returns the number of executions currently running.
+     */
+    synchronized int inFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Returns the queue statistics of every sequence that has been submitted to, keyed by sequence ID.
+     */
+    synchronized Map<String, QueueStats> stats() {
+        Map<String, QueueStats> stats = new TreeMap<>();
+        queues.forEach((sequenceId, queue) -> stats.put(sequenceId, queue.counters.snapshot()));
+        return stats;
+    }
+
+    /**
+     * Returns the queue statistics of every flow, keyed by tenant tag or, for untagged executions, by sequence ID.
+     */
+    synchronized Map<String, QueueStats> flowStats() {
+        Map<String, QueueStats> stats = new TreeMap<>();
+        flowCounters.forEach((flow, counters) -> stats.put(flow, counters.snapshot()));
+        return stats;
+    }
+
+    private void enqueue(Task<?> task) {
+        task.queue.tasks.addLast(task);
+        task.queue.counters.queued++;
+        task.flowCounters.queued++;
+        ready.get(task.priority).add(task);
+    }
+
+    private void dequeue(Task<?> task) {
+        task.queue.tasks.remove(task);
+        task.queue.counters.queued--;
+        task.flowCounters.queued--;
+    }
+
+    /**
+     * Removes a cancelled execution from its queues, so it releases its input right away.
+     */
+    private synchronized void withdraw(Task<?> task) {
+        if (task.queue.tasks.remove(task)) {
+            task.queue.counters.queued--;
+            task.flowCounters.queued--;
+            ready.get(task.priority).remove(task);
+        }
+    }
+
+    private static Task<?> oldestAtOrBelow(SequenceQueue queue, Priority priority) {
+        // Prefer the lowest priority class, then the oldest execution within it.
+        Task<?> victim = null;
+        for (Task<?> candidate : queue.tasks) {
+            if (candidate.priority.compareTo(priority) >= 0
+                    && (victim == null || candidate.priority.compareTo(victim.priority) > 0)) {
+                victim = candidate;
+            }
+        }
+        return victim;
+    }
+
+    private static void admit(Task<?> task, long now) {
+        long waited = now - task.enqueuedAt;
+        for (Counters counters : List.of(task.queue.counters, task.flowCounters)) {
+            counters.admitted++;
+            counters.totalQueueNanos += waited;
+            counters.maxQueueNanos = Math.max(counters.maxQueueNanos, waited);
+        }
+        FlightEvents.QueueWait event = new FlightEvents.QueueWait();
+        if (event.shouldCommit()) {
+            event.sequenceKey = task.queue.sequenceId;
+            event.tenant = task.flow;
+            event.priority = task.priority.name();
+            event.queueTime = waited;
+            event.commit();
+        }
+    }
+
+    private void start(Task<?> task) {
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    finished();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            task.future.completeExceptionally(e);
+            finished();
+        }
+    }
+
+    /**
+     * Frees the slot of a finished execution and starts the next queued one, shedding any that waited too long.
+     */
+    private void finished() {
+        List<Task<?>> expired = new ArrayList<>();
+        Task<?> next = null;
+        synchronized (this) {
+            inFlight--;
+            long now = System.nanoTime();
+            while (next == null) {
+                Task<?> candidate = poll();
+                if (candidate == null) {
+                    break;
+                }
+                if (candidate.future.isDone()) {
+                    continue; // Cancelled by the caller while queued.
+                }
+                if (now - candidate.enqueuedAt > maxQueueNanos) {
+                    candidate.queue.counters.shed++;
+                    candidate.flowCounters.shed++;
+                    expired.add(candidate);
+                    continue;
+                }
+                inFlight++;
+                admit(candidate, now);
+                next = candidate;
+            }
+        }
+        for (Task<?> task : expired) {
+            task.future.completeExceptionally(new RejectedExecutionException(
+                    "Shed after waiting longer than " + Duration.ofNanos(maxQueueNanos) + " to start."));
+        }
+        if (next != null) {
+            start(next);
+        }
+    }
+
+    private Task<?> poll() {
+        for (FairQueue queue : ready.values()) {
+            Task<?> task = queue.poll();
+            if (task != null) {
+                dequeue(task);
+                return task;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,24 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.io.Serializable;
+
+/**
+ * The small value a {@link ClaimCheck} leaves in a {@link SequenceContext} in place of a large one.
+ * Copies, forks and persisted contexts carry only this reference; {@link SequenceContext#get(NodeKey)}
+ * loads the original value from the {@link BlobStore} when it is needed.
+ *
+ * @param digest The hex-encoded SHA-256 digest of the offloaded content.
+ * @param size   The size of the offloaded content in bytes.
+ * @param format How the original value was encoded.
+ */
+public record BlobReference(String digest, long size, Format format) implements Serializable {
+
+    /**
+     * The encoding of an offloaded value.
+     */
+    public enum Format {
+        STRING,
+        BYTES,
+        SERIALIZED
+    }
+}
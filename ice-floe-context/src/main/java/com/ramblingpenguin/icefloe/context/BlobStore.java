@@ -0,0 +1,28 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.io.IOException;
+
+/**
+ * A content-addressed store for large values offloaded from a {@link SequenceContext} by a {@link ClaimCheck}.
+ * Content is identified by its SHA-256 digest, so identical content is only stored once.
+ */
+public interface BlobStore {
+
+    /**
+     * Stores content under the given digest. Storing content that is already present must be a no-op.
+     *
+     * @param digest  The hex-encoded SHA-256 digest of the content.
+     * @param content The content to store.
+     * @throws IOException If the content cannot be stored.
+     */
+    void put(String digest, byte[] content) throws IOException;
+
+    /**
+     * Retrieves previously stored content.
+     *
+     * @param digest The hex-encoded SHA-256 digest of the content.
+     * @return The content.
+     * @throws IOException If the content is missing or cannot be read.
+     */
+    byte[] get(String digest) throws IOException;
+}
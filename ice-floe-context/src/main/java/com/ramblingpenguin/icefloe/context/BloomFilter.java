@@ -0,0 +1,90 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe Bloom filter over strings, used as a compact index of the execution IDs held by a
+ * {@link SequenceContextPersistence}. It never reports a stored ID as absent, and reports an ID that was
+ * never stored as present with roughly the configured false-positive rate.
+ */
+final class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+    private final LongAdder insertions = new LongAdder();
+
+    /**
+     * @param expectedInsertions The number of IDs the filter is sized for.
+     * @param falsePositiveRate  The desired false-positive rate at that number of IDs, between 0 and 1.
+     */
+    BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("expectedInsertions must be positive and falsePositiveRate between 0 and 1");
+        }
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.words = new AtomicLongArray((int) Math.min(Integer.MAX_VALUE, Math.max(1, (bits + 63) / 64)));
+        this.bitCount = (long) this.words.length() * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) this.bitCount / expectedInsertions * Math.log(2)));
+    }
+
+    void put(String value) {
+        long hash = hash(value);
+        long h1 = mix(hash);
+        long h2 = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            long mask = 1L << bit;
+            int word = (int) (bit >>> 6);
+            if ((words.get(word) & mask) == 0) {
+                words.getAndAccumulate(word, mask, (current, set) -> current | set);
+            }
+        }
+        insertions.increment();
+    }
+
+    boolean mightContain(String value) {
+        long hash = hash(value);
+        long h1 = mix(hash);
+        long h2 = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of IDs put into the filter, counting duplicates.
+     */
+    long insertions() {
+        return insertions.sum();
+    }
+
+    /**
+     * 64-bit FNV-1a over the string's characters.
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * The MurmurHash3 finalizer, spreading every input bit across the result.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
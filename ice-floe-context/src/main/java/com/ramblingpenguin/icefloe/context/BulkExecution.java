@@ -0,0 +1,197 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.System.Logger.Level;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Drives one bulk execution: reads inputs lazily, keeps at most a window of them outstanding and delivers
+ * each result to a consumer, in completion or in input order. Memory use is bounded by the window, however
+ * many inputs the source produces.
+ * <p>
+ * Everything but the executions themselves runs on the driver thread. Executions only queue their results
+ * for it, so a consumer that blocks, such as a {@link java.util.concurrent.SubmissionPublisher} applying
+ * back-pressure, holds up the driver and never a thread of the service's executor.
+ */
+final class BulkExecution<I> {
+
+    private static final System.Logger LOGGER = System.getLogger(BulkExecution.class.getName());
+
+    private final Iterable<? extends I> inputs;
+    private final BulkOptions options;
+    private final Function<I, CompletableFuture<SequenceContext>> execute;
+    private final Consumer<BulkResult<I>> consumer;
+    private final BlockingQueue<BulkResult<I>> finished = new LinkedBlockingQueue<>();
+    private final CompletableFuture<BulkSummary> summary = new CompletableFuture<>();
+
+    // Confined to the driver thread: results waiting for earlier inputs (ordered mode only), and progress tracking.
+    private final Map<Long, BulkResult<I>> reorderBuffer = new TreeMap<>();
+    private long undelivered;
+    private long succeeded;
+    private long failed;
+    private long nextToDeliver;
+    private long finishedPrefix;
+    private BitSet finishedAhead = new BitSet();
+    private long sinceCheckpoint;
+
+    BulkExecution(Iterable<? extends I> inputs,
+                  BulkOptions options,
+                  Function<I, CompletableFuture<SequenceContext>> execute,
+                  Consumer<BulkResult<I>> consumer) {
+        this.inputs = inputs;
+        this.options = options;
+        this.execute = execute;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Starts the execution on a virtual thread.
+     *
+     * @return A future completing with the totals once every result has been delivered.
+     */
+    CompletableFuture<BulkSummary> start() {
+        Thread.ofVirtual().name("ice-floe-bulk").start(this::run);
+        return summary;
+    }
+
+    private void run() {
+        long startedAt = System.nanoTime();
+        try {
+            long skipped = readProgress();
+            nextToDeliver = skipped;
+            finishedPrefix = skipped;
+            RuntimeException sourceFailure = null;
+            try {
+                Iterator<? extends I> iterator = inputs.iterator();
+                long index = 0;
+                while (index < skipped && iterator.hasNext()) {
+                    iterator.next();
+                    index++;
+                }
+                while (iterator.hasNext()) {
+                    while (undelivered >= options.window()) {
+                        handle(finished.take());
+                    }
+                    I input = iterator.next();
+                    long position = index++;
+                    CompletableFuture<SequenceContext> execution;
+                    try {
+                        execution = execute.apply(input);
+                    } catch (RuntimeException e) {
+                        execution = CompletableFuture.failedFuture(e);
+                    }
+                    undelivered++;
+                    execution.whenComplete((context, error) -> finished.add(new BulkResult<>(position, input, context, error)));
+                    BulkResult<I> result;
+                    while ((result = finished.poll()) != null) {
+                        handle(result);
+                    }
+                }
+            } catch (RuntimeException e) {
+                // The results of the inputs already read are still delivered, so the progress checkpoint is current.
+                sourceFailure = e;
+            }
+            while (undelivered > 0) {
+                handle(finished.take());
+            }
+            writeProgress();
+            if (sourceFailure != null) {
+                throw sourceFailure;
+            }
+            summary.complete(new BulkSummary(succeeded, failed, skipped, Duration.ofNanos(System.nanoTime() - startedAt)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            summary.completeExceptionally(e);
+        } catch (RuntimeException | Error e) {
+            summary.completeExceptionally(e);
+        }
+    }
+
+    private void handle(BulkResult<I> result) {
+        if (result.isSuccess()) {
+            succeeded++;
+        } else {
+            failed++;
+        }
+        if (options.ordered()) {
+            reorderBuffer.put(result.index(), result);
+            BulkResult<I> next;
+            while ((next = reorderBuffer.remove(nextToDeliver)) != null) {
+                deliver(next);
+                nextToDeliver++;
+            }
+        } else {
+            deliver(result);
+        }
+        recordProgress(result.index());
+    }
+
+    private void deliver(BulkResult<I> result) {
+        try {
+            consumer.accept(result);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Bulk result consumer failed for input " + result.index(), e);
+        } finally {
+            undelivered--;
+        }
+    }
+
+    /**
+     * Advances the count of leading inputs that have all finished, and writes it out every interval.
+     */
+    private void recordProgress(long index) {
+        if (options.progressFile() == null) {
+            return;
+        }
+        finishedAhead.set((int) (index - finishedPrefix));
+        int advanced = finishedAhead.nextClearBit(0);
+        if (advanced > 0) {
+            finishedPrefix += advanced;
+            finishedAhead = finishedAhead.get(advanced, Math.max(advanced, finishedAhead.length()));
+        }
+        if (++sinceCheckpoint >= options.progressInterval()) {
+            sinceCheckpoint = 0;
+            writeProgress();
+        }
+    }
+
+    private long readProgress() {
+        Path file = options.progressFile();
+        if (file == null || !Files.exists(file)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(Files.readString(file, StandardCharsets.UTF_8).trim());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read bulk progress from " + file, e);
+        }
+    }
+
+    private void writeProgress() {
+        Path file = options.progressFile();
+        if (file == null) {
+            return;
+        }
+        try {
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.writeString(temporary, Long.toString(finishedPrefix), StandardCharsets.UTF_8);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to record bulk progress in " + file, e);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * Options for {@link SequenceService#executeAll(SequenceKey, Iterable, BulkOptions)}.
+ * Instances are immutable; each {@code with} method returns a modified copy.
+ */
+public final class BulkOptions {
+
+    private static final BulkOptions DEFAULTS = new BulkOptions(256, false, ExecutionOptions.defaults(), null, 0);
+
+    private final int window;
+    private final boolean ordered;
+    private final ExecutionOptions executionOptions;
+    private final Path progressFile;
+    private final int progressInterval;
+
+    private BulkOptions(int window, boolean ordered, ExecutionOptions executionOptions, Path progressFile, int progressInterval) {
+        this.window = window;
+        this.ordered = ordered;
+        this.executionOptions = executionOptions;
+        this.progressFile = progressFile;
+        this.progressInterval = progressInterval;
+    }
+
+    /**
+     * Returns the default options: a window of 256 executions, results in completion order and no progress file.
+     */
+    public static BulkOptions defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Sets the maximum number of inputs that are executing, or finished but not yet delivered, at once.
+     * Inputs are only read from the source as the window allows.
+     */
+    public BulkOptions withWindow(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("window must be at least 1");
+        }
+        return new BulkOptions(window, this.ordered, this.executionOptions, this.progressFile, this.progressInterval);
+    }
+
+    /**
+     * Delivers results in input order instead of completion order. A slow input then holds back the results
+     * behind it, up to the window size.
+     */
+    public BulkOptions inInputOrder() {
+        return new BulkOptions(this.window, true, this.executionOptions, this.progressFile, this.progressInterval);
+    }
+
+    /**
+     * Sets the options every execution is submitted with, such as its priority and tenant.
+     */
+    public BulkOptions withExecutionOptions(ExecutionOptions executionOptions) {
+        if (executionOptions.idempotencyKey() != null) {
+            throw new IllegalArgumentException("The executions of a bulk execution cannot share an idempotency key.");
+        }
+        return new BulkOptions(this.window, this.ordered, Objects.requireNonNull(executionOptions), this.progressFile, this.progressInterval);
+    }
+
+    /**
+     * Records progress in the given file every {@code interval} results: the number of leading inputs that
+     * have all finished. A later run over the same inputs with the same file skips those inputs, so an
+     * interrupted backfill continues where it left off.
+     */
+    public BulkOptions withProgressCheckpoint(Path progressFile, int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("interval must be at least 1");
+        }
+        return new BulkOptions(this.window, this.ordered, this.executionOptions, Objects.requireNonNull(progressFile), interval);
+    }
+
+    public int window() {
+        return window;
+    }
+
+    public boolean ordered() {
+        return ordered;
+    }
+
+    public ExecutionOptions executionOptions() {
+        return executionOptions;
+    }
+
+    /**
+     * Returns the progress file, or {@code null} if progress is not recorded.
+     */
+    public Path progressFile() {
+        return progressFile;
+    }
+
+    public int progressInterval() {
+        return progressInterval;
+    }
+}
@@ -0,0 +1,16 @@
+package com.ramblingpenguin.icefloe.context;
+
+/**
+ * The outcome of one input of a bulk execution.
+ *
+ * @param index   The position of the input in the source, starting at 0.
+ * @param input   The input.
+ * @param context The final context, or {@code null} if the execution failed.
+ * @param error   The failure, or {@code null} if the execution succeeded.
+ */
+public record BulkResult<I>(long index, I input, SequenceContext context, Throwable error) {
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
@@ -0,0 +1,14 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.time.Duration;
+
+/**
+ * The totals of a finished bulk execution.
+ *
+ * @param succeeded Inputs whose execution succeeded.
+ * @param failed    Inputs whose execution failed or was rejected.
+ * @param skipped   Leading inputs skipped because the progress file recorded them as finished.
+ * @param elapsed   The duration of the bulk execution.
+ */
+public record BulkSummary(long succeeded, long failed, long skipped, Duration elapsed) {
+}
@@ -0,0 +1,23 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.util.Map;
+
+/**
+ * An execution recorded by an {@link ExecutionCapture}, as read back from its log.
+ *
+ * @param sequenceId  The ID of the sequence that ran.
+ * @param executionId The ID the execution had.
+ * @param offsetNanos When the execution was submitted, relative to the start of the capture.
+ * @param runNanos    How long the execution ran, excluding the time it was queued.
+ * @param input       The input the execution was submitted with.
+ * @param nodeNanos   The time spent in each node, keyed by node key ID, in the order the nodes first ran.
+ * @param responses   The outputs of the external nodes, keyed by node key ID.
+ */
+public record CapturedExecution(String sequenceId,
+                                String executionId,
+                                long offsetNanos,
+                                long runNanos,
+                                Object input,
+                                Map<String, Long> nodeNanos,
+                                Map<String, Object> responses) {
+}
@@ -0,0 +1,26 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * A journal record written by a {@link SequenceCheckpointer} after a step of a {@link ContextualSequence} completes.
+ *
+ * @param sequenceKey    The key of the sequence being executed.
+ * @param executionId    The execution the record belongs to.
+ * @param completedSteps The number of steps completed so far.
+ * @param complete       Whether the execution has finished, so it no longer needs to be resumed.
+ * @param delta          The context values that changed since the previous record of this execution.
+ */
+record Checkpoint(
+        SequenceKey<?, SequenceContext> sequenceKey,
+        ExecutionId executionId,
+        int completedSteps,
+        boolean complete,
+        Map<NodeKey<?>, Object> delta
+) implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,172 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.io.*;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Offloads large context values to a {@link BlobStore} and leaves a {@link BlobReference} in their place
+ * (the "claim check" pattern). Copying, forking, checkpointing or persisting a context then only moves
+ * the reference, and the value is loaded again the first time {@link SequenceContext#get(NodeKey)} needs it.
+ * <p>
+ * Strings and byte arrays are measured directly; other serializable values are measured by their
+ * serialized size. Scalars such as numbers and booleans always stay in the context. Offloaded values stay softly cached, so the execution that produced a value
+ * normally reads it back without touching the store. Entries whose values the garbage collector has cleared are
+ * dropped the next time a value is offloaded or resolved.
+ * <p>
+ * Sequences opt in with {@link ContextualSequence.Builder#withClaimCheck(ClaimCheck)}. Contexts loaded from
+ * persistence carry no claim check; {@link SequenceService.Builder#withClaimCheck(ClaimCheck)} attaches one.
+ */
+public class ClaimCheck {
+
+    private final BlobStore store;
+    private final int thresholdBytes;
+    private final Map<String, CachedValue> cache = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Object> cleared = new ReferenceQueue<>();
+
+    /**
+     * A softly cached value, which remembers its digest so its entry can be removed once it is cleared.
+     */
+    private static final class CachedValue extends SoftReference<Object> {
+        private final String digest;
+
+        CachedValue(String digest, Object value, ReferenceQueue<Object> queue) {
+            super(value, queue);
+            this.digest = digest;
+        }
+    }
+
+    /**
+     * @param store          The store receiving offloaded values.
+     * @param thresholdBytes Values larger than this many bytes are offloaded.
+     */
+    public ClaimCheck(BlobStore store, int thresholdBytes) {
+        if (thresholdBytes < 0) {
+            throw new IllegalArgumentException("thresholdBytes must not be negative");
+        }
+        this.store = store;
+        this.thresholdBytes = thresholdBytes;
+    }
+
+    /**
+     * Returns a reference to the stored value if it exceeds the threshold, or the value itself otherwise.
+     */
+    Object offload(Object value) {
+        return offload(value, thresholdBytes);
+    }
+
+    /**
+     * Offloads a value whatever its size, unless it is a scalar or cannot be serialized, in which case it is
+     * returned as it is.
+     */
+    Object offloadAlways(Object value) {
+        return offload(value, 0);
+    }
+
+    private Object offload(Object value, int thresholdBytes) {
+        if (value == null || value instanceof BlobReference || value instanceof Number
+                || value instanceof Boolean || value instanceof Character || value instanceof Enum<?>) {
+            return value;
+        }
+        byte[] content;
+        BlobReference.Format format;
+        if (value instanceof String string) {
+            if ((long) string.length() * 3 <= thresholdBytes) {
+                return value; // Cannot exceed the threshold once encoded as UTF-8.
+            }
+            content = string.getBytes(StandardCharsets.UTF_8);
+            format = BlobReference.Format.STRING;
+        } else if (value instanceof byte[] bytes) {
+            content = bytes;
+            format = BlobReference.Format.BYTES;
+        } else if (value instanceof Serializable) {
+            content = serialize(value);
+            format = BlobReference.Format.SERIALIZED;
+            if (content == null) {
+                return value;
+            }
+        } else {
+            return value;
+        }
+        if (content.length <= thresholdBytes) {
+            return value;
+        }
+
+        String digest = digest(content);
+        try {
+            store.put(digest, content);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to offload value to the blob store.", e);
+        }
+        cache(digest, value);
+        return new BlobReference(digest, content.length, format);
+    }
+
+    /**
+     * Loads the value a reference stands for.
+     */
+    Object resolve(BlobReference reference) {
+        CachedValue cached = cache.get(reference.digest());
+        Object value = cached == null ? null : cached.get();
+        if (value != null) {
+            return value;
+        }
+        byte[] content;
+        try {
+            content = store.get(reference.digest());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load offloaded value " + reference.digest() + ".", e);
+        }
+        value = switch (reference.format()) {
+            case STRING -> new String(content, StandardCharsets.UTF_8);
+            case BYTES -> content;
+            case SERIALIZED -> deserialize(content);
+        };
+        cache(reference.digest(), value);
+        return value;
+    }
+
+    private void cache(String digest, Object value) {
+        Reference<?> reference;
+        while ((reference = cleared.poll()) != null) {
+            CachedValue entry = (CachedValue) reference;
+            // The digest may have been cached again since, under a new reference that must stay.
+            cache.remove(entry.digest, entry);
+        }
+        cache.put(digest, new CachedValue(digest, value, cleared));
+    }
+
+    private static byte[] serialize(Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        } catch (IOException e) {
+            // A nested value was not serializable; leave the value in the context.
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] content) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(content))) {
+            return in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Failed to read offloaded value.", e);
+        }
+    }
+
+    private static String digest(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The estimated heap retained by one context held by a {@link SequenceService}.
+ *
+ * @param executionId   The ID of the execution.
+ * @param retainedBytes The estimated size of the whole context.
+ * @param bytesByKey    The estimated size of each value, by key ID, largest first.
+ */
+public record ContextFootprint(String executionId, long retainedBytes, Map<String, Long> bytesByKey) {
+
+    /**
+     * Returns the ID of the key holding the largest value, or {@code null} if the context is empty.
+     */
+    public String largestKey() {
+        return bytesByKey.isEmpty() ? null : bytesByKey.keySet().iterator().next();
+    }
+
+    /**
+     * Measures a context, unless its sizes are cached already.
+     */
+    static ContextFootprint of(String executionId, SequenceContext context) {
+        Map<NodeKey<?>, Long> sizes = context.getRetainedSizes();
+        Map<String, Long> bytesByKey = new LinkedHashMap<>();
+        for (NodeKey<?> key : SizeEstimator.largestFirst(sizes)) {
+            bytesByKey.put(key.id(), sizes.get(key));
+        }
+        return new ContextFootprint(executionId, context.getRetainedSize(), Collections.unmodifiableMap(bytesByKey));
+    }
+}
@@ -0,0 +1,39 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.io.Serial;
+
+/**
+ * Thrown when the context of an execution grows past the hard limit of its {@link ContextSizeLimits}.
+ */
+public class ContextSizeExceededException extends RuntimeException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final String executionId;
+    private final String largestKey;
+    private final long retainedBytes;
+
+    public ContextSizeExceededException(String executionId, String largestKey, long retainedBytes, long hardLimitBytes) {
+        super("The context of execution '" + executionId + "' retains about " + retainedBytes
+                + " bytes, more than its limit of " + hardLimitBytes + "; the largest value is under key '" + largestKey + "'.");
+        this.executionId = executionId;
+        this.largestKey = largestKey;
+        this.retainedBytes = retainedBytes;
+    }
+
+    public String getExecutionId() {
+        return executionId;
+    }
+
+    /**
+     * Returns the ID of the key holding the largest value.
+     */
+    public String getLargestKey() {
+        return largestKey;
+    }
+
+    public long getRetainedBytes() {
+        return retainedBytes;
+    }
+}
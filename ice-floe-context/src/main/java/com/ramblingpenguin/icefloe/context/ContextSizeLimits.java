@@ -0,0 +1,104 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Limits on the estimated heap retained by the context of one execution, checked whenever a value is stored or
+ * a fork branch is merged. Instances are immutable; each {@code with} method returns a modified copy.
+ * <p>
+ * Crossing the soft limit is reported, as a {@code com.ramblingpenguin.icefloe.ContextSizeWarning} flight
+ * recorder event and to the listener set with {@link #withSoftLimitListener}, once per execution, naming the
+ * largest keys. With {@link SoftLimitAction#OFFLOAD}, the largest values are first offloaded to the sequence's
+ * {@link ClaimCheck} until the context is back under the limit.
+ * Exceeding the hard limit fails the execution with a {@link ContextSizeExceededException}.
+ *
+ * @see ContextualSequence.Builder#withSizeLimits(ContextSizeLimits)
+ * @see SequenceContext#getRetainedSizes()
+ */
+public final class ContextSizeLimits {
+
+    /**
+     * What happens when a context grows past its soft limit.
+     */
+    public enum SoftLimitAction {
+        /**
+         * Reports the crossing, naming the largest keys.
+         */
+        WARN,
+        /**
+         * Offloads the largest values to the claim check, whatever its threshold, and reports the crossing if
+         * that is not enough or there is no claim check.
+         */
+        OFFLOAD
+    }
+
+    private static final ContextSizeLimits UNLIMITED = new ContextSizeLimits(Long.MAX_VALUE, SoftLimitAction.WARN, Long.MAX_VALUE, null);
+
+    private final long softLimitBytes;
+    private final SoftLimitAction softLimitAction;
+    private final long hardLimitBytes;
+    private final Consumer<ContextFootprint> softLimitListener;
+
+    private ContextSizeLimits(long softLimitBytes, SoftLimitAction softLimitAction, long hardLimitBytes,
+                              Consumer<ContextFootprint> softLimitListener) {
+        this.softLimitBytes = softLimitBytes;
+        this.softLimitAction = softLimitAction;
+        this.hardLimitBytes = hardLimitBytes;
+        this.softLimitListener = softLimitListener;
+    }
+
+    /**
+     * Returns limits that are never reached, to build on.
+     */
+    public static ContextSizeLimits unlimited() {
+        return UNLIMITED;
+    }
+
+    /**
+     * Sets the soft limit and what to do when a context crosses it.
+     */
+    public ContextSizeLimits withSoftLimit(long bytes, SoftLimitAction action) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("The soft limit must be positive");
+        }
+        if (action == null) {
+            throw new NullPointerException("action");
+        }
+        return new ContextSizeLimits(bytes, action, this.hardLimitBytes, this.softLimitListener);
+    }
+
+    /**
+     * Sets the size past which the execution fails.
+     */
+    public ContextSizeLimits withHardLimit(long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("The hard limit must be positive");
+        }
+        return new ContextSizeLimits(this.softLimitBytes, this.softLimitAction, bytes, this.softLimitListener);
+    }
+
+    /**
+     * Sets a listener told about every context that crosses the soft limit, with its size by key. It is called
+     * on the thread that stored the value, so it should only record or hand off the footprint.
+     */
+    public ContextSizeLimits withSoftLimitListener(Consumer<ContextFootprint> listener) {
+        return new ContextSizeLimits(this.softLimitBytes, this.softLimitAction, this.hardLimitBytes, Objects.requireNonNull(listener));
+    }
+
+    public long softLimitBytes() {
+        return softLimitBytes;
+    }
+
+    public SoftLimitAction softLimitAction() {
+        return softLimitAction;
+    }
+
+    public long hardLimitBytes() {
+        return hardLimitBytes;
+    }
+
+    Consumer<ContextFootprint> softLimitListener() {
+        return softLimitListener;
+    }
+}
@@ -0,0 +1,520 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * The two-tier store behind {@link SequenceService}'s active contexts.
+ * <p>
+ * The memory tier is bounded by the total weight of its contexts and evicts the least recently used
+ * ones first. Evicted contexts that are not yet persisted are spilled to the {@link SequenceContextPersistence}
+ * by a background writer, one at a time, and stay readable until they are; without persistence they are
+ * dropped. A spill is skipped if its context was stored again or evicted again since, so an older context
+ * never overwrites a newer one. Lookups that miss the memory tier read through to persistence and
+ * promote what they find. Completed executions can be given a time to live, after which they are removed
+ * from both tiers by a sweep that runs in the background, deleting the expired contexts from persistence in one
+ * batch. Persistence keeps no expiry times, so the contexts found there at start, whose execution IDs start
+ * with a ULID, expire a time to live after their execution started; other IDs found there never expire.
+ * <p>
+ * Nothing is loaded up front. Once {@link #index(Collection)} has been given the IDs in persistence, lookups
+ * for IDs it does not know are answered without touching persistence. The index is either exact or, for
+ * very large stores, a {@link BloomFilter}. With a Bloom filter, evicted contexts are only added to the filter,
+ * so the store holds nothing per context outside the memory tier; their expiry is then derived from their
+ * execution ID like that of the contexts found at start. {@link #warmUp} optionally preloads contexts in parallel.
+ */
+final class ContextStore {
+
+    private static final System.Logger LOGGER = System.getLogger(ContextStore.class.getName());
+
+    private static final class Entry {
+        private final SequenceContext context;
+        private final long weight;
+        private final long expiresAt;
+        private boolean dirty;
+
+        private Entry(SequenceContext context, long weight, long expiresAt, boolean dirty) {
+            this.context = context;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+            this.dirty = dirty;
+        }
+    }
+
+    private final SequenceContextPersistence persistence;
+    private final ToLongFunction<SequenceContext> weigher;
+    private final long maxWeight;
+    private final Duration timeToLive;
+    private final UnaryOperator<SequenceContext> onLoad;
+    private final Clock clock;
+    private final BloomFilter persistedIds;
+    private volatile boolean indexed = false;
+
+    // Access-ordered, so iteration starts at the least recently used context.
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    // The latest evicted context of each execution that is waiting for the writer.
+    private final Map<String, Entry> spilling = new ConcurrentHashMap<>();
+    private final Queue<Map.Entry<String, Entry>> spills = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock spillWriter = new ReentrantLock();
+    private final AtomicBoolean spillScheduled = new AtomicBoolean();
+    // Execution ID -> expiry time, of the contexts only in persistence. Empty with a Bloom filter index.
+    private final Map<String, Long> disk = new ConcurrentHashMap<>();
+    private final Executor background;
+    private long weight;
+    private long nextSweep;
+    private boolean sweeping;
+
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param persistence The lower tier, or {@code null} to drop evicted contexts.
+     * @param weigher     Computes the weight of a context.
+     * @param maxWeight   The maximum total weight of the memory tier.
+     * @param timeToLive  How long completed executions are kept, or {@code null} to keep them indefinitely.
+     * @param onLoad      Applied to every context read from persistence.
+     * @param clock       The clock used for expiry.
+     * @param persistedIds The filter indexing the IDs in persistence, or {@code null} to index them exactly.
+     * @param background  Runs the spills of evicted contexts and the sweeps for expired executions.
+     */
+    ContextStore(SequenceContextPersistence persistence,
+                 ToLongFunction<SequenceContext> weigher,
+                 long maxWeight,
+                 Duration timeToLive,
+                 UnaryOperator<SequenceContext> onLoad,
+                 Clock clock,
+                 BloomFilter persistedIds,
+                 Executor background) {
+        this.persistence = persistence;
+        this.weigher = weigher;
+        this.maxWeight = maxWeight;
+        this.timeToLive = timeToLive;
+        this.onLoad = onLoad;
+        this.clock = clock;
+        this.persistedIds = persistedIds;
+        this.background = background;
+    }
+
+    /**
+     * Stores the final context of a completed execution. It expires after the time to live.
+     */
+    void putCompleted(String executionId, SequenceContext context) {
+        long now = clock.millis();
+        long expiresAt = timeToLive == null ? Long.MAX_VALUE : now + timeToLive.toMillis();
+        insert(executionId, new Entry(context, weigher.applyAsLong(context), expiresAt, true), false);
+        sweepIfDue(now);
+    }
+
+    /**
+     * Stores a context that is already persisted, so evicting it does not write it again.
+     */
+    void putPersisted(String executionId, SequenceContext context) {
+        insert(executionId, new Entry(context, weigher.applyAsLong(context), Long.MAX_VALUE, false), false);
+    }
+
+    /**
+     * Looks up a context in memory, then in persistence.
+     *
+     * @return The context, or {@code null} if neither tier holds it or it has expired.
+     */
+    SequenceContext get(String executionId) throws IOException, ClassNotFoundException {
+        long now = clock.millis();
+        Entry entry;
+        synchronized (this) {
+            entry = memory.get(executionId);
+        }
+        if (entry == null) {
+            entry = spilling.get(executionId);
+        }
+        if (entry != null) {
+            if (entry.expiresAt <= now) {
+                expire(executionId);
+                misses.increment();
+                return null;
+            }
+            memoryHits.increment();
+            return entry.context;
+        }
+
+        Long known = disk.get(executionId);
+        if (known == null && indexed && (persistedIds == null || !persistedIds.mightContain(executionId))) {
+            misses.increment();
+            return null;
+        }
+        long expiresAt = known == null ? persistedExpiry(executionId) : known;
+        if (persistence == null || expiresAt <= now) {
+            if (persistence != null) {
+                expire(executionId);
+            }
+            misses.increment();
+            return null;
+        }
+        SequenceContext context = FlightEvents.load(persistence, executionId);
+        if (context == null) {
+            disk.remove(executionId);
+            misses.increment();
+            return null;
+        }
+        diskHits.increment();
+        context = onLoad.apply(context);
+        insert(executionId, new Entry(context, weigher.applyAsLong(context), expiresAt, false), false);
+        return context;
+    }
+
+    /**
+     * Records the IDs held by persistence. Until this is called every lookup that misses memory reads
+     * through to persistence.
+     */
+    void index(Collection<String> executionIds) {
+        for (String executionId : executionIds) {
+            if (persistedIds != null) {
+                persistedIds.put(executionId);
+            } else {
+                disk.putIfAbsent(executionId, persistedExpiry(executionId));
+            }
+        }
+        indexed = true;
+    }
+
+    /**
+     * Loads contexts from persistence into the memory tier, at most {@code parallelism} at a time, until the
+     * tier is full. Contexts already in memory are left alone. Blocks until the loads have finished.
+     */
+    void warmUp(List<String> executionIds, int parallelism, Executor executor) {
+        if (persistence == null) {
+            return;
+        }
+        Semaphore permits = new Semaphore(parallelism);
+        try {
+            for (String executionId : executionIds) {
+                synchronized (this) {
+                    if (weight >= maxWeight) {
+                        break;
+                    }
+                }
+                permits.acquire();
+                try {
+                    executor.execute(() -> {
+                        try {
+                            warm(executionId);
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    permits.release();
+                    break; // The service is stopping.
+                }
+            }
+            permits.acquire(parallelism);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void warm(String executionId) {
+        synchronized (this) {
+            if (memory.containsKey(executionId)) {
+                return;
+            }
+        }
+        try {
+            SequenceContext context = FlightEvents.load(persistence, executionId);
+            if (context != null) {
+                context = onLoad.apply(context);
+                long expiresAt = disk.getOrDefault(executionId, persistedExpiry(executionId));
+                insert(executionId, new Entry(context, weigher.applyAsLong(context), expiresAt, false), true);
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            LOGGER.log(Level.WARNING, "Failed to warm up context for execution ID: " + executionId, e);
+        }
+    }
+
+    /**
+     * Persists every context in the memory tier that is not persisted yet, after the pending spills.
+     */
+    void flush() {
+        if (persistence == null) {
+            return;
+        }
+        writeSpills();
+        List<Map.Entry<String, Entry>> dirty = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<String, Entry> entry : memory.entrySet()) {
+                if (entry.getValue().dirty) {
+                    dirty.add(entry);
+                }
+            }
+        }
+        for (Map.Entry<String, Entry> entry : dirty) {
+            try {
+                FlightEvents.save(persistence, entry.getKey(), entry.getValue().context);
+                synchronized (this) {
+                    entry.getValue().dirty = false;
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to save context for execution ID: " + entry.getKey(), e);
+            }
+        }
+    }
+
+    /**
+     * Removes every expired execution from both tiers, deleting them from persistence in one batch. With a
+     * Bloom filter index, the contexts only in persistence are found by their creation time.
+     */
+    void sweep() {
+        long now = clock.millis();
+        Set<String> expired = new LinkedHashSet<>();
+        synchronized (this) {
+            for (Map.Entry<String, Entry> entry : memory.entrySet()) {
+                if (entry.getValue().expiresAt <= now) {
+                    expired.add(entry.getKey());
+                }
+            }
+        }
+        for (Map.Entry<String, Long> entry : disk.entrySet()) {
+            if (entry.getValue() <= now) {
+                expired.add(entry.getKey());
+            }
+        }
+        Set<String> persistedOnly = new HashSet<>();
+        if (persistedIds != null && persistence != null && timeToLive != null) {
+            try {
+                Instant startedBefore = Instant.ofEpochMilli(now - timeToLive.toMillis());
+                for (String executionId : persistence.listStoredExecutionIds(Instant.EPOCH, startedBefore)) {
+                    if (!spilling.containsKey(executionId) && !inMemory(executionId)) {
+                        persistedOnly.add(executionId);
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to list expired contexts", e);
+            }
+        }
+        expired.addAll(persistedOnly);
+        if (expired.isEmpty()) {
+            return;
+        }
+        long removed = 0;
+        for (String executionId : expired) {
+            if (removeFromTiers(executionId) || persistedOnly.contains(executionId)) {
+                removed++;
+            }
+        }
+        expirations.add(removed);
+        if (persistence != null) {
+            try {
+                persistence.deleteStates(expired);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to delete " + expired.size() + " expired contexts", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the footprints of the largest contexts in the memory tier, largest first. Contexts are measured
+     * outside the lock, and only once each, since their sizes are cached.
+     */
+    List<ContextFootprint> largest(int limit) {
+        Map<String, SequenceContext> contexts = new HashMap<>();
+        synchronized (this) {
+            memory.forEach((executionId, entry) -> contexts.put(executionId, entry.context));
+        }
+        spilling.forEach((executionId, entry) -> contexts.putIfAbsent(executionId, entry.context));
+        List<ContextFootprint> footprints = new ArrayList<>(contexts.size());
+        contexts.forEach((executionId, context) -> footprints.add(ContextFootprint.of(executionId, context)));
+        footprints.sort(Comparator.comparingLong(ContextFootprint::retainedBytes).reversed());
+        return List.copyOf(footprints.subList(0, Math.min(limit, footprints.size())));
+    }
+
+    ContextStoreStats stats() {
+        synchronized (this) {
+            return new ContextStoreStats(memoryHits.sum(), diskHits.sum(), misses.sum(),
+                    memory.size(), weight, persistedIds == null ? disk.size() : (int) persistedIds.insertions(),
+                    evictions.sum(), expirations.sum());
+        }
+    }
+
+    private void insert(String executionId, Entry entry, boolean onlyIfAbsent) {
+        List<Map.Entry<String, Entry>> evicted = new ArrayList<>();
+        synchronized (this) {
+            if (onlyIfAbsent && (memory.containsKey(executionId) || spilling.containsKey(executionId))) {
+                return;
+            }
+            // The disk tier only tracks contexts that are not in memory; eviction adds them back. A pending
+            // spill of the execution is superseded by the newer context.
+            disk.remove(executionId);
+            spilling.remove(executionId);
+            Entry previous = memory.put(executionId, entry);
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+            weight += entry.weight;
+            Iterator<Map.Entry<String, Entry>> eldest = memory.entrySet().iterator();
+            while (weight > maxWeight && eldest.hasNext()) {
+                Map.Entry<String, Entry> victim = eldest.next();
+                eldest.remove();
+                weight -= victim.getValue().weight;
+                evictions.increment();
+                if (persistence == null) {
+                    continue;
+                }
+                if (victim.getValue().dirty) {
+                    // Stays readable until it is persisted.
+                    spilling.put(victim.getKey(), victim.getValue());
+                    evicted.add(victim);
+                } else {
+                    recordPersisted(victim.getKey(), victim.getValue().expiresAt);
+                }
+            }
+        }
+        if (!evicted.isEmpty()) {
+            spills.addAll(evicted);
+            scheduleSpills();
+        }
+    }
+
+    private void scheduleSpills() {
+        if (!spillScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            background.execute(() -> {
+                spillScheduled.set(false);
+                writeSpills();
+            });
+        } catch (RejectedExecutionException e) {
+            // The service is stopping; its final flush writes what is queued.
+            spillScheduled.set(false);
+        }
+    }
+
+    /**
+     * Writes the queued spills in order. Only one thread writes at a time, so two spills of the same execution
+     * never race.
+     */
+    private void writeSpills() {
+        spillWriter.lock();
+        try {
+            for (Map.Entry<String, Entry> next = spills.poll(); next != null; next = spills.poll()) {
+                spill(next.getKey(), next.getValue());
+            }
+        } finally {
+            spillWriter.unlock();
+        }
+    }
+
+    private void spill(String executionId, Entry entry) {
+        if (spilling.get(executionId) != entry) {
+            return; // Stored again, evicted again or expired since.
+        }
+        try {
+            FlightEvents.save(persistence, executionId, entry.context);
+        } catch (IOException e) {
+            spilling.remove(executionId, entry);
+            LOGGER.log(Level.WARNING, "Failed to spill context for execution ID: " + executionId, e);
+            return;
+        }
+        synchronized (this) {
+            if (spilling.remove(executionId, entry)) {
+                recordPersisted(executionId, entry.expiresAt);
+            }
+        }
+    }
+
+    private void expire(String executionId) {
+        boolean removed = removeFromTiers(executionId);
+        if (persistence != null) {
+            try {
+                persistence.deleteState(executionId);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to delete expired context for execution ID: " + executionId, e);
+            }
+        }
+        if (removed) {
+            expirations.increment();
+        }
+    }
+
+    /**
+     * Records a context that is now only in persistence.
+     */
+    private void recordPersisted(String executionId, long expiresAt) {
+        if (persistedIds != null) {
+            persistedIds.put(executionId);
+        } else {
+            disk.put(executionId, expiresAt);
+        }
+    }
+
+    private boolean removeFromTiers(String executionId) {
+        boolean removed;
+        synchronized (this) {
+            Entry entry = memory.remove(executionId);
+            if (entry != null) {
+                weight -= entry.weight;
+            }
+            removed = spilling.remove(executionId) != null || entry != null;
+        }
+        return disk.remove(executionId) != null || removed;
+    }
+
+    private synchronized boolean inMemory(String executionId) {
+        return memory.containsKey(executionId);
+    }
+
+    /**
+     * Returns when a context found in persistence expires, which is a time to live after its execution started
+     * if its ID says when that was.
+     */
+    private long persistedExpiry(String executionId) {
+        if (timeToLive == null) {
+            return Long.MAX_VALUE;
+        }
+        return Ulid.timestamp(executionId)
+                .map(started -> started.toEpochMilli() + timeToLive.toMillis())
+                .orElse(Long.MAX_VALUE);
+    }
+
+    private void sweepIfDue(long now) {
+        synchronized (this) {
+            if (timeToLive == null || sweeping || now < nextSweep) {
+                return;
+            }
+            // Sweeping is a full scan, so it runs at most a few times per time to live, and never on the
+            // thread completing an execution.
+            nextSweep = now + Math.max(timeToLive.toMillis() / 4, 1);
+            sweeping = true;
+        }
+        try {
+            background.execute(() -> {
+                try {
+                    sweep();
+                } finally {
+                    synchronized (this) {
+                        sweeping = false;
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                sweeping = false; // The service is stopping.
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.ramblingpenguin.icefloe.context;
+
+/**
+ * A snapshot of the tiered store that holds the contexts of a {@link SequenceService}.
+ *
+ * @param memoryHits     Lookups answered from the in-memory tier.
+ * @param diskHits       Lookups answered by reading through to persistence.
+ * @param misses         Lookups for contexts the store does not hold.
+ * @param memoryEntries  The number of contexts in the in-memory tier.
+ * @param memoryWeight   The total weight of the in-memory tier.
+ * @param diskEntries    The number of contexts known to be in persistence only; an estimate when
+ *                       the persisted IDs are indexed by a Bloom filter.
+ * @param evictions      Contexts evicted from the in-memory tier to respect its bound.
+ * @param expirations    Completed executions removed after their time to live.
+ */
+public record ContextStoreStats(long memoryHits,
+                                long diskHits,
+                                long misses,
+                                int memoryEntries,
+                                long memoryWeight,
+                                int diskEntries,
+                                long evictions,
+                                long expirations) {
+
+    /**
+     * Returns the fraction of lookups answered from memory, or 0 if there were none.
+     */
+    public double memoryHitRate() {
+        long lookups = memoryHits + diskHits + misses;
+        return lookups == 0 ? 0 : (double) memoryHits / lookups;
+    }
+
+    /**
+     * Returns the fraction of lookups answered from either tier, or 0 if there were none.
+     */
+    public double hitRate() {
+        long lookups = memoryHits + diskHits + misses;
+        return lookups == 0 ? 0 : (double) (memoryHits + diskHits) / lookups;
+    }
+}
@@ -1,12 +1,15 @@
 package com.ramblingpenguin.icefloe.context;
 
 import com.ramblingpenguin.icefloe.core.Node;
+import com.ramblingpenguin.icefloe.core.jfr.ForkGatherEvent;
+import com.ramblingpenguin.icefloe.core.jfr.ForkScatterEvent;
+import com.ramblingpenguin.icefloe.core.node.Cancellation;
 
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -56,44 +59,87 @@ public class ContextualForkSequence<ITEM_TYPE> implements Node<SequenceContext,
 
     @Override
     public SequenceContext apply(SequenceContext parentContext) {
-        if (isParallel) {
-            return this.applyInParallel(parentContext);
-        } else {
-            return this.applySequential(parentContext);
+        ProfileRecorder profiler = parentContext.getProfiler();
+        long start = profiler == null ? 0 : System.nanoTime();
+        SequenceContext result = isParallel ? this.applyInParallel(parentContext) : this.applySequential(parentContext);
+        if (profiler != null) {
+            profiler.record(parentContext.getExecutionId(), scatterKey.id(), ProfileSpan.Kind.FORK, start);
         }
+        return result;
+    }
+
+    private SequenceContext applyBranch(SequenceContext childContext) {
+        ProfileRecorder profiler = childContext.getProfiler();
+        if (profiler == null) {
+            return this.forkNode.apply(childContext);
+        }
+        long start = System.nanoTime();
+        SequenceContext result = this.forkNode.apply(childContext);
+        profiler.record(childContext.getExecutionId(), itemKey.id(), ProfileSpan.Kind.BRANCH, start);
+        return result;
     }
 
     private Stream<SequenceContext> buildChildContexts(SequenceContext parentContext) {
         AtomicInteger childIndex = new AtomicInteger(0);
         return StreamSupport.stream(parentContext.get(scatterKey).orElseThrow().spliterator(), false)
                 .map(item -> {
-                    SequenceContext childContext = parentContext.createChildContext(String.valueOf(childIndex.getAndIncrement()));
+                    SequenceContext childContext = parentContext.createChildContext(childIndex.getAndIncrement());
                     return childContext.put(this.itemKey, item);
                 });
     }
 
     private SequenceContext applySequential(SequenceContext parentContext) {
-        return this.buildChildContexts(parentContext)
-                .map(this.forkNode)
+        ForkScatterEvent scatter = new ForkScatterEvent();
+        scatter.begin();
+        AtomicInteger branchCount = new AtomicInteger();
+        // Sequential branches are merged as they finish, so the scatter event covers the gather too.
+        SequenceContext result = this.buildChildContexts(parentContext)
+                .map(childContext -> {
+                    Cancellation.throwIfCancelled();
+                    branchCount.incrementAndGet();
+                    return this.applyBranch(childContext);
+                })
                 .reduce(parentContext, (p, c) -> {
                     c.remove(this.itemKey);
                     p.merge(c);
                     return parentContext;
                 });
+        if (scatter.shouldCommit()) {
+            scatter.executionId = parentContext.getExecutionId().id();
+            scatter.branches = branchCount.get();
+            scatter.commit();
+        }
+        return result;
     }
 
     private SequenceContext applyInParallel(SequenceContext parentContext) {
-        List<CompletableFuture<SequenceContext>> futures = this.buildChildContexts(parentContext)
-                .map(childContext ->
-                    CompletableFuture.supplyAsync(() -> this.forkNode.apply(childContext), this.executor)
-                ).toList();
+        ForkScatterEvent scatter = new ForkScatterEvent();
+        scatter.begin();
+        List<Supplier<SequenceContext>> branches = this.buildChildContexts(parentContext)
+                .<Supplier<SequenceContext>>map(childContext -> () -> this.applyBranch(childContext))
+                .toList();
 
-        return futures.stream()
-                .map(CompletableFuture::join)
+        // Interrupting this thread cancels every branch, and through them any forks nested inside.
+        List<SequenceContext> results = Cancellation.forkAll(branches, this.executor);
+        if (scatter.shouldCommit()) {
+            scatter.executionId = parentContext.getExecutionId().id();
+            scatter.branches = results.size();
+            scatter.parallel = true;
+            scatter.commit();
+        }
+        ForkGatherEvent gather = new ForkGatherEvent();
+        gather.begin();
+        SequenceContext result = results.stream()
                 .reduce(parentContext, (p, c) -> {
                     c.remove(this.itemKey);
                     return p.merge(c);
                 });
+        if (gather.shouldCommit()) {
+            gather.executionId = parentContext.getExecutionId().id();
+            gather.branches = results.size();
+            gather.commit();
+        }
+        return result;
     }
 
     /**
@@ -3,7 +3,6 @@ package com.ramblingpenguin.icefloe.context;
 import com.ramblingpenguin.icefloe.core.Node;
 
 import java.io.Serializable;
-import java.util.UUID;
 import java.util.function.Function;
 
 /**
@@ -38,9 +37,42 @@ public class ContextualNode<INPUT, OUTPUT extends Serializable> implements Node<
 
     @Override
     public SequenceContext apply(SequenceContext sequenceContext) {
+        FlightEvents.NodeExecution event = new FlightEvents.NodeExecution();
+        event.begin();
+        ProfileRecorder profiler = sequenceContext.getProfiler();
+        long start = profiler == null ? 0 : System.nanoTime();
         INPUT input = inputExtractor.apply(sequenceContext);
-        OUTPUT output = wrappedNode.apply(input);
-        return sequenceContext.put(nodeKey, output);
+        SequenceContext result;
+        if (sequenceContext.isIncremental()) {
+            result = applyIncrementally(sequenceContext, input, event);
+        } else {
+            OUTPUT output = wrappedNode.apply(input);
+            result = sequenceContext.put(nodeKey, output);
+        }
+        if (event.shouldCommit()) {
+            event.executionId = sequenceContext.getExecutionId().id();
+            event.nodeKey = nodeKey.id();
+            event.commit();
+        }
+        if (profiler != null) {
+            profiler.record(sequenceContext.getExecutionId(), nodeKey.id(), ProfileSpan.Kind.NODE, start);
+        }
+        return result;
+    }
+
+    /**
+     * Reuses the prior context's output when the input's fingerprint is unchanged, and otherwise
+     * executes the wrapped node. Either way the fingerprint is recorded for the next run.
+     */
+    private SequenceContext applyIncrementally(SequenceContext sequenceContext, INPUT input, FlightEvents.NodeExecution event) {
+        String fingerprint = Fingerprints.of(input);
+        OUTPUT output = sequenceContext.getPriorOutput(nodeKey, fingerprint).orElse(null);
+        if (output != null) {
+            event.reused = true;
+        } else {
+            output = wrappedNode.apply(input);
+        }
+        return sequenceContext.put(nodeKey, output, fingerprint);
     }
 
     /**
@@ -58,7 +90,7 @@ public class ContextualNode<INPUT, OUTPUT extends Serializable> implements Node<
     public static <INPUT, OUTPUT extends Serializable> ContextualNode<INPUT, OUTPUT> of(Class<OUTPUT> outputType,
                                                                    Function<SequenceContext, INPUT> inputExtractor,
                                                                    Node<INPUT, OUTPUT> wrappedNode) {
-        return new ContextualNode<>(new NodeKey<>(UUID.randomUUID().toString(), outputType),
+        return new ContextualNode<>(NodeKey.of(outputType),
                 inputExtractor, wrappedNode);
     }
 }
@@ -1,11 +1,20 @@
 package com.ramblingpenguin.icefloe.context;
 
 import com.ramblingpenguin.glacier.trait.Identifiable;
+import com.ramblingpenguin.icefloe.core.Deadline;
 import com.ramblingpenguin.icefloe.core.Node;
 import com.ramblingpenguin.icefloe.core.Sequence;
+import com.ramblingpenguin.icefloe.core.intercept.NodeDescriptor;
+import com.ramblingpenguin.icefloe.core.intercept.NodeInterceptor;
+import com.ramblingpenguin.icefloe.core.metrics.MetricsRegistry;
+import com.ramblingpenguin.icefloe.core.node.Cancellation;
 
 import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
@@ -16,27 +25,154 @@ import java.util.function.Supplier;
 public class ContextualSequence<INPUT> extends Sequence<INPUT, SequenceContext> implements Identifiable<SequenceKey<INPUT, SequenceContext>> {
 
     private final SequenceKey<INPUT, SequenceContext> sequenceKey;
+    private final Function<INPUT, SequenceContext> rootContextFactory;
+    private final SequenceStateService recorder;
+    private final SequenceCheckpointer checkpointer;
+    private final List<Node<SequenceContext, SequenceContext>> steps;
+    private final Node<SequenceContext, SequenceContext> body;
 
-    private ContextualSequence(SequenceKey<INPUT, SequenceContext> sequenceKey, Node<INPUT, SequenceContext> composedNode) {
-        super(composedNode);
+    private ContextualSequence(SequenceKey<INPUT, SequenceContext> sequenceKey,
+                               Function<INPUT, SequenceContext> rootContextFactory,
+                               SequenceStateService recorder,
+                               SequenceCheckpointer checkpointer,
+                               List<Node<SequenceContext, SequenceContext>> steps,
+                               Node<SequenceContext, SequenceContext> body) {
+        super(input -> run(body, beginExecution(rootContextFactory.apply(input), sequenceKey, recorder, checkpointer),
+                sequenceKey, checkpointer));
         this.sequenceKey = Objects.requireNonNull(sequenceKey);
+        this.rootContextFactory = rootContextFactory;
+        this.recorder = recorder;
+        this.checkpointer = checkpointer;
+        this.steps = steps;
+        this.body = body;
     }
 
     public SequenceKey<INPUT, SequenceContext> id() {
         return sequenceKey;
     }
 
+    /**
+     * Executes the sequence in incremental mode.
+     * <p>
+     * Every {@link ContextualNode} fingerprints the input it extracts from the context. When the
+     * prior context recorded the same fingerprint for the node's key, the prior output is reused
+     * instead of running the wrapped node again; otherwise the node runs and its new output
+     * changes the inputs, and therefore the fingerprints, of the nodes downstream of it.
+     * The resulting context records its own fingerprints so it can serve as the prior context
+     * for the next run. Nodes are assumed to be deterministic functions of their input.
+     *
+     * @param input        The input for this run.
+     * @param priorContext The context produced by an earlier incremental run, or {@code null} to
+     *                     run every node and only record fingerprints.
+     * @return The final context of this run.
+     */
+    public SequenceContext applyIncrementally(INPUT input, SequenceContext priorContext) {
+        SequenceContext context = rootContextFactory.apply(input).asIncremental(priorContext);
+        return run(body, beginExecution(context, sequenceKey, recorder, checkpointer), sequenceKey, checkpointer);
+    }
+
+    /**
+     * Continues an interrupted execution after its last completed step.
+     *
+     * @param context        The context as of the last completed step, usually recovered by a {@link SequenceCheckpointer}.
+     * @param completedSteps The number of steps that had already completed.
+     * @return The final context of the execution.
+     */
+    public SequenceContext resume(SequenceContext context, int completedSteps) {
+        if (completedSteps < 0 || completedSteps > steps.size()) {
+            throw new IllegalArgumentException("Sequence '" + sequenceKey.id() + "' has " + steps.size()
+                    + " steps, cannot resume after step " + completedSteps + ".");
+        }
+        List<Node<SequenceContext, SequenceContext>> remaining = steps.subList(completedSteps, steps.size());
+        return run(current -> {
+            for (Node<SequenceContext, SequenceContext> step : remaining) {
+                Cancellation.throwIfCancelled();
+                current = step.apply(current);
+            }
+            return current;
+        }, context, sequenceKey, checkpointer);
+    }
+
+    /**
+     * Runs the body of an execution. The deadline, profile and running contexts of the calling thread, if any, are
+     * attached to the context, and the context's deadline is made current for the nodes. An execution that fails, is cancelled or
+     * misses its deadline is dropped from the checkpoint journal, so it is not resumed after every restart, and so is a
+     * parked one, which its {@link HibernationStore} resumes instead. Only an execution cut short by the process
+     * stopping remains resumable.
+     */
+    private static SequenceContext run(Node<SequenceContext, SequenceContext> body,
+                                       SequenceContext context,
+                                       SequenceKey<?, SequenceContext> sequenceKey,
+                                       SequenceCheckpointer checkpointer) {
+        Deadline current = Deadline.current();
+        ProfileRecorder profiler = ProfileRecorder.current();
+        SequenceContext withDeadline = current == null ? context : context.withDeadline(current);
+        SequenceContext profiled = profiler == null ? withDeadline : withDeadline.withProfiler(profiler);
+        RunningContexts running = RunningContexts.current();
+        SequenceContext bound = running == null ? profiled : profiled.withRunningContexts(running);
+        try {
+            return Deadline.callWith(bound.getDeadline().orElse(null), () -> {
+                Deadline.throwIfExpired();
+                return body.apply(bound);
+            });
+        } catch (RuntimeException | Error e) {
+            if (checkpointer != null) {
+                checkpointer.abandon(sequenceKey, context.getExecutionId());
+            }
+            throw e;
+        } finally {
+            if (running != null) {
+                running.end(context.getExecutionId());
+            }
+        }
+    }
+
+    private static SequenceContext beginExecution(SequenceContext context,
+                                                  SequenceKey<?, SequenceContext> sequenceKey,
+                                                  SequenceStateService recorder,
+                                                  SequenceCheckpointer checkpointer) {
+        if (recorder != null) {
+            recorder.beginExecution(context);
+        }
+        if (checkpointer != null) {
+            checkpointer.begin(sequenceKey, context);
+        }
+        return context;
+    }
+
     /**
      * A fluent builder for creating {@link ContextualSequence} instances.
      */
     public static class Builder<INPUT extends Serializable> {
 
         private final NodeKey<INPUT> inputNodeKey;
-        private final Sequence.Builder<INPUT, SequenceContext> sequenceBuilder;
+        private final SequenceStateService recorder;
+        private final List<Node<SequenceContext, SequenceContext>> steps;
+        private final String id;
+        private final SequenceCheckpointer checkpointer;
+        private final ClaimCheck claimCheck;
+        private final HibernationStore hibernation;
+        private final List<NodeInterceptor> interceptors;
+        private final ContextSizeLimits sizeLimits;
 
-        private Builder(NodeKey<INPUT> inputNodeKey, Sequence.Builder<INPUT, SequenceContext> sequenceBuilder) {
+        private Builder(NodeKey<INPUT> inputNodeKey,
+                        SequenceStateService recorder,
+                        List<Node<SequenceContext, SequenceContext>> steps,
+                        String id,
+                        SequenceCheckpointer checkpointer,
+                        ClaimCheck claimCheck,
+                        HibernationStore hibernation,
+                        List<NodeInterceptor> interceptors,
+                        ContextSizeLimits sizeLimits) {
             this.inputNodeKey = inputNodeKey;
-            this.sequenceBuilder = sequenceBuilder;
+            this.recorder = recorder;
+            this.steps = steps;
+            this.id = id;
+            this.checkpointer = checkpointer;
+            this.claimCheck = claimCheck;
+            this.hibernation = hibernation;
+            this.interceptors = interceptors;
+            this.sizeLimits = sizeLimits;
         }
 
         /**
@@ -44,13 +180,7 @@ public class ContextualSequence<INPUT> extends Sequence<INPUT, SequenceContext>
          * @return A new builder instance.
          */
         public static <INPUT extends Serializable> Builder<INPUT> of(NodeKey<INPUT> inputNodeKey, SequenceStateService recorder) {
-            return new Builder<>(inputNodeKey, Sequence.Builder.of(inputNodeKey.outputType(), input -> {
-                SequenceContext context = SequenceContext.newRootContext(inputNodeKey, input, new DefaultTypeCombinerFactory());
-                if (recorder != null) {
-                    recorder.beginExecution(context);
-                }
-                return context;
-            }));
+            return new Builder<>(inputNodeKey, recorder, List.of(), null, null, null, null, List.of(), null);
         }
 
         /**
@@ -61,11 +191,95 @@ public class ContextualSequence<INPUT> extends Sequence<INPUT, SequenceContext>
             return of(inputNodeKey, null);
         }
 
+        /**
+         * Gives the sequence a stable ID instead of a random one. A stable ID is required to resume
+         * checkpointed executions after a restart, because the sequence is rebuilt by then.
+         */
+        public Builder<INPUT> withId(String id) {
+            return new Builder<>(this.inputNodeKey, this.recorder, this.steps, Objects.requireNonNull(id), this.checkpointer, this.claimCheck, this.hibernation, this.interceptors, this.sizeLimits);
+        }
+
+        /**
+         * Checkpoints the execution after every step, so an interrupted execution can be resumed
+         * after its last completed step with {@link ContextualSequence#resume(SequenceContext, int)}.
+         */
+        public Builder<INPUT> withCheckpointing(SequenceCheckpointer checkpointer) {
+            return new Builder<>(this.inputNodeKey, this.recorder, this.steps, this.id, Objects.requireNonNull(checkpointer), this.claimCheck, this.hibernation, this.interceptors, this.sizeLimits);
+        }
+
+        /**
+         * Offloads context values larger than the claim check's threshold to its {@link BlobStore},
+         * so that forks, checkpoints and persistence only move a small {@link BlobReference}.
+         */
+        public Builder<INPUT> withClaimCheck(ClaimCheck claimCheck) {
+            return new Builder<>(this.inputNodeKey, this.recorder, this.steps, this.id, this.checkpointer, Objects.requireNonNull(claimCheck), this.hibernation, this.interceptors, this.sizeLimits);
+        }
+
+        /**
+         * Checks the estimated size of every execution's context against the given limits as it grows, so an
+         * execution that stores huge values warns, offloads them to the claim check, or fails, depending on
+         * the limits, instead of exhausting the heap.
+         */
+        public Builder<INPUT> withSizeLimits(ContextSizeLimits sizeLimits) {
+            return new Builder<>(this.inputNodeKey, this.recorder, this.steps, this.id, this.checkpointer, this.claimCheck, this.hibernation, this.interceptors, Objects.requireNonNull(sizeLimits));
+        }
+
+        /**
+         * Applies an interceptor to every step of the sequence when it is built, inside the interceptors added
+         * before it. Steps are identified to it by the sequence ID and the key of the step's
+         * {@link ContextualNode}, or its position for other nodes. Nodes nested in a step, such as the branches
+         * of a fork, are not intercepted.
+         */
+        public Builder<INPUT> withInterceptor(NodeInterceptor interceptor) {
+            List<NodeInterceptor> nextInterceptors = new ArrayList<>(this.interceptors);
+            nextInterceptors.add(Objects.requireNonNull(interceptor));
+            return new Builder<>(this.inputNodeKey, this.recorder, this.steps, this.id, this.checkpointer, this.claimCheck, this.hibernation, List.copyOf(nextInterceptors), this.sizeLimits);
+        }
+
+        /**
+         * Meters every step in the given registry, under the sequence ID followed by the key of the step's
+         * {@link ContextualNode}, or its position for other nodes, e.g. {@code "orders/total"}.
+         */
+        public Builder<INPUT> withMetrics(MetricsRegistry metrics) {
+            return withInterceptor(metrics.interceptor());
+        }
+
+        /**
+         * Parks executions that reach an event wait in the given store; see
+         * {@link #thenAwaitEvent(NodeKey, Function, Duration)}. A stable ID is required too, since parked
+         * executions outlive the sequence object.
+         */
+        public Builder<INPUT> withHibernation(HibernationStore hibernation) {
+            return new Builder<>(this.inputNodeKey, this.recorder, this.steps, this.id, this.checkpointer, this.claimCheck, Objects.requireNonNull(hibernation), this.interceptors, this.sizeLimits);
+        }
+
+        /**
+         * Appends a wait for an external event, such as a callback or an approval. An execution that reaches it
+         * is parked in the {@link HibernationStore} and unwinds, holding no thread and no heap while it waits;
+         * the caller's future fails with an {@link ExecutionSuspendedException}. When
+         * {@link SequenceService#signal(String, Object)} delivers the event, it is stored under the event key
+         * and the execution continues with the next step. If the timeout passes first, the execution continues
+         * without the event.
+         * <p>
+         * The wait must be a step of this sequence itself; it cannot be nested in a fork.
+         *
+         * @param eventKey      The key the event is stored under.
+         * @param correlationId Derives the ID the event will be delivered with, unique among parked executions.
+         * @param timeout       How long to wait, or {@code null} to wait indefinitely.
+         */
+        public <EVENT extends Serializable> Builder<INPUT> thenAwaitEvent(NodeKey<EVENT> eventKey,
+                                                                          Function<SequenceContext, String> correlationId,
+                                                                          Duration timeout) {
+            return then(new HibernatingWait(eventKey, correlationId, timeout));
+        }
+
         /**
          * Appends a node that operates on and returns a {@link SequenceContext}.
          */
         public Builder<INPUT> then(Node<SequenceContext, SequenceContext> nextNode) {
-            return new Builder<>(this.inputNodeKey, this.sequenceBuilder.then(nextNode));
+            List<Node<SequenceContext, SequenceContext>> nextSteps = new ArrayList<>(this.steps);
+            nextSteps.add(nextNode);
+            return new Builder<>(this.inputNodeKey, this.recorder, List.copyOf(nextSteps), this.id, this.checkpointer, this.claimCheck, this.hibernation, this.interceptors, this.sizeLimits);
         }
 
         /**
@@ -119,7 +333,32 @@ public class ContextualSequence<INPUT> extends Sequence<INPUT, SequenceContext>
          * Builds the final, executable {@link ContextualSequence}.
          */
         public ContextualSequence<INPUT> build() {
-            return new ContextualSequence<>(SequenceKey.newUUID(inputNodeKey.outputType(), SequenceContext.class), sequenceBuilder.build());
+            SequenceKey<INPUT, SequenceContext> sequenceKey = id == null
+                    ? SequenceKey.newUUID(inputNodeKey.outputType(), SequenceContext.class)
+                    : new SequenceKey<>(inputNodeKey.outputType(), SequenceContext.class, id);
+
+            List<Node<SequenceContext, SequenceContext>> plan = new ArrayList<>(steps.size());
+            for (int i = 0; i < steps.size(); i++) {
+                Node<SequenceContext, SequenceContext> step = steps.get(i);
+                if (step instanceof HibernatingWait wait) {
+                    step = wait.bind(hibernation, sequenceKey, i + 1);
+                }
+                String stepId = step instanceof ContextualNode<?, ?> node ? node.getKey().id() : String.valueOf(i);
+                step = NodeInterceptor.interceptAll(interceptors, new NodeDescriptor(sequenceKey.id(), i, stepId), step);
+                plan.add(checkpointer == null ? step
+                        : checkpointer.checkpointAfter(sequenceKey, step, i + 1, i + 1 == steps.size()));
+            }
+
+            Sequence.Builder<SequenceContext, SequenceContext> sequenceBuilder = Sequence.Builder.of(SequenceContext.class);
+            for (Node<SequenceContext, SequenceContext> step : plan) {
+                sequenceBuilder = sequenceBuilder.then(step);
+            }
+            return new ContextualSequence<>(sequenceKey,
+                    input -> {
+                        SequenceContext root = SequenceContext.newRootContext(inputNodeKey, input, new DefaultTypeCombinerFactory(), claimCheck);
+                        return sizeLimits == null ? root : root.withSizeLimits(sizeLimits);
+                    },
+                    recorder, checkpointer, List.copyOf(plan), sequenceBuilder.build());
         }
     }
 }
@@ -0,0 +1,262 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.io.*;
+import java.lang.System.Logger.Level;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Suppresses duplicate executions that carry the same idempotency key, behind {@link SequenceService}.
+ * <p>
+ * A duplicate that arrives while the original is running joins it. Once the original has succeeded, its
+ * execution ID is recorded for the time to live, and a duplicate gets the original's context back from the
+ * service's context store. Failed executions are not recorded, so a retry after a failure runs again.
+ * Records are bounded in number and the oldest are dropped first; with a directory configured they are
+ * also appended to a journal, so they survive a restart. The journal is compacted when it is opened and
+ * whenever it has grown to twice the number of live records.
+ * <p>
+ * Keys are scoped by sequence: the same key used with two sequences names two executions.
+ */
+final class DeduplicationStore implements Closeable {
+
+    private static final System.Logger LOGGER = System.getLogger(DeduplicationStore.class.getName());
+    private static final String JOURNAL_FILE = "idempotency.journal";
+
+    private record Key(String sequenceId, String idempotencyKey) {
+    }
+
+    private record Completed(String executionId, long expiresAt) {
+    }
+
+    private final long maxEntries;
+    private final Duration timeToLive;
+    private final Clock clock;
+    private final Function<String, SequenceContext> lookup;
+    private final Path journalPath;
+    private final Map<Key, CompletableFuture<SequenceContext>> inFlight = new ConcurrentHashMap<>();
+    // Insertion-ordered, so iteration starts at the oldest record.
+    private final LinkedHashMap<Key, Completed> completed = new LinkedHashMap<>();
+    private final LongAdder suppressed = new LongAdder();
+    private DataOutputStream journal;
+    private long journalRecords;
+
+    /**
+     * @param directory  The directory holding the journal, or {@code null} to keep records in memory only.
+     * @param maxEntries The maximum number of completed executions remembered.
+     * @param timeToLive How long a completed execution is remembered.
+     * @param clock      The clock used for expiry.
+     * @param lookup     Returns the context of a finished execution by ID, or {@code null} if it is gone.
+     * @throws IOException If the journal cannot be read or compacted.
+     */
+    DeduplicationStore(Path directory, long maxEntries, Duration timeToLive, Clock clock,
+                       Function<String, SequenceContext> lookup) throws IOException {
+        this.maxEntries = maxEntries;
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+        this.lookup = lookup;
+        if (directory == null) {
+            this.journalPath = null;
+        } else {
+            Files.createDirectories(directory);
+            this.journalPath = directory.resolve(JOURNAL_FILE);
+            replay();
+            compact();
+        }
+    }
+
+    /**
+     * Runs an execution unless one with the same key is running or has succeeded within the time to live.
+     *
+     * @param sequenceId     The ID of the sequence executed.
+     * @param idempotencyKey The caller's idempotency key.
+     * @param execution      Starts the execution.
+     * @return A future completing with the context of the execution, or of the original it duplicates.
+     */
+    CompletableFuture<SequenceContext> execute(String sequenceId, String idempotencyKey,
+                                               Supplier<CompletableFuture<SequenceContext>> execution) {
+        Key key = new Key(sequenceId, idempotencyKey);
+        while (true) {
+            String executionId = completedExecution(key);
+            if (executionId != null) {
+                SequenceContext context = lookup.apply(executionId);
+                if (context != null) {
+                    suppressed.increment();
+                    return CompletableFuture.completedFuture(context);
+                }
+                // The context itself has expired or been evicted without persistence; run it again.
+                forget(key, executionId);
+            }
+            CompletableFuture<SequenceContext> original = new CompletableFuture<>();
+            CompletableFuture<SequenceContext> running = inFlight.putIfAbsent(key, original);
+            if (running != null) {
+                suppressed.increment();
+                // A copy, so a caller cancelling its future does not cancel the original for everyone else.
+                return running.copy();
+            }
+            if (completedExecution(key) != null) {
+                // The original finished between the two lookups above.
+                inFlight.remove(key, original);
+                continue;
+            }
+            start(key, execution, original);
+            return original.copy();
+        }
+    }
+
+    /**
+     * Returns the number of duplicates that were answered without running.
+     */
+    long suppressedDuplicates() {
+        return suppressed.sum();
+    }
+
+    /**
+     * Returns the number of completed executions remembered.
+     */
+    synchronized int size() {
+        return completed.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    private void start(Key key, Supplier<CompletableFuture<SequenceContext>> execution,
+                       CompletableFuture<SequenceContext> original) {
+        CompletableFuture<SequenceContext> result;
+        try {
+            result = execution.get();
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        result.whenComplete((context, error) -> {
+            // Recorded before the in-flight entry is removed, so a duplicate always finds one or the other.
+            if (error == null) {
+                record(key, context.getExecutionId().id());
+            }
+            inFlight.remove(key, original);
+            if (error == null) {
+                original.complete(context);
+            } else {
+                original.completeExceptionally(error);
+            }
+        });
+    }
+
+    private synchronized String completedExecution(Key key) {
+        Completed entry = completed.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt() <= clock.millis()) {
+            completed.remove(key);
+            return null;
+        }
+        return entry.executionId();
+    }
+
+    private synchronized void forget(Key key, String executionId) {
+        Completed entry = completed.get(key);
+        if (entry != null && entry.executionId().equals(executionId)) {
+            completed.remove(key);
+        }
+    }
+
+    private synchronized void record(Key key, String executionId) {
+        Completed entry = new Completed(executionId, clock.millis() + timeToLive.toMillis());
+        completed.remove(key);
+        completed.put(key, entry);
+        evict();
+        if (journal != null) {
+            try {
+                writeRecord(journal, key, entry);
+                journal.flush();
+                if (++journalRecords > 2 * Math.max(completed.size(), 1)) {
+                    compact();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to record idempotency key '" + key.idempotencyKey() + "'", e);
+            }
+        }
+    }
+
+    /**
+     * Drops expired records, then the oldest ones until the store is within its bound.
+     */
+    private void evict() {
+        long now = clock.millis();
+        Iterator<Completed> iterator = completed.values().iterator();
+        while (iterator.hasNext()) {
+            Completed entry = iterator.next();
+            if (completed.size() > maxEntries || entry.expiresAt() <= now) {
+                iterator.remove();
+            } else {
+                break;
+            }
+        }
+    }
+
+    // --- Journal ---
+
+    private void replay() throws IOException {
+        if (!Files.exists(journalPath)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalPath)))) {
+            while (true) {
+                Key key;
+                Completed entry;
+                try {
+                    key = new Key(in.readUTF(), in.readUTF());
+                    entry = new Completed(in.readUTF(), in.readLong());
+                } catch (EOFException | UTFDataFormatException e) {
+                    break; // The end of the journal, or a torn record at its tail.
+                }
+                completed.remove(key);
+                completed.put(key, entry);
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Rewrites the journal with only the live records and reopens it for appending.
+     */
+    private void compact() throws IOException {
+        evict();
+        close();
+        Path compacted = journalPath.resolveSibling(JOURNAL_FILE + ".compact");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(compacted)))) {
+            for (Map.Entry<Key, Completed> entry : completed.entrySet()) {
+                writeRecord(out, entry.getKey(), entry.getValue());
+            }
+        }
+        Files.move(compacted, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(journalPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND)));
+        journalRecords = completed.size();
+    }
+
+    private static void writeRecord(DataOutputStream out, Key key, Completed entry) throws IOException {
+        out.writeUTF(key.sequenceId());
+        out.writeUTF(key.idempotencyKey());
+        out.writeUTF(entry.executionId());
+        out.writeLong(entry.expiresAt());
+    }
+}
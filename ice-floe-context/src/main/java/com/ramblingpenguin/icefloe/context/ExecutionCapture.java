@@ -0,0 +1,216 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Records a sampled share of the executions of a {@link SequenceService} to a compact log, so real traffic can
+ * be replayed offline with an {@link ExecutionReplayer}, for instance to benchmark a new version against it.
+ * <p>
+ * For every sampled execution that completes, the log holds its input, when it was submitted, how long it and
+ * each of its nodes ran, and the outputs of the nodes marked as external: those that call other systems, such
+ * as object stores, queues or language models, and that a replay stubs with the recorded outputs instead of
+ * calling again. External nodes are recognized by the keys of their {@link ContextualNode}s and must be steps of
+ * the sequence itself rather than of a fork. Values are written with a {@link SequenceContextCodec}, so inputs
+ * and outputs must be encodable by it.
+ * <p>
+ * A capture replaces any earlier log in its file. Each execution is appended with a single write, so a crash
+ * loses at most the execution being written, and reading stops at a truncated one.
+ */
+public class ExecutionCapture implements Closeable {
+
+    private static final System.Logger LOGGER = System.getLogger(ExecutionCapture.class.getName());
+    private static final int MAGIC = 0x49464350; // "IFCP"
+    private static final byte VERSION = 1;
+
+    static final NodeKey<Object> INPUT_KEY = new NodeKey<>("ice-floe.capture.input", Object.class);
+
+    private final FileChannel channel;
+    private final double sampleRate;
+    private final Set<NodeKey<?>> externalKeys;
+    private final SequenceContextCodec codec;
+    private final long origin = System.nanoTime();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Creates a capture that writes values with a compressing {@link SequenceContextCodec}.
+     *
+     * @see #ExecutionCapture(Path, double, Set, SequenceContextCodec)
+     */
+    public ExecutionCapture(Path file, double sampleRate, Set<? extends NodeKey<?>> externalKeys) throws IOException {
+        this(file, sampleRate, externalKeys, new SequenceContextCodec(true, 4096));
+    }
+
+    /**
+     * @param file         The log to write, replacing any earlier one.
+     * @param sampleRate   The share of executions captured, from 0 to 1.
+     * @param externalKeys The keys of the nodes whose outputs are recorded for a replay to stub them with.
+     * @param codec        The codec writing inputs and outputs; a replay must read them with an equivalent one.
+     */
+    public ExecutionCapture(Path file, double sampleRate, Set<? extends NodeKey<?>> externalKeys, SequenceContextCodec codec) throws IOException {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("sampleRate must be between 0 and 1");
+        }
+        this.sampleRate = sampleRate;
+        this.externalKeys = Set.copyOf(externalKeys);
+        this.codec = Objects.requireNonNull(codec);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(5).putInt(MAGIC).put(VERSION).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+
+    /**
+     * Returns whether the next execution should be captured.
+     */
+    boolean sample() {
+        return sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    /**
+     * Appends a completed execution to the log. A failure to write is reported and does not affect the execution.
+     *
+     * @param submittedAt The {@link System#nanoTime()} at which the execution was submitted.
+     * @param spans       The spans profiled while it ran.
+     */
+    void record(String sequenceId, Object input, SequenceContext finalContext, long submittedAt, long runNanos,
+                List<ProfileSpan> spans) {
+        try {
+            Map<NodeKey<?>, Object> values = new LinkedHashMap<>();
+            values.put(INPUT_KEY, input);
+            for (NodeKey<?> key : externalKeys) {
+                finalContext.get(key).ifPresent(value -> values.put(key, value));
+            }
+            byte[] context = codec.encode(SequenceContext.restore(finalContext.getExecutionId(), values,
+                    new DefaultTypeCombinerFactory()));
+
+            Map<String, Long> nodeNanos = new LinkedHashMap<>();
+            for (ProfileSpan span : spans) {
+                if (span.kind() == ProfileSpan.Kind.NODE) {
+                    nodeNanos.merge(span.name(), span.durationNanos(), Long::sum);
+                }
+            }
+
+            ByteArrayOutputStream frame = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(frame);
+            out.writeInt(0); // The length, filled in below.
+            out.writeUTF(sequenceId);
+            out.writeLong(submittedAt - origin);
+            out.writeLong(runNanos);
+            out.writeInt(nodeNanos.size());
+            for (Map.Entry<String, Long> entry : nodeNanos.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+            out.writeInt(context.length);
+            out.write(context);
+            ByteBuffer buffer = ByteBuffer.wrap(frame.toByteArray());
+            buffer.putInt(0, buffer.remaining() - Integer.BYTES);
+
+            lock.lock();
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } finally {
+                lock.unlock();
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to capture execution '" + finalContext.getExecutionId().id() + "'", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads a log written with the default codec.
+     */
+    public static List<CapturedExecution> read(Path file) throws IOException, ClassNotFoundException {
+        return read(file, new SequenceContextCodec(true, 4096));
+    }
+
+    /**
+     * Reads the executions in a log, in the order they were written. A truncated last execution is ignored.
+     */
+    public static List<CapturedExecution> read(Path file, SequenceContextCodec codec) throws IOException, ClassNotFoundException {
+        List<CapturedExecution> executions = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new StreamCorruptedException("Not an execution capture: " + file);
+            }
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new StreamCorruptedException("Unsupported execution capture version " + version + ".");
+            }
+            while (true) {
+                byte[] frame;
+                try {
+                    frame = new byte[in.readInt()];
+                    in.readFully(frame);
+                } catch (EOFException e) {
+                    break;
+                }
+                executions.add(readExecution(new DataInputStream(new ByteArrayInputStream(frame)), codec));
+            }
+        }
+        return executions;
+    }
+
+    private static CapturedExecution readExecution(DataInputStream in, SequenceContextCodec codec) throws IOException, ClassNotFoundException {
+        String sequenceId = in.readUTF();
+        long offsetNanos = in.readLong();
+        long runNanos = in.readLong();
+        int nodes = in.readInt();
+        Map<String, Long> nodeNanos = new LinkedHashMap<>();
+        for (int i = 0; i < nodes; i++) {
+            nodeNanos.put(in.readUTF(), in.readLong());
+        }
+        byte[] encoded = new byte[in.readInt()];
+        in.readFully(encoded);
+        SequenceContext context = codec.decode(encoded);
+
+        Object input = null;
+        Map<String, Object> responses = new LinkedHashMap<>();
+        for (Map.Entry<NodeKey<?>, Object> entry : context.getContext().entrySet()) {
+            if (entry.getKey().equals(INPUT_KEY)) {
+                input = entry.getValue();
+            } else {
+                responses.put(entry.getKey().id(), entry.getValue());
+            }
+        }
+        return new CapturedExecution(sequenceId, context.getExecutionId().id(), offsetNanos, runNanos, input,
+                Collections.unmodifiableMap(nodeNanos), Collections.unmodifiableMap(responses));
+    }
+}
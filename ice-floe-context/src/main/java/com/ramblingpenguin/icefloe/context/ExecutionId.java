@@ -1,24 +1,53 @@
 package com.ramblingpenguin.icefloe.context;
 
-import java.io.Serializable;
-import java.util.UUID;
+import java.io.*;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Optional;
 
 /**
  * A serializable, hierarchical identifier for a specific execution flow.
- * The ID is a simple string, but it supports creating derived "child" IDs for sub-flows,
+ * The ID is a string, but it supports creating derived "child" IDs for sub-flows,
  * such as those in a fork-join operation.
- *
- * @param id The string representation of the ID.
+ * <p>
+ * A child ID only holds a reference to its parent and its own segment; the full string
+ * (e.g. {@code "parent-id:0:3"}) is built the first time {@link #id()} is called. Forks
+ * create IDs for every branch at every level, most of which are never printed or stored.
  */
-public record ExecutionId(String id) implements Serializable {
+public final class ExecutionId implements Serializable {
+
+    // Keeps the serialized form of the record this class used to be: a single "id" string.
+    @Serial
+    private static final long serialVersionUID = 0L;
+    @Serial
+    private static final ObjectStreamField[] serialPersistentFields = {new ObjectStreamField("id", String.class)};
+
+    private ExecutionId parent;
+    private Object segment; // The root ID, or the segment of a child: a String or an Integer.
+    private transient volatile String id;
+
+    /**
+     * Creates an ExecutionId from its string representation.
+     *
+     * @param id The string representation of the ID.
+     */
+    public ExecutionId(String id) {
+        this(null, Objects.requireNonNull(id));
+        this.id = id;
+    }
+
+    private ExecutionId(ExecutionId parent, Object segment) {
+        this.parent = parent;
+        this.segment = segment;
+    }
 
     /**
-     * Creates a new root ExecutionId with a random UUID.
+     * Creates a new root ExecutionId with the default {@link IdGenerator}, a time-ordered ULID unless replaced.
      *
      * @return A new ExecutionId.
      */
     public static ExecutionId newRoot() {
-        return new ExecutionId(UUID.randomUUID().toString());
+        return new ExecutionId(IdGenerator.getDefault().nextId());
     }
 
     /**
@@ -28,6 +57,71 @@ public record ExecutionId(String id) implements Serializable {
      * @return A new ExecutionId with a derived ID (e.g., "parent-id:child-segment").
      */
     public ExecutionId createChildId(String childSegment) {
-        return new ExecutionId(id + ":" + childSegment);
+        return new ExecutionId(this, Objects.requireNonNull(childSegment));
+    }
+
+    /**
+     * Creates a new child ExecutionId for the branch with the given index, e.g. "parent-id:3".
+     */
+    public ExecutionId createChildId(int childIndex) {
+        return new ExecutionId(this, childIndex);
+    }
+
+    /**
+     * Returns the string representation of the ID.
+     */
+    public String id() {
+        String formatted = id;
+        if (formatted == null) {
+            formatted = parent.id() + ":" + segment;
+            id = formatted;
+        }
+        return formatted;
+    }
+
+    /**
+     * Returns the time the root execution's ID was generated, if it is a ULID.
+     */
+    public Optional<Instant> timestamp() {
+        ExecutionId root = this;
+        while (root.parent != null) {
+            root = root.parent;
+        }
+        return Ulid.timestamp((String) root.segment);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        return o instanceof ExecutionId other && id().equals(other.id());
+    }
+
+    @Override
+    public int hashCode() {
+        return id().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "ExecutionId[id=" + id() + "]";
+    }
+
+    // --- Custom Serialization ---
+
+    @Serial
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.putFields().put("id", id());
+        out.writeFields();
+    }
+
+    @Serial
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        String value = (String) in.readFields().get("id", null);
+        if (value == null) {
+            throw new InvalidObjectException("ExecutionId without an id");
+        }
+        this.parent = null;
+        this.segment = value;
+        this.id = value;
     }
 }
@@ -0,0 +1,129 @@
+package com.ramblingpenguin.icefloe.context;
+
+import com.ramblingpenguin.icefloe.core.Deadline;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Per-call options for {@link SequenceService#execute(SequenceKey, java.io.Serializable, ExecutionOptions)}.
+ * Instances are immutable; each {@code with} method returns a modified copy.
+ */
+public final class ExecutionOptions {
+
+    private static final ExecutionOptions DEFAULTS = new ExecutionOptions(Priority.NORMAL, null, null, null, null, false);
+
+    private final Priority priority;
+    private final String tenant;
+    private final String idempotencyKey;
+    private final Duration timeout;
+    private final Deadline deadline;
+    private final boolean profiling;
+
+    private ExecutionOptions(Priority priority, String tenant, String idempotencyKey, Duration timeout, Deadline deadline,
+                             boolean profiling) {
+        this.priority = priority;
+        this.tenant = tenant;
+        this.idempotencyKey = idempotencyKey;
+        this.timeout = timeout;
+        this.deadline = deadline;
+        this.profiling = profiling;
+    }
+
+    /**
+     * Returns the default options: {@link Priority#NORMAL}, no tenant and no idempotency key.
+     */
+    public static ExecutionOptions defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Sets the priority class the execution is admitted in.
+     */
+    public ExecutionOptions withPriority(Priority priority) {
+        return new ExecutionOptions(Objects.requireNonNull(priority), this.tenant, this.idempotencyKey, this.timeout, this.deadline, this.profiling);
+    }
+
+    /**
+     * Tags the execution with a tenant. Queued executions are shared fairly between tenants according to
+     * their weights; untagged executions are shared per sequence instead.
+     */
+    public ExecutionOptions withTenant(String tenant) {
+        return new ExecutionOptions(this.priority, Objects.requireNonNull(tenant), this.idempotencyKey, this.timeout, this.deadline, this.profiling);
+    }
+
+    /**
+     * Sets the key identifying the request behind the execution, such as a message ID. An execution whose
+     * key matches one of the same sequence that is running joins it, and one whose key matches an execution
+     * that succeeded recently returns its context without running; see {@link SequenceService.Builder#withDeduplication}.
+     */
+    public ExecutionOptions withIdempotencyKey(String idempotencyKey) {
+        return new ExecutionOptions(this.priority, this.tenant, Objects.requireNonNull(idempotencyKey), this.timeout, this.deadline, this.profiling);
+    }
+
+    /**
+     * Gives the execution a deadline the given time after it is submitted, including the time it waits to be
+     * admitted. Overrides the service's default timeout.
+     */
+    public ExecutionOptions withTimeout(Duration timeout) {
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("timeout must be positive");
+        }
+        return new ExecutionOptions(this.priority, this.tenant, this.idempotencyKey, timeout, this.deadline, this.profiling);
+    }
+
+    /**
+     * Gives the execution a fixed deadline, such as the one of the request it serves. If a timeout is set too,
+     * the earlier of the two applies.
+     */
+    public ExecutionOptions withDeadline(Deadline deadline) {
+        return new ExecutionOptions(this.priority, this.tenant, this.idempotencyKey, this.timeout, Objects.requireNonNull(deadline), this.profiling);
+    }
+
+    /**
+     * Captures an {@link ExecutionProfile} of the execution, whether or not the service's profiler would have
+     * sampled it. The profile is read from {@link SequenceService#getProfiler()}.
+     */
+    public ExecutionOptions withProfiling() {
+        return new ExecutionOptions(this.priority, this.tenant, this.idempotencyKey, this.timeout, this.deadline, true);
+    }
+
+    public Priority priority() {
+        return priority;
+    }
+
+    /**
+     * Returns the tenant tag, or {@code null} if the execution is untagged.
+     */
+    public String tenant() {
+        return tenant;
+    }
+
+    /**
+     * Returns the timeout, or {@code null} if the service's default applies.
+     */
+    public Duration timeout() {
+        return timeout;
+    }
+
+    /**
+     * Returns the fixed deadline, or {@code null} if there is none.
+     */
+    public Deadline deadline() {
+        return deadline;
+    }
+
+    /**
+     * Returns whether the execution is profiled regardless of sampling.
+     */
+    public boolean profiling() {
+        return profiling;
+    }
+
+    /**
+     * Returns the idempotency key, or {@code null} if duplicates are not suppressed.
+     */
+    public String idempotencyKey() {
+        return idempotencyKey;
+    }
+}
@@ -0,0 +1,212 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The profile of one execution: every node, fork branch and merge it ran, with its timing, along the
+ * {@link ExecutionId} hierarchy, and what they add up to.
+ * <p>
+ * The critical path is the chain of spans that decided how long the execution took: the execution's own nodes
+ * in order, and at every fork the slowest branch, recursively, followed by the fork's merges. Time that is on
+ * no span, such as plain nodes that are not {@link ContextualNode}s and scheduling delays, is the difference
+ * between {@link #totalNanos()} and {@link #criticalPathNanos()}. Forks are only recorded for the fork steps of a
+ * {@link ContextualSequence}; a core {@code ForkSequence} run inside a plain node is on no span, like the node.
+ *
+ * @param sequenceId        The ID of the sequence executed.
+ * @param executionId       The ID of the execution.
+ * @param totalNanos        How long the execution ran.
+ * @param criticalPath      The spans on the critical path, in order.
+ * @param criticalPathNanos The total duration of the spans on the critical path.
+ * @param workNanos         The time spent in nodes, across all branches.
+ * @param mergeNanos        The time spent merging branch contexts, across all forks.
+ * @param forks             Every fork the execution ran, in the order they started.
+ * @param spans             Every span recorded.
+ */
+public record ExecutionProfile(String sequenceId,
+                               String executionId,
+                               long totalNanos,
+                               List<ProfileSpan> criticalPath,
+                               long criticalPathNanos,
+                               long workNanos,
+                               long mergeNanos,
+                               List<ForkProfile> forks,
+                               List<ProfileSpan> spans) {
+
+    /**
+     * Returns the largest skew of any fork, or 1 if the execution did not fork.
+     */
+    public double maxForkSkew() {
+        return forks.stream().mapToDouble(ForkProfile::skew).max().orElse(1);
+    }
+
+    /**
+     * Returns the share of the time spent in nodes and merges that went to merging.
+     */
+    public double mergeFraction() {
+        long busy = workNanos + mergeNanos;
+        return busy == 0 ? 0 : (double) mergeNanos / busy;
+    }
+
+    /**
+     * Builds the profile of an execution from the spans it recorded.
+     */
+    static ExecutionProfile analyze(String sequenceId, String executionId, long totalNanos, List<ProfileSpan> recorded) {
+        // Sorted by start, and enclosing spans before the spans they enclose.
+        List<ProfileSpan> spans = recorded.stream()
+                .sorted(Comparator.comparingLong(ProfileSpan::startNanos)
+                        .thenComparing(Comparator.comparingLong(ProfileSpan::endNanos).reversed()))
+                .toList();
+
+        SpanIndex index = new SpanIndex(spans);
+        List<ProfileSpan> criticalPath = new ArrayList<>();
+        appendSegment(index, executionId, Long.MIN_VALUE, Long.MAX_VALUE, criticalPath);
+
+        long workNanos = 0;
+        long mergeNanos = 0;
+        List<ForkProfile> forks = new ArrayList<>();
+        for (ProfileSpan span : spans) {
+            switch (span.kind()) {
+                case NODE -> workNanos += span.durationNanos();
+                case MERGE -> mergeNanos += span.durationNanos();
+                case FORK -> forks.add(forkProfile(index, span));
+                case BRANCH -> {
+                }
+            }
+        }
+        return new ExecutionProfile(sequenceId, executionId, totalNanos, List.copyOf(criticalPath),
+                criticalPath.stream().mapToLong(ProfileSpan::durationNanos).sum(),
+                workNanos, mergeNanos, List.copyOf(forks), spans);
+    }
+
+    /**
+     * Appends the critical path of the part of an execution that ran between two points in time.
+     */
+    private static void appendSegment(SpanIndex index, String executionId, long from, long to, List<ProfileSpan> path) {
+        List<ProfileSpan> spans = index.of(executionId);
+        long coveredUntil = from;
+        for (int i = SpanIndex.firstStartingAt(spans, from); i < spans.size(); i++) {
+            ProfileSpan span = spans.get(i);
+            if (span.startNanos() > to) {
+                break;
+            }
+            if (span.startNanos() < coveredUntil || span.endNanos() > to) {
+                continue;
+            }
+            // Spans nested in this one, such as the merges of a fork, are covered by it.
+            coveredUntil = span.endNanos();
+            if (span.kind() == ProfileSpan.Kind.FORK) {
+                appendFork(index, span, path);
+            } else {
+                path.add(span);
+            }
+        }
+    }
+
+    private static void appendFork(SpanIndex index, ProfileSpan fork, List<ProfileSpan> path) {
+        List<ProfileSpan> branches = index.branches(fork);
+        if (branches.isEmpty()) {
+            path.add(fork);
+            return;
+        }
+        if (isParallel(branches)) {
+            ProfileSpan slowest = branches.stream().max(Comparator.comparingLong(ProfileSpan::durationNanos)).orElseThrow();
+            appendSegment(index, slowest.executionId(), slowest.startNanos(), slowest.endNanos(), path);
+        } else {
+            for (ProfileSpan branch : branches) {
+                appendSegment(index, branch.executionId(), branch.startNanos(), branch.endNanos(), path);
+            }
+        }
+        path.addAll(index.merges(fork));
+    }
+
+    private static ForkProfile forkProfile(SpanIndex index, ProfileSpan fork) {
+        List<ProfileSpan> branches = index.branches(fork);
+        long[] durations = branches.stream().mapToLong(ProfileSpan::durationNanos).sorted().toArray();
+        long slowest = durations.length == 0 ? 0 : durations[durations.length - 1];
+        long median = durations.length == 0 ? 0 : durations[(durations.length - 1) / 2];
+        long mergeNanos = index.merges(fork).stream().mapToLong(ProfileSpan::durationNanos).sum();
+        return new ForkProfile(fork.executionId(), fork.name(), branches.size(), isParallel(branches), slowest, median, mergeNanos);
+    }
+
+    private static boolean isParallel(List<ProfileSpan> branches) {
+        for (int i = 1; i < branches.size(); i++) {
+            if (branches.get(i).startNanos() < branches.get(i - 1).endNanos()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The spans of a profile grouped once, so that walking the forks of a large execution does not rescan every
+     * span for each of them. Every list keeps the profile's order, by start.
+     */
+    private static final class SpanIndex {
+
+        /** The nodes, forks and merges of each execution ID. */
+        private final Map<String, List<ProfileSpan>> byExecution = new HashMap<>();
+        /** The branches forked by each execution ID. */
+        private final Map<String, List<ProfileSpan>> branchesByParent = new HashMap<>();
+
+        SpanIndex(List<ProfileSpan> spans) {
+            for (ProfileSpan span : spans) {
+                if (span.kind() == ProfileSpan.Kind.BRANCH) {
+                    branchesByParent.computeIfAbsent(span.parentExecutionId(), parent -> new ArrayList<>()).add(span);
+                } else {
+                    byExecution.computeIfAbsent(span.executionId(), executionId -> new ArrayList<>()).add(span);
+                }
+            }
+        }
+
+        List<ProfileSpan> of(String executionId) {
+            return byExecution.getOrDefault(executionId, List.of());
+        }
+
+        /**
+         * Returns the branches of a fork. Every fork of an execution numbers its branches from 0, so branches
+         * are told apart by the fork span that encloses them.
+         */
+        List<ProfileSpan> branches(ProfileSpan fork) {
+            return within(branchesByParent.getOrDefault(fork.executionId(), List.of()), fork, ProfileSpan.Kind.BRANCH);
+        }
+
+        List<ProfileSpan> merges(ProfileSpan fork) {
+            return within(of(fork.executionId()), fork, ProfileSpan.Kind.MERGE);
+        }
+
+        private static List<ProfileSpan> within(List<ProfileSpan> spans, ProfileSpan enclosing, ProfileSpan.Kind kind) {
+            List<ProfileSpan> within = new ArrayList<>();
+            for (int i = firstStartingAt(spans, enclosing.startNanos()); i < spans.size(); i++) {
+                ProfileSpan span = spans.get(i);
+                if (span.startNanos() > enclosing.endNanos()) {
+                    break;
+                }
+                if (span.kind() == kind && enclosing.contains(span)) {
+                    within.add(span);
+                }
+            }
+            return within;
+        }
+
+        /**
+         * Returns the position of the first span that starts at or after the given time.
+         */
+        static int firstStartingAt(List<ProfileSpan> spans, long nanos) {
+            int low = 0;
+            int high = spans.size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (spans.get(middle).startNanos() < nanos) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
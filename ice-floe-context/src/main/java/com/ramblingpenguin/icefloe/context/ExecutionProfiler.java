@@ -0,0 +1,106 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Captures {@link ExecutionProfile}s of the executions of a {@link SequenceService}: a sampled share of all of
+ * them, and every execution started with {@link ExecutionOptions#withProfiling()}. The most recent profiles are
+ * kept for lookup by execution ID, and every profile is added to a running {@link ProfileSummary}.
+ * <p>
+ * A profiled execution records a span for every {@link ContextualNode}, fork, fork branch and merge it runs.
+ * Executions that are not profiled record nothing.
+ */
+public class ExecutionProfiler {
+
+    private final double sampleRate;
+    private final int retainedProfiles;
+    private final LinkedHashMap<String, ExecutionProfile> recent = new LinkedHashMap<>();
+    private final Map<String, Long> criticalPathNanosByName = new HashMap<>();
+    private long executions;
+    private double totalNanos;
+    private double criticalPathNanos;
+    private double mergeFractions;
+    private long forks;
+    private double forkSkews;
+    private double maxForkSkew = 1;
+
+    /**
+     * @param sampleRate       The share of executions profiled without being asked to, from 0 to 1.
+     * @param retainedProfiles The number of recent profiles kept for {@link #getProfile(String)}.
+     */
+    public ExecutionProfiler(double sampleRate, int retainedProfiles) {
+        if (sampleRate < 0 || sampleRate > 1 || retainedProfiles < 0) {
+            throw new IllegalArgumentException("sampleRate must be between 0 and 1 and retainedProfiles not negative");
+        }
+        this.sampleRate = sampleRate;
+        this.retainedProfiles = retainedProfiles;
+    }
+
+    /**
+     * Returns the profile of a recent execution, if it was profiled and has not been pushed out by newer ones.
+     */
+    public synchronized Optional<ExecutionProfile> getProfile(String executionId) {
+        return Optional.ofNullable(recent.get(executionId));
+    }
+
+    /**
+     * Returns the recent profiles, oldest first.
+     */
+    public synchronized List<ExecutionProfile> getRecentProfiles() {
+        return new ArrayList<>(recent.values());
+    }
+
+    /**
+     * Returns the aggregate of every profile captured so far.
+     */
+    public synchronized ProfileSummary summary() {
+        if (executions == 0) {
+            return new ProfileSummary(0, 0, 0, 0, 1, 1, Map.of());
+        }
+        return new ProfileSummary(executions, totalNanos / executions, criticalPathNanos / executions,
+                mergeFractions / executions, forks == 0 ? 1 : forkSkews / forks, maxForkSkew,
+                Map.copyOf(criticalPathNanosByName));
+    }
+
+    /**
+     * Returns a recorder if the execution should be profiled, or {@code null}.
+     */
+    ProfileRecorder recorderFor(ExecutionOptions options) {
+        boolean sampled = sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+        return options.profiling() || sampled ? new ProfileRecorder() : null;
+    }
+
+    /**
+     * Analyzes a finished execution and adds its profile.
+     */
+    ExecutionProfile complete(String sequenceId, String executionId, long totalNanos, ProfileRecorder recorder) {
+        ExecutionProfile profile = ExecutionProfile.analyze(sequenceId, executionId, totalNanos, recorder.spans());
+        synchronized (this) {
+            executions++;
+            this.totalNanos += profile.totalNanos();
+            this.criticalPathNanos += profile.criticalPathNanos();
+            mergeFractions += profile.mergeFraction();
+            for (ForkProfile fork : profile.forks()) {
+                forks++;
+                forkSkews += fork.skew();
+                maxForkSkew = Math.max(maxForkSkew, fork.skew());
+            }
+            for (ProfileSpan span : profile.criticalPath()) {
+                criticalPathNanosByName.merge(span.name(), span.durationNanos(), Long::sum);
+            }
+            if (retainedProfiles > 0) {
+                recent.put(executionId, profile);
+                if (recent.size() > retainedProfiles) {
+                    recent.remove(recent.firstEntry().getKey());
+                }
+            }
+        }
+        return profile;
+    }
+}
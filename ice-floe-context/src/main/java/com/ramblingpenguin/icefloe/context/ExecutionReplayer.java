@@ -0,0 +1,199 @@
+package com.ramblingpenguin.icefloe.context;
+
+import com.ramblingpenguin.icefloe.core.Node;
+import com.ramblingpenguin.icefloe.core.intercept.NodeDescriptor;
+import com.ramblingpenguin.icefloe.core.intercept.NodeInterceptor;
+import com.ramblingpenguin.icefloe.core.metrics.LatencyHistogram;
+import com.ramblingpenguin.icefloe.core.node.Cancellation;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays the executions recorded by an {@link ExecutionCapture} against a {@link ContextualSequence}, to measure
+ * how a new version of the sequence, or of Ice Floe, performs under real traffic without calling the systems the
+ * external nodes call.
+ * <p>
+ * The sequence is rebuilt with the replayer's {@link #stubs()} interceptor, which replaces every step whose key
+ * has recorded outputs with a stub that stores the output recorded for the execution being replayed, after
+ * waiting as long as the original call took. The stubs call the real node for executions that are not being
+ * replayed. Executions are started at the times they were submitted, optionally sped up, whether or not the
+ * earlier ones have finished, so the replay reproduces the capture's arrival pattern and concurrency.
+ * Instances are immutable; each {@code with} method returns a modified copy.
+ */
+public final class ExecutionReplayer {
+
+    private static final ThreadLocal<CapturedExecution> CURRENT = new ThreadLocal<>();
+
+    private final List<CapturedExecution> executions;
+    private final double speed;
+    private final boolean stubLatency;
+
+    private ExecutionReplayer(List<CapturedExecution> executions, double speed, boolean stubLatency) {
+        this.executions = executions;
+        this.speed = speed;
+        this.stubLatency = stubLatency;
+    }
+
+    /**
+     * Creates a replayer of the given executions, at their original speed.
+     */
+    public static ExecutionReplayer of(List<CapturedExecution> executions) {
+        List<CapturedExecution> sorted = new ArrayList<>(executions);
+        sorted.sort(Comparator.comparingLong(CapturedExecution::offsetNanos));
+        return new ExecutionReplayer(List.copyOf(sorted), 1, true);
+    }
+
+    /**
+     * Creates a replayer of the executions in a log written with the default codec.
+     */
+    public static ExecutionReplayer from(Path file) throws IOException, ClassNotFoundException {
+        return of(ExecutionCapture.read(file));
+    }
+
+    /**
+     * Scales the rate executions are started at: 2 starts them twice as fast as they were submitted, and
+     * {@link Double#POSITIVE_INFINITY} starts them all at once.
+     */
+    public ExecutionReplayer withSpeed(double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("speed must be positive");
+        }
+        return new ExecutionReplayer(this.executions, speed, this.stubLatency);
+    }
+
+    /**
+     * Makes stubs return their recorded outputs at once instead of waiting as long as the original calls took,
+     * to measure the sequence's own overhead.
+     */
+    public ExecutionReplayer withoutStubLatency() {
+        return new ExecutionReplayer(this.executions, this.speed, false);
+    }
+
+    /**
+     * Returns the interceptor that stubs the external nodes, for the builder of the sequence to replay.
+     */
+    public NodeInterceptor stubs() {
+        Set<String> external = new HashSet<>();
+        for (CapturedExecution execution : executions) {
+            external.addAll(execution.responses().keySet());
+        }
+        return new NodeInterceptor() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <INPUT, OUTPUT> Node<INPUT, OUTPUT> intercept(NodeDescriptor descriptor, Node<INPUT, OUTPUT> node) {
+                if (!external.contains(descriptor.nodeId())) {
+                    return node;
+                }
+                return (Node<INPUT, OUTPUT>) stub(descriptor.nodeId(), (Node<SequenceContext, SequenceContext>) node);
+            }
+        };
+    }
+
+    private Node<SequenceContext, SequenceContext> stub(String keyId, Node<SequenceContext, SequenceContext> node) {
+        NodeKey<Object> key = new NodeKey<>(keyId, Object.class);
+        boolean wait = stubLatency;
+        return context -> {
+            CapturedExecution execution = CURRENT.get();
+            Object response = execution == null ? null : execution.responses().get(keyId);
+            if (response == null) {
+                return node.apply(context);
+            }
+            ProfileRecorder profiler = context.getProfiler();
+            long start = System.nanoTime();
+            if (wait) {
+                long latency = execution.nodeNanos().getOrDefault(keyId, 0L);
+                try {
+                    Thread.sleep(Duration.ofNanos(latency));
+                } catch (InterruptedException e) {
+                    throw Cancellation.cancelled(e);
+                }
+            }
+            SequenceContext result = context.put(key, response);
+            if (profiler != null) {
+                profiler.record(context.getExecutionId(), keyId, ProfileSpan.Kind.NODE, start);
+            }
+            return result;
+        };
+    }
+
+    /**
+     * Replays the executions of the given sequence, matched by its ID, and waits for them to finish.
+     *
+     * @param sequence The sequence, built with {@link #stubs()}.
+     * @param executor Runs the executions, each on its own thread if they are to overlap as they did.
+     */
+    public <I> ReplayReport replay(ContextualSequence<I> sequence, Executor executor) {
+        Objects.requireNonNull(executor);
+        List<CapturedExecution> matching = executions.stream()
+                .filter(execution -> execution.sequenceId().equals(sequence.id().id()))
+                .toList();
+        LatencyHistogram recorded = new LatencyHistogram();
+        LatencyHistogram replayed = new LatencyHistogram();
+        Map<String, Long> recordedNodes = new LinkedHashMap<>();
+        Map<String, LongAdder> replayedNodes = new ConcurrentHashMap<>();
+        AtomicInteger failed = new AtomicInteger();
+        List<CompletableFuture<Void>> running = new ArrayList<>(matching.size());
+
+        long origin = System.nanoTime();
+        long firstOffset = matching.isEmpty() ? 0 : matching.get(0).offsetNanos();
+        for (CapturedExecution execution : matching) {
+            recorded.record(execution.runNanos());
+            execution.nodeNanos().forEach((name, nanos) -> recordedNodes.merge(name, nanos, Long::sum));
+
+            long startAt = origin + (long) ((execution.offsetNanos() - firstOffset) / speed);
+            for (long now = System.nanoTime(); now < startAt; now = System.nanoTime()) {
+                LockSupport.parkNanos(startAt - now);
+            }
+            running.add(CompletableFuture.runAsync(() -> {
+                ProfileRecorder profile = new ProfileRecorder();
+                CURRENT.set(execution);
+                long start = System.nanoTime();
+                try {
+                    @SuppressWarnings("unchecked")
+                    I input = (I) execution.input();
+                    ProfileRecorder.callWith(profile, () -> sequence.apply(input));
+                    replayed.record(System.nanoTime() - start);
+                    for (ProfileSpan span : profile.spans()) {
+                        if (span.kind() == ProfileSpan.Kind.NODE) {
+                            replayedNodes.computeIfAbsent(span.name(), name -> new LongAdder()).add(span.durationNanos());
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    failed.incrementAndGet();
+                } finally {
+                    CURRENT.remove();
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(running.toArray(CompletableFuture[]::new)).join();
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - origin);
+
+        int count = Math.max(1, matching.size());
+        Map<String, Long> recordedMeans = new LinkedHashMap<>();
+        recordedNodes.forEach((name, nanos) -> recordedMeans.put(name, nanos / count));
+        Map<String, Long> replayedMeans = new LinkedHashMap<>();
+        recordedNodes.keySet().forEach(name -> {
+            LongAdder nanos = replayedNodes.remove(name);
+            replayedMeans.put(name, nanos == null ? 0 : nanos.sum() / count);
+        });
+        replayedNodes.forEach((name, nanos) -> replayedMeans.put(name, nanos.sum() / count));
+        return new ReplayReport(matching.size(), failed.get(), elapsed, recorded.snapshot(), replayed.snapshot(),
+                recordedMeans, replayedMeans);
+    }
+}
@@ -0,0 +1,34 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.io.Serial;
+
+/**
+ * Thrown when an execution reaches an event wait added with
+ * {@link ContextualSequence.Builder#thenAwaitEvent(NodeKey, java.util.function.Function, java.time.Duration)}
+ * and is parked in a {@link HibernationStore}. The execution has not failed: it continues once
+ * {@link SequenceService#signal(String, Object)} delivers its event, or its timer fires.
+ */
+public class ExecutionSuspendedException extends RuntimeException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final String executionId;
+    private final String correlationId;
+
+    public ExecutionSuspendedException(String executionId, String correlationId) {
+        // Thrown once per parked execution, so the stack trace is not worth filling in.
+        super("Execution '" + executionId + "' is waiting for the event correlated by '" + correlationId + "'.",
+                null, false, false);
+        this.executionId = executionId;
+        this.correlationId = correlationId;
+    }
+
+    public String getExecutionId() {
+        return executionId;
+    }
+
+    public String getCorrelationId() {
+        return correlationId;
+    }
+}
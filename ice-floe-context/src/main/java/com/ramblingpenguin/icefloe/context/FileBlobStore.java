@@ -0,0 +1,48 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A {@link BlobStore} that keeps each blob in a file named after its digest, fanned out over
+ * subdirectories named after the digest's first two characters.
+ */
+public class FileBlobStore implements BlobStore {
+
+    private final Path directory;
+
+    public FileBlobStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    @Override
+    public void put(String digest, byte[] content) throws IOException {
+        Path path = path(digest);
+        if (Files.exists(path)) {
+            return;
+        }
+        Files.createDirectories(path.getParent());
+        Path temporary = Files.createTempFile(path.getParent(), digest, ".tmp");
+        try {
+            Files.write(temporary, content);
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // Another writer stored the same content first.
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    @Override
+    public byte[] get(String digest) throws IOException {
+        return Files.readAllBytes(path(digest));
+    }
+
+    private Path path(String digest) {
+        return directory.resolve(digest.substring(0, 2)).resolve(digest);
+    }
+}
@@ -1,28 +1,43 @@
 package com.ramblingpenguin.icefloe.context;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
 /**
- * A file-based implementation of {@link SequenceContextPersistence} that uses standard Java serialization.
+ * A file-based implementation of {@link SequenceContextPersistence} that encodes contexts with a
+ * {@link SequenceContextCodec}. Files written with standard Java serialization can still be read.
+ * Each execution is stored in its own file, which suits small numbers of executions; see
+ * {@link LogSequenceContextPersistence} for high volumes.
  */
 public class FileSequenceContextPersistence implements SequenceContextPersistence {
 
     private final String persistencePath;
+    private final SequenceContextCodec codec;
 
     public FileSequenceContextPersistence(String persistencePath) {
+        this(persistencePath, new SequenceContextCodec());
+    }
+
+    public FileSequenceContextPersistence(String persistencePath, SequenceContextCodec codec) {
         this.persistencePath = persistencePath;
+        this.codec = codec;
         new File(persistencePath).mkdirs();
     }
 
     @Override
     public void saveState(String executionId, SequenceContext context) throws IOException {
+        // Write to a temporary file and rename it, so a crash never leaves a partially written context behind.
         File file = new File(persistencePath, executionId + ".ser");
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
-            oos.writeObject(context);
+        File temporaryFile = new File(persistencePath, executionId + ".ser.tmp");
+        try (FileOutputStream fos = new FileOutputStream(temporaryFile)) {
+            fos.write(codec.encode(context));
+            fos.getFD().sync();
         }
+        Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
     }
 
     @Override
@@ -31,9 +46,12 @@ public class FileSequenceContextPersistence implements SequenceContextPersistenc
         if (!file.exists()) {
             return null;
         }
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-            return (SequenceContext) ois.readObject();
-        }
+        return codec.decode(Files.readAllBytes(file.toPath()));
+    }
+
+    @Override
+    public void deleteState(String executionId) throws IOException {
+        Files.deleteIfExists(new File(persistencePath, executionId + ".ser").toPath());
     }
 
     @Override
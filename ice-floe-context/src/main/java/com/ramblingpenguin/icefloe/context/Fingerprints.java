@@ -0,0 +1,62 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Computes stable fingerprints of node inputs for incremental execution.
+ * <p>
+ * A fingerprint is the SHA-256 digest of the value's serialized form, so equal inputs produce the
+ * same fingerprint across runs and JVMs. Values that cannot be serialized have no fingerprint,
+ * which forces the node that consumes them to run every time.
+ */
+final class Fingerprints {
+
+    private Fingerprints() {
+    }
+
+    /**
+     * Fingerprints a node input.
+     *
+     * @param value The input, which may be {@code null} or a whole {@link SequenceContext}.
+     * @return The hex-encoded fingerprint, or {@code null} if the value cannot be fingerprinted.
+     */
+    static String of(Object value) {
+        MessageDigest digest = newDigest();
+        try (ObjectOutputStream out = new ObjectOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest))) {
+            if (value instanceof SequenceContext context) {
+                // Only the values matter; the execution id differs on every run.
+                for (Map.Entry<NodeKey<?>, Object> entry : context.getContext().entrySet()) {
+                    if (!(entry.getValue() instanceof Serializable)) {
+                        return null;
+                    }
+                    out.writeUTF(entry.getKey().id());
+                    out.writeObject(entry.getValue());
+                }
+            } else if (value == null || value instanceof Serializable) {
+                out.writeObject(value);
+            } else {
+                return null;
+            }
+        } catch (IOException e) {
+            // A nested value was not serializable.
+            return null;
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+}
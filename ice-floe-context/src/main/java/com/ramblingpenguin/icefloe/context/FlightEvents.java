@@ -0,0 +1,154 @@
+package com.ramblingpenguin.icefloe.context;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.io.IOException;
+
+/**
+ * The Java Flight Recorder events emitted by contextual sequences and {@link SequenceService}, so a recording
+ * attributes latency and allocation to specific nodes and executions rather than to anonymous lambdas. The fork
+ * events are defined in core, in {@code com.ramblingpenguin.icefloe.core.jfr}.
+ * <p>
+ * Events are cheap enough to leave enabled: while an event type is not recorded, emitting it costs a check of a
+ * flag, and IDs are only formatted for events that are actually committed. None of them record stack traces.
+ */
+final class FlightEvents {
+
+    private FlightEvents() {
+    }
+
+    @Name("com.ramblingpenguin.icefloe.NodeExecution")
+    @Label("Node Execution")
+    @Category({"Ice Floe", "Node"})
+    @Description("A contextual node extracting its input, running, and storing its output")
+    @StackTrace(false)
+    static final class NodeExecution extends Event {
+
+        @Label("Execution ID")
+        String executionId;
+
+        @Label("Node Key")
+        String nodeKey;
+
+        @Label("Reused")
+        @Description("Whether an incremental execution reused the prior output instead of running the node")
+        boolean reused;
+    }
+
+    @Name("com.ramblingpenguin.icefloe.ContextMerge")
+    @Label("Context Merge")
+    @Category({"Ice Floe", "Context"})
+    @Description("A fork branch's context merged into its parent, including the type combiners applied")
+    @StackTrace(false)
+    static final class ContextMerge extends Event {
+
+        @Label("Execution ID")
+        String executionId;
+
+        @Label("Values")
+        @Description("The number of values merged in")
+        int values;
+    }
+
+    @Name("com.ramblingpenguin.icefloe.ContextSave")
+    @Label("Context Save")
+    @Category({"Ice Floe", "Persistence"})
+    @StackTrace(false)
+    static final class ContextSave extends Event {
+
+        @Label("Execution ID")
+        String executionId;
+    }
+
+    @Name("com.ramblingpenguin.icefloe.ContextLoad")
+    @Label("Context Load")
+    @Category({"Ice Floe", "Persistence"})
+    @StackTrace(false)
+    static final class ContextLoad extends Event {
+
+        @Label("Execution ID")
+        String executionId;
+
+        @Label("Found")
+        boolean found;
+    }
+
+    @Name("com.ramblingpenguin.icefloe.QueueWait")
+    @Label("Queue Wait")
+    @Category({"Ice Floe", "Service"})
+    @Description("An execution admitted by the sequence service, with the time it spent queued")
+    @StackTrace(false)
+    static final class QueueWait extends Event {
+
+        @Label("Sequence Key")
+        String sequenceKey;
+
+        @Label("Tenant")
+        String tenant;
+
+        @Label("Priority")
+        String priority;
+
+        @Label("Queue Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long queueTime;
+    }
+
+    @Name("com.ramblingpenguin.icefloe.ContextSizeWarning")
+    @Label("Context Size Warning")
+    @Category({"Ice Floe", "Context"})
+    @Description("A context that grew past the soft limit of its sequence")
+    @StackTrace(false)
+    static final class ContextSizeWarning extends Event {
+
+        @Label("Execution ID")
+        String executionId;
+
+        @Label("Retained Size")
+        @DataAmount
+        long retainedBytes;
+
+        @Label("Soft Limit")
+        @DataAmount
+        long softLimitBytes;
+
+        @Label("Largest Keys")
+        @Description("The largest values, by key, with their estimated sizes in bytes")
+        String largestKeys;
+    }
+
+    /**
+     * Saves a context, emitting a {@link ContextSave} event.
+     */
+    static void save(SequenceContextPersistence persistence, String executionId, SequenceContext context) throws IOException {
+        ContextSave event = new ContextSave();
+        event.begin();
+        persistence.saveState(executionId, context);
+        if (event.shouldCommit()) {
+            event.executionId = executionId;
+            event.commit();
+        }
+    }
+
+    /**
+     * Loads a context, emitting a {@link ContextLoad} event.
+     */
+    static SequenceContext load(SequenceContextPersistence persistence, String executionId) throws IOException, ClassNotFoundException {
+        ContextLoad event = new ContextLoad();
+        event.begin();
+        SequenceContext context = persistence.loadState(executionId);
+        if (event.shouldCommit()) {
+            event.executionId = executionId;
+            event.found = context != null;
+            event.commit();
+        }
+        return context;
+    }
+}
@@ -0,0 +1,29 @@
+package com.ramblingpenguin.icefloe.context;
+
+/**
+ * The timing of one fork in a profiled execution.
+ *
+ * @param executionId         The ID of the execution that forked.
+ * @param name                The scatter key of the fork.
+ * @param branches            The number of branches.
+ * @param parallel            Whether the branches ran concurrently.
+ * @param slowestBranchNanos  The duration of the slowest branch.
+ * @param medianBranchNanos   The median duration of the branches.
+ * @param mergeNanos          The time spent merging the branches' contexts into the parent's.
+ */
+public record ForkProfile(String executionId,
+                          String name,
+                          int branches,
+                          boolean parallel,
+                          long slowestBranchNanos,
+                          long medianBranchNanos,
+                          long mergeNanos) {
+
+    /**
+     * Returns the ratio of the slowest branch to the median one. A skew well above 1 means a straggler
+     * branch, rather than the work as a whole, decides how long the fork takes.
+     */
+    public double skew() {
+        return medianBranchNanos == 0 ? 1 : (double) slowestBranchNanos / medianBranchNanos;
+    }
+}
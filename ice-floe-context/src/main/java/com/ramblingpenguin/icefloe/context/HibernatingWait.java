@@ -0,0 +1,67 @@
+package com.ramblingpenguin.icefloe.context;
+
+import com.ramblingpenguin.icefloe.core.Deadline;
+import com.ramblingpenguin.icefloe.core.Node;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * A step that parks its execution in a {@link HibernationStore} until an event arrives, then unwinds it with an
+ * {@link ExecutionSuspendedException}. It is created unbound by the builder and bound to its store and its
+ * position in the sequence when the sequence is built.
+ */
+final class HibernatingWait implements Node<SequenceContext, SequenceContext> {
+
+    private final NodeKey<?> eventKey;
+    private final Function<SequenceContext, String> correlationId;
+    private final Duration timeout;
+    private final HibernationStore store;
+    private final SequenceKey<?, SequenceContext> sequenceKey;
+    private final int completedSteps;
+
+    HibernatingWait(NodeKey<?> eventKey, Function<SequenceContext, String> correlationId, Duration timeout) {
+        this(eventKey, correlationId, timeout, null, null, 0);
+    }
+
+    private HibernatingWait(NodeKey<?> eventKey, Function<SequenceContext, String> correlationId, Duration timeout,
+                            HibernationStore store, SequenceKey<?, SequenceContext> sequenceKey, int completedSteps) {
+        this.eventKey = Objects.requireNonNull(eventKey);
+        this.correlationId = Objects.requireNonNull(correlationId);
+        this.timeout = timeout;
+        this.store = store;
+        this.sequenceKey = sequenceKey;
+        this.completedSteps = completedSteps;
+    }
+
+    /**
+     * Returns this wait bound to the given store, as the step after which the sequence continues.
+     */
+    HibernatingWait bind(HibernationStore store, SequenceKey<?, SequenceContext> sequenceKey, int completedSteps) {
+        if (store == null) {
+            throw new IllegalStateException("Sequence '" + sequenceKey.id()
+                    + "' waits for an event, but no hibernation store was configured.");
+        }
+        return new HibernatingWait(eventKey, correlationId, timeout, store, sequenceKey, completedSteps);
+    }
+
+    @Override
+    public SequenceContext apply(SequenceContext context) {
+        if (store == null) {
+            throw new IllegalStateException("An event wait must be part of a built sequence.");
+        }
+        String correlation = Objects.requireNonNull(correlationId.apply(context), "The correlation ID must not be null.");
+        Deadline.throwIfExpired();
+        Deadline deadline = Deadline.current();
+        try {
+            store.park(correlation, sequenceKey, completedSteps, eventKey, timeout,
+                    deadline == null ? null : deadline.remaining(), context);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to park execution '" + context.getExecutionId().id() + "'", e);
+        }
+        throw new ExecutionSuspendedException(context.getExecutionId().id(), correlation);
+    }
+}
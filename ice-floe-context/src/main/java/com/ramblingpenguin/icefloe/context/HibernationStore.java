@@ -0,0 +1,374 @@
+package com.ramblingpenguin.icefloe.context;
+
+import com.ramblingpenguin.icefloe.core.Deadline;
+
+import java.io.*;
+import java.lang.System.Logger.Level;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Holds executions parked at an event wait, so they take up no thread and almost no heap until their event
+ * arrives.
+ * <p>
+ * When an execution reaches a step added with
+ * {@link ContextualSequence.Builder#thenAwaitEvent(NodeKey, java.util.function.Function, java.time.Duration)},
+ * its context is written to persistence under the wait's correlation ID, together with a continuation naming
+ * the sequence and the step to continue after, and the execution unwinds. {@link SequenceService#signal(String, Object)}
+ * later loads the context, adds the event and resumes it. A wait with a timeout also appends a timer to a
+ * journal; when it fires the execution is resumed without the event. Only the timers, and whatever index the
+ * persistence keeps, stay on the heap, so a node can hold millions of parked executions.
+ * <p>
+ * Parked executions and their timers survive a restart. The timer journal is compacted when it is opened and
+ * whenever it has grown to twice the number of pending timers. An execution's deadline is kept with its
+ * continuation: it is woken when the deadline passes, if that comes before its timeout, and fails with a
+ * {@link com.ramblingpenguin.icefloe.core.DeadlineExceededException}, and an execution resumed in time carries
+ * its deadline on.
+ */
+public class HibernationStore implements Closeable {
+
+    private static final System.Logger LOGGER = System.getLogger(HibernationStore.class.getName());
+    private static final String JOURNAL_FILE = "timers.journal";
+    private static final long MAX_TIMER_WAIT_MILLIS = 1_000;
+
+    /**
+     * Where a parked execution continues.
+     *
+     * @param sequenceKey    The key of the sequence the execution belongs to.
+     * @param completedSteps The number of steps completed, including the wait.
+     * @param eventKey       The key the event is stored under.
+     * @param wakeAt         The epoch millisecond at which the wait times out, or 0 if it never does.
+     * @param deadline       The epoch millisecond of the execution's deadline, or 0 if it has none.
+     */
+    record Continuation(SequenceKey<?, SequenceContext> sequenceKey, int completedSteps, NodeKey<?> eventKey, long wakeAt,
+                        long deadline) {
+
+        /**
+         * Returns the epoch millisecond at which the execution is woken without its event, whichever of the
+         * timeout and the deadline comes first, or 0 if neither is set.
+         */
+        long timerAt() {
+            if (wakeAt == 0 || deadline == 0) {
+                return Math.max(wakeAt, deadline);
+            }
+            return Math.min(wakeAt, deadline);
+        }
+    }
+
+    /**
+     * A parked execution, claimed by the caller that is about to resume it.
+     */
+    record Parked(String correlationId, Continuation continuation, SequenceContext context) {
+    }
+
+    private record Timer(long wakeAt, String correlationId) {
+    }
+
+    static final NodeKey<Continuation> CONTINUATION_KEY = new NodeKey<>("ice-floe.continuation", Continuation.class);
+
+    private final SequenceContextPersistence persistence;
+    private final boolean ownsPersistence;
+    private final Clock clock;
+    private final Path journalPath;
+    private final Set<String> claimed = ConcurrentHashMap.newKeySet();
+    private final AtomicLong parked = new AtomicLong();
+    private final PriorityQueue<Timer> timers = new PriorityQueue<>(Comparator.comparingLong(Timer::wakeAt));
+    private DataOutputStream journal;
+    private long journalRecords;
+    private Thread timerThread;
+    private boolean closed = false;
+
+    /**
+     * Opens a store in the given directory, creating it if necessary. Parked contexts are kept in a
+     * {@link LogSequenceContextPersistence} in its {@code parked} subdirectory.
+     *
+     * @param directory The directory holding the parked contexts and the timer journal.
+     * @throws IOException If the store cannot be read.
+     */
+    public HibernationStore(Path directory) throws IOException {
+        this(directory, LogSequenceContextPersistence.open(directory.resolve("parked")), true, Clock.systemUTC());
+    }
+
+    /**
+     * Opens a store that keeps parked contexts in the given persistence, which must not be shared with
+     * anything else.
+     *
+     * @param directory   The directory holding the timer journal.
+     * @param persistence The persistence holding the parked contexts, keyed by correlation ID.
+     * @throws IOException If the store cannot be read.
+     */
+    public HibernationStore(Path directory, SequenceContextPersistence persistence) throws IOException {
+        this(directory, persistence, false, Clock.systemUTC());
+    }
+
+    HibernationStore(Path directory, SequenceContextPersistence persistence, boolean ownsPersistence, Clock clock) throws IOException {
+        this.persistence = persistence;
+        this.ownsPersistence = ownsPersistence;
+        this.clock = clock;
+        Files.createDirectories(directory);
+        this.journalPath = directory.resolve(JOURNAL_FILE);
+        Set<String> parkedIds = new HashSet<>(persistence.listStoredExecutionIds());
+        this.parked.set(parkedIds.size());
+        replay(parkedIds);
+        compact();
+    }
+
+    /**
+     * Returns the number of executions parked.
+     */
+    public long getParkedCount() {
+        return parked.get();
+    }
+
+    /**
+     * Returns the number of parked executions waiting with a timeout.
+     */
+    public synchronized int getPendingTimers() {
+        return timers.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        Thread thread;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            thread = timerThread;
+            notifyAll();
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (ownsPersistence && persistence instanceof Closeable closeable) {
+            closeable.close();
+        }
+    }
+
+    /**
+     * Parks an execution. A correlation ID must identify one parked execution at a time; parking another
+     * under the same ID replaces it.
+     *
+     * @param timeout  How long to wait for the event, or {@code null} to wait indefinitely.
+     * @param deadline The time left until the execution's deadline, or {@code null} if it has none.
+     */
+    void park(String correlationId, SequenceKey<?, SequenceContext> sequenceKey, int completedSteps, NodeKey<?> eventKey,
+              Duration timeout, Duration deadline, SequenceContext context) throws IOException {
+        long now = clock.millis();
+        long wakeAt = timeout == null ? 0 : Math.max(1, now + timeout.toMillis());
+        long deadlineAt = deadline == null ? 0 : Math.max(1, now + deadline.toMillis());
+        Continuation continuation = new Continuation(sequenceKey, completedSteps, eventKey, wakeAt, deadlineAt);
+        FlightEvents.save(persistence, correlationId, context.put(CONTINUATION_KEY, continuation));
+        parked.incrementAndGet();
+        if (continuation.timerAt() > 0) {
+            addTimer(new Timer(continuation.timerAt(), correlationId));
+        }
+    }
+
+    /**
+     * Claims a parked execution, so no other caller can resume it, and loads it. A claimed execution stays
+     * parked until it is {@link #remove removed}, or {@link #release released} to be claimed again.
+     *
+     * @return The execution, or {@code null} if nothing is parked under the ID or it is already claimed.
+     */
+    Parked claim(String correlationId) throws IOException, ClassNotFoundException {
+        if (!claimed.add(correlationId)) {
+            return null;
+        }
+        try {
+            SequenceContext context = FlightEvents.load(persistence, correlationId);
+            Continuation continuation = context == null ? null : context.get(CONTINUATION_KEY).orElse(null);
+            if (continuation == null) {
+                claimed.remove(correlationId);
+                return null;
+            }
+            // The loaded context is a fresh copy, so dropping the continuation in place is safe.
+            context.remove(CONTINUATION_KEY);
+            return new Parked(correlationId, continuation, context);
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            claimed.remove(correlationId);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns whether a claimed execution's wait has timed out. A timer may outlive the wait it was set for,
+     * when the execution was resumed by its event and then parked again under the same correlation ID.
+     */
+    boolean isDue(Parked execution) {
+        long timerAt = execution.continuation().timerAt();
+        return timerAt > 0 && timerAt <= clock.millis();
+    }
+
+    /**
+     * Returns the deadline a claimed execution was parked with, measured again from now, or {@code null} if it
+     * has none. It may already have passed.
+     */
+    Deadline deadlineOf(Parked execution) {
+        long deadline = execution.continuation().deadline();
+        return deadline == 0 ? null : Deadline.after(Duration.ofMillis(deadline - clock.millis()));
+    }
+
+    void release(Parked execution) {
+        claimed.remove(execution.correlationId());
+    }
+
+    /**
+     * Releases a claimed execution whose timeout could not be acted on, such as because its resumption was
+     * rejected, and sets a timer to try again after the given delay.
+     */
+    void postpone(Parked execution, Duration delay) {
+        release(execution);
+        try {
+            addTimer(new Timer(clock.millis() + delay.toMillis(), execution.correlationId()));
+        } catch (IllegalStateException e) {
+            // Closed: the journal still holds the original timer, which fires after the next start.
+        }
+    }
+
+    /**
+     * Removes a claimed execution, which is about to be resumed. Its timer, if any, is left to fire and find
+     * nothing.
+     */
+    void remove(Parked execution) throws IOException {
+        try {
+            persistence.deleteState(execution.correlationId());
+            parked.decrementAndGet();
+        } finally {
+            claimed.remove(execution.correlationId());
+        }
+    }
+
+    /**
+     * Starts a daemon thread that passes the correlation ID of every wait that times out to the callback.
+     */
+    synchronized void startTimers(Consumer<String> onTimeout) {
+        if (timerThread != null || closed) {
+            return;
+        }
+        timerThread = new Thread(() -> timerLoop(onTimeout), "ice-floe-hibernation-timer");
+        timerThread.setDaemon(true);
+        timerThread.start();
+    }
+
+    /**
+     * Removes and returns the correlation IDs of the timers that are due.
+     */
+    synchronized List<String> pollDueTimers() {
+        List<String> due = new ArrayList<>();
+        long now = clock.millis();
+        while (!timers.isEmpty() && timers.peek().wakeAt() <= now) {
+            due.add(timers.poll().correlationId());
+        }
+        return due;
+    }
+
+    private void timerLoop(Consumer<String> onTimeout) {
+        while (true) {
+            for (String correlationId : pollDueTimers()) {
+                try {
+                    onTimeout.accept(correlationId);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Failed to wake execution '" + correlationId + "'", e);
+                }
+            }
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                Timer next = timers.peek();
+                long delay = next == null ? MAX_TIMER_WAIT_MILLIS : next.wakeAt() - clock.millis();
+                if (delay > 0) {
+                    try {
+                        wait(Math.min(delay, MAX_TIMER_WAIT_MILLIS));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private synchronized void addTimer(Timer timer) {
+        if (closed) {
+            throw new IllegalStateException("The hibernation store has been closed.");
+        }
+        timers.add(timer);
+        try {
+            writeRecord(journal, timer);
+            journal.flush();
+            if (++journalRecords > 2 * Math.max(timers.size(), 1)) {
+                compact();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to record the timer of execution '" + timer.correlationId() + "'", e);
+        }
+        notifyAll();
+    }
+
+    // --- Journal ---
+
+    private void replay(Set<String> parkedIds) throws IOException {
+        if (!Files.exists(journalPath)) {
+            return;
+        }
+        Map<String, Long> latest = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalPath)))) {
+            while (true) {
+                try {
+                    String correlationId = in.readUTF();
+                    latest.put(correlationId, in.readLong());
+                } catch (EOFException | UTFDataFormatException e) {
+                    break; // The end of the journal, or a torn record at its tail.
+                }
+            }
+        }
+        // Timers of executions that have since been resumed are dropped.
+        latest.forEach((correlationId, wakeAt) -> {
+            if (parkedIds.contains(correlationId)) {
+                timers.add(new Timer(wakeAt, correlationId));
+            }
+        });
+    }
+
+    /**
+     * Rewrites the journal with only the pending timers and reopens it for appending.
+     */
+    private void compact() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+        Path compacted = journalPath.resolveSibling(JOURNAL_FILE + ".compact");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(compacted)))) {
+            for (Timer timer : timers) {
+                writeRecord(out, timer);
+            }
+        }
+        Files.move(compacted, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(journalPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND)));
+        journalRecords = timers.size();
+    }
+
+    private static void writeRecord(DataOutputStream out, Timer timer) throws IOException {
+        out.writeUTF(timer.correlationId());
+        out.writeLong(timer.wakeAt());
+    }
+}
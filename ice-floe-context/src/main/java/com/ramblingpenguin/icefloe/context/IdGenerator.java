@@ -0,0 +1,49 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Generates the IDs of new executions, and of {@link NodeKey}s and {@link SequenceKey}s created without one.
+ * <p>
+ * The default is {@link #ulid()}: IDs that sort by creation time and are generated without contention.
+ * Persistence relies on that order for {@link SequenceContextPersistence#listStoredExecutionIds(java.time.Instant, java.time.Instant)},
+ * so a generator that does not embed a ULID timestamp leaves time-range listings empty.
+ */
+@FunctionalInterface
+public interface IdGenerator {
+
+    /**
+     * Returns a new, unique ID.
+     */
+    String nextId();
+
+    /**
+     * Returns a generator of ULIDs: 26 characters of Crockford base-32 encoding a millisecond timestamp
+     * followed by 80 random bits. IDs sort lexicographically by the millisecond they were created in.
+     */
+    static IdGenerator ulid() {
+        return Ulid::next;
+    }
+
+    /**
+     * Returns a generator of random UUIDs, the IDs used by earlier versions.
+     */
+    static IdGenerator randomUuid() {
+        return () -> UUID.randomUUID().toString();
+    }
+
+    /**
+     * Returns the generator currently used for new IDs.
+     */
+    static IdGenerator getDefault() {
+        return Ulid.defaultGenerator;
+    }
+
+    /**
+     * Replaces the generator used for new IDs.
+     */
+    static void setDefault(IdGenerator generator) {
+        Ulid.defaultGenerator = Objects.requireNonNull(generator);
+    }
+}
@@ -0,0 +1,199 @@
+package com.ramblingpenguin.icefloe.context;
+
+import com.ramblingpenguin.icefloe.core.metrics.LatencyHistogram;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongFunction;
+
+/**
+ * Load-tests a {@link SequenceService} by starting executions of a sequence at the arrival rate of a
+ * {@link LoadProfile}, to find the highest rate a configuration sustains before a release.
+ * <p>
+ * The generator is open-loop: executions are started when they are due, whether or not earlier ones have
+ * finished, as independent clients would start them. A closed-loop benchmark, which waits for each call before
+ * the next, slows down with the service and so never sees the queues real traffic builds. If the generator
+ * itself falls behind, it catches up by starting the overdue executions at once, and their latency still counts
+ * from when they were due; see {@link LoadReport}. The run is split into windows, and the first window in which
+ * the service falls behind marks its saturation point.
+ * <p>
+ * External systems are best replaced by {@link com.ramblingpenguin.icefloe.core.node.StubNode}s with the latency
+ * and failure rate of the real ones. Instances are immutable; each {@code with} method returns a modified copy.
+ *
+ * @param <I> The input type of the sequence.
+ */
+public final class LoadGenerator<I extends Serializable> {
+
+    private static final Duration DEFAULT_WINDOW = Duration.ofSeconds(1);
+    private static final double SATURATION_THRESHOLD = 0.9;
+
+    private final SequenceService service;
+    private final SequenceKey<I, SequenceContext> sequenceKey;
+    private final LongFunction<I> inputs;
+    private final LoadProfile profile;
+    private final ExecutionOptions options;
+    private final Duration window;
+    private final Duration latencyTarget;
+
+    private LoadGenerator(SequenceService service, SequenceKey<I, SequenceContext> sequenceKey, LongFunction<I> inputs,
+                          LoadProfile profile, ExecutionOptions options, Duration window, Duration latencyTarget) {
+        this.service = service;
+        this.sequenceKey = sequenceKey;
+        this.inputs = inputs;
+        this.profile = profile;
+        this.options = options;
+        this.window = window;
+        this.latencyTarget = latencyTarget;
+    }
+
+    /**
+     * Creates a generator with the default options and one-second windows.
+     *
+     * @param service     The running service to load.
+     * @param sequenceKey The sequence to execute.
+     * @param inputs      Derives the input of each execution from its number, counting from 0.
+     * @param profile     The arrival rate over the run.
+     */
+    public static <I extends Serializable> LoadGenerator<I> of(SequenceService service,
+                                                               SequenceKey<I, SequenceContext> sequenceKey,
+                                                               LongFunction<I> inputs,
+                                                               LoadProfile profile) {
+        return new LoadGenerator<>(Objects.requireNonNull(service), Objects.requireNonNull(sequenceKey),
+                Objects.requireNonNull(inputs), Objects.requireNonNull(profile), ExecutionOptions.defaults(),
+                DEFAULT_WINDOW, null);
+    }
+
+    /**
+     * Sets the options every execution is started with.
+     */
+    public LoadGenerator<I> withOptions(ExecutionOptions options) {
+        return new LoadGenerator<>(this.service, this.sequenceKey, this.inputs, this.profile, Objects.requireNonNull(options), this.window, this.latencyTarget);
+    }
+
+    /**
+     * Sets the length of the windows the run is reported in.
+     */
+    public LoadGenerator<I> withWindow(Duration window) {
+        if (window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("window must be positive");
+        }
+        return new LoadGenerator<>(this.service, this.sequenceKey, this.inputs, this.profile, this.options, window, this.latencyTarget);
+    }
+
+    /**
+     * Also counts a window as saturated if its 99th percentile latency exceeds the given target.
+     */
+    public LoadGenerator<I> withLatencyTarget(Duration p99) {
+        return new LoadGenerator<>(this.service, this.sequenceKey, this.inputs, this.profile, this.options, this.window, Objects.requireNonNull(p99));
+    }
+
+    /**
+     * Runs the load on the calling thread and waits for every execution to finish.
+     */
+    public LoadReport run() {
+        long durationNanos = profile.duration().toNanos();
+        long windowNanos = window.toNanos();
+        int windowCount = (int) ((durationNanos + windowNanos - 1) / windowNanos);
+        long[] due = new long[windowCount];
+        long[] firstDue = new long[windowCount];
+        long[] lastDue = new long[windowCount];
+        AtomicLongArray succeededIn = new AtomicLongArray(windowCount);
+        AtomicLongArray failedIn = new AtomicLongArray(windowCount);
+        // When the first and the last execution due in each window succeeded.
+        AtomicLongArray firstDone = new AtomicLongArray(windowCount);
+        AtomicLongArray lastDone = new AtomicLongArray(windowCount);
+        LatencyHistogram[] windowLatencies = new LatencyHistogram[windowCount];
+        for (int i = 0; i < windowCount; i++) {
+            windowLatencies[i] = new LatencyHistogram();
+        }
+        LatencyHistogram latency = new LatencyHistogram();
+        LatencyHistogram serviceTime = new LatencyHistogram();
+        LongAdder succeeded = new LongAdder();
+        LongAdder failed = new LongAdder();
+        // Counts the generator itself, so the run cannot drain before the last execution is started.
+        AtomicLong outstanding = new AtomicLong(1);
+        CompletableFuture<Void> drained = new CompletableFuture<>();
+
+        long origin = System.nanoTime();
+        long sent = 0;
+        for (long offset = 0; offset < durationNanos; offset = profile.nextArrival(offset)) {
+            long dueAt = origin + offset;
+            for (long now = System.nanoTime(); now < dueAt; now = System.nanoTime()) {
+                LockSupport.parkNanos(dueAt - now);
+            }
+            int dueWindow = (int) (offset / windowNanos);
+            if (due[dueWindow]++ == 0) {
+                firstDue[dueWindow] = dueAt;
+                firstDone.set(dueWindow, Long.MAX_VALUE);
+            }
+            lastDue[dueWindow] = dueAt;
+            outstanding.incrementAndGet();
+            long submittedAt = System.nanoTime();
+            CompletableFuture<SequenceContext> execution;
+            try {
+                execution = service.execute(sequenceKey, inputs.apply(sent), options);
+            } catch (RuntimeException e) {
+                execution = CompletableFuture.failedFuture(e);
+            }
+            sent++;
+            execution.whenComplete((context, error) -> {
+                long now = System.nanoTime();
+                latency.record(now - dueAt);
+                serviceTime.record(now - submittedAt);
+                windowLatencies[dueWindow].record(now - dueAt);
+                if (error == null) {
+                    succeeded.increment();
+                    succeededIn.incrementAndGet(dueWindow);
+                    firstDone.accumulateAndGet(dueWindow, now, Math::min);
+                    lastDone.accumulateAndGet(dueWindow, now, Math::max);
+                } else {
+                    failed.increment();
+                    failedIn.incrementAndGet(dueWindow);
+                }
+                if (outstanding.decrementAndGet() == 0) {
+                    drained.complete(null);
+                }
+            });
+        }
+        if (outstanding.decrementAndGet() == 0) {
+            drained.complete(null);
+        }
+        drained.join();
+        long elapsedNanos = System.nanoTime() - origin;
+
+        List<LoadWindow> windows = new ArrayList<>(windowCount);
+        double maxSustainableRate = 0;
+        boolean saturatedBefore = false;
+        for (int i = 0; i < windowCount; i++) {
+            long start = i * windowNanos;
+            double seconds = Math.min(windowNanos, durationNanos - start) / 1e9;
+            double offeredRate = due[i] / seconds;
+            // A service that keeps up completes a window's executions as fast as they arrived, however long
+            // each one takes; one that falls behind completes them over a longer span.
+            long arrivalSpan = lastDue[i] - firstDue[i];
+            long completionSpan = lastDone.get(i) - firstDone.get(i);
+            double stretch = arrivalSpan > 0 && completionSpan > arrivalSpan ? (double) completionSpan / arrivalSpan : 1;
+            double throughput = succeededIn.get(i) / (seconds * stretch);
+            LatencyHistogram.Snapshot snapshot = windowLatencies[i].snapshot();
+            boolean saturated = throughput < offeredRate * SATURATION_THRESHOLD
+                    || (latencyTarget != null && snapshot.percentile(0.99) > latencyTarget.toNanos());
+            if (!saturated && !saturatedBefore) {
+                maxSustainableRate = Math.max(maxSustainableRate, offeredRate);
+            }
+            saturatedBefore |= saturated;
+            windows.add(new LoadWindow(Duration.ofNanos(start), offeredRate, throughput, failedIn.get(i),
+                    snapshot.percentile(0.5), snapshot.percentile(0.99), snapshot.max(), saturated));
+        }
+        return new LoadReport(sent, succeeded.sum(), failed.sum(), Duration.ofNanos(elapsedNanos),
+                succeeded.sum() / (elapsedNanos / 1e9), latency.snapshot(), serviceTime.snapshot(),
+                List.copyOf(windows), maxSustainableRate);
+    }
+}
@@ -0,0 +1,66 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.time.Duration;
+
+/**
+ * The arrival rate of a {@link LoadGenerator} over the course of a run: fixed, or ramped linearly from one rate
+ * to another to find the rate at which the service saturates. Arrivals are evenly spaced at the current rate.
+ */
+public final class LoadProfile {
+
+    private final double startRate;
+    private final double endRate;
+    private final Duration duration;
+
+    private LoadProfile(double startRate, double endRate, Duration duration) {
+        if (!(startRate > 0) || !(endRate > 0)) {
+            throw new IllegalArgumentException("rates must be positive");
+        }
+        if (duration.isNegative() || duration.isZero()) {
+            throw new IllegalArgumentException("duration must be positive");
+        }
+        this.startRate = startRate;
+        this.endRate = endRate;
+        this.duration = duration;
+    }
+
+    /**
+     * Creates a profile that starts executions at a fixed rate.
+     *
+     * @param perSecond The executions started per second.
+     * @param duration  How long to start executions for.
+     */
+    public static LoadProfile fixed(double perSecond, Duration duration) {
+        return new LoadProfile(perSecond, perSecond, duration);
+    }
+
+    /**
+     * Creates a profile whose rate grows, or shrinks, linearly over the run.
+     *
+     * @param fromPerSecond The executions started per second at the start.
+     * @param toPerSecond   The executions started per second at the end.
+     * @param duration      How long to start executions for.
+     */
+    public static LoadProfile ramp(double fromPerSecond, double toPerSecond, Duration duration) {
+        return new LoadProfile(fromPerSecond, toPerSecond, duration);
+    }
+
+    /**
+     * Returns the rate, in executions per second, the given time into the run.
+     */
+    public double rateAt(long elapsedNanos) {
+        double progress = Math.min(1, (double) elapsedNanos / duration.toNanos());
+        return startRate + (endRate - startRate) * progress;
+    }
+
+    /**
+     * Returns when the execution after one started the given time into the run is due.
+     */
+    long nextArrival(long elapsedNanos) {
+        return elapsedNanos + Math.max(1, (long) (1e9 / rateAt(elapsedNanos)));
+    }
+
+    public Duration duration() {
+        return duration;
+    }
+}
@@ -0,0 +1,45 @@
+package com.ramblingpenguin.icefloe.context;
+
+import com.ramblingpenguin.icefloe.core.metrics.LatencyHistogram;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The outcome of a {@link LoadGenerator} run.
+ * <p>
+ * {@link #latency()} is measured from when each execution was due rather than from when it was submitted, so a
+ * generator that fell behind, because the service blocked it or the machine stalled, still charges the delay to
+ * the executions it held up. Without that correction the histogram would omit exactly the worst latencies.
+ * {@link #serviceTime()} is measured from submission, for comparison: a large gap between the two means the
+ * service pushed back on its callers.
+ *
+ * @param sent               The executions submitted.
+ * @param succeeded          The executions that succeeded.
+ * @param failed             The executions that failed or were rejected.
+ * @param elapsed            How long the run took, until the last execution finished.
+ * @param throughput         The executions that succeeded per second over the run.
+ * @param latency            The latencies from when executions were due.
+ * @param serviceTime        The latencies from when executions were submitted.
+ * @param windows            The run, window by window.
+ * @param maxSustainableRate The highest offered rate of a window before the first saturated one, or 0 if the
+ *                           first window was saturated already.
+ */
+public record LoadReport(long sent,
+                         long succeeded,
+                         long failed,
+                         Duration elapsed,
+                         double throughput,
+                         LatencyHistogram.Snapshot latency,
+                         LatencyHistogram.Snapshot serviceTime,
+                         List<LoadWindow> windows,
+                         double maxSustainableRate) {
+
+    /**
+     * Returns the first window in which the service fell behind, if it did.
+     */
+    public Optional<LoadWindow> saturationPoint() {
+        return windows.stream().filter(LoadWindow::saturated).findFirst();
+    }
+}
@@ -0,0 +1,29 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.time.Duration;
+
+/**
+ * One window of a {@link LoadGenerator} run. Executions belong to the window they were due in, whenever they
+ * completed. Latencies are measured from when executions were due.
+ *
+ * @param start       When the window started, relative to the start of the run.
+ * @param offeredRate The executions due per second.
+ * @param throughput  The executions that succeeded per second. If they completed over a longer span than they
+ *                    arrived over, the rate is slowed down in proportion, so a service that falls behind shows
+ *                    the rate it kept up, while its latency alone does not count against it.
+ * @param failed      The executions that failed.
+ * @param p50Nanos    The median latency.
+ * @param p99Nanos    The 99th percentile latency.
+ * @param maxNanos    The highest latency.
+ * @param saturated   Whether the service fell behind: it succeeded at less than 90% of the offered rate, or
+ *                    missed the latency target if there is one.
+ */
+public record LoadWindow(Duration start,
+                         double offeredRate,
+                         double throughput,
+                         long failed,
+                         long p50Nanos,
+                         long p99Nanos,
+                         long maxNanos,
+                         boolean saturated) {
+}
@@ -0,0 +1,610 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.io.*;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * A log-structured implementation of {@link SequenceContextPersistence}.
+ * <p>
+ * Contexts are appended to segment files instead of being written to one file per execution. Concurrent
+ * {@link #saveState} calls are group-committed: a single writer appends every queued record and forces the
+ * segment to disk once for the whole batch, then acknowledges all of them. An in-memory index maps each
+ * execution ID to the offset of its latest record, so {@link #loadState} is a single positional read. The index
+ * is sorted, so {@link #listStoredExecutionIds(Instant, Instant)} seeks to the range instead of filtering every ID.
+ * <p>
+ * When a segment fills up it is sealed and a hint file listing its records is written next to it. On open,
+ * sealed segments are indexed from their (memory-mapped) hint files and only the last segment is scanned.
+ * A background compactor rewrites the live records of sealed segments that are mostly superseded and
+ * deletes them.
+ * <p>
+ * {@link #deleteState} appends a tombstone, a record with an empty payload. Tombstones are carried forward
+ * by compaction until they reach the oldest segment, after which no older record they could hide remains.
+ */
+public class LogSequenceContextPersistence implements SequenceContextPersistence, Closeable {
+
+    private static final System.Logger LOGGER = System.getLogger(LogSequenceContextPersistence.class.getName());
+    private static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+    private static final long DEFAULT_COMPACTION_INTERVAL_SECONDS = 60;
+    private static final int HEADER_BYTES = Integer.BYTES * 2 + Short.BYTES;
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String HINT_SUFFIX = ".hint";
+    private static final byte[] TOMBSTONE = new byte[0];
+    private static final Write CLOSE = new Write(null, null, null, null);
+
+    /**
+     * The position of a record: the segment it is in, the offset of its frame and the frame's length.
+     */
+    private record Location(long segment, long offset, int length) {
+    }
+
+    /**
+     * A record waiting for the writer. {@code expected} is set for records moved by the compactor,
+     * which must be dropped if the execution was saved again in the meantime.
+     */
+    private record Write(String executionId, byte[] payload, Location expected, CompletableFuture<Location> done) {
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final Path path;
+        private final FileChannel channel;
+        private final AtomicLong liveBytes = new AtomicLong();
+        private final List<Map.Entry<String, Location>> hints = new ArrayList<>();
+        private volatile long size;
+
+        private Segment(long id, Path path, FileChannel channel, long size) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.size = size;
+        }
+    }
+
+    private final Path directory;
+    private final SequenceContextCodec codec;
+    private final long maxSegmentBytes;
+    private final double compactionThreshold;
+    private final ConcurrentNavigableMap<String, Location> index = new ConcurrentSkipListMap<>();
+    private final Map<String, Location> tombstones = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final BlockingQueue<Write> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final ScheduledExecutorService compactor;
+    private volatile Segment active;
+    private volatile boolean closed = false;
+    private volatile boolean writerStopped = false;
+
+    private LogSequenceContextPersistence(Path directory,
+                                          long maxSegmentBytes,
+                                          double compactionThreshold,
+                                          SequenceContextCodec codec) throws IOException {
+        this.directory = directory;
+        this.codec = codec;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.compactionThreshold = compactionThreshold;
+        Files.createDirectories(directory);
+        this.openSegments();
+
+        this.writer = new Thread(this::writeLoop, "ice-floe-log-writer");
+        this.writer.setDaemon(true);
+        this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ice-floe-log-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens a log in the given directory with 64 MiB segments, compacting every minute.
+     */
+    public static LogSequenceContextPersistence open(Path directory) throws IOException {
+        return open(directory, new SequenceContextCodec());
+    }
+
+    /**
+     * Opens a log in the given directory with 64 MiB segments, compacting every minute.
+     */
+    public static LogSequenceContextPersistence open(Path directory, SequenceContextCodec codec) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_COMPACTION_THRESHOLD, DEFAULT_COMPACTION_INTERVAL_SECONDS, codec);
+    }
+
+    public static LogSequenceContextPersistence open(Path directory,
+                                                     long maxSegmentBytes,
+                                                     double compactionThreshold,
+                                                     long compactionIntervalSeconds) throws IOException {
+        return open(directory, maxSegmentBytes, compactionThreshold, compactionIntervalSeconds, new SequenceContextCodec());
+    }
+
+    /**
+     * Opens a log in the given directory, creating it if necessary, and starts its writer and compactor.
+     *
+     * @param directory                 The directory holding the segment files.
+     * @param maxSegmentBytes           The size at which the active segment is sealed and a new one started.
+     * @param compactionThreshold       The fraction of live bytes below which a sealed segment is compacted.
+     * @param compactionIntervalSeconds How often the background compactor runs, or 0 to disable it.
+     * @param codec                     The codec used to encode contexts.
+     * @throws IOException If the existing segments cannot be read.
+     */
+    public static LogSequenceContextPersistence open(Path directory,
+                                                     long maxSegmentBytes,
+                                                     double compactionThreshold,
+                                                     long compactionIntervalSeconds,
+                                                     SequenceContextCodec codec) throws IOException {
+        LogSequenceContextPersistence log = new LogSequenceContextPersistence(directory, maxSegmentBytes, compactionThreshold, codec);
+        log.start(compactionIntervalSeconds);
+        return log;
+    }
+
+    /**
+     * Starts the writer and schedules the compactor, once the log is fully constructed.
+     */
+    private void start(long compactionIntervalSeconds) {
+        writer.start();
+        if (compactionIntervalSeconds > 0) {
+            compactor.scheduleWithFixedDelay(this::compactQuietly,
+                    compactionIntervalSeconds, compactionIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void saveState(String executionId, SequenceContext context) throws IOException {
+        await(submit(new Write(executionId, codec.encode(context), null, new CompletableFuture<>())));
+    }
+
+    @Override
+    public SequenceContext loadState(String executionId) throws IOException, ClassNotFoundException {
+        while (true) {
+            Location location = index.get(executionId);
+            if (location == null) {
+                return null;
+            }
+            try {
+                return codec.decode(readPayload(location));
+            } catch (ClosedChannelException e) {
+                // The segment was compacted away after the lookup; the index now points at the moved record.
+                if (closed) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @Override
+    public List<String> listStoredExecutionIds() {
+        return List.copyOf(index.keySet());
+    }
+
+    @Override
+    public List<String> listStoredExecutionIds(Instant from, Instant to) {
+        String lower = Ulid.lowerBound(from);
+        String upper = Ulid.lowerBound(to);
+        if (lower.compareTo(upper) >= 0) {
+            return List.of();
+        }
+        return index.subMap(lower, upper).keySet().stream()
+                .filter(id -> Ulid.timestamp(id).isPresent())
+                .toList();
+    }
+
+    @Override
+    public void deleteState(String executionId) throws IOException {
+        if (index.containsKey(executionId)) {
+            await(submit(new Write(executionId, TOMBSTONE, null, new CompletableFuture<>())));
+        }
+    }
+
+    /**
+     * Appends the tombstones of every execution in one group commit.
+     */
+    @Override
+    public void deleteStates(Collection<String> executionIds) throws IOException {
+        List<CompletableFuture<Location>> deletes = new ArrayList<>();
+        for (String executionId : executionIds) {
+            if (index.containsKey(executionId)) {
+                deletes.add(submit(new Write(executionId, TOMBSTONE, null, new CompletableFuture<>())));
+            }
+        }
+        for (CompletableFuture<Location> delete : deletes) {
+            await(delete);
+        }
+    }
+
+    /**
+     * Compacts every sealed segment whose live bytes have fallen below the compaction threshold.
+     * This normally runs in the background but can be triggered explicitly.
+     */
+    public synchronized void compact() throws IOException {
+        for (Segment segment : segments.values()) {
+            if (segment == active || segment.size == 0
+                    || (double) segment.liveBytes.get() / segment.size >= compactionThreshold) {
+                continue;
+            }
+            List<CompletableFuture<Location>> moves = new ArrayList<>();
+            for (Map.Entry<String, Location> entry : index.entrySet()) {
+                Location location = entry.getValue();
+                if (location.segment() == segment.id) {
+                    moves.add(submit(new Write(entry.getKey(), readPayload(location), location, new CompletableFuture<>())));
+                }
+            }
+            boolean oldest = segment.id == segments.firstKey();
+            for (Map.Entry<String, Location> entry : tombstones.entrySet()) {
+                Location location = entry.getValue();
+                if (location.segment() != segment.id) {
+                    continue;
+                }
+                if (!oldest) {
+                    moves.add(submit(new Write(entry.getKey(), TOMBSTONE, location, new CompletableFuture<>())));
+                } else if (tombstones.remove(entry.getKey(), location)) {
+                    // Nothing older than this segment is left for the tombstone to hide.
+                    segment.liveBytes.addAndGet(-location.length());
+                }
+            }
+            for (CompletableFuture<Location> move : moves) {
+                await(move);
+            }
+            if (segment.liveBytes.get() == 0) {
+                segments.remove(segment.id);
+                segment.channel.close();
+                Files.deleteIfExists(segment.path);
+                Files.deleteIfExists(hintPath(segment.id));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        // A compaction in progress still needs the writer and the segments, so it is let finish first.
+        compactor.shutdown();
+        try {
+            if (!compactor.awaitTermination(30, TimeUnit.SECONDS)) {
+                compactor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            compactor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        queue.add(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Segment segment : segments.values()) {
+            segment.channel.close();
+        }
+    }
+
+    // --- Writing ---
+
+    private CompletableFuture<Location> submit(Write write) {
+        if (closed) {
+            throw new IllegalStateException("The log has been closed.");
+        }
+        queue.add(write);
+        // The writer may have stopped, and failed what it found queued, between the check and the add.
+        if (writerStopped && queue.remove(write)) {
+            write.done().completeExceptionally(new IOException("The log's writer has stopped."));
+        }
+        return write.done();
+    }
+
+    private static void await(CompletableFuture<Location> future) throws IOException {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Appends queued records until the log is closed. A batch that fails for any reason fails every write in
+     * it, and the writer carries on with the next one; when it stops, whatever is still queued is failed too,
+     * so no caller waits forever.
+     */
+    private void writeLoop() {
+        List<Write> batch = new ArrayList<>();
+        List<Map.Entry<Write, Location>> written = new ArrayList<>();
+        Map<String, Location> pending = new HashMap<>();
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch);
+            running = !batch.contains(CLOSE);
+            try {
+                for (Write write : batch) {
+                    if (write == CLOSE) {
+                        continue;
+                    }
+                    if (write.expected() != null && !write.expected().equals(
+                            pending.getOrDefault(write.executionId(), current(write.executionId())))) {
+                        // The execution was saved again since the compactor read it.
+                        write.done().complete(null);
+                    } else {
+                        Location location = append(write);
+                        pending.put(write.executionId(), location);
+                        written.add(Map.entry(write, location));
+                    }
+                }
+                active.channel.force(false);
+                for (Map.Entry<Write, Location> entry : written) {
+                    publish(entry.getKey().executionId(), entry.getValue(), entry.getKey().payload().length == 0);
+                    entry.getKey().done().complete(entry.getValue());
+                }
+            } catch (Throwable e) {
+                // Writes already acknowledged keep their outcome; completing them again has no effect.
+                fail(batch, e);
+            }
+            batch.clear();
+            written.clear();
+            pending.clear();
+        }
+        writerStopped = true;
+        queue.drainTo(batch);
+        fail(batch, new IOException("The log's writer has stopped."));
+    }
+
+    private static void fail(List<Write> writes, Throwable error) {
+        for (Write write : writes) {
+            if (write != CLOSE) {
+                write.done().completeExceptionally(error);
+            }
+        }
+    }
+
+    private Location append(Write write) throws IOException {
+        byte[] id = write.executionId().getBytes(StandardCharsets.UTF_8);
+        int frameLength = HEADER_BYTES + id.length + write.payload().length;
+        if (active.size > 0 && active.size + frameLength > maxSegmentBytes) {
+            roll();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(id);
+        crc.update(write.payload());
+        ByteBuffer frame = ByteBuffer.allocate(frameLength)
+                .putInt(frameLength)
+                .putInt((int) crc.getValue())
+                .putShort((short) id.length)
+                .put(id)
+                .put(write.payload())
+                .flip();
+        Location location = new Location(active.id, active.size, frameLength);
+        long position = active.size;
+        while (frame.hasRemaining()) {
+            position += active.channel.write(frame, position);
+        }
+        active.size += frameLength;
+        active.hints.add(Map.entry(write.executionId(), location));
+        return location;
+    }
+
+    /**
+     * Returns the location of the latest record of an execution, whether a context or a tombstone.
+     */
+    private Location current(String executionId) {
+        Location location = index.get(executionId);
+        return location != null ? location : tombstones.get(executionId);
+    }
+
+    /**
+     * Makes a durable record visible to readers and accounts for the records it supersedes.
+     */
+    private void publish(String executionId, Location location, boolean tombstone) {
+        release(tombstone ? index.remove(executionId) : index.put(executionId, location));
+        release(tombstone ? tombstones.put(executionId, location) : tombstones.remove(executionId));
+        segments.get(location.segment()).liveBytes.addAndGet(location.length());
+    }
+
+    private void release(Location superseded) {
+        if (superseded != null) {
+            Segment segment = segments.get(superseded.segment());
+            if (segment != null) {
+                segment.liveBytes.addAndGet(-superseded.length());
+            }
+        }
+    }
+
+    /**
+     * Seals the active segment by forcing it and writing its hint file, then starts a new segment.
+     */
+    private void roll() throws IOException {
+        active.channel.force(false);
+        writeHints(active);
+        active = createSegment(active.id + 1);
+    }
+
+    private void writeHints(Segment segment) throws IOException {
+        Path temporary = hintPath(segment.id).resolveSibling(segment.path.getFileName() + HINT_SUFFIX + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            for (Map.Entry<String, Location> hint : segment.hints) {
+                byte[] id = hint.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeShort(id.length);
+                out.write(id);
+                out.writeLong(hint.getValue().offset());
+                out.writeInt(hint.getValue().length());
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, hintPath(segment.id), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        segment.hints.clear();
+    }
+
+    // --- Reading ---
+
+    private byte[] readPayload(Location location) throws IOException {
+        Segment segment = segments.get(location.segment());
+        if (segment == null) {
+            throw new ClosedChannelException();
+        }
+        ByteBuffer frame = ByteBuffer.allocate(location.length());
+        long position = location.offset();
+        while (frame.hasRemaining()) {
+            int read = segment.channel.read(frame, position);
+            if (read < 0) {
+                throw new EOFException("Record for segment " + location.segment() + " is truncated.");
+            }
+            position += read;
+        }
+        frame.flip();
+        int crc = frame.getInt(Integer.BYTES);
+        int idLength = frame.getShort(Integer.BYTES * 2);
+        byte[] record = new byte[location.length() - HEADER_BYTES];
+        frame.position(HEADER_BYTES).get(record);
+        CRC32 expected = new CRC32();
+        expected.update(record);
+        if ((int) expected.getValue() != crc) {
+            throw new IOException("Corrupt record in segment " + location.segment() + " at offset " + location.offset());
+        }
+        return Arrays.copyOfRange(record, idLength, record.length);
+    }
+
+    // --- Opening ---
+
+    private void openSegments() throws IOException {
+        List<Long> ids;
+        try (Stream<Path> files = Files.list(directory)) {
+            ids = files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+        for (long id : ids) {
+            Path path = segmentPath(id);
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment segment = new Segment(id, path, channel, channel.size());
+            segments.put(id, segment);
+            if (Files.exists(hintPath(id))) {
+                loadHints(segment);
+            } else {
+                scan(segment);
+            }
+        }
+        for (Location location : index.values()) {
+            segments.get(location.segment()).liveBytes.addAndGet(location.length());
+        }
+        for (Location location : tombstones.values()) {
+            segments.get(location.segment()).liveBytes.addAndGet(location.length());
+        }
+
+        Map.Entry<Long, Segment> last = segments.lastEntry();
+        if (last != null && !Files.exists(hintPath(last.getKey()))) {
+            active = last.getValue();
+        } else {
+            active = createSegment(last == null ? 0 : last.getKey() + 1);
+        }
+    }
+
+    private void loadHints(Segment segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(hintPath(segment.id), StandardOpenOption.READ)) {
+            MappedByteBuffer hints = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (hints.hasRemaining()) {
+                byte[] id = new byte[hints.getShort()];
+                hints.get(id);
+                Location location = new Location(segment.id, hints.getLong(), hints.getInt());
+                indexRecord(new String(id, StandardCharsets.UTF_8), location, location.length() == HEADER_BYTES + id.length);
+            }
+        }
+    }
+
+    /**
+     * Indexes an unsealed segment frame by frame, truncating it at the first torn or corrupt frame.
+     */
+    private void scan(Segment segment) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        long position = 0;
+        while (position + HEADER_BYTES <= segment.size) {
+            header.clear();
+            segment.channel.read(header, position);
+            int frameLength = header.getInt(0);
+            int idLength = header.getShort(Integer.BYTES * 2);
+            if (frameLength < HEADER_BYTES + idLength || idLength < 0 || position + frameLength > segment.size) {
+                break;
+            }
+            Location location = new Location(segment.id, position, frameLength);
+            try {
+                readPayload(location);
+            } catch (IOException e) {
+                break;
+            }
+            ByteBuffer id = ByteBuffer.allocate(idLength);
+            segment.channel.read(id, position + HEADER_BYTES);
+            String executionId = new String(id.array(), StandardCharsets.UTF_8);
+            indexRecord(executionId, location, frameLength == HEADER_BYTES + idLength);
+            segment.hints.add(Map.entry(executionId, location));
+            position += frameLength;
+        }
+        if (position < segment.size) {
+            segment.channel.truncate(position);
+            segment.size = position;
+        }
+    }
+
+    private void indexRecord(String executionId, Location location, boolean tombstone) {
+        if (tombstone) {
+            index.remove(executionId);
+            tombstones.put(executionId, location);
+        } else {
+            tombstones.remove(executionId);
+            index.put(executionId, location);
+        }
+    }
+
+    private Segment createSegment(long id) throws IOException {
+        Path path = segmentPath(id);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(id, path, channel, channel.size());
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(String.format("%020d%s", id, SEGMENT_SUFFIX));
+    }
+
+    private Path hintPath(long id) {
+        return directory.resolve(String.format("%020d%s%s", id, SEGMENT_SUFFIX, HINT_SUFFIX));
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            // Anything thrown from here would cancel the schedule, and with it every later compaction.
+            LOGGER.log(Level.WARNING, "Failed to compact segments in " + directory, e);
+        }
+    }
+}
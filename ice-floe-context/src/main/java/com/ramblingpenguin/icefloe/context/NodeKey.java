@@ -1,7 +1,7 @@
 package com.ramblingpenguin.icefloe.context;
 
+import java.io.Serializable;
 import java.util.Objects;
-import java.util.UUID;
 
 /**
  * A type-safe key for storing and retrieving values in a {@link SequenceContext}.
@@ -16,7 +16,7 @@ import java.util.UUID;
 public record NodeKey<OUTPUT_TYPE>(
         String id,
         Class<OUTPUT_TYPE> outputType
-) {
+) implements Serializable {
     /**
      * Creates a new NodeKey with a specific ID and a custom combiner.
      *
@@ -36,10 +36,10 @@ public record NodeKey<OUTPUT_TYPE>(
     }
 
     /**
-     * Creates a new NodeKey with a random UUID as the ID and a default combiner.
+     * Creates a new NodeKey with an ID from the default {@link IdGenerator} and a default combiner.
      */
     public static <T> NodeKey<T> of(Class<T> type) {
-        return new NodeKey<>(UUID.randomUUID().toString(), type);
+        return new NodeKey<>(IdGenerator.getDefault().nextId(), type);
     }
 
     /**
@@ -0,0 +1,101 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Runs asynchronous tasks one after another per partition while different partitions proceed concurrently.
+ * <p>
+ * Each partition with work outstanding is a mailbox: the future of its most recently submitted task. A new
+ * task is chained onto that future and starts only once its predecessor has completed, successfully or not.
+ * No thread is dedicated to a partition, and a partition's entry is removed as soon as its last task
+ * completes, so only partitions with work outstanding use any memory.
+ */
+final class PartitionedMailboxes {
+
+    private final Map<Object, CompletableFuture<?>> tails = new ConcurrentHashMap<>();
+
+    /**
+     * Submits a task to a partition.
+     *
+     * @param partition The partition; tasks with equal partitions run in submission order.
+     * @param task      Starts the task and returns its future. Called once the partition's previous task is done.
+     * @return The future of the task.
+     */
+    <T> CompletableFuture<T> submit(Object partition, Supplier<CompletableFuture<T>> task) {
+        Pending<T> pending = new Pending<>(task);
+        // Swapping the tail is the only synchronization: it fixes the order tasks of a partition run in.
+        CompletableFuture<?> previous = tails.put(partition, pending.done);
+        if (previous == null) {
+            pending.start();
+        } else {
+            previous.whenComplete((ignored, error) -> pending.start());
+        }
+        // The caller sees the task complete only once an idle partition has been released.
+        CompletableFuture<T> result = pending.done.whenComplete((ignored, error) -> tails.remove(partition, pending.done));
+        result.whenComplete((ignored, error) -> {
+            if (result.isCancelled()) {
+                pending.cancel();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns the number of partitions with work outstanding.
+     */
+    int activePartitions() {
+        return tails.size();
+    }
+
+    /**
+     * A submitted task. Cancelling it cancels the task's own future if it has started, and skips it otherwise;
+     * either way the partition moves on once the task is done.
+     */
+    private static final class Pending<T> {
+        private final Supplier<CompletableFuture<T>> task;
+        private final CompletableFuture<T> done = new CompletableFuture<>();
+        private CompletableFuture<T> started; // Guarded by this.
+        private boolean cancelled;
+
+        private Pending(Supplier<CompletableFuture<T>> task) {
+            this.task = task;
+        }
+
+        private void start() {
+            CompletableFuture<T> future;
+            try {
+                synchronized (this) {
+                    if (cancelled) {
+                        done.cancel(false);
+                        return;
+                    }
+                    future = started = task.get();
+                }
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+                return;
+            }
+            future.whenComplete((value, error) -> {
+                if (error == null) {
+                    done.complete(value);
+                } else {
+                    done.completeExceptionally(error);
+                }
+            });
+        }
+
+        private void cancel() {
+            CompletableFuture<T> future;
+            synchronized (this) {
+                cancelled = true;
+                future = started;
+            }
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.ramblingpenguin.icefloe.context;
+
+/**
+ * The priority class of an execution submitted to a {@link SequenceService}. When executions are queued,
+ * higher classes are always started first.
+ */
+public enum Priority {
+    HIGH,
+    NORMAL,
+    LOW
+}
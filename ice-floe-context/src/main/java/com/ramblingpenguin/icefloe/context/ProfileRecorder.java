@@ -0,0 +1,55 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Collects the spans of one profiled execution. The recorder of the execution starting on a thread is set by
+ * {@link SequenceService} with {@link #callWith}; {@link ContextualSequence} attaches it to the root context, and
+ * fork branches inherit it with their child contexts. Unprofiled executions have no recorder and record nothing.
+ */
+final class ProfileRecorder {
+
+    private static final ThreadLocal<ProfileRecorder> CURRENT = new ThreadLocal<>();
+
+    private final List<ProfileSpan> spans = new ArrayList<>();
+
+    static ProfileRecorder current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs an action with the given recorder as the current one, or as it is if the recorder is {@code null}.
+     */
+    static <T> T callWith(ProfileRecorder recorder, Supplier<T> action) {
+        if (recorder == null) {
+            return action.get();
+        }
+        ProfileRecorder previous = CURRENT.get();
+        CURRENT.set(recorder);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Records a span that started at the given time and ends now.
+     */
+    void record(ExecutionId executionId, String name, ProfileSpan.Kind kind, long startNanos) {
+        ProfileSpan span = new ProfileSpan(executionId.id(), name, kind, startNanos, System.nanoTime());
+        synchronized (this) {
+            spans.add(span);
+        }
+    }
+
+    synchronized List<ProfileSpan> spans() {
+        return List.copyOf(spans);
+    }
+}
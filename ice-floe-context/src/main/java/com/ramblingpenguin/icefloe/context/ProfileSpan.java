@@ -0,0 +1,41 @@
+package com.ramblingpenguin.icefloe.context;
+
+/**
+ * A timed piece of a profiled execution. Times are {@link System#nanoTime()} readings, so they are only
+ * comparable within one profile.
+ *
+ * @param executionId The ID of the execution or fork branch the span ran in.
+ * @param name        The key of the node, the scatter key of the fork, or {@code "merge"}.
+ * @param kind        What the span measured.
+ * @param startNanos  When the span started.
+ * @param endNanos    When the span ended.
+ */
+public record ProfileSpan(String executionId, String name, Kind kind, long startNanos, long endNanos) {
+
+    public enum Kind {
+        /** A {@link ContextualNode} running. */
+        NODE,
+        /** A {@link ContextualForkSequence}, from the split of its input until its results were merged. */
+        FORK,
+        /** One branch of a fork. */
+        BRANCH,
+        /** A branch's context merged into its parent's. */
+        MERGE
+    }
+
+    public long durationNanos() {
+        return endNanos - startNanos;
+    }
+
+    boolean contains(ProfileSpan other) {
+        return other.startNanos >= startNanos && other.endNanos <= endNanos;
+    }
+
+    /**
+     * Returns the ID of the execution that forked this span's execution, or {@code null} for a root execution.
+     */
+    String parentExecutionId() {
+        int separator = executionId.lastIndexOf(':');
+        return separator < 0 ? null : executionId.substring(0, separator);
+    }
+}
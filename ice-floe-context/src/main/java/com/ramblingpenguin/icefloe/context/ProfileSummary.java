@@ -0,0 +1,24 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.util.Map;
+
+/**
+ * The profiles of many executions, aggregated by an {@link ExecutionProfiler}.
+ *
+ * @param executions               The number of executions profiled.
+ * @param meanTotalNanos           The mean duration of an execution.
+ * @param meanCriticalPathNanos    The mean duration of the critical path.
+ * @param meanMergeFraction        The mean share of busy time spent merging branch contexts.
+ * @param meanForkSkew             The mean skew of the forks that ran.
+ * @param maxForkSkew              The largest skew of any fork.
+ * @param criticalPathNanosByName  The total time each node or merge spent on the critical path, by name. The
+ *                                 largest entries are the steps worth optimizing.
+ */
+public record ProfileSummary(long executions,
+                             double meanTotalNanos,
+                             double meanCriticalPathNanos,
+                             double meanMergeFraction,
+                             double meanForkSkew,
+                             double maxForkSkew,
+                             Map<String, Long> criticalPathNanosByName) {
+}
@@ -0,0 +1,21 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.time.Duration;
+
+/**
+ * A snapshot of the admission queue of one sequence in a {@link SequenceService}.
+ *
+ * @param queued           Executions currently waiting to start.
+ * @param admitted         Executions started so far.
+ * @param rejected         Executions rejected or dropped because the queue was full.
+ * @param shed             Executions failed because they waited longer than the maximum queue time.
+ * @param averageQueueTime The average time executions waited before starting.
+ * @param maxQueueTime     The longest time an execution waited before starting.
+ */
+public record QueueStats(int queued,
+                         long admitted,
+                         long rejected,
+                         long shed,
+                         Duration averageQueueTime,
+                         Duration maxQueueTime) {
+}
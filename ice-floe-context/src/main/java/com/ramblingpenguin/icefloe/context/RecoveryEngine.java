@@ -0,0 +1,118 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.lang.System.Logger.Level;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Resumes the executions a {@link SequenceCheckpointer} found unfinished, so that a restart does not leave
+ * them stuck. At most {@code parallelism} executions are resumed at a time and new resumptions are started
+ * at a limited rate, leaving capacity for new traffic while recovery runs in the background.
+ */
+final class RecoveryEngine {
+
+    private static final System.Logger LOGGER = System.getLogger(RecoveryEngine.class.getName());
+
+    private final Function<ResumableExecution, CompletableFuture<SequenceContext>> resumer;
+    private final int parallelism;
+    private final TokenBucket rateLimit;
+    private final Semaphore permits;
+    private final AtomicInteger resumed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final CompletableFuture<RecoveryProgress> completion = new CompletableFuture<>();
+    private volatile int total;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private Thread scheduler;
+
+    /**
+     * @param resumer          Resumes one execution asynchronously.
+     * @param parallelism      The maximum number of executions resumed at once.
+     * @param resumesPerSecond The maximum rate at which resumptions are started, or 0 for no limit.
+     */
+    RecoveryEngine(Function<ResumableExecution, CompletableFuture<SequenceContext>> resumer,
+                   int parallelism,
+                   double resumesPerSecond) {
+        this.resumer = resumer;
+        this.parallelism = parallelism;
+        this.rateLimit = resumesPerSecond > 0 ? new TokenBucket(resumesPerSecond, parallelism) : null;
+        this.permits = new Semaphore(parallelism);
+    }
+
+    /**
+     * Starts resuming the given executions on a background thread.
+     */
+    synchronized void start(List<ResumableExecution> executions) {
+        if (scheduler != null) {
+            throw new IllegalStateException("Recovery has already been started.");
+        }
+        total = executions.size();
+        startedAt = System.nanoTime();
+        scheduler = new Thread(() -> run(executions), "ice-floe-recovery");
+        scheduler.setDaemon(true);
+        scheduler.start();
+    }
+
+    /**
+     * Stops starting new resumptions. Executions not yet resumed stay in the checkpoint journal.
+     */
+    synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.interrupt();
+        }
+    }
+
+    RecoveryProgress progress() {
+        int inFlight = scheduler == null ? 0 : parallelism - permits.availablePermits();
+        long end = finishedAt != 0 ? finishedAt : System.nanoTime();
+        Duration elapsed = startedAt == 0 ? Duration.ZERO : Duration.ofNanos(end - startedAt);
+        return new RecoveryProgress(total, resumed.get(), failed.get(), Math.max(0, inFlight), elapsed);
+    }
+
+    /**
+     * Returns a future that completes with the final progress once every execution has been resumed or has
+     * failed, or once recovery is stopped.
+     */
+    CompletableFuture<RecoveryProgress> completion() {
+        return completion;
+    }
+
+    private void run(List<ResumableExecution> executions) {
+        try {
+            for (ResumableExecution execution : executions) {
+                if (rateLimit != null) {
+                    rateLimit.acquire();
+                }
+                permits.acquire();
+                try {
+                    resumer.apply(execution).whenComplete((context, error) -> {
+                        finish(execution, error);
+                        permits.release();
+                    });
+                } catch (RuntimeException e) {
+                    finish(execution, e);
+                    permits.release();
+                }
+            }
+            permits.acquire(parallelism);
+            permits.release(parallelism);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finishedAt = System.nanoTime();
+        completion.complete(progress());
+    }
+
+    private void finish(ResumableExecution execution, Throwable error) {
+        if (error == null) {
+            resumed.incrementAndGet();
+        } else {
+            failed.incrementAndGet();
+            LOGGER.log(Level.WARNING, "Failed to resume execution ID: " + execution.executionId(), error);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.time.Duration;
+
+/**
+ * A snapshot of the recovery of interrupted executions after a restart.
+ *
+ * @param total    The number of executions found unfinished.
+ * @param resumed  Executions resumed and run to completion.
+ * @param failed   Executions whose resumption failed, for example because their sequence is not registered.
+ * @param inFlight Executions currently being resumed.
+ * @param elapsed  The time since recovery started, or its total duration once it has finished.
+ */
+public record RecoveryProgress(int total, int resumed, int failed, int inFlight, Duration elapsed) {
+
+    /**
+     * Returns the number of executions not yet finished, whether waiting or in flight.
+     */
+    public int remaining() {
+        return total - resumed - failed;
+    }
+
+    public boolean isComplete() {
+        return remaining() == 0;
+    }
+
+    /**
+     * Returns the number of executions finished per second so far.
+     */
+    public double throughputPerSecond() {
+        double seconds = elapsed.toNanos() / 1e9;
+        return seconds == 0 ? 0 : (resumed + failed) / seconds;
+    }
+}
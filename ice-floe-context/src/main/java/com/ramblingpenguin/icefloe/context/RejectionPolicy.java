@@ -0,0 +1,26 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * What a {@link SequenceService} does with an execution whose sequence already has a full queue.
+ */
+public enum RejectionPolicy {
+
+    /**
+     * The returned future fails immediately with a {@link RejectedExecutionException}.
+     */
+    FAIL_FAST,
+
+    /**
+     * The execution runs on the calling thread, which slows the caller down to the rate the service can sustain.
+     * It counts as in flight while it runs, even though that exceeds the limit, and as admitted.
+     */
+    CALLER_RUNS,
+
+    /**
+     * The oldest queued execution of the same sequence, of the same or a lower priority, fails with a
+     * {@link RejectedExecutionException} to make room. If there is none, the new execution is rejected.
+     */
+    DROP_OLDEST
+}
@@ -0,0 +1,34 @@
+package com.ramblingpenguin.icefloe.context;
+
+import com.ramblingpenguin.icefloe.core.metrics.LatencyHistogram;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * The outcome of an {@link ExecutionReplayer} run, set against the capture it replayed. Run times exclude the
+ * time executions were queued, in the capture as in the replay.
+ *
+ * @param executions        The executions replayed.
+ * @param failed            The replayed executions that failed.
+ * @param elapsed           How long the replay took.
+ * @param recorded          The run times in the capture.
+ * @param replayed          The run times in the replay.
+ * @param recordedNodeNanos The mean time per execution spent in each node in the capture, keyed by node key ID.
+ * @param replayedNodeNanos The mean time per execution spent in each node in the replay, keyed by node key ID.
+ */
+public record ReplayReport(int executions,
+                           int failed,
+                           Duration elapsed,
+                           LatencyHistogram.Snapshot recorded,
+                           LatencyHistogram.Snapshot replayed,
+                           Map<String, Long> recordedNodeNanos,
+                           Map<String, Long> replayedNodeNanos) {
+
+    /**
+     * Returns the recorded mean run time divided by the replayed one: above 1 the replay ran faster.
+     */
+    public double speedup() {
+        return replayed.mean() == 0 ? 1 : recorded.mean() / replayed.mean();
+    }
+}
@@ -0,0 +1,19 @@
+package com.ramblingpenguin.icefloe.context;
+
+/**
+ * An execution that was interrupted before it finished and can be resumed after its last completed step.
+ *
+ * @param sequenceKey    The key of the sequence the execution belongs to.
+ * @param completedSteps The number of steps that had completed.
+ * @param context        The context as of the last completed step.
+ */
+public record ResumableExecution(
+        SequenceKey<?, SequenceContext> sequenceKey,
+        int completedSteps,
+        SequenceContext context
+) {
+
+    public String executionId() {
+        return context.getExecutionId().id();
+    }
+}
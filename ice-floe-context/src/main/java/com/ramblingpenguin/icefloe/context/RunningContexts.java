@@ -0,0 +1,62 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Holds the latest context of every execution a {@link SequenceService} is running, so their footprints can be
+ * reported before they finish. The service makes it current with {@link #callWith}; {@link ContextualSequence}
+ * attaches it to the root context, which records every context derived from it for the same execution. Contexts
+ * of fork branches are not recorded separately, since their values are merged back into the execution's own.
+ */
+final class RunningContexts {
+
+    private static final ThreadLocal<RunningContexts> CURRENT = new ThreadLocal<>();
+
+    private final Map<ExecutionId, SequenceContext> latest = new ConcurrentHashMap<>();
+
+    static RunningContexts current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs an action with the given contexts as the current ones.
+     */
+    static <T> T callWith(RunningContexts running, Supplier<T> action) {
+        RunningContexts previous = CURRENT.get();
+        CURRENT.set(running);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    void begin(SequenceContext context) {
+        latest.put(context.getExecutionId(), context);
+    }
+
+    /**
+     * Records a context derived during an execution, if it belongs to the execution itself rather than a branch.
+     */
+    void update(SequenceContext context) {
+        latest.replace(context.getExecutionId(), context);
+    }
+
+    void end(ExecutionId executionId) {
+        latest.remove(executionId);
+    }
+
+    List<ContextFootprint> footprints() {
+        List<ContextFootprint> footprints = new ArrayList<>(latest.size());
+        latest.forEach((executionId, context) -> footprints.add(ContextFootprint.of(executionId.id(), context)));
+        return footprints;
+    }
+}
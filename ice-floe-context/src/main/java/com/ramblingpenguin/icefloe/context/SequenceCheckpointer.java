@@ -0,0 +1,317 @@
+package com.ramblingpenguin.icefloe.context;
+
+import com.ramblingpenguin.icefloe.core.Node;
+
+import java.io.*;
+import java.lang.System.Logger.Level;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * Records the progress of {@link ContextualSequence} executions in an append-only journal, so that
+ * executions interrupted by a crash can be resumed after their last completed step.
+ * <p>
+ * After every step only the context values that changed are recorded. Records are handed to a
+ * background writer that appends everything queued since its last write and then forces the journal
+ * to disk once for the whole batch, so executing threads never wait on the disk. A checkpoint is
+ * therefore durable shortly after the step completes; {@link #flush()} waits for it explicitly.
+ * <p>
+ * Opening a checkpointer replays the existing journal, keeps the executions that were still running when the
+ * process stopped (see {@link #getResumableExecutions()}) and compacts the journal down to one record per such execution.
+ * While it is open, the writer keeps the same one-record-per-execution view of the unfinished executions, and
+ * compacts the journal down to it whenever the journal has grown to twice its size, and to at least
+ * {@value #MIN_COMPACTION_RECORDS} records.
+ * Sequences opt in with {@link ContextualSequence.Builder#withCheckpointing(SequenceCheckpointer)}.
+ */
+public class SequenceCheckpointer implements Closeable {
+
+    private static final System.Logger LOGGER = System.getLogger(SequenceCheckpointer.class.getName());
+    private static final String JOURNAL_FILE = "checkpoints.journal";
+    private static final Object CLOSE = new Object();
+    private static final long MIN_COMPACTION_RECORDS = 1_000;
+
+    private final Path journalPath;
+    private final List<ResumableExecution> resumableExecutions;
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private FileChannel channel;
+
+    // Confined to the writer thread once it starts: the unfinished executions, one folded record each, and the
+    // number of records in the journal.
+    private final Map<ExecutionId, Checkpoint> unfinished = new LinkedHashMap<>();
+    private long journalRecords;
+    private volatile boolean closed = false;
+
+    /**
+     * Opens the checkpoint journal in the given directory, creating it if necessary.
+     *
+     * @param directory The directory holding the journal.
+     * @throws IOException If the journal cannot be read or compacted.
+     */
+    public SequenceCheckpointer(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.journalPath = directory.resolve(JOURNAL_FILE);
+        this.resumableExecutions = List.copyOf(this.replayAndCompact());
+        this.channel = FileChannel.open(this.journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.writer = new Thread(this::writeLoop, "ice-floe-checkpointer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Returns the executions that had not finished when the journal was opened.
+     */
+    public List<ResumableExecution> getResumableExecutions() {
+        return resumableExecutions;
+    }
+
+    /**
+     * Blocks until every checkpoint recorded so far has been written and forced to disk.
+     */
+    public void flush() {
+        CompletableFuture<Void> flushed = new CompletableFuture<>();
+        enqueue(flushed);
+        flushed.join();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.add(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    /**
+     * Records the root context of a new execution.
+     */
+    void begin(SequenceKey<?, SequenceContext> sequenceKey, SequenceContext context) {
+        enqueue(new Checkpoint(sequenceKey, context.getExecutionId(), 0, false, delta(null, context)));
+    }
+
+    /**
+     * Records that an execution ended without completing, because it failed, was cancelled or was parked, so it is
+     * not resumed.
+     */
+    void abandon(SequenceKey<?, SequenceContext> sequenceKey, ExecutionId executionId) {
+        if (!closed) {
+            enqueue(new Checkpoint(sequenceKey, executionId, 0, true, Map.of()));
+        }
+    }
+
+    /**
+     * Wraps a step so that a checkpoint is recorded once it completes.
+     */
+    Node<SequenceContext, SequenceContext> checkpointAfter(SequenceKey<?, SequenceContext> sequenceKey,
+                                                           Node<SequenceContext, SequenceContext> step,
+                                                           int completedSteps,
+                                                           boolean lastStep) {
+        return context -> {
+            SequenceContext result = step.apply(context);
+            enqueue(new Checkpoint(sequenceKey, result.getExecutionId(), completedSteps, lastStep, delta(context, result)));
+            return result;
+        };
+    }
+
+    private void enqueue(Object record) {
+        if (closed) {
+            throw new IllegalStateException("The checkpointer has been closed.");
+        }
+        queue.add(record);
+    }
+
+    /**
+     * Collects the values of {@code after} that are not present, by identity, in {@code before}.
+     * Values that are not serializable are skipped, as they are by {@link SequenceContext} itself.
+     */
+    private static Map<NodeKey<?>, Object> delta(SequenceContext before, SequenceContext after) {
+        Map<NodeKey<?>, Object> previous = before == null ? Map.of() : before.getContext();
+        Map<NodeKey<?>, Object> delta = new LinkedHashMap<>();
+        for (Map.Entry<NodeKey<?>, Object> entry : after.getContext().entrySet()) {
+            if (previous.get(entry.getKey()) != entry.getValue() && entry.getValue() instanceof Serializable) {
+                delta.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return delta;
+    }
+
+    // --- Background writer ---
+
+    @SuppressWarnings("unchecked")
+    private void writeLoop() {
+        List<Object> batch = new ArrayList<>();
+        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                for (Object record : batch) {
+                    if (record instanceof Checkpoint checkpoint) {
+                        try {
+                            writeFrame(out, checkpoint);
+                            track(checkpoint);
+                        } catch (NotSerializableException e) {
+                            LOGGER.log(Level.WARNING, "Skipping checkpoint for execution ID: "
+                                    + checkpoint.executionId().id() + ", a value is not serializable", e);
+                        }
+                    } else if (record == CLOSE) {
+                        running = false;
+                    }
+                }
+                out.flush();
+                channel.force(false);
+                if (journalRecords > Math.max(2L * unfinished.size(), MIN_COMPACTION_RECORDS)) {
+                    compact();
+                    out = new BufferedOutputStream(Channels.newOutputStream(channel));
+                }
+                for (Object record : batch) {
+                    if (record instanceof CompletableFuture<?> flushed) {
+                        ((CompletableFuture<Void>) flushed).complete(null);
+                    }
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to write checkpoints", e);
+                for (Object record : batch) {
+                    if (record instanceof CompletableFuture<?> flushed) {
+                        flushed.completeExceptionally(e);
+                    }
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Folds a record that is in the journal into the view of the unfinished executions.
+     */
+    private void track(Checkpoint checkpoint) {
+        journalRecords++;
+        if (checkpoint.complete()) {
+            unfinished.remove(checkpoint.executionId());
+        } else {
+            unfinished.merge(checkpoint.executionId(), checkpoint, SequenceCheckpointer::apply);
+        }
+    }
+
+    /**
+     * Rewrites the journal with one record per unfinished execution and switches the writer to it.
+     */
+    private void compact() throws IOException {
+        writeCompacted(unfinished.values());
+        channel.close();
+        channel = FileChannel.open(journalPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        journalRecords = unfinished.size();
+    }
+
+    /**
+     * Atomically replaces the journal with the given records.
+     */
+    private void writeCompacted(Collection<Checkpoint> checkpoints) throws IOException {
+        Path compacted = journalPath.resolveSibling(JOURNAL_FILE + ".compact");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(compacted))) {
+            for (Checkpoint checkpoint : checkpoints) {
+                writeFrame(out, checkpoint);
+            }
+        }
+        try (FileChannel compactedChannel = FileChannel.open(compacted, StandardOpenOption.WRITE)) {
+            compactedChannel.force(true);
+        }
+        Files.move(compacted, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes a record as {@code [length][crc32][payload]}, so a torn write at the tail of the journal is detected on replay.
+     */
+    private static void writeFrame(OutputStream out, Checkpoint checkpoint) throws IOException {
+        // Serialize fully before writing, so a failure never leaves half a frame in the journal.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(checkpoint);
+        }
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(payload.length);
+        data.writeInt((int) crc.getValue());
+        data.write(payload);
+    }
+
+    // --- Replay ---
+
+    private List<ResumableExecution> replayAndCompact() throws IOException {
+        if (Files.exists(journalPath)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalPath)))) {
+                Checkpoint checkpoint;
+                while ((checkpoint = readFrame(in)) != null) {
+                    track(checkpoint);
+                }
+            }
+        }
+
+        writeCompacted(unfinished.values());
+        journalRecords = unfinished.size();
+
+        List<ResumableExecution> executions = new ArrayList<>();
+        for (Checkpoint checkpoint : unfinished.values()) {
+            SequenceContext context = SequenceContext.restore(checkpoint.executionId(), checkpoint.delta(), new DefaultTypeCombinerFactory());
+            executions.add(new ResumableExecution(checkpoint.sequenceKey(), checkpoint.completedSteps(), context));
+        }
+        return executions;
+    }
+
+    /**
+     * Folds a later record of an execution into the accumulated one.
+     */
+    private static Checkpoint apply(Checkpoint accumulated, Checkpoint next) {
+        Map<NodeKey<?>, Object> values = new LinkedHashMap<>(accumulated.delta());
+        values.putAll(next.delta());
+        return new Checkpoint(next.sequenceKey(), next.executionId(),
+                Math.max(accumulated.completedSteps(), next.completedSteps()), false, values);
+    }
+
+    /**
+     * Reads the next record, or returns {@code null} at the end of the journal or at a torn record.
+     */
+    private static Checkpoint readFrame(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            int expectedCrc = in.readInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] payload = in.readNBytes(length);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if (payload.length != length || (int) crc.getValue() != expectedCrc) {
+                return null;
+            }
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+                return (Checkpoint) ois.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Failed to read checkpoint", e);
+            }
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+}
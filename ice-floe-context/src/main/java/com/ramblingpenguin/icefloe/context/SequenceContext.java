@@ -1,7 +1,10 @@
 package com.ramblingpenguin.icefloe.context;
 
+import com.ramblingpenguin.icefloe.core.Deadline;
+
 import java.io.*;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * An immutable, thread-safe, and serializable context object that holds the outputs of nodes in a {@code ContextualSequence}.
@@ -12,9 +15,23 @@ public class SequenceContext implements Serializable {
     @Serial
     private static final long serialVersionUID = 5L; // Version bump for transient contextMap
 
+    /**
+     * Keeps the fingerprints in the serialized form although the field is transient, so streams written while
+     * it was not still read. The maps stored in it are always {@link HashMap}s.
+     */
+    @Serial
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("executionId", ExecutionId.class),
+            new ObjectStreamField("fingerprints", Map.class)
+    };
+
     private final ExecutionId executionId;
+    private final transient Map<NodeKey<?>, String> fingerprints; // Null unless the context is incremental.
     private transient SequencedMap<NodeKey<?>, Object> contextMap;
     private transient TypeCombinerFactory typeCombinerFactory;
+    private transient SequenceContext priorContext;
+    private transient Bindings bindings;
+    private transient volatile Map<NodeKey<?>, Long> retainedSizes; // Computed on first use.
 
     /**
      * Creates a new root context for a new execution flow.
@@ -32,10 +49,50 @@ public class SequenceContext implements Serializable {
         return new SequenceContext(executionId, new LinkedHashMap<>(), factory);
     }
 
+    /**
+     * Rebuilds a context from previously persisted values, such as a recovered checkpoint.
+     */
+    static SequenceContext restore(ExecutionId executionId, Map<NodeKey<?>, Object> values, TypeCombinerFactory factory) {
+        return new SequenceContext(executionId, values, factory);
+    }
+
+    /**
+     * Rebuilds a context, including the fingerprints of an incremental context, from previously persisted values.
+     */
+    static SequenceContext restore(ExecutionId executionId,
+                                   Map<NodeKey<?>, Object> values,
+                                   Map<NodeKey<?>, String> fingerprints,
+                                   TypeCombinerFactory factory) {
+        return new SequenceContext(executionId, values, factory, fingerprints, null, Bindings.NONE);
+    }
+
+    /**
+     * Creates a new root context whose large values are offloaded by the given claim check.
+     */
+    static <INPUT extends Serializable> SequenceContext newRootContext(NodeKey<INPUT> inputNodeKey, INPUT input,
+                                                                       TypeCombinerFactory typeCombinerFactory,
+                                                                       ClaimCheck claimCheck) {
+        return new SequenceContext(ExecutionId.newRoot(), new LinkedHashMap<>(), typeCombinerFactory, null, null,
+                Bindings.NONE.withClaimCheck(claimCheck))
+                .put(inputNodeKey, input);
+    }
+
     private SequenceContext(ExecutionId executionId, Map<NodeKey<?>, Object> contextMap, TypeCombinerFactory typeCombinerFactory) {
+        this(executionId, contextMap, typeCombinerFactory, null, null, Bindings.NONE);
+    }
+
+    private SequenceContext(ExecutionId executionId,
+                            Map<NodeKey<?>, Object> contextMap,
+                            TypeCombinerFactory typeCombinerFactory,
+                            Map<NodeKey<?>, String> fingerprints,
+                            SequenceContext priorContext,
+                            Bindings bindings) {
         this.executionId = executionId;
         this.contextMap = new LinkedHashMap<>(contextMap);
         this.typeCombinerFactory = typeCombinerFactory;
+        this.fingerprints = fingerprints;
+        this.priorContext = priorContext;
+        this.bindings = bindings;
     }
 
     public ExecutionId getExecutionId() {
@@ -50,26 +107,95 @@ public class SequenceContext implements Serializable {
      * @return A new SequenceContext for the sub-flow.
      */
     public SequenceContext createChildContext(String childSegment) {
-        ExecutionId childId = this.executionId.createChildId(childSegment);
-        return new SequenceContext(childId, this.contextMap, this.typeCombinerFactory);
+        return createChildContext(this.executionId.createChildId(childSegment));
+    }
+
+    /**
+     * Creates a new "child" context for the branch with the given index, e.g. the index of a fork item.
+     */
+    public SequenceContext createChildContext(int childIndex) {
+        return createChildContext(this.executionId.createChildId(childIndex));
+    }
+
+    private SequenceContext createChildContext(ExecutionId childId) {
+        SequenceContext child = new SequenceContext(childId, this.contextMap, this.typeCombinerFactory, null, null, this.bindings);
+        // The child starts with the parent's values, so it need not measure them again.
+        child.retainedSizes = this.retainedSizes;
+        return child;
     }
 
     public <T> SequenceContext put(NodeKey<T> key, T value) {
+        return put(key, value, null);
+    }
+
+    /**
+     * Stores a value together with the fingerprint of the input it was computed from.
+     * The fingerprint is only kept if the context is incremental and the value was not combined
+     * with an existing one, since a combined value cannot be reused for a single node.
+     */
+    <T> SequenceContext put(NodeKey<T> key, T value, String fingerprint) {
         Map<NodeKey<?>, Object> newMap = new LinkedHashMap<>(this.contextMap);
-        if (this.contextMap.containsKey(key)) {
-            T oldValue = key.outputType().cast(this.contextMap.get(key));
+        boolean combined = this.contextMap.containsKey(key);
+        if (combined) {
+            T oldValue = key.outputType().cast(resolve(key, this.contextMap.get(key)));
             T newValue = this.typeCombinerFactory.getCombiner(key).apply(oldValue, value);
-            newMap.put(key, newValue);
+            newMap.put(key, offload(newValue));
         } else {
-            newMap.put(key, value);
+            newMap.put(key, offload(value));
+        }
+        Map<NodeKey<?>, Long> newSizes = null;
+        if (this.bindings.sizeLimits() != null) {
+            newSizes = new LinkedHashMap<>(getRetainedSizes());
+            newSizes.put(key, SizeEstimator.estimate(newMap.get(key)));
+            enforceSizeLimits(newMap, newSizes);
+        }
+        Map<NodeKey<?>, String> newFingerprints = null;
+        if (this.fingerprints != null) {
+            newFingerprints = new HashMap<>(this.fingerprints);
+            if (fingerprint != null && !combined) {
+                newFingerprints.put(key, fingerprint);
+            } else {
+                newFingerprints.remove(key);
+            }
         }
-        return new SequenceContext(this.executionId, newMap, this.typeCombinerFactory);
+        SequenceContext next = new SequenceContext(this.executionId, newMap, this.typeCombinerFactory, newFingerprints, this.priorContext, this.bindings);
+        next.retainedSizes = newSizes == null ? null : Collections.unmodifiableMap(newSizes);
+        return next.recordRunning();
     }
 
-    @SuppressWarnings("unchecked")
     public synchronized SequenceContext merge(SequenceContext other) {
+        FlightEvents.ContextMerge event = new FlightEvents.ContextMerge();
+        event.begin();
+        ProfileRecorder profiler = this.bindings.profiler();
+        long start = profiler == null ? 0 : System.nanoTime();
+        SequenceContext merged = mergeValues(other);
+        if (profiler != null) {
+            profiler.record(this.executionId, "merge", ProfileSpan.Kind.MERGE, start);
+        }
+        if (event.shouldCommit()) {
+            event.executionId = this.executionId.id();
+            event.values = other.contextMap.size();
+            event.commit();
+        }
+        return merged;
+    }
+
+    @SuppressWarnings("unchecked")
+    private SequenceContext mergeValues(SequenceContext other) {
         if (this.contextMap.isEmpty()) {
-            return new SequenceContext(this.executionId, other.contextMap, this.typeCombinerFactory);
+            // Nothing to combine, but the other context's values are still subject to this one's limits.
+            Map<NodeKey<?>, Object> values = other.contextMap;
+            Map<NodeKey<?>, Long> sizes = other.getRetainedSizes();
+            if (this.bindings.sizeLimits() != null) {
+                values = new LinkedHashMap<>(values);
+                sizes = new LinkedHashMap<>(sizes);
+                enforceSizeLimits(values, sizes);
+                sizes = Collections.unmodifiableMap(sizes);
+            }
+            SequenceContext adopted = new SequenceContext(this.executionId, values, this.typeCombinerFactory,
+                    this.fingerprints == null ? null : new HashMap<>(), this.priorContext, this.bindings);
+            adopted.retainedSizes = sizes;
+            return adopted.recordRunning();
         }
         if (other.contextMap.isEmpty()) {
             return this;
@@ -79,24 +205,278 @@ public class SequenceContext implements Serializable {
         for (Map.Entry<NodeKey<?>, Object> entry : other.contextMap.entrySet()) {
             newMap.merge(entry.getKey(), entry.getValue(), (oldValue, newValue) -> {
                 NodeKey<Object> key = (NodeKey<Object>) entry.getKey();
-                return this.typeCombinerFactory.getCombiner(key).apply(oldValue, newValue);
+                Object combined = this.typeCombinerFactory.getCombiner(key).apply(resolve(key, oldValue), resolve(key, newValue));
+                return offload(combined);
             });
         }
-        return new SequenceContext(this.executionId, newMap, this.typeCombinerFactory);
+        Map<NodeKey<?>, Long> newSizes = null;
+        if (this.bindings.sizeLimits() != null) {
+            newSizes = new LinkedHashMap<>(getRetainedSizes());
+            for (NodeKey<?> key : other.contextMap.keySet()) {
+                Object value = newMap.get(key);
+                if (value != this.contextMap.get(key)) {
+                    newSizes.put(key, SizeEstimator.estimate(value));
+                }
+            }
+            enforceSizeLimits(newMap, newSizes);
+        }
+        Map<NodeKey<?>, String> newFingerprints = null;
+        if (this.fingerprints != null) {
+            // A fingerprint only stays valid for values the merge left untouched.
+            newFingerprints = new HashMap<>(this.fingerprints);
+            newFingerprints.keySet().removeIf(key -> !Objects.equals(newMap.get(key), this.contextMap.get(key)));
+        }
+        SequenceContext merged = new SequenceContext(this.executionId, newMap, this.typeCombinerFactory, newFingerprints, this.priorContext, this.bindings);
+        merged.retainedSizes = newSizes == null ? null : Collections.unmodifiableMap(newSizes);
+        return merged.recordRunning();
+    }
+
+    /**
+     * Applies the size limits to the values a new context is about to hold: past the soft limit, offloads the
+     * largest values or warns, and past the hard limit, fails.
+     *
+     * @param values The values, whose offloaded entries are replaced by their references.
+     * @param sizes  The estimated size of every value, updated as values are offloaded.
+     */
+    private void enforceSizeLimits(Map<NodeKey<?>, Object> values, Map<NodeKey<?>, Long> sizes) {
+        ContextSizeLimits limits = this.bindings.sizeLimits();
+        ClaimCheck claimCheck = this.bindings.claimCheck();
+        long total = sizes.values().stream().mapToLong(Long::longValue).sum();
+        long softLimit = limits.softLimitBytes();
+        if (total > softLimit && limits.softLimitAction() == ContextSizeLimits.SoftLimitAction.OFFLOAD && claimCheck != null) {
+            for (NodeKey<?> key : SizeEstimator.largestFirst(sizes)) {
+                if (total <= softLimit) {
+                    break;
+                }
+                Object value = values.get(key);
+                Object offloaded = value instanceof BlobReference ? value : claimCheck.offloadAlways(value);
+                if (offloaded != value) {
+                    long size = SizeEstimator.estimate(offloaded);
+                    total += size - sizes.get(key);
+                    values.put(key, offloaded);
+                    sizes.put(key, size);
+                }
+            }
+        }
+        if (total > limits.hardLimitBytes()) {
+            throw new ContextSizeExceededException(this.executionId.id(), SizeEstimator.largestFirst(sizes).get(0).id(),
+                    total, limits.hardLimitBytes());
+        }
+        if (total > softLimit && getRetainedSize() <= softLimit) {
+            reportSoftLimit(total, sizes);
+        }
+    }
+
+    /**
+     * Reports a context that has just crossed its soft limit, to the flight recorder and the limits' listener.
+     * Nothing is formatted unless one of them is listening.
+     */
+    private void reportSoftLimit(long total, Map<NodeKey<?>, Long> sizes) {
+        FlightEvents.ContextSizeWarning event = new FlightEvents.ContextSizeWarning();
+        Consumer<ContextFootprint> listener = this.bindings.sizeLimits().softLimitListener();
+        if (!event.shouldCommit() && listener == null) {
+            return;
+        }
+        Map<String, Long> bytesByKey = new LinkedHashMap<>();
+        for (NodeKey<?> key : SizeEstimator.largestFirst(sizes)) {
+            bytesByKey.put(key.id(), sizes.get(key));
+        }
+        if (event.shouldCommit()) {
+            StringBuilder largest = new StringBuilder();
+            bytesByKey.entrySet().stream().limit(3).forEach(entry -> largest.append(largest.isEmpty() ? "" : ", ")
+                    .append(entry.getKey()).append(" (").append(entry.getValue()).append(")"));
+            event.executionId = this.executionId.id();
+            event.retainedBytes = total;
+            event.softLimitBytes = this.bindings.sizeLimits().softLimitBytes();
+            event.largestKeys = largest.toString();
+            event.commit();
+        }
+        if (listener != null) {
+            listener.accept(new ContextFootprint(this.executionId.id(), total, Collections.unmodifiableMap(bytesByKey)));
+        }
+    }
+
+    /**
+     * Returns a copy of this context that runs in incremental mode: nodes record the fingerprints of
+     * their inputs, and may reuse the outputs of the given prior context when those fingerprints match.
+     * Child contexts created for forks are never incremental.
+     *
+     * @param priorContext The context of an earlier incremental run, or {@code null} if there is none.
+     * @return A new, incremental SequenceContext.
+     */
+    public SequenceContext asIncremental(SequenceContext priorContext) {
+        return new SequenceContext(this.executionId, this.contextMap, this.typeCombinerFactory, new HashMap<>(), priorContext, this.bindings);
+    }
+
+    /**
+     * Returns a copy of this context that offloads values larger than the claim check's threshold to its
+     * {@link BlobStore}, and resolves the {@link BlobReference}s it holds through it. Contexts loaded from
+     * persistence need a claim check attached before offloaded values can be read.
+     *
+     * @param claimCheck The claim check to use.
+     * @return A new SequenceContext that uses the given claim check.
+     */
+    public SequenceContext withClaimCheck(ClaimCheck claimCheck) {
+        return new SequenceContext(this.executionId, this.contextMap, this.typeCombinerFactory, this.fingerprints,
+                this.priorContext, this.bindings.withClaimCheck(Objects.requireNonNull(claimCheck)));
+    }
+
+    /**
+     * Returns a copy of this context that must be finished by the given deadline, or by its current one if
+     * that is earlier. Child contexts created for forks inherit the deadline. The deadline is not persisted.
+     *
+     * @param deadline The deadline.
+     * @return A new SequenceContext with the earlier of the two deadlines.
+     */
+    public SequenceContext withDeadline(Deadline deadline) {
+        return new SequenceContext(this.executionId, this.contextMap, this.typeCombinerFactory, this.fingerprints,
+                this.priorContext, this.bindings.withDeadline(Deadline.earliest(this.bindings.deadline(), Objects.requireNonNull(deadline))));
+    }
+
+    /**
+     * Returns the deadline of the execution, if it has one.
+     */
+    public Optional<Deadline> getDeadline() {
+        return Optional.ofNullable(this.bindings.deadline());
+    }
+
+    /**
+     * Returns a copy of this context whose nodes, forks and merges record spans in the given profile.
+     * Child contexts created for forks record in it too.
+     */
+    SequenceContext withProfiler(ProfileRecorder profiler) {
+        return new SequenceContext(this.executionId, this.contextMap, this.typeCombinerFactory, this.fingerprints,
+                this.priorContext, this.bindings.withProfiler(profiler));
+    }
+
+    /**
+     * Returns the recorder of the execution's profile, or {@code null} if it is not profiled.
+     */
+    ProfileRecorder getProfiler() {
+        return this.bindings.profiler();
+    }
+
+    /**
+     * Returns a copy of this context that is recorded, along with the contexts derived from it, as the latest
+     * context of its execution until the execution ends.
+     */
+    SequenceContext withRunningContexts(RunningContexts running) {
+        SequenceContext recorded = new SequenceContext(this.executionId, this.contextMap, this.typeCombinerFactory, this.fingerprints,
+                this.priorContext, this.bindings.withRunning(Objects.requireNonNull(running)));
+        recorded.retainedSizes = this.retainedSizes;
+        running.begin(recorded);
+        return recorded;
+    }
+
+    private SequenceContext recordRunning() {
+        if (this.bindings.running() != null) {
+            this.bindings.running().update(this);
+        }
+        return this;
+    }
+
+    /**
+     * Returns a copy of this context whose growth is checked against the given limits.
+     * Child contexts created for forks are checked against them too.
+     */
+    SequenceContext withSizeLimits(ContextSizeLimits sizeLimits) {
+        SequenceContext limited = new SequenceContext(this.executionId, this.contextMap, this.typeCombinerFactory, this.fingerprints,
+                this.priorContext, this.bindings.withSizeLimits(Objects.requireNonNull(sizeLimits)));
+        limited.retainedSizes = this.retainedSizes;
+        return limited;
+    }
+
+    /**
+     * Returns the estimated number of bytes of heap retained by each value of this context, in the order the
+     * values were stored. Values offloaded by a {@link ClaimCheck} count as their {@link BlobReference}.
+     * The estimate is computed on first use, and maintained as values are added while size limits apply.
+     */
+    public Map<NodeKey<?>, Long> getRetainedSizes() {
+        Map<NodeKey<?>, Long> sizes = this.retainedSizes;
+        if (sizes == null) {
+            Map<NodeKey<?>, Long> computed = new LinkedHashMap<>();
+            for (Map.Entry<NodeKey<?>, Object> entry : this.contextMap.entrySet()) {
+                computed.put(entry.getKey(), SizeEstimator.estimate(entry.getValue()));
+            }
+            sizes = Collections.unmodifiableMap(computed);
+            this.retainedSizes = sizes;
+        }
+        return sizes;
+    }
+
+    /**
+     * Returns the estimated number of bytes of heap retained by the values of this context.
+     *
+     * @see #getRetainedSizes()
+     */
+    public long getRetainedSize() {
+        return getRetainedSizes().values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public boolean isIncremental() {
+        return this.fingerprints != null;
+    }
+
+    /**
+     * Returns the recorded input fingerprints, or {@code null} if the context is not incremental.
+     */
+    Map<NodeKey<?>, String> getFingerprints() {
+        return this.fingerprints == null ? null : Collections.unmodifiableMap(this.fingerprints);
+    }
+
+    /**
+     * Looks up the output the prior context recorded for the given key, provided it was computed from
+     * an input with the same fingerprint.
+     */
+    <T> Optional<T> getPriorOutput(NodeKey<T> key, String fingerprint) {
+        if (fingerprint == null || this.priorContext == null || this.priorContext.fingerprints == null
+                || !fingerprint.equals(this.priorContext.fingerprints.get(key))) {
+            return Optional.empty();
+        }
+        // Resolved through this context's claim check, as a persisted prior context carries none.
+        return cast(key, resolve(key, this.priorContext.contextMap.get(key)));
     }
 
+    /**
+     * Returns the value stored under the given key. A value that was offloaded by a {@link ClaimCheck}
+     * is loaded from its {@link BlobStore}.
+     */
     public <T> Optional<T> get(NodeKey<T> key) {
-        Object value = contextMap.get(key);
+        return cast(key, resolve(key, contextMap.get(key)));
+    }
+
+    private static <T> Optional<T> cast(NodeKey<T> key, Object value) {
         if (key.outputType().isInstance(value)) {
             return Optional.of(key.outputType().cast(value));
         }
         return Optional.empty();
     }
 
+    private Object offload(Object value) {
+        ClaimCheck claimCheck = this.bindings.claimCheck();
+        return claimCheck == null ? value : claimCheck.offload(value);
+    }
+
+    private Object resolve(NodeKey<?> key, Object value) {
+        if (!(value instanceof BlobReference reference) || key.outputType() == BlobReference.class) {
+            return value;
+        }
+        ClaimCheck claimCheck = this.bindings.claimCheck();
+        if (claimCheck == null) {
+            throw new IllegalStateException("The value for key '" + key.id()
+                    + "' was offloaded to a blob store, but no claim check is attached to the context.");
+        }
+        return claimCheck.resolve(reference);
+    }
+
     public <T> void remove(NodeKey<T> key) {
         contextMap.remove(key);
+        retainedSizes = null;
     }
 
+    /**
+     * Returns the raw values of this context. Offloaded values appear as their {@link BlobReference}.
+     */
     public Map<NodeKey<?>, Object> getContext() {
         return Collections.unmodifiableMap(this.contextMap);
     }
@@ -113,7 +493,7 @@ public class SequenceContext implements Serializable {
 
     @Serial
     private void writeObject(ObjectOutputStream out) throws IOException {
-        out.defaultWriteObject(); // Writes serialVersionUID and the final executionId field.
+        out.defaultWriteObject(); // Writes serialVersionUID, the executionId and the fingerprints.
         Map<NodeKey<?>, Object> serializableMap = new LinkedHashMap<>();
         for (Map.Entry<NodeKey<?>, Object> entry : this.contextMap.entrySet()) {
             if (entry.getValue() instanceof Serializable) {
@@ -125,8 +505,46 @@ public class SequenceContext implements Serializable {
 
     @Serial
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
-        in.defaultReadObject(); // Reads serialVersionUID and the final executionId field.
+        in.defaultReadObject(); // Reads serialVersionUID, the executionId and the fingerprints.
         this.contextMap = new LinkedHashMap<>((Map<NodeKey<?>, Object>) in.readObject());
         this.typeCombinerFactory = new DefaultTypeCombinerFactory();
+        this.bindings = Bindings.NONE;
+    }
+
+    /**
+     * The settings of the execution a context belongs to, which every context derived from it inherits: child
+     * contexts of forks as well as the contexts returned by {@code put} and {@code merge}. They are never
+     * persisted; a context loaded from storage has none until they are attached again.
+     *
+     * @param claimCheck The claim check that offloads and resolves large values, or {@code null}.
+     * @param deadline   The deadline of the execution, or {@code null}.
+     * @param profiler   The recorder of the execution's profile, or {@code null}.
+     * @param sizeLimits The limits the context's growth is checked against, or {@code null}.
+     * @param running    Where the execution's latest context is recorded while it runs, or {@code null}.
+     */
+    private record Bindings(ClaimCheck claimCheck, Deadline deadline, ProfileRecorder profiler, ContextSizeLimits sizeLimits,
+                            RunningContexts running) {
+
+        static final Bindings NONE = new Bindings(null, null, null, null, null);
+
+        Bindings withClaimCheck(ClaimCheck claimCheck) {
+            return new Bindings(claimCheck, this.deadline, this.profiler, this.sizeLimits, this.running);
+        }
+
+        Bindings withDeadline(Deadline deadline) {
+            return new Bindings(this.claimCheck, deadline, this.profiler, this.sizeLimits, this.running);
+        }
+
+        Bindings withProfiler(ProfileRecorder profiler) {
+            return new Bindings(this.claimCheck, this.deadline, profiler, this.sizeLimits, this.running);
+        }
+
+        Bindings withSizeLimits(ContextSizeLimits sizeLimits) {
+            return new Bindings(this.claimCheck, this.deadline, this.profiler, sizeLimits, this.running);
+        }
+
+        Bindings withRunning(RunningContexts running) {
+            return new Bindings(this.claimCheck, this.deadline, this.profiler, this.sizeLimits, running);
+        }
     }
 }
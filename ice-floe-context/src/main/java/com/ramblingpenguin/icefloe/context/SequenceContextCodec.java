@@ -0,0 +1,446 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.io.*;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.RecordComponent;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A compact binary format for persisting {@link SequenceContext}s.
+ * <p>
+ * Values are written according to their type: strings, boxed primitives and byte arrays directly, records
+ * through their canonical components, {@link ArrayList}s and immutable lists element by element, and anything
+ * else through Java serialization. Codecs registered for a {@link NodeKey} or a value type take precedence. Class names are
+ * written once per context and referenced by index afterwards. Unlike Java serialization, records and
+ * types with a registered codec do not need to be {@link Serializable}.
+ * <p>
+ * Encoded contexts start with a magic number and a version, and the body can optionally be deflate-compressed.
+ * {@link #decode(byte[])} still reads contexts written with plain Java serialization.
+ */
+public class SequenceContextCodec {
+
+    private static final int MAGIC = 0x49464358; // "IFCX"
+    private static final byte VERSION = 1;
+    private static final byte FLAG_COMPRESSED = 1;
+    private static final int DEFAULT_COMPRESSION_THRESHOLD = 4096;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_INT = 2;
+    private static final byte TAG_LONG = 3;
+    private static final byte TAG_DOUBLE = 4;
+    private static final byte TAG_FLOAT = 5;
+    private static final byte TAG_BOOLEAN = 6;
+    private static final byte TAG_BYTES = 7;
+    private static final byte TAG_RECORD = 8;
+    private static final byte TAG_LIST = 9;
+    private static final byte TAG_KEY_CODEC = 10;
+    private static final byte TAG_TYPE_CODEC = 11;
+    private static final byte TAG_SERIALIZED = 12;
+    private static final byte TAG_IMMUTABLE_LIST = 13;
+
+    private record RecordShape(Method[] accessors, Constructor<?> constructor) {
+    }
+
+    private final Map<NodeKey<?>, ValueCodec<?>> keyCodecs = new ConcurrentHashMap<>();
+    private final Map<Class<?>, ValueCodec<?>> typeCodecs = new ConcurrentHashMap<>();
+    private final Map<Class<?>, RecordShape> recordShapes = new ConcurrentHashMap<>();
+    private final boolean compress;
+    private final int compressionThreshold;
+
+    /**
+     * Creates a codec that does not compress.
+     */
+    public SequenceContextCodec() {
+        this(false, DEFAULT_COMPRESSION_THRESHOLD);
+    }
+
+    /**
+     * Creates a codec.
+     *
+     * @param compress             Whether to deflate-compress encoded contexts.
+     * @param compressionThreshold The encoded size in bytes below which contexts are not compressed.
+     */
+    public SequenceContextCodec(boolean compress, int compressionThreshold) {
+        this.compress = compress;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public <T> SequenceContextCodec registerCodec(NodeKey<T> key, ValueCodec<T> codec) {
+        this.keyCodecs.put(key, codec);
+        return this;
+    }
+
+    public <T> SequenceContextCodec registerCodec(Class<T> type, ValueCodec<T> codec) {
+        this.typeCodecs.put(type, codec);
+        return this;
+    }
+
+    /**
+     * Encodes a context. Values that cannot be encoded are skipped, as they are by Java serialization.
+     */
+    public byte[] encode(SequenceContext context) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        List<String> classNames = new ArrayList<>();
+        Map<String, Integer> classIndex = new HashMap<>();
+
+        out.writeUTF(context.getExecutionId().id());
+        List<Map.Entry<NodeKey<?>, byte[]>> entries = new ArrayList<>();
+        for (Map.Entry<NodeKey<?>, Object> entry : context.getContext().entrySet()) {
+            ByteArrayOutputStream value = new ByteArrayOutputStream();
+            try {
+                writeValue(new DataOutputStream(value), entry.getKey(), entry.getValue(), classIndex, classNames);
+            } catch (NotSerializableException e) {
+                continue;
+            }
+            entries.add(Map.entry(entry.getKey(), value.toByteArray()));
+        }
+
+        Map<NodeKey<?>, String> fingerprints = context.getFingerprints();
+        out.writeBoolean(fingerprints != null);
+        if (fingerprints != null) {
+            out.writeInt(fingerprints.size());
+            for (Map.Entry<NodeKey<?>, String> entry : fingerprints.entrySet()) {
+                writeKey(out, entry.getKey(), classIndex, classNames);
+                out.writeUTF(entry.getValue());
+            }
+        }
+
+        out.writeInt(entries.size());
+        for (Map.Entry<NodeKey<?>, byte[]> entry : entries) {
+            writeKey(out, entry.getKey(), classIndex, classNames);
+            out.write(entry.getValue());
+        }
+
+        // The class name table is needed before anything else when decoding, so it is written first.
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(encoded);
+        header.writeInt(MAGIC);
+        header.writeByte(VERSION);
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream payloadOut = new DataOutputStream(payload);
+        payloadOut.writeInt(classNames.size());
+        for (String className : classNames) {
+            payloadOut.writeUTF(className);
+        }
+        body.writeTo(payloadOut);
+
+        if (compress && payload.size() >= compressionThreshold) {
+            header.writeByte(FLAG_COMPRESSED);
+            header.writeInt(payload.size());
+            header.write(deflate(payload.toByteArray()));
+        } else {
+            header.writeByte(0);
+            payload.writeTo(header);
+        }
+        return encoded.toByteArray();
+    }
+
+    /**
+     * Decodes a context written by {@link #encode(SequenceContext)} or by Java serialization.
+     */
+    public SequenceContext decode(byte[] bytes) throws IOException, ClassNotFoundException {
+        if (bytes.length >= 2 && (bytes[0] & 0xFF) == 0xAC && (bytes[1] & 0xFF) == 0xED) {
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                return (SequenceContext) ois.readObject();
+            }
+        }
+
+        DataInputStream header = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (header.readInt() != MAGIC) {
+            throw new StreamCorruptedException("Not an encoded SequenceContext.");
+        }
+        byte version = header.readByte();
+        if (version != VERSION) {
+            throw new StreamCorruptedException("Unsupported SequenceContext encoding version " + version + ".");
+        }
+        byte flags = header.readByte();
+        byte[] payload;
+        if ((flags & FLAG_COMPRESSED) != 0) {
+            int length = header.readInt();
+            payload = inflate(header.readAllBytes(), length);
+        } else {
+            payload = header.readAllBytes();
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        List<Class<?>> classes = new ArrayList<>();
+        int classCount = in.readInt();
+        for (int i = 0; i < classCount; i++) {
+            classes.add(loadClass(in.readUTF()));
+        }
+
+        ExecutionId executionId = new ExecutionId(in.readUTF());
+        Map<NodeKey<?>, String> fingerprints = null;
+        if (in.readBoolean()) {
+            fingerprints = new HashMap<>();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                fingerprints.put(readKey(in, classes), in.readUTF());
+            }
+        }
+        Map<NodeKey<?>, Object> values = new LinkedHashMap<>();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            NodeKey<?> key = readKey(in, classes);
+            values.put(key, readValue(in, key, classes));
+        }
+        return SequenceContext.restore(executionId, values, fingerprints, new DefaultTypeCombinerFactory());
+    }
+
+    // --- Values ---
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void writeValue(DataOutputStream out, NodeKey<?> key, Object value,
+                            Map<String, Integer> classIndex, List<String> classNames) throws IOException {
+        ValueCodec keyCodec = key == null ? null : keyCodecs.get(key);
+        if (keyCodec != null && value != null) {
+            out.writeByte(TAG_KEY_CODEC);
+            keyCodec.write(out, value);
+            return;
+        }
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+        } else if (typeCodecs.containsKey(value.getClass())) {
+            out.writeByte(TAG_TYPE_CODEC);
+            writeClass(out, value.getClass(), classIndex, classNames);
+            ((ValueCodec) typeCodecs.get(value.getClass())).write(out, value);
+        } else if (value instanceof String string) {
+            out.writeByte(TAG_STRING);
+            writeString(out, string);
+        } else if (value instanceof Integer integer) {
+            out.writeByte(TAG_INT);
+            out.writeInt(integer);
+        } else if (value instanceof Long longValue) {
+            out.writeByte(TAG_LONG);
+            out.writeLong(longValue);
+        } else if (value instanceof Double doubleValue) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble(doubleValue);
+        } else if (value instanceof Float floatValue) {
+            out.writeByte(TAG_FLOAT);
+            out.writeFloat(floatValue);
+        } else if (value instanceof Boolean booleanValue) {
+            out.writeByte(TAG_BOOLEAN);
+            out.writeBoolean(booleanValue);
+        } else if (value instanceof byte[] bytes) {
+            out.writeByte(TAG_BYTES);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (value instanceof Record) {
+            out.writeByte(TAG_RECORD);
+            writeClass(out, value.getClass(), classIndex, classNames);
+            for (Method accessor : recordShape(value.getClass()).accessors()) {
+                writeValue(out, null, invoke(accessor, value), classIndex, classNames);
+            }
+        } else if (value.getClass() == ArrayList.class || isImmutableList(value)) {
+            List<?> list = (List<?>) value;
+            out.writeByte(value.getClass() == ArrayList.class ? TAG_LIST : TAG_IMMUTABLE_LIST);
+            out.writeInt(list.size());
+            for (Object element : list) {
+                writeValue(out, null, element, classIndex, classNames);
+            }
+        } else if (value instanceof Serializable) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+                oos.writeObject(value);
+            }
+            out.writeByte(TAG_SERIALIZED);
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        } else {
+            throw new NotSerializableException(value.getClass().getName());
+        }
+    }
+
+    private Object readValue(DataInputStream in, NodeKey<?> key, List<Class<?>> classes) throws IOException, ClassNotFoundException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return readString(in);
+            case TAG_INT:
+                return in.readInt();
+            case TAG_LONG:
+                return in.readLong();
+            case TAG_DOUBLE:
+                return in.readDouble();
+            case TAG_FLOAT:
+                return in.readFloat();
+            case TAG_BOOLEAN:
+                return in.readBoolean();
+            case TAG_BYTES:
+                return in.readNBytes(in.readInt());
+            case TAG_RECORD: {
+                RecordShape shape = recordShape(classes.get(in.readInt()));
+                Object[] components = new Object[shape.accessors().length];
+                for (int i = 0; i < components.length; i++) {
+                    components[i] = readValue(in, null, classes);
+                }
+                try {
+                    return shape.constructor().newInstance(components);
+                } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+                    throw new InvalidObjectException("Failed to construct record " + shape.constructor().getDeclaringClass().getName());
+                }
+            }
+            case TAG_LIST:
+            case TAG_IMMUTABLE_LIST: {
+                int size = in.readInt();
+                ArrayList<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in, null, classes));
+                }
+                return tag == TAG_LIST ? list : Collections.unmodifiableList(list);
+            }
+            case TAG_KEY_CODEC: {
+                ValueCodec<?> codec = keyCodecs.get(key);
+                if (codec == null) {
+                    throw new InvalidObjectException("No codec registered for key " + key.id());
+                }
+                return codec.read(in);
+            }
+            case TAG_TYPE_CODEC: {
+                Class<?> type = classes.get(in.readInt());
+                ValueCodec<?> codec = typeCodecs.get(type);
+                if (codec == null) {
+                    throw new InvalidObjectException("No codec registered for type " + type.getName());
+                }
+                return codec.read(in);
+            }
+            case TAG_SERIALIZED: {
+                byte[] bytes = in.readNBytes(in.readInt());
+                try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    return ois.readObject();
+                }
+            }
+            default:
+                throw new StreamCorruptedException("Unknown value tag " + tag);
+        }
+    }
+
+    /**
+     * Matches the lists returned by {@code List.of}, {@code List.copyOf} and {@code Stream.toList}.
+     */
+    private static boolean isImmutableList(Object value) {
+        return value instanceof List && value.getClass().getName().startsWith("java.util.ImmutableCollections$List");
+    }
+
+    private RecordShape recordShape(Class<?> type) {
+        return recordShapes.computeIfAbsent(type, recordType -> {
+            RecordComponent[] components = recordType.getRecordComponents();
+            Method[] accessors = new Method[components.length];
+            Class<?>[] parameterTypes = new Class<?>[components.length];
+            for (int i = 0; i < components.length; i++) {
+                accessors[i] = components[i].getAccessor();
+                accessors[i].setAccessible(true);
+                parameterTypes[i] = components[i].getType();
+            }
+            try {
+                Constructor<?> constructor = recordType.getDeclaredConstructor(parameterTypes);
+                constructor.setAccessible(true);
+                return new RecordShape(accessors, constructor);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException("Record " + recordType.getName() + " has no canonical constructor.", e);
+            }
+        });
+    }
+
+    private static Object invoke(Method accessor, Object record) throws IOException {
+        try {
+            return accessor.invoke(record);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new InvalidObjectException("Failed to read component " + accessor.getName() + " of " + record.getClass().getName());
+        }
+    }
+
+    // --- Keys, classes and strings ---
+
+    private static void writeKey(DataOutputStream out, NodeKey<?> key,
+                                 Map<String, Integer> classIndex, List<String> classNames) throws IOException {
+        writeString(out, key.id());
+        writeClass(out, key.outputType(), classIndex, classNames);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static NodeKey<?> readKey(DataInputStream in, List<Class<?>> classes) throws IOException {
+        String id = readString(in);
+        return new NodeKey(id, classes.get(in.readInt()));
+    }
+
+    private static void writeClass(DataOutputStream out, Class<?> type,
+                                   Map<String, Integer> classIndex, List<String> classNames) throws IOException {
+        Integer index = classIndex.get(type.getName());
+        if (index == null) {
+            index = classNames.size();
+            classIndex.put(type.getName(), index);
+            classNames.add(type.getName());
+        }
+        out.writeInt(index);
+    }
+
+    private static Class<?> loadClass(String name) throws ClassNotFoundException {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        return Class.forName(name, false, loader != null ? loader : SequenceContextCodec.class.getClassLoader());
+    }
+
+    /**
+     * Writes a string as length-prefixed UTF-8, which unlike {@link DataOutput#writeUTF} has no 64 KiB limit.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+    }
+
+    // --- Compression ---
+
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes, int length) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes);
+            byte[] result = new byte[length];
+            int offset = 0;
+            while (offset < length && !inflater.finished()) {
+                int inflated = inflater.inflate(result, offset, length - offset);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new EOFException("Compressed SequenceContext is truncated.");
+                }
+                offset += inflated;
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new StreamCorruptedException("Corrupt compressed SequenceContext: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.ramblingpenguin.icefloe.context;
 
 import java.io.IOException;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -35,4 +37,46 @@ public interface SequenceContextPersistence {
      * @throws IOException If an error occurs during retrieval.
      */
     List<String> listStoredExecutionIds() throws IOException;
+
+    /**
+     * Lists the stored execution IDs whose root execution was created in the given time range, in creation
+     * order. This relies on IDs from the default {@link IdGenerator#ulid()} generator, whose lexicographic
+     * order is their creation order; IDs that do not start with a ULID are never listed. The default
+     * implementation filters {@link #listStoredExecutionIds()}.
+     *
+     * @param from The start of the range, inclusive.
+     * @param to   The end of the range, exclusive.
+     * @return The matching execution IDs, sorted.
+     * @throws IOException If an error occurs during retrieval.
+     */
+    default List<String> listStoredExecutionIds(Instant from, Instant to) throws IOException {
+        String lower = Ulid.lowerBound(from);
+        String upper = Ulid.lowerBound(to);
+        return listStoredExecutionIds().stream()
+                .filter(id -> id.compareTo(lower) >= 0 && id.compareTo(upper) < 0 && Ulid.timestamp(id).isPresent())
+                .sorted()
+                .toList();
+    }
+
+    /**
+     * Deletes the sequence context stored for a specific execution ID, if there is one.
+     *
+     * @param executionId The unique identifier for the execution.
+     * @throws IOException If an error occurs during deletion.
+     */
+    void deleteState(String executionId) throws IOException;
+
+    /**
+     * Deletes the sequence contexts stored for the given execution IDs. The default implementation calls
+     * {@link #deleteState(String)} for each; implementations that force writes to disk should override it to
+     * do so once for the whole batch.
+     *
+     * @param executionIds The unique identifiers of the executions.
+     * @throws IOException If an error occurs during deletion.
+     */
+    default void deleteStates(Collection<String> executionIds) throws IOException {
+        for (String executionId : executionIds) {
+            deleteState(executionId);
+        }
+    }
 }
@@ -0,0 +1,141 @@
+package com.ramblingpenguin.icefloe.context;
+
+import com.ramblingpenguin.icefloe.core.metrics.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The counters and queue and run time histograms of the executions of one sequence. Every update is a
+ * {@link LongAdder} increment or a striped histogram update, so concurrent executions do not contend.
+ */
+public final class SequenceMetrics implements SequenceMetricsMXBean {
+
+    private final String sequenceId;
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder suspended = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private final LatencyHistogram queueTimes = new LatencyHistogram();
+    private final LatencyHistogram runTimes = new LatencyHistogram();
+
+    SequenceMetrics(String sequenceId) {
+        this.sequenceId = sequenceId;
+    }
+
+    /**
+     * Records a submission.
+     *
+     * @return The time of the submission, to pass to {@link #run}.
+     */
+    long submitted() {
+        submitted.increment();
+        return System.nanoTime();
+    }
+
+    /**
+     * Runs an admitted execution, recording how long it was queued, how long it ran and how it ended. The
+     * outcome is recorded before the execution's future completes, so callers joining it see it counted.
+     */
+    <T> T run(long submittedAt, Supplier<T> work) {
+        long start = System.nanoTime();
+        queueTimes.record(start - submittedAt);
+        inFlight.increment();
+        try {
+            T result = work.get();
+            completed.increment();
+            return result;
+        } catch (ExecutionSuspendedException e) {
+            suspended.increment();
+            throw e;
+        } catch (RuntimeException | Error e) {
+            failed.increment();
+            throw e;
+        } finally {
+            inFlight.decrement();
+            runTimes.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records an execution that was rejected or cancelled before it started.
+     */
+    void notStarted() {
+        failed.increment();
+    }
+
+    /**
+     * Returns the sequence's metrics as of now.
+     */
+    public SequenceStats snapshot() {
+        LatencyHistogram.Snapshot queue = queueTimes.snapshot();
+        LatencyHistogram.Snapshot run = runTimes.snapshot();
+        return new SequenceStats(sequenceId, submitted.sum(), completed.sum(), failed.sum(), suspended.sum(),
+                inFlight.sum(), queue.percentile(0.5), queue.percentile(0.99),
+                run.percentile(0.5), run.percentile(0.99), run.max());
+    }
+
+    LatencyHistogram.Snapshot queueTimes() {
+        return queueTimes.snapshot();
+    }
+
+    LatencyHistogram.Snapshot runTimes() {
+        return runTimes.snapshot();
+    }
+
+    @Override
+    public String getSequenceId() {
+        return sequenceId;
+    }
+
+    @Override
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    @Override
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    @Override
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    @Override
+    public long getSuspended() {
+        return suspended.sum();
+    }
+
+    @Override
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    @Override
+    public long getQueueTimeP50Nanos() {
+        return queueTimes.snapshot().percentile(0.5);
+    }
+
+    @Override
+    public long getQueueTimeP99Nanos() {
+        return queueTimes.snapshot().percentile(0.99);
+    }
+
+    @Override
+    public long getRunTimeP50Nanos() {
+        return runTimes.snapshot().percentile(0.5);
+    }
+
+    @Override
+    public long getRunTimeP99Nanos() {
+        return runTimes.snapshot().percentile(0.99);
+    }
+
+    @Override
+    public long getRunTimeMaxNanos() {
+        return runTimes.snapshot().max();
+    }
+}
@@ -0,0 +1,29 @@
+package com.ramblingpenguin.icefloe.context;
+
+/**
+ * The JMX view of the executions of one sequence in a {@link SequenceService}. Times are in nanoseconds.
+ */
+public interface SequenceMetricsMXBean {
+
+    String getSequenceId();
+
+    long getSubmitted();
+
+    long getCompleted();
+
+    long getFailed();
+
+    long getSuspended();
+
+    long getInFlight();
+
+    long getQueueTimeP50Nanos();
+
+    long getQueueTimeP99Nanos();
+
+    long getRunTimeP50Nanos();
+
+    long getRunTimeP99Nanos();
+
+    long getRunTimeMaxNanos();
+}
@@ -35,4 +35,15 @@ public class SequenceRegistry {
     public <I, O> Optional<Node<I, O>> get(SequenceKey<I, O> id) {
         return Optional.ofNullable((Node<I, O>) sequences.get(id));
     }
+
+    /**
+     * Retrieves a registered {@link ContextualSequence} by its ID.
+     *
+     * @param id The ID of the sequence to retrieve.
+     * @return An {@link Optional} containing the sequence if found, otherwise empty.
+     */
+    @SuppressWarnings("unchecked")
+    public <I> Optional<ContextualSequence<I>> getContextual(SequenceKey<I, SequenceContext> id) {
+        return Optional.ofNullable((ContextualSequence<I>) sequences.get(id));
+    }
 }
@@ -2,12 +2,30 @@ package com.ramblingpenguin.icefloe.context;
 
 import com.ramblingpenguin.glacier.lifecycle.Startable;
 import com.ramblingpenguin.glacier.lifecycle.Stoppable;
+import com.ramblingpenguin.icefloe.core.Deadline;
+import com.ramblingpenguin.icefloe.core.DeadlineExceededException;
 import com.ramblingpenguin.icefloe.core.Node;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.lang.System.Logger.Level;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
 
 /**
  * A service that manages the lifecycle, execution, and persistence of registered sequences.
@@ -15,58 +33,128 @@ import java.util.concurrent.*;
  */
 public class SequenceService implements Startable, Stoppable {
 
+    private static final System.Logger LOGGER = System.getLogger(SequenceService.class.getName());
+    private static final long DEFAULT_MAX_ACTIVE_CONTEXTS = 10_000;
+    private static final long DEFAULT_MAX_IDEMPOTENCY_KEYS = 100_000;
+    private static final Duration DEFAULT_IDEMPOTENCY_TTL = Duration.ofHours(24);
+    private static final int DEFAULT_RETAINED_PROFILES = 100;
+    private static final Duration TIMEOUT_RETRY_DELAY = Duration.ofSeconds(1);
+
     private final SequenceRegistry registry;
     private final ExecutorService executor;
     private final TypeCombinerFactory typeCombinerFactory;
     private final SequenceContextPersistence persistence;
-    private final Map<String, SequenceContext> activeContexts = new ConcurrentHashMap<>();
+    private final SequenceCheckpointer checkpointer;
+    private final ClaimCheck claimCheck;
+    private final ContextStore activeContexts;
+    private final RunningContexts runningContexts = new RunningContexts();
+    private final int warmUpParallelism;
+    private final RecoveryEngine recovery;
+    private final AdmissionController admission;
+    private final PartitionedMailboxes partitions = new PartitionedMailboxes();
+    private final DeduplicationStore deduplication;
+    private final Duration defaultTimeout;
+    private final HibernationStore hibernation;
+    private final ExecutionProfiler profiler;
+    private final ServiceMetrics metrics;
+    private final ExecutionCapture capture;
+    private volatile CompletableFuture<Void> ready = CompletableFuture.completedFuture(null);
     private boolean isRunning = false;
 
-    private SequenceService(
-            SequenceRegistry registry,
-            ExecutorService executor,
-            TypeCombinerFactory typeCombinerFactory,
-            SequenceContextPersistence persistence) {
-        this.registry = registry;
-        this.executor = executor;
-        this.typeCombinerFactory = typeCombinerFactory;
-        this.persistence = persistence;
+    private SequenceService(Builder builder) {
+        this.registry = builder.registry;
+        this.executor = builder.executor;
+        this.typeCombinerFactory = builder.typeCombinerFactory;
+        this.metrics = new ServiceMetrics(this::getInFlightExecutions, this::getParkedExecutions, this::getContextStoreStats);
+        this.persistence = builder.persistence == null ? null : new TimedPersistence(builder.persistence, metrics);
+        this.checkpointer = builder.checkpointer;
+        this.claimCheck = builder.claimCheck;
+        this.warmUpParallelism = builder.warmUpParallelism;
+        this.defaultTimeout = builder.defaultTimeout;
+        this.hibernation = builder.hibernation;
+        this.profiler = builder.profiler;
+        this.capture = builder.capture;
+        this.admission = new AdmissionController(executor, builder.maxInFlight, builder.maxQueuedPerSequence,
+                builder.rejectionPolicy, builder.maxQueueTime, builder.flowWeights, builder.defaultFlowWeight);
+        this.recovery = builder.recoveryParallelism > 0
+                ? new RecoveryEngine(this::resume, builder.recoveryParallelism, builder.recoveryResumesPerSecond)
+                : null;
+        // Without persistence, evicting a context loses it, so the memory tier is only bounded on request.
+        long maxActiveContextWeight = builder.maxActiveContextWeight != null ? builder.maxActiveContextWeight
+                : persistence != null ? DEFAULT_MAX_ACTIVE_CONTEXTS : Long.MAX_VALUE;
+        this.activeContexts = new ContextStore(persistence, builder.contextWeigher, maxActiveContextWeight,
+                builder.completedExecutionTtl, this::attachClaimCheck, Clock.systemUTC(),
+                builder.expectedExecutions > 0 ? new BloomFilter(builder.expectedExecutions, builder.falsePositiveRate) : null,
+                executor);
+        try {
+            this.deduplication = new DeduplicationStore(builder.idempotencyDirectory, builder.maxIdempotencyKeys,
+                    builder.idempotencyTtl, Clock.systemUTC(), this::loadState);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open the idempotency journal", e);
+        }
     }
 
     public static Builder builder() {
         return new Builder();
     }
 
+    /**
+     * Starts the service. Persisted contexts are not loaded: the IDs in persistence are indexed in the
+     * background, and contexts are read on demand or preloaded by the optional warm-up. Until the index is
+     * built, every lookup reads through to persistence.
+     * <p>
+     * If recovery is enabled, the executions the checkpointer found unfinished are resumed in the background.
+     * Their sequences must be registered before the service is started.
+     *
+     * @see #whenReady()
+     * @see #getRecoveryProgress()
+     */
     public void start() {
         if (!isRunning) {
             isRunning = true;
             if (persistence != null) {
-                try {
-                    for (String executionId : persistence.listStoredExecutionIds()) {
-                        SequenceContext context = persistence.loadState(executionId);
-                        if (context != null) {
-                            activeContexts.put(executionId, context);
-                        }
-                    }
-                } catch (IOException | ClassNotFoundException e) {
-                    throw new RuntimeException("Failed to load persisted contexts", e);
-                }
+                ready = CompletableFuture.runAsync(this::indexPersistedContexts, executor);
+            }
+            if (recovery != null) {
+                recovery.start(getResumableExecutions());
+            }
+            if (hibernation != null) {
+                hibernation.startTimers(this::wakeTimedOut);
             }
         }
     }
 
+    /**
+     * Returns a future that completes once the persisted IDs are indexed and the warm-up, if any, has finished.
+     */
+    public CompletableFuture<Void> whenReady() {
+        return ready;
+    }
+
+    private void indexPersistedContexts() {
+        List<String> executionIds;
+        try {
+            executionIds = persistence.listStoredExecutionIds();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to index persisted contexts", e);
+            throw new UncheckedIOException(e);
+        }
+        activeContexts.index(executionIds);
+        if (warmUpParallelism > 0) {
+            activeContexts.warmUp(executionIds, warmUpParallelism, executor);
+        }
+    }
+
+    /**
+     * Stops the service. Running executions are given five seconds to finish; the stores they write to are
+     * flushed and closed only once they have, so their last records are not lost.
+     */
     public void stop() {
         if (isRunning) {
-            isRunning = false;
-            if (persistence != null) {
-                for (Map.Entry<String, SequenceContext> entry : activeContexts.entrySet()) {
-                    try {
-                        persistence.saveState(entry.getKey(), entry.getValue());
-                    } catch (IOException e) {
-                        System.err.println("Failed to save context for execution ID: " + entry.getKey());
-                    }
-                }
+            if (recovery != null) {
+                recovery.stop();
             }
+            isRunning = false;
             executor.shutdown();
             try {
                 if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
@@ -76,6 +164,30 @@ public class SequenceService implements Startable, Stoppable {
                 executor.shutdownNow();
                 Thread.currentThread().interrupt();
             }
+            activeContexts.flush();
+            if (checkpointer != null) {
+                checkpointer.flush();
+            }
+            try {
+                deduplication.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to close the idempotency journal", e);
+            }
+            if (hibernation != null) {
+                try {
+                    hibernation.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to close the hibernation store", e);
+                }
+            }
+            if (capture != null) {
+                try {
+                    capture.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to close the execution capture", e);
+                }
+            }
+            metrics.close();
         }
     }
 
@@ -84,17 +196,231 @@ public class SequenceService implements Startable, Stoppable {
     }
 
     public <I extends Serializable> CompletableFuture<SequenceContext> execute(SequenceKey<I, SequenceContext> sequenceKey, I input) {
+        return execute(sequenceKey, input, Priority.NORMAL);
+    }
+
+    /**
+     * Executes a registered sequence asynchronously in the given priority class.
+     */
+    public <I extends Serializable> CompletableFuture<SequenceContext> execute(SequenceKey<I, SequenceContext> sequenceKey,
+                                                                               I input,
+                                                                               Priority priority) {
+        return execute(sequenceKey, input, ExecutionOptions.defaults().withPriority(priority));
+    }
+
+    /**
+     * Executes a registered sequence asynchronously. If the service is at its in-flight limit, the execution
+     * waits in its sequence's queue until it is its priority class's and its tenant's turn; see
+     * {@link Builder#withAdmissionControl} and {@link Builder#withTenantWeight}.
+     * <p>
+     * If the options carry an idempotency key, a duplicate of an execution that is still running joins it,
+     * and a duplicate of one that succeeded recently returns its context without running; see
+     * {@link Builder#withDeduplication}.
+     * <p>
+     * The execution's deadline is the earlier of the options' deadline and its timeout, or the service's default
+     * timeout; see {@link Builder#withDefaultTimeout}. It travels with the context into every fork branch,
+     * time-based nodes wait no longer than the time left, and an execution that misses it fails with a
+     * {@link DeadlineExceededException}.
+     * <p>
+     * Cancelling the returned future cancels the execution: a queued execution never starts, and a running one
+     * is interrupted, along with its fork branches, blocked nodes, retries and loops. A cancelled execution is
+     * neither stored nor resumed. Executions with an idempotency key may be shared by several callers, so
+     * cancelling one caller's future leaves them running.
+     *
+     * @return A future completing with the final context, failing with a
+     * {@link java.util.concurrent.RejectedExecutionException} if the execution was not admitted, or with an
+     * {@link ExecutionSuspendedException} if it was parked to wait for an event.
+     */
+    public <I extends Serializable> CompletableFuture<SequenceContext> execute(SequenceKey<I, SequenceContext> sequenceKey,
+                                                                               I input,
+                                                                               ExecutionOptions options) {
         if (!isRunning) {
             throw new IllegalStateException("Service is not running.");
         }
         Node<I, SequenceContext> sequence = registry.<I, SequenceContext>get(sequenceKey)
                 .orElseThrow(() -> new IllegalStateException("Sequence with ID '" + sequenceKey.id() + "' not found."));
 
-        return CompletableFuture.supplyAsync(() -> {
-            SequenceContext finalContext = sequence.apply(input);
-            activeContexts.put(finalContext.getExecutionId().id(), finalContext);
+        Deadline deadline = deadlineOf(options);
+        if (options.idempotencyKey() != null) {
+            return deduplication.execute(sequenceKey.id(), options.idempotencyKey(),
+                    () -> admit(sequenceKey, sequence, input, options, deadline));
+        }
+        return admit(sequenceKey, sequence, input, options, deadline);
+    }
+
+    private Deadline deadlineOf(ExecutionOptions options) {
+        Duration timeout = options.timeout() != null ? options.timeout() : defaultTimeout;
+        return Deadline.earliest(options.deadline(), timeout == null ? null : Deadline.after(timeout));
+    }
+
+    /**
+     * Submits an execution whose run is the given node, applied to the input within the execution's deadline,
+     * profiling and capture.
+     */
+    private <I> CompletableFuture<SequenceContext> admit(SequenceKey<I, SequenceContext> sequenceKey,
+                                                         Node<I, SequenceContext> sequence,
+                                                         I input,
+                                                         ExecutionOptions options,
+                                                         Deadline deadline) {
+        long submittedAt = System.nanoTime();
+        return submit(sequenceKey.id(), options.tenant(), options.priority(), () -> Deadline.callWith(deadline, () -> {
+            // An execution that waited past its deadline in the queue is failed without starting.
+            Deadline.throwIfExpired();
+            ProfileRecorder recorder = profiler.recorderFor(options);
+            // A captured execution is profiled for its node timings even if the profiler did not pick it.
+            boolean captured = capture != null && capture.sample();
+            ProfileRecorder bound = recorder == null && captured ? new ProfileRecorder() : recorder;
+            long start = System.nanoTime();
+            SequenceContext finalContext = RunningContexts.callWith(runningContexts,
+                    () -> ProfileRecorder.callWith(bound, () -> sequence.apply(input)));
+            long runNanos = System.nanoTime() - start;
+            if (recorder != null) {
+                profiler.complete(sequenceKey.id(), finalContext.getExecutionId().id(), runNanos, recorder);
+            }
+            if (captured) {
+                capture.record(sequenceKey.id(), input, finalContext, submittedAt, runNanos, bound.spans());
+            }
+            activeContexts.putCompleted(finalContext.getExecutionId().id(), finalContext);
             return finalContext;
-        }, executor);
+        }));
+    }
+
+    /**
+     * Executes a registered sequence asynchronously, in order with the other executions of the same
+     * sequence whose input has the same partition key.
+     *
+     * @see #executeOrdered(SequenceKey, Serializable, Function, ExecutionOptions)
+     */
+    public <I extends Serializable> CompletableFuture<SequenceContext> executeOrdered(SequenceKey<I, SequenceContext> sequenceKey,
+                                                                                      I input,
+                                                                                      Function<? super I, ?> partitionKey) {
+        return executeOrdered(sequenceKey, input, partitionKey, ExecutionOptions.defaults());
+    }
+
+    /**
+     * Executes a registered sequence asynchronously, in order with the other executions of the same
+     * sequence whose input has the same partition key: an execution starts only once the one submitted
+     * before it for its partition has finished, successfully or not. Executions of different partitions run
+     * concurrently. No thread is held per partition, and a partition uses no memory once it has nothing
+     * outstanding, so any number of distinct keys can be used.
+     * <p>
+     * An execution waiting for its partition has not been admitted yet; once it starts it goes through
+     * admission control like any other execution.
+     *
+     * @param sequenceKey  The key of the registered sequence.
+     * @param input        The input for this run.
+     * @param partitionKey Extracts the partition key, such as an account or entity ID, from the input.
+     * @param options      The options the execution is admitted with.
+     * @return A future completing with the final context.
+     */
+    public <I extends Serializable> CompletableFuture<SequenceContext> executeOrdered(SequenceKey<I, SequenceContext> sequenceKey,
+                                                                                      I input,
+                                                                                      Function<? super I, ?> partitionKey,
+                                                                                      ExecutionOptions options) {
+        if (!isRunning) {
+            throw new IllegalStateException("Service is not running.");
+        }
+        Object key = Objects.requireNonNull(partitionKey.apply(input), "The partition key must not be null.");
+        return partitions.submit(List.of(sequenceKey.id(), key), () -> execute(sequenceKey, input, options));
+    }
+
+    /**
+     * Executes a registered sequence once for every input, reading the inputs lazily and keeping at most the
+     * configured window of executions outstanding, so arbitrarily many inputs run in constant memory.
+     * Each result is passed to the callback, in completion order or, if configured, in input order.
+     * Failed executions are reported as results too; they do not stop the bulk execution.
+     *
+     * @param sequenceKey The key of the registered sequence.
+     * @param inputs      The inputs, iterated once.
+     * @param options     The window, ordering, execution options and progress checkpoint.
+     * @param callback    Receives every result; calls are never concurrent.
+     * @return A future completing with the totals once every result has been passed to the callback.
+     */
+    public <I extends Serializable> CompletableFuture<BulkSummary> executeAll(SequenceKey<I, SequenceContext> sequenceKey,
+                                                                              Iterable<? extends I> inputs,
+                                                                              BulkOptions options,
+                                                                              Consumer<BulkResult<I>> callback) {
+        if (!isRunning) {
+            throw new IllegalStateException("Service is not running.");
+        }
+        return new BulkExecution<I>(inputs, options,
+                input -> execute(sequenceKey, input, options.executionOptions()), callback).start();
+    }
+
+    /**
+     * Executes a registered sequence once for every element of a stream.
+     *
+     * @see #executeAll(SequenceKey, Iterable, BulkOptions, Consumer)
+     */
+    public <I extends Serializable> CompletableFuture<BulkSummary> executeAll(SequenceKey<I, SequenceContext> sequenceKey,
+                                                                              Stream<? extends I> inputs,
+                                                                              BulkOptions options,
+                                                                              Consumer<BulkResult<I>> callback) {
+        Iterable<I> iterable = inputs.<I>map(input -> input)::iterator;
+        return executeAll(sequenceKey, iterable, options, callback);
+    }
+
+    /**
+     * Executes a registered sequence once for every input and publishes the results. The execution starts
+     * when the publisher is subscribed to, and only one subscriber is supported. A subscriber that falls
+     * behind eventually stops further inputs from being read.
+     *
+     * @see #executeAll(SequenceKey, Iterable, BulkOptions, Consumer)
+     */
+    public <I extends Serializable> Flow.Publisher<BulkResult<I>> executeAll(SequenceKey<I, SequenceContext> sequenceKey,
+                                                                             Iterable<? extends I> inputs,
+                                                                             BulkOptions options) {
+        if (!isRunning) {
+            throw new IllegalStateException("Service is not running.");
+        }
+        return subscriber -> {
+            SubmissionPublisher<BulkResult<I>> publisher = new SubmissionPublisher<>(executor, options.window());
+            publisher.subscribe(subscriber);
+            executeAll(sequenceKey, inputs, options, publisher::submit).whenComplete((summary, error) -> {
+                if (error == null) {
+                    publisher.close();
+                } else {
+                    publisher.closeExceptionally(error);
+                }
+            });
+        };
+    }
+
+    /**
+     * Executes a registered sequence once for every element of a stream and publishes the results.
+     *
+     * @see #executeAll(SequenceKey, Iterable, BulkOptions)
+     */
+    public <I extends Serializable> Flow.Publisher<BulkResult<I>> executeAll(SequenceKey<I, SequenceContext> sequenceKey,
+                                                                             Stream<? extends I> inputs,
+                                                                             BulkOptions options) {
+        Iterable<I> iterable = inputs.<I>map(input -> input)::iterator;
+        return executeAll(sequenceKey, iterable, options);
+    }
+
+    /**
+     * Executes a registered sequence in incremental mode, reusing the outputs of the prior context for
+     * every node whose input has not changed. The prior context is loaded once the execution starts, and the
+     * execution is admitted, timed out, profiled and captured like one started with
+     * {@link #execute(SequenceKey, Serializable, ExecutionOptions)} with default options.
+     *
+     * @param sequenceKey        The key of the registered sequence.
+     * @param input              The input for this run.
+     * @param priorExecutionId   The execution whose context should be reused, or {@code null} for a first run.
+     * @return A future completing with the final context of this run.
+     * @see ContextualSequence#applyIncrementally(Object, SequenceContext)
+     */
+    public <I extends Serializable> CompletableFuture<SequenceContext> executeIncrementally(
+            SequenceKey<I, SequenceContext> sequenceKey, I input, String priorExecutionId) {
+        if (!isRunning) {
+            throw new IllegalStateException("Service is not running.");
+        }
+        ContextualSequence<I> sequence = registry.getContextual(sequenceKey)
+                .orElseThrow(() -> new IllegalStateException("Sequence with ID '" + sequenceKey.id() + "' not found."));
+        ExecutionOptions options = ExecutionOptions.defaults();
+        Node<I, SequenceContext> incremental = in -> sequence.applyIncrementally(in,
+                priorExecutionId == null ? null : loadState(priorExecutionId));
+        return admit(sequenceKey, incremental, input, options, deadlineOf(options));
     }
 
     public <I extends Serializable> SequenceContext executeSync(SequenceKey<I, SequenceContext> id, I input) {
@@ -105,30 +431,297 @@ public class SequenceService implements Startable, Stoppable {
                 .orElseThrow(() -> new IllegalStateException("Sequence with ID '" + id + "' not found."));
 
         SequenceContext finalContext = sequence.apply(input);
-        activeContexts.put(finalContext.getExecutionId().id(), finalContext);
+        activeContexts.putCompleted(finalContext.getExecutionId().id(), finalContext);
         return finalContext;
     }
 
-    public void saveState(String executionId, SequenceContext context) throws IOException {
-        activeContexts.put(executionId, context);
-        persistence.saveState(executionId, context);
+    /**
+     * Returns the executions the configured {@link SequenceCheckpointer} found unfinished when it was opened.
+     */
+    public List<ResumableExecution> getResumableExecutions() {
+        return checkpointer == null ? List.of() : checkpointer.getResumableExecutions();
     }
 
-    public SequenceContext loadState(String executionId) {
-        if (activeContexts.containsKey(executionId)) {
-            return activeContexts.get(executionId);
+    /**
+     * Resumes an interrupted execution after its last completed step. The sequence it belongs to must
+     * be registered under the same ID it had when the execution started. Resumed executions are admitted
+     * with {@link Priority#LOW}, behind new traffic.
+     *
+     * @param execution The execution to resume, as returned by {@link #getResumableExecutions()}.
+     * @return A future completing with the final context of the execution.
+     */
+    public CompletableFuture<SequenceContext> resume(ResumableExecution execution) {
+        if (!isRunning) {
+            throw new IllegalStateException("Service is not running.");
+        }
+        ContextualSequence<?> sequence = registry.getContextual(execution.sequenceKey())
+                .orElseThrow(() -> new IllegalStateException("Sequence with ID '" + execution.sequenceKey().id() + "' not found."));
+
+        return submit(execution.sequenceKey().id(), null, Priority.LOW, () -> {
+            SequenceContext finalContext = sequence.resume(attachClaimCheck(execution.context()), execution.completedSteps());
+            activeContexts.putCompleted(finalContext.getExecutionId().id(), finalContext);
+            return finalContext;
+        });
+    }
+
+    /**
+     * Delivers an event to the execution parked under the given correlation ID and resumes it after its wait.
+     * The resumed execution is admitted like a new one; it may park again at a later wait.
+     * <p>
+     * An event for an execution that is not parked, for example because it has not reached its wait yet,
+     * or has been woken by its timer or another event, is not kept.
+     *
+     * @param correlationId The correlation ID the execution is waiting with.
+     * @param event         The event, stored in the context under the wait's event key.
+     * @return A future completing with the final context, or failing with a {@link NoSuchElementException} if
+     * no execution is waiting, a {@link ClassCastException} if the event has the wrong type, or a
+     * {@link RejectedExecutionException} if admission control rejected the resumption. In each of these cases
+     * the execution stays parked and can be signalled again.
+     */
+    public CompletableFuture<SequenceContext> signal(String correlationId, Object event) {
+        if (!isRunning) {
+            throw new IllegalStateException("Service is not running.");
+        }
+        if (hibernation == null) {
+            throw new IllegalStateException("No hibernation store is configured.");
+        }
+        HibernationStore.Parked parked;
+        SequenceContext context;
+        try {
+            parked = hibernation.claim(correlationId);
+            if (parked == null) {
+                return CompletableFuture.failedFuture(
+                        new NoSuchElementException("No execution is waiting for '" + correlationId + "'."));
+            }
+            try {
+                context = withEvent(parked.context(), parked.continuation().eventKey(), event);
+            } catch (ClassCastException e) {
+                hibernation.release(parked);
+                return CompletableFuture.failedFuture(e);
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            return CompletableFuture.failedFuture(e);
         }
+        return resumeParked(parked, context, hibernation::release);
+    }
+
+    /**
+     * Returns the profiler of the service's executions, which holds the profiles of recent profiled executions
+     * and their running summary.
+     */
+    public ExecutionProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Returns the operational metrics of the service: per-sequence counters and queue and run times, the
+     * context store's tiers and the latency of persistence, readable as a snapshot, in the Prometheus text
+     * format, or over JMX once {@link ServiceMetrics#exposeViaJmx(String)} has been called.
+     */
+    public ServiceMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the number of executions parked in the hibernation store.
+     */
+    public long getParkedExecutions() {
+        return hibernation == null ? 0 : hibernation.getParkedCount();
+    }
+
+    /**
+     * Resumes a parked execution whose wait has timed out, without an event. If its deadline passed before the
+     * timeout, the resumed execution fails with a {@link DeadlineExceededException} instead.
+     */
+    private void wakeTimedOut(String correlationId) {
+        HibernationStore.Parked parked;
         try {
-            SequenceContext context = persistence.loadState(executionId);
-            if (context != null) {
-                activeContexts.put(executionId, context);
+            parked = hibernation.claim(correlationId);
+        } catch (IOException | ClassNotFoundException e) {
+            LOGGER.log(Level.WARNING, "Failed to load parked execution '" + correlationId + "'", e);
+            return;
+        }
+        if (parked == null) {
+            return; // Woken by its event already.
+        }
+        if (!isRunning || !hibernation.isDue(parked)) {
+            hibernation.release(parked);
+            return;
+        }
+        resumeParked(parked, parked.context(), rejected -> hibernation.postpone(rejected, TIMEOUT_RETRY_DELAY)).exceptionally(error -> {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (!(cause instanceof ExecutionSuspendedException)) {
+                LOGGER.log(Level.WARNING, "Execution '" + correlationId + "' failed after its wait ended", cause);
             }
-            return context;
+            return null;
+        });
+    }
+
+    private CompletableFuture<SequenceContext> resumeParked(HibernationStore.Parked parked, SequenceContext context,
+                                                            Consumer<HibernationStore.Parked> onNotResumed) {
+        HibernationStore.Continuation continuation = parked.continuation();
+        ContextualSequence<?> sequence = registry.getContextual(continuation.sequenceKey()).orElse(null);
+        if (sequence == null) {
+            hibernation.release(parked);
+            return CompletableFuture.failedFuture(new IllegalStateException(
+                    "Sequence with ID '" + continuation.sequenceKey().id() + "' not found."));
+        }
+        // The execution stays parked, and claimed, until it is admitted, so a rejected resumption loses nothing.
+        AtomicBoolean started = new AtomicBoolean();
+        CompletableFuture<SequenceContext> future = submit(continuation.sequenceKey().id(), null, Priority.NORMAL, () -> {
+            started.set(true);
+            try {
+                hibernation.remove(parked);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to remove parked execution '" + parked.correlationId() + "'", e);
+            }
+            // The execution continues under the deadline it was parked with, and fails now if that has passed.
+            SequenceContext finalContext = Deadline.callWith(hibernation.deadlineOf(parked), () -> RunningContexts.callWith(
+                    runningContexts, () -> sequence.resume(attachClaimCheck(context), continuation.completedSteps())));
+            activeContexts.putCompleted(finalContext.getExecutionId().id(), finalContext);
+            return finalContext;
+        });
+        future.whenComplete((finalContext, error) -> {
+            if (error != null && !started.get()) {
+                onNotResumed.accept(parked);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Submits an execution to admission control, recording it in the sequence's metrics.
+     */
+    private CompletableFuture<SequenceContext> submit(String sequenceId, String tenant, Priority priority,
+                                                      Supplier<SequenceContext> work) {
+        SequenceMetrics sequenceMetrics = metrics.sequence(sequenceId);
+        long submittedAt = sequenceMetrics.submitted();
+        AtomicBoolean started = new AtomicBoolean();
+        CompletableFuture<SequenceContext> future = admission.submit(sequenceId, tenant, priority, () -> {
+            started.set(true);
+            return sequenceMetrics.run(submittedAt, work);
+        });
+        // Executions that ran counted their own outcome; the rest were rejected or cancelled in the queue.
+        future.whenComplete((context, error) -> {
+            if (error != null && !started.get()) {
+                sequenceMetrics.notStarted();
+            }
+        });
+        return future;
+    }
+
+    private static <T> SequenceContext withEvent(SequenceContext context, NodeKey<T> eventKey, Object event) {
+        return context.put(eventKey, eventKey.outputType().cast(event));
+    }
+
+    public void saveState(String executionId, SequenceContext context) throws IOException {
+        if (persistence == null) {
+            throw new IllegalStateException("No persistence is configured.");
+        }
+        FlightEvents.save(persistence, executionId, context);
+        activeContexts.putPersisted(executionId, context);
+    }
+
+    /**
+     * Returns the context of an execution, reading it through from persistence if it is no longer in memory.
+     *
+     * @return The context, or {@code null} if it is unknown or has expired.
+     */
+    public SequenceContext loadState(String executionId) {
+        try {
+            return activeContexts.get(executionId);
         } catch (IOException | ClassNotFoundException e) {
             throw new RuntimeException("Failed to load context for execution ID: " + executionId, e);
         }
     }
 
+    /**
+     * Returns the admission queue statistics of every sequence executed so far, keyed by sequence ID.
+     */
+    public Map<String, QueueStats> getQueueStats() {
+        return admission.stats();
+    }
+
+    /**
+     * Returns the admission queue statistics of every tenant, keyed by tenant tag. Untagged executions are
+     * reported under their sequence ID.
+     */
+    public Map<String, QueueStats> getTenantQueueStats() {
+        return admission.flowStats();
+    }
+
+    /**
+     * Returns the number of partitions with ordered executions running or waiting.
+     */
+    public int getActivePartitions() {
+        return partitions.activePartitions();
+    }
+
+    /**
+     * Returns the number of executions that carried the idempotency key of another and were answered
+     * without running.
+     */
+    public long getSuppressedDuplicates() {
+        return deduplication.suppressedDuplicates();
+    }
+
+    /**
+     * Returns the number of executions currently running.
+     */
+    public int getInFlightExecutions() {
+        return admission.inFlight();
+    }
+
+    /**
+     * Returns how far the recovery of interrupted executions has progressed, and its throughput.
+     * Without recovery enabled, nothing is ever recovered.
+     */
+    public RecoveryProgress getRecoveryProgress() {
+        return recovery == null ? new RecoveryProgress(0, 0, 0, 0, Duration.ZERO) : recovery.progress();
+    }
+
+    /**
+     * Returns a future that completes with the final recovery progress once every interrupted execution has
+     * been resumed or has failed.
+     */
+    public CompletableFuture<RecoveryProgress> whenRecovered() {
+        return recovery == null ? CompletableFuture.completedFuture(getRecoveryProgress()) : recovery.completion();
+    }
+
+    /**
+     * Returns the hit rate and tier sizes of the store holding the contexts of finished executions.
+     */
+    public ContextStoreStats getContextStoreStats() {
+        return activeContexts.stats();
+    }
+
+    /**
+     * Returns the footprints of the largest contexts the service holds in memory, largest first, so memory
+     * pressure can be traced to executions and to the keys, and thereby the steps, that produced their values.
+     * Running executions are included with their latest context, as are finished ones whose context is still
+     * held. Sizes are estimates; see {@link SequenceContext#getRetainedSizes()}.
+     *
+     * @param limit The maximum number of contexts to return.
+     */
+    public List<ContextFootprint> getLargestContexts(int limit) {
+        Map<String, ContextFootprint> footprints = new HashMap<>();
+        // An execution that just finished may be in both; its final context is the one the service keeps.
+        runningContexts.footprints().forEach(footprint -> footprints.put(footprint.executionId(), footprint));
+        activeContexts.largest(limit).forEach(footprint -> footprints.put(footprint.executionId(), footprint));
+        return footprints.values().stream()
+                .sorted(Comparator.comparingLong(ContextFootprint::retainedBytes).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * Attaches the configured claim check to a context recovered from storage, so the values it offloaded
+     * can be loaded again.
+     */
+    private SequenceContext attachClaimCheck(SequenceContext context) {
+        return claimCheck == null ? context : context.withClaimCheck(claimCheck);
+    }
+
     /**
      * A fluent builder for creating {@link SequenceService} instances.
      */
@@ -137,6 +730,29 @@ public class SequenceService implements Startable, Stoppable {
         private ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
         private TypeCombinerFactory typeCombinerFactory = new DefaultTypeCombinerFactory();
         private SequenceContextPersistence persistence;
+        private SequenceCheckpointer checkpointer;
+        private ClaimCheck claimCheck;
+        private ToLongFunction<SequenceContext> contextWeigher = context -> 1;
+        private Long maxActiveContextWeight;
+        private Duration completedExecutionTtl;
+        private long expectedExecutions;
+        private double falsePositiveRate;
+        private int warmUpParallelism;
+        private int recoveryParallelism;
+        private int maxInFlight = Integer.MAX_VALUE;
+        private int maxQueuedPerSequence = Integer.MAX_VALUE;
+        private RejectionPolicy rejectionPolicy = RejectionPolicy.FAIL_FAST;
+        private Duration maxQueueTime;
+        private final Map<String, Double> flowWeights = new HashMap<>();
+        private double defaultFlowWeight = 1;
+        private double recoveryResumesPerSecond;
+        private Path idempotencyDirectory;
+        private long maxIdempotencyKeys = DEFAULT_MAX_IDEMPOTENCY_KEYS;
+        private Duration idempotencyTtl = DEFAULT_IDEMPOTENCY_TTL;
+        private Duration defaultTimeout;
+        private HibernationStore hibernation;
+        private ExecutionProfiler profiler = new ExecutionProfiler(0, DEFAULT_RETAINED_PROFILES);
+        private ExecutionCapture capture;
 
         public Builder withRegistry(SequenceRegistry registry) {
             this.registry = registry;
@@ -158,8 +774,205 @@ public class SequenceService implements Startable, Stoppable {
             return this;
         }
 
+        /**
+         * Sets the checkpointer whose unfinished executions the service can resume.
+         * Sequences still opt in to checkpointing individually when they are built.
+         */
+        public Builder withCheckpointer(SequenceCheckpointer checkpointer) {
+            this.checkpointer = checkpointer;
+            return this;
+        }
+
+        /**
+         * Sets the claim check attached to contexts loaded from persistence or recovered from checkpoints,
+         * so values offloaded by sequences built with {@link ContextualSequence.Builder#withClaimCheck(ClaimCheck)}
+         * can be read back.
+         */
+        public Builder withClaimCheck(ClaimCheck claimCheck) {
+            this.claimCheck = claimCheck;
+            return this;
+        }
+
+        /**
+         * Bounds the number of contexts kept in memory. The least recently used contexts beyond the bound are
+         * spilled to the configured persistence, or dropped if there is none. With persistence the bound is
+         * 10,000 by default; without it, contexts are only dropped if a bound is set.
+         */
+        public Builder withMaxActiveContexts(long maxActiveContexts) {
+            return withActiveContextWeigher(context -> 1, maxActiveContexts);
+        }
+
+        /**
+         * Bounds the contexts kept in memory by their total weight instead of their number,
+         * for example {@code context -> context.getContext().size()}.
+         */
+        public Builder withActiveContextWeigher(ToLongFunction<SequenceContext> weigher, long maxWeight) {
+            this.contextWeigher = weigher;
+            this.maxActiveContextWeight = maxWeight;
+            return this;
+        }
+
+        /**
+         * Removes the contexts of completed executions from memory and persistence once they are older
+         * than the given time to live. By default they are kept until evicted.
+         */
+        public Builder withCompletedExecutionTtl(Duration timeToLive) {
+            this.completedExecutionTtl = timeToLive;
+            return this;
+        }
+
+        /**
+         * Indexes the IDs in persistence with a Bloom filter instead of an exact set, so the index stays small
+         * for very large stores. Lookups for unknown IDs then read through to persistence at the given rate.
+         *
+         * @param expectedExecutions The number of stored executions the filter is sized for.
+         * @param falsePositiveRate  The acceptable rate of unnecessary reads, e.g. {@code 0.01}.
+         */
+        public Builder withBloomFilterIndex(long expectedExecutions, double falsePositiveRate) {
+            if (expectedExecutions <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+                throw new IllegalArgumentException("expectedExecutions must be positive and falsePositiveRate between 0 and 1");
+            }
+            this.expectedExecutions = expectedExecutions;
+            this.falsePositiveRate = falsePositiveRate;
+            return this;
+        }
+
+        /**
+         * Preloads persisted contexts in the background after start, reading up to {@code parallelism}
+         * at a time, until the memory tier is full. Disabled by default.
+         */
+        public Builder withWarmUp(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("parallelism must be at least 1");
+            }
+            this.warmUpParallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Resumes the executions the checkpointer found unfinished when the service starts. At most
+         * {@code parallelism} are resumed at once, and at most {@code resumesPerSecond} are started per second
+         * (0 for no limit), so recovery does not starve new executions.
+         */
+        public Builder withRecovery(int parallelism, double resumesPerSecond) {
+            if (parallelism < 1 || resumesPerSecond < 0) {
+                throw new IllegalArgumentException("parallelism must be at least 1 and resumesPerSecond not negative");
+            }
+            this.recoveryParallelism = parallelism;
+            this.recoveryResumesPerSecond = resumesPerSecond;
+            return this;
+        }
+
+        /**
+         * Limits the number of executions running at once. Further executions wait in a queue per sequence,
+         * of at most {@code maxQueuedPerSequence} entries, and are started by priority class and then in
+         * arrival order. When a queue is full the rejection policy applies. By default nothing is limited.
+         */
+        public Builder withAdmissionControl(int maxInFlight, int maxQueuedPerSequence, RejectionPolicy rejectionPolicy) {
+            if (maxInFlight < 1 || maxQueuedPerSequence < 0) {
+                throw new IllegalArgumentException("maxInFlight must be at least 1 and maxQueuedPerSequence not negative");
+            }
+            this.maxInFlight = maxInFlight;
+            this.maxQueuedPerSequence = maxQueuedPerSequence;
+            this.rejectionPolicy = rejectionPolicy;
+            return this;
+        }
+
+        /**
+         * Fails queued executions with a {@link java.util.concurrent.RejectedExecutionException} instead of
+         * starting them once they have waited longer than the given time, shedding load under overload.
+         */
+        public Builder withMaxQueueTime(Duration maxQueueTime) {
+            this.maxQueueTime = maxQueueTime;
+            return this;
+        }
+
+        /**
+         * Sets a tenant's share of the executions started when the service is at its in-flight limit, relative
+         * to the other tenants with queued executions in the same priority class. The weight of untagged
+         * executions can be set by their sequence ID. Unweighted tenants have the default weight of 1.
+         */
+        public Builder withTenantWeight(String tenant, double weight) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException("weight must be positive");
+            }
+            this.flowWeights.put(tenant, weight);
+            return this;
+        }
+
+        /**
+         * Sets the weight of tenants without an explicit weight.
+         */
+        public Builder withDefaultTenantWeight(double weight) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException("weight must be positive");
+            }
+            this.defaultFlowWeight = weight;
+            return this;
+        }
+
+        /**
+         * Configures how the idempotency keys of succeeded executions are remembered. By default up to 100,000
+         * keys are kept in memory for 24 hours. With a directory, keys are also journaled there and survive a
+         * restart; the contexts they resolve to are read from the configured persistence.
+         *
+         * @param directory  The directory holding the journal, or {@code null} to keep keys in memory only.
+         * @param maxKeys    The maximum number of keys remembered; the oldest are forgotten first.
+         * @param timeToLive How long a key is remembered after its execution succeeded.
+         */
+        public Builder withDeduplication(Path directory, long maxKeys, Duration timeToLive) {
+            if (maxKeys < 1 || timeToLive.isNegative() || timeToLive.isZero()) {
+                throw new IllegalArgumentException("maxKeys must be at least 1 and timeToLive positive");
+            }
+            this.idempotencyDirectory = directory;
+            this.maxIdempotencyKeys = maxKeys;
+            this.idempotencyTtl = timeToLive;
+            return this;
+        }
+
+        /**
+         * Gives every execution started by {@code execute} a deadline the given time after it is submitted,
+         * unless its options set their own. By default executions have no deadline.
+         */
+        public Builder withDefaultTimeout(Duration timeout) {
+            if (timeout.isNegative() || timeout.isZero()) {
+                throw new IllegalArgumentException("timeout must be positive");
+            }
+            this.defaultTimeout = timeout;
+            return this;
+        }
+
+        /**
+         * Sets the store in which executions wait for events; see
+         * {@link ContextualSequence.Builder#thenAwaitEvent(NodeKey, Function, Duration)}. Sequences are built
+         * with the same store. The service wakes executions whose waits time out, and closes the store when
+         * it stops.
+         */
+        public Builder withHibernation(HibernationStore hibernation) {
+            this.hibernation = hibernation;
+            return this;
+        }
+
+        /**
+         * Sets the profiler of the service's executions. By default no execution is sampled, and only those
+         * started with {@link ExecutionOptions#withProfiling()} are profiled.
+         */
+        public Builder withProfiler(ExecutionProfiler profiler) {
+            this.profiler = Objects.requireNonNull(profiler);
+            return this;
+        }
+
+        /**
+         * Records a sampled share of the executions to the given capture, for an {@link ExecutionReplayer} to
+         * replay offline. The service closes the capture when it stops.
+         */
+        public Builder withCapture(ExecutionCapture capture) {
+            this.capture = Objects.requireNonNull(capture);
+            return this;
+        }
+
         public SequenceService build() {
-            return new SequenceService(registry, executor, typeCombinerFactory, persistence);
+            return new SequenceService(this);
         }
     }
 }
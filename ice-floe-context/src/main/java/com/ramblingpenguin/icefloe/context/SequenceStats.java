@@ -0,0 +1,30 @@
+package com.ramblingpenguin.icefloe.context;
+
+/**
+ * The execution metrics of one sequence in a {@link SequenceService} at a point in time. Times are in
+ * nanoseconds and, like the histograms they are read from, overstate the true value by at most 12.5%.
+ *
+ * @param sequenceId    The ID of the sequence.
+ * @param submitted     Executions submitted, including those still queued or later rejected.
+ * @param completed     Executions that finished successfully.
+ * @param failed        Executions that failed, were rejected or were cancelled.
+ * @param suspended     Executions that parked to wait for an event; their resumption is counted again.
+ * @param inFlight      Executions running now.
+ * @param queueP50Nanos The median time executions waited to start.
+ * @param queueP99Nanos The 99th percentile time executions waited to start.
+ * @param runP50Nanos   The median time executions ran.
+ * @param runP99Nanos   The 99th percentile time executions ran.
+ * @param runMaxNanos   The longest time an execution ran.
+ */
+public record SequenceStats(String sequenceId,
+                            long submitted,
+                            long completed,
+                            long failed,
+                            long suspended,
+                            long inFlight,
+                            long queueP50Nanos,
+                            long queueP99Nanos,
+                            long runP50Nanos,
+                            long runP99Nanos,
+                            long runMaxNanos) {
+}
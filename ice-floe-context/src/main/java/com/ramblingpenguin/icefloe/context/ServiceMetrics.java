@@ -0,0 +1,298 @@
+package com.ramblingpenguin.icefloe.context;
+
+import com.ramblingpenguin.icefloe.core.metrics.LatencyHistogram;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.System.Logger.Level;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * The operational metrics of a {@link SequenceService}: submissions, outcomes, queue and run times and in-flight
+ * executions per sequence, the sizes of the context store's tiers, and the latency of persistence.
+ * <p>
+ * Recording is lock-free: counters are {@link LongAdder}s and times go to striped {@link LatencyHistogram}s, so
+ * metrics add no contention however fast executions are submitted. The metrics are read with {@link #snapshot()},
+ * in the Prometheus text format with {@link #toPrometheusText()}, or, once {@link #exposeViaJmx(String)} has
+ * been called, as MXBeans.
+ */
+public final class ServiceMetrics implements ServiceMetricsMXBean, AutoCloseable {
+
+    private static final System.Logger LOGGER = System.getLogger(ServiceMetrics.class.getName());
+    private static final String JMX_DOMAIN = "com.ramblingpenguin.icefloe";
+
+    private final Map<String, SequenceMetrics> sequences = new ConcurrentHashMap<>();
+    private final LatencyHistogram saveTimes = new LatencyHistogram();
+    private final LatencyHistogram loadTimes = new LatencyHistogram();
+    private final LongAdder persistenceErrors = new LongAdder();
+    private final IntSupplier inFlight;
+    private final LongSupplier parked;
+    private final Supplier<ContextStoreStats> contextStore;
+    private volatile MBeanServer mbeanServer;
+    private volatile String jmxName;
+
+    ServiceMetrics(IntSupplier inFlight, LongSupplier parked, Supplier<ContextStoreStats> contextStore) {
+        this.inFlight = inFlight;
+        this.parked = parked;
+        this.contextStore = contextStore;
+    }
+
+    /**
+     * Returns the metrics of a sequence, creating them if necessary.
+     */
+    SequenceMetrics sequence(String sequenceId) {
+        SequenceMetrics existing = sequences.get(sequenceId);
+        if (existing != null) {
+            return existing;
+        }
+        SequenceMetrics created = new SequenceMetrics(sequenceId);
+        existing = sequences.putIfAbsent(sequenceId, created);
+        if (existing != null) {
+            return existing;
+        }
+        MBeanServer server = mbeanServer;
+        if (server != null) {
+            register(server, created, sequenceName(jmxName, sequenceId));
+        }
+        return created;
+    }
+
+    void recordSave(long nanos) {
+        saveTimes.record(nanos);
+    }
+
+    void recordLoad(long nanos) {
+        loadTimes.record(nanos);
+    }
+
+    void recordPersistenceError() {
+        persistenceErrors.increment();
+    }
+
+    /**
+     * Returns the metrics of the service as of now.
+     */
+    public ServiceStats snapshot() {
+        Map<String, SequenceStats> sequenceStats = new TreeMap<>();
+        sequences.forEach((id, metrics) -> sequenceStats.put(id, metrics.snapshot()));
+        LatencyHistogram.Snapshot saves = saveTimes.snapshot();
+        LatencyHistogram.Snapshot loads = loadTimes.snapshot();
+        return new ServiceStats(sequenceStats, inFlight.getAsInt(), parked.getAsLong(), contextStore.get(),
+                saves.count(), saves.percentile(0.99), loads.count(), loads.percentile(0.99), persistenceErrors.sum());
+    }
+
+    /**
+     * Returns every metric of the service in the Prometheus text exposition format, version 0.0.4, for a
+     * scrape endpoint to serve. Times are in seconds, as Prometheus expects.
+     */
+    public String toPrometheusText() {
+        Map<String, SequenceMetrics> sorted = new TreeMap<>(sequences);
+        StringBuilder out = new StringBuilder();
+
+        for (String[] counter : new String[][]{
+                {"submitted", "Executions submitted."},
+                {"completed", "Executions that finished successfully."},
+                {"failed", "Executions that failed, were rejected or were cancelled."},
+                {"suspended", "Executions that parked to wait for an event."}}) {
+            String name = "icefloe_executions_" + counter[0] + "_total";
+            header(out, name, counter[1], "counter");
+            sorted.forEach((id, metrics) -> {
+                SequenceStats stats = metrics.snapshot();
+                long value = switch (counter[0]) {
+                    case "submitted" -> stats.submitted();
+                    case "completed" -> stats.completed();
+                    case "failed" -> stats.failed();
+                    default -> stats.suspended();
+                };
+                sample(out, name, "sequence=\"" + escape(id) + "\"", value);
+            });
+        }
+        header(out, "icefloe_executions_in_flight", "Executions running now.", "gauge");
+        sorted.forEach((id, metrics) -> sample(out, "icefloe_executions_in_flight", "sequence=\"" + escape(id) + "\"", metrics.getInFlight()));
+        header(out, "icefloe_execution_queue_seconds", "Time executions waited to start.", "summary");
+        sorted.forEach((id, metrics) -> summary(out, "icefloe_execution_queue_seconds", "sequence=\"" + escape(id) + "\"", metrics.queueTimes()));
+        header(out, "icefloe_execution_run_seconds", "Time executions ran.", "summary");
+        sorted.forEach((id, metrics) -> summary(out, "icefloe_execution_run_seconds", "sequence=\"" + escape(id) + "\"", metrics.runTimes()));
+
+        header(out, "icefloe_parked_executions", "Executions parked in the hibernation store.", "gauge");
+        sample(out, "icefloe_parked_executions", null, parked.getAsLong());
+        ContextStoreStats store = contextStore.get();
+        header(out, "icefloe_context_store_entries", "Contexts held by the context store, by tier.", "gauge");
+        sample(out, "icefloe_context_store_entries", "tier=\"memory\"", store.memoryEntries());
+        sample(out, "icefloe_context_store_entries", "tier=\"disk\"", store.diskEntries());
+        header(out, "icefloe_context_store_memory_weight", "The total weight of the memory tier.", "gauge");
+        sample(out, "icefloe_context_store_memory_weight", null, store.memoryWeight());
+        header(out, "icefloe_context_store_lookups_total", "Context lookups, by where they were answered.", "counter");
+        sample(out, "icefloe_context_store_lookups_total", "result=\"memory\"", store.memoryHits());
+        sample(out, "icefloe_context_store_lookups_total", "result=\"disk\"", store.diskHits());
+        sample(out, "icefloe_context_store_lookups_total", "result=\"miss\"", store.misses());
+        header(out, "icefloe_persistence_seconds", "Time to write or read a context.", "summary");
+        summary(out, "icefloe_persistence_seconds", "operation=\"save\"", saveTimes.snapshot());
+        summary(out, "icefloe_persistence_seconds", "operation=\"load\"", loadTimes.snapshot());
+        header(out, "icefloe_persistence_errors_total", "Context writes and reads that failed.", "counter");
+        sample(out, "icefloe_persistence_errors_total", null, persistenceErrors.sum());
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, Number value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static void summary(StringBuilder out, String name, String labels, LatencyHistogram.Snapshot snapshot) {
+        for (double quantile : new double[]{0.5, 0.99, 0.999}) {
+            sample(out, name, labels + ",quantile=\"" + quantile + "\"", seconds(snapshot.percentile(quantile)));
+        }
+        sample(out, name + "_sum", labels, seconds(snapshot.mean() * snapshot.count()));
+        sample(out, name + "_count", labels, snapshot.count());
+    }
+
+    private static double seconds(double nanos) {
+        return nanos / 1e9;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Registers an MXBean for the service, named {@code com.ramblingpenguin.icefloe:type=SequenceService,name=<name>},
+     * and one for every sequence, now and as sequences are first executed, named
+     * {@code com.ramblingpenguin.icefloe:type=Sequence,service=<name>,name=<sequence ID>}, with the platform MBean
+     * server. The service unregisters them when it stops.
+     *
+     * @param name The name of the service.
+     * @return These metrics.
+     */
+    public synchronized ServiceMetrics exposeViaJmx(String name) {
+        if (mbeanServer == null) {
+            jmxName = name;
+            mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            register(mbeanServer, this, serviceName(name));
+            sequences.forEach((id, metrics) -> register(mbeanServer, metrics, sequenceName(name, id)));
+        }
+        return this;
+    }
+
+    /**
+     * Unregisters the MXBeans, if they were registered.
+     */
+    @Override
+    public synchronized void close() {
+        MBeanServer server = mbeanServer;
+        if (server == null) {
+            return;
+        }
+        mbeanServer = null;
+        unregister(server, serviceName(jmxName));
+        for (String id : sequences.keySet()) {
+            unregister(server, sequenceName(jmxName, id));
+        }
+    }
+
+    private static void register(MBeanServer server, Object bean, String objectName) {
+        try {
+            ObjectName name = new ObjectName(objectName);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(bean, name);
+            }
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Failed to register service metrics '" + objectName + "'", e);
+        }
+    }
+
+    private static void unregister(MBeanServer server, String objectName) {
+        try {
+            ObjectName name = new ObjectName(objectName);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Failed to unregister service metrics '" + objectName + "'", e);
+        }
+    }
+
+    private static String serviceName(String name) {
+        return JMX_DOMAIN + ":type=SequenceService,name=" + ObjectName.quote(name);
+    }
+
+    private static String sequenceName(String service, String sequenceId) {
+        return JMX_DOMAIN + ":type=Sequence,service=" + ObjectName.quote(service) + ",name=" + ObjectName.quote(sequenceId);
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight.getAsInt();
+    }
+
+    @Override
+    public long getParked() {
+        return parked.getAsLong();
+    }
+
+    @Override
+    public int getMemoryContexts() {
+        return contextStore.get().memoryEntries();
+    }
+
+    @Override
+    public long getMemoryWeight() {
+        return contextStore.get().memoryWeight();
+    }
+
+    @Override
+    public int getDiskContexts() {
+        return contextStore.get().diskEntries();
+    }
+
+    @Override
+    public double getContextHitRate() {
+        return contextStore.get().hitRate();
+    }
+
+    @Override
+    public long getSaves() {
+        return saveTimes.snapshot().count();
+    }
+
+    @Override
+    public long getSaveP99Nanos() {
+        return saveTimes.snapshot().percentile(0.99);
+    }
+
+    @Override
+    public long getLoads() {
+        return loadTimes.snapshot().count();
+    }
+
+    @Override
+    public long getLoadP99Nanos() {
+        return loadTimes.snapshot().percentile(0.99);
+    }
+
+    @Override
+    public long getPersistenceErrors() {
+        return persistenceErrors.sum();
+    }
+
+    @Override
+    public String getPrometheusText() {
+        return toPrometheusText();
+    }
+}
@@ -0,0 +1,34 @@
+package com.ramblingpenguin.icefloe.context;
+
+/**
+ * The JMX view of a {@link SequenceService} as a whole. Times are in nanoseconds.
+ */
+public interface ServiceMetricsMXBean {
+
+    int getInFlight();
+
+    long getParked();
+
+    int getMemoryContexts();
+
+    long getMemoryWeight();
+
+    int getDiskContexts();
+
+    double getContextHitRate();
+
+    long getSaves();
+
+    long getSaveP99Nanos();
+
+    long getLoads();
+
+    long getLoadP99Nanos();
+
+    long getPersistenceErrors();
+
+    /**
+     * Returns every metric of the service in the Prometheus text exposition format.
+     */
+    String getPrometheusText();
+}
@@ -0,0 +1,27 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.util.Map;
+
+/**
+ * The operational metrics of a {@link SequenceService} at a point in time. Times are in nanoseconds.
+ *
+ * @param sequences         The metrics of every sequence executed so far, keyed and sorted by sequence ID.
+ * @param inFlight          Executions running now, across all sequences.
+ * @param parked            Executions parked in the hibernation store.
+ * @param contextStore      The tier sizes and hit rates of the store holding finished contexts.
+ * @param saves             Contexts written to persistence.
+ * @param saveP99Nanos      The 99th percentile time to write a context.
+ * @param loads             Contexts read from persistence, whether found or not.
+ * @param loadP99Nanos      The 99th percentile time to read a context.
+ * @param persistenceErrors Reads and writes that failed.
+ */
+public record ServiceStats(Map<String, SequenceStats> sequences,
+                           int inFlight,
+                           long parked,
+                           ContextStoreStats contextStore,
+                           long saves,
+                           long saveP99Nanos,
+                           long loads,
+                           long loadP99Nanos,
+                           long persistenceErrors) {
+}
@@ -0,0 +1,138 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimates the heap retained by a context value, assuming a 64-bit JVM with compressed references and compact
+ * strings. Values are walked to a bounded depth, and objects reachable more than once are counted once.
+ * <p>
+ * The estimate is meant for attributing memory to keys, not for exact accounting: collections are assumed to be
+ * array-backed, and objects the walk cannot open, such as most JDK internals, count as a bare object.
+ */
+final class SizeEstimator {
+
+    private static final int MAX_DEPTH = 16;
+    private static final long OBJECT_HEADER = 16;
+    private static final long REFERENCE = 4;
+    private static final long ARRAY_HEADER = 16;
+    private static final long STRING = 24 + ARRAY_HEADER;
+    private static final long MAP_ENTRY = 32;
+
+    private static final ClassValue<List<Field>> FIELDS = new ClassValue<>() {
+        @Override
+        protected List<Field> computeValue(Class<?> type) {
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers()) && field.trySetAccessible()) {
+                        fields.add(field);
+                    }
+                }
+            }
+            return List.copyOf(fields);
+        }
+    };
+
+    private SizeEstimator() {
+    }
+
+    /**
+     * Returns the estimated number of bytes retained by a value.
+     */
+    static long estimate(Object value) {
+        return estimate(value, 0, new IdentityHashMap<>());
+    }
+
+    private static long estimate(Object value, int depth, Map<Object, Boolean> seen) {
+        if (value == null || value instanceof Enum<?> || value instanceof Class<?>) {
+            return 0;
+        }
+        if (value instanceof String string) {
+            return STRING + string.length();
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return OBJECT_HEADER + 8;
+        }
+        if (depth >= MAX_DEPTH || seen.put(value, Boolean.TRUE) != null) {
+            return 0;
+        }
+        Class<?> type = value.getClass();
+        if (type.isArray()) {
+            return array(value, type.getComponentType(), depth, seen);
+        }
+        if (value instanceof Collection<?> collection) {
+            long size = OBJECT_HEADER + 16 + ARRAY_HEADER + REFERENCE * collection.size();
+            for (Object element : collection) {
+                size += estimate(element, depth + 1, seen);
+            }
+            return size;
+        }
+        if (value instanceof Map<?, ?> map) {
+            long size = OBJECT_HEADER + 32 + ARRAY_HEADER + (REFERENCE + MAP_ENTRY) * map.size();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                size += estimate(entry.getKey(), depth + 1, seen) + estimate(entry.getValue(), depth + 1, seen);
+            }
+            return size;
+        }
+        return fields(value, type, depth, seen);
+    }
+
+    private static long array(Object array, Class<?> componentType, int depth, Map<Object, Boolean> seen) {
+        int length = Array.getLength(array);
+        if (componentType.isPrimitive()) {
+            return ARRAY_HEADER + (long) length * primitiveSize(componentType);
+        }
+        long size = ARRAY_HEADER + REFERENCE * length;
+        for (Object element : (Object[]) array) {
+            size += estimate(element, depth + 1, seen);
+        }
+        return size;
+    }
+
+    private static long fields(Object value, Class<?> type, int depth, Map<Object, Boolean> seen) {
+        long size = OBJECT_HEADER;
+        for (Field field : FIELDS.get(type)) {
+            Class<?> fieldType = field.getType();
+            if (fieldType.isPrimitive()) {
+                size += primitiveSize(fieldType);
+                continue;
+            }
+            size += REFERENCE;
+            try {
+                size += estimate(field.get(value), depth + 1, seen);
+            } catch (IllegalAccessException e) {
+                // Counted as a reference only.
+            }
+        }
+        return size;
+    }
+
+    private static long primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        return 1;
+    }
+
+    /**
+     * Returns the keys of a size map ordered from the largest value down.
+     */
+    static <K> List<K> largestFirst(Map<K, Long> sizes) {
+        List<K> keys = new ArrayList<>(sizes.keySet());
+        keys.sort((a, b) -> Long.compare(sizes.get(b), sizes.get(a)));
+        return keys;
+    }
+}
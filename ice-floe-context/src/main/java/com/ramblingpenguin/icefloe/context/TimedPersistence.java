@@ -0,0 +1,67 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Decorates the persistence of a {@link SequenceService} to record how long contexts take to write and read,
+ * and how often that fails, in the service's {@link ServiceMetrics}.
+ */
+final class TimedPersistence implements SequenceContextPersistence {
+
+    private final SequenceContextPersistence delegate;
+    private final ServiceMetrics metrics;
+
+    TimedPersistence(SequenceContextPersistence delegate, ServiceMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void saveState(String executionId, SequenceContext context) throws IOException {
+        long start = System.nanoTime();
+        try {
+            delegate.saveState(executionId, context);
+        } catch (IOException | RuntimeException e) {
+            metrics.recordPersistenceError();
+            throw e;
+        } finally {
+            metrics.recordSave(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public SequenceContext loadState(String executionId) throws IOException, ClassNotFoundException {
+        long start = System.nanoTime();
+        try {
+            return delegate.loadState(executionId);
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            metrics.recordPersistenceError();
+            throw e;
+        } finally {
+            metrics.recordLoad(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public List<String> listStoredExecutionIds() throws IOException {
+        return delegate.listStoredExecutionIds();
+    }
+
+    @Override
+    public List<String> listStoredExecutionIds(Instant from, Instant to) throws IOException {
+        return delegate.listStoredExecutionIds(from, to);
+    }
+
+    @Override
+    public void deleteState(String executionId) throws IOException {
+        delegate.deleteState(executionId);
+    }
+
+    @Override
+    public void deleteStates(Collection<String> executionIds) throws IOException {
+        delegate.deleteStates(executionIds);
+    }
+}
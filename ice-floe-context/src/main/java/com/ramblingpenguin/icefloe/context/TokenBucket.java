@@ -0,0 +1,54 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token-bucket rate limiter. Tokens accrue at a fixed rate up to a burst size, and each permit takes one.
+ */
+final class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double burst;
+    private double tokens;
+    private long refilledAt;
+
+    /**
+     * @param permitsPerSecond The sustained rate.
+     * @param burst            The number of permits that can be taken at once after a quiet period.
+     */
+    TokenBucket(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive and burst at least 1");
+        }
+        this.tokensPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.tokens = burst;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * Takes a permit, waiting until one is available.
+     */
+    void acquire() throws InterruptedException {
+        long waitNanos;
+        while ((waitNanos = tryTake()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Takes a permit if one is available.
+     *
+     * @return 0 if a permit was taken, otherwise the time in nanoseconds until one will be available.
+     */
+    synchronized long tryTake() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerNano));
+    }
+}
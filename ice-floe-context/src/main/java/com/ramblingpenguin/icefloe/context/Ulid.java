@@ -0,0 +1,90 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Encodes and decodes ULIDs, the default execution IDs; see {@link IdGenerator#ulid()}.
+ * <p>
+ * The random part comes from {@link ThreadLocalRandom}, so generating an ID takes no lock and does not touch
+ * a shared {@code SecureRandom}. IDs created in the same millisecond are unique but not ordered among themselves.
+ */
+final class Ulid {
+
+    static final int LENGTH = 26;
+    private static final int TIME_LENGTH = 10;
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final long MAX_TIME = (1L << 48) - 1;
+
+    static volatile IdGenerator defaultGenerator = IdGenerator.ulid();
+
+    private Ulid() {
+    }
+
+    static String next() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        char[] chars = new char[LENGTH];
+        encodeTime(System.currentTimeMillis(), chars);
+        // 80 random bits: 16 characters of 5 bits each, taken from two longs.
+        long high = random.nextLong();
+        long low = random.nextLong();
+        for (int i = 0; i < 8; i++) {
+            chars[TIME_LENGTH + i] = ALPHABET[(int) (high >>> (i * 5)) & 31];
+            chars[TIME_LENGTH + 8 + i] = ALPHABET[(int) (low >>> (i * 5)) & 31];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Returns the smallest ULID created at or after the given instant. Every ID that starts with a ULID created
+     * in {@code [from, to)} sorts at or after {@code lowerBound(from)} and before {@code lowerBound(to)}.
+     */
+    static String lowerBound(Instant instant) {
+        char[] chars = new char[TIME_LENGTH];
+        encodeTime(Math.min(Math.max(instant.toEpochMilli(), 0), MAX_TIME), chars);
+        return new String(chars);
+    }
+
+    /**
+     * Decodes the creation time of an ID that starts with a ULID, such as the ID of a fork branch.
+     *
+     * @return The creation time, or empty if the ID does not start with a ULID.
+     */
+    static Optional<Instant> timestamp(String id) {
+        if (id.length() < LENGTH || (id.length() > LENGTH && id.charAt(LENGTH) != ':')) {
+            return Optional.empty();
+        }
+        long time = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            int value = decode(id.charAt(i));
+            if (value < 0) {
+                return Optional.empty();
+            }
+            if (i < TIME_LENGTH) {
+                time = (time << 5) | value;
+            }
+        }
+        // Ten characters hold 50 bits; a valid ULID's timestamp fits in 48.
+        return time > MAX_TIME ? Optional.empty() : Optional.of(Instant.ofEpochMilli(time));
+    }
+
+    private static void encodeTime(long millis, char[] chars) {
+        for (int i = TIME_LENGTH - 1; i >= 0; i--) {
+            chars[i] = ALPHABET[(int) (millis & 31)];
+            millis >>>= 5;
+        }
+    }
+
+    private static int decode(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        for (int i = 10; i < ALPHABET.length; i++) {
+            if (ALPHABET[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
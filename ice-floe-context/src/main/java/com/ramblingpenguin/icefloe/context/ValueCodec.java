@@ -0,0 +1,19 @@
+package com.ramblingpenguin.icefloe.context;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Encodes and decodes values of one type for a {@link SequenceContextCodec}.
+ * Register codecs with {@link SequenceContextCodec#registerCodec(NodeKey, ValueCodec)} or
+ * {@link SequenceContextCodec#registerCodec(Class, ValueCodec)}.
+ *
+ * @param <T> The type of value handled by this codec.
+ */
+public interface ValueCodec<T> {
+
+    void write(DataOutput out, T value) throws IOException;
+
+    T read(DataInput in) throws IOException;
+}
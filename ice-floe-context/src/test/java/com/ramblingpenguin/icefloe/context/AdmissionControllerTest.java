@@ -0,0 +1,142 @@
+package com.ramblingpenguin.icefloe.context;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionControllerTest {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    private String block() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "blocker";
+    }
+
+    private static Throwable failure(CompletableFuture<?> future) {
+        return assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS)).getCause();
+    }
+
+    @Test
+    void testQueuedExecutionsStartByPriorityThenArrival() throws Exception {
+        AdmissionController admission = new AdmissionController(executor, 1, 10, RejectionPolicy.FAIL_FAST, null, Map.of(), 1);
+        List<String> order = new CopyOnWriteArrayList<>();
+        CompletableFuture<String> blocker = admission.submit("a", Priority.NORMAL, this::block);
+        CompletableFuture<Boolean> low = admission.submit("a", Priority.LOW, () -> order.add("low"));
+        CompletableFuture<Boolean> first = admission.submit("b", Priority.NORMAL, () -> order.add("normal-1"));
+        CompletableFuture<Boolean> high = admission.submit("a", Priority.HIGH, () -> order.add("high"));
+        CompletableFuture<Boolean> second = admission.submit("b", Priority.NORMAL, () -> order.add("normal-2"));
+
+        assertEquals(1, admission.inFlight());
+        assertEquals(2, admission.stats().get("a").queued());
+        release.countDown();
+        CompletableFuture.allOf(blocker, low, first, high, second).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("high", "normal-1", "normal-2", "low"), order);
+        assertEquals(3L, admission.stats().get("a").admitted());
+    }
+
+    @Test
+    void testQueuedExecutionsAreSharedFairlyBetweenTenants() throws Exception {
+        AdmissionController admission = new AdmissionController(executor, 1, 100, RejectionPolicy.FAIL_FAST, null,
+                Map.of("gold", 3.0), 1);
+        List<String> order = new CopyOnWriteArrayList<>();
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        futures.add(admission.submit("blocker", Priority.NORMAL, this::block));
+        for (int i = 0; i < 20; i++) {
+            futures.add(admission.submit("sequence", "noisy", Priority.NORMAL, () -> order.add("noisy")));
+        }
+        for (int i = 0; i < 6; i++) {
+            futures.add(admission.submit("sequence", "gold", Priority.NORMAL, () -> order.add("gold")));
+        }
+        release.countDown();
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        // Although the noisy tenant queued first, gold gets three starts for each of the noisy tenant's.
+        assertEquals(List.of("noisy", "gold", "gold", "gold", "noisy", "gold", "gold", "gold"), order.subList(0, 8));
+        Map<String, QueueStats> tenants = admission.flowStats();
+        assertEquals(20L, tenants.get("noisy").admitted());
+        assertEquals(6L, tenants.get("gold").admitted());
+        assertTrue(tenants.get("noisy").maxQueueTime().compareTo(tenants.get("gold").maxQueueTime()) > 0);
+    }
+
+    @Test
+    void testFailFastRejectsWhenTheQueueIsFull() {
+        AdmissionController admission = new AdmissionController(executor, 1, 1, RejectionPolicy.FAIL_FAST, null, Map.of(), 1);
+        admission.submit("a", Priority.NORMAL, this::block);
+        CompletableFuture<String> queued = admission.submit("a", Priority.NORMAL, () -> "queued");
+        CompletableFuture<String> rejected = admission.submit("a", Priority.NORMAL, () -> "rejected");
+
+        assertInstanceOf(RejectedExecutionException.class, failure(rejected));
+        assertEquals(1L, admission.stats().get("a").rejected());
+        release.countDown();
+        assertEquals("queued", queued.join());
+    }
+
+    @Test
+    void testDropOldestMakesRoomForTheNewExecution() {
+        AdmissionController admission = new AdmissionController(executor, 1, 1, RejectionPolicy.DROP_OLDEST, null, Map.of(), 1);
+        admission.submit("a", Priority.NORMAL, this::block);
+        CompletableFuture<String> oldest = admission.submit("a", Priority.NORMAL, () -> "oldest");
+        CompletableFuture<String> newest = admission.submit("a", Priority.NORMAL, () -> "newest");
+
+        assertInstanceOf(RejectedExecutionException.class, failure(oldest));
+        release.countDown();
+        assertEquals("newest", newest.join());
+    }
+
+    @Test
+    void testCallerRunsExecutesOnTheCallingThread() {
+        AdmissionController admission = new AdmissionController(executor, 1, 0, RejectionPolicy.CALLER_RUNS, null, Map.of(), 1);
+        admission.submit("a", Priority.NORMAL, this::block);
+        Thread caller = Thread.currentThread();
+        CompletableFuture<Boolean> ranInCaller = admission.submit("a", Priority.NORMAL,
+                () -> Thread.currentThread() == caller && admission.inFlight() == 2);
+
+        assertTrue(ranInCaller.isDone());
+        assertTrue(ranInCaller.join());
+        assertEquals(1, admission.inFlight());
+        assertEquals(2L, admission.stats().get("a").admitted());
+        assertEquals(0L, admission.stats().get("a").rejected());
+    }
+
+    @Test
+    void testExecutionsWaitingTooLongAreShed() throws Exception {
+        AdmissionController admission = new AdmissionController(executor, 1, 10, RejectionPolicy.FAIL_FAST, Duration.ofMillis(20), Map.of(), 1);
+        admission.submit("a", Priority.NORMAL, this::block);
+        CompletableFuture<String> stale = admission.submit("a", Priority.NORMAL, () -> "stale");
+        Thread.sleep(50);
+        release.countDown();
+
+        assertInstanceOf(RejectedExecutionException.class, failure(stale));
+        assertEquals(1L, admission.stats().get("a").shed());
+    }
+}
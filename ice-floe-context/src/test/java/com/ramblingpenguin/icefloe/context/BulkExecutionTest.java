@@ -0,0 +1,188 @@
+package com.ramblingpenguin.icefloe.context;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BulkExecutionTest {
+
+    private static final NodeKey<Integer> INPUT_KEY = new NodeKey<>("input", Integer.class);
+    private static final NodeKey<Integer> SQUARE_KEY = new NodeKey<>("square", Integer.class);
+
+    @TempDir
+    Path directory;
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private final AtomicInteger calls = new AtomicInteger();
+    private SequenceService service;
+    private ContextualSequence<Integer> sequence;
+
+    @BeforeEach
+    void setUp() {
+        service = SequenceService.builder().build();
+        sequence = ContextualSequence.Builder.of(INPUT_KEY)
+                .then(INPUT_KEY, SQUARE_KEY, (Integer i) -> {
+                    calls.incrementAndGet();
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(i % 7);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    if (i % 50 == 49) {
+                        throw new IllegalArgumentException("Unlucky input " + i);
+                    }
+                    return i * i;
+                })
+                .build();
+        service.register(sequence);
+        service.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stop();
+    }
+
+    @Test
+    void testResultsAreDeliveredInInputOrderWithinTheWindow() throws Exception {
+        List<BulkResult<Integer>> results = new ArrayList<>();
+        BulkSummary summary = service.executeAll(sequence.id(), IntStream.range(0, 300).boxed(),
+                        BulkOptions.defaults().withWindow(8).inInputOrder(), results::add)
+                .get(30, TimeUnit.SECONDS);
+
+        assertEquals(LongStream.range(0, 300).boxed().toList(), results.stream().map(BulkResult::index).toList());
+        assertTrue(maxRunning.get() <= 8, "window exceeded: " + maxRunning.get());
+        assertEquals(294L, summary.succeeded());
+        assertEquals(6L, summary.failed());
+        assertEquals(100 * 100, results.get(100).context().get(SQUARE_KEY).orElseThrow());
+    }
+
+    @Test
+    void testResultsArePublishedToASubscriber() throws Exception {
+        List<BulkResult<Integer>> results = new CopyOnWriteArrayList<>();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        service.executeAll(sequence.id(), IntStream.range(0, 100).boxed().toList(), BulkOptions.defaults().withWindow(4))
+                .subscribe(new Flow.Subscriber<>() {
+                    @Override
+                    public void onSubscribe(Flow.Subscription subscription) {
+                        subscription.request(Long.MAX_VALUE);
+                    }
+
+                    @Override
+                    public void onNext(BulkResult<Integer> item) {
+                        results.add(item);
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        done.completeExceptionally(throwable);
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        done.complete(null);
+                    }
+                });
+
+        done.get(30, TimeUnit.SECONDS);
+        assertEquals(100, results.size());
+        assertEquals(2L, results.stream().filter(result -> !result.isSuccess()).count());
+    }
+
+    @Test
+    void testLateSubscriberDoesNotBlockABoundedExecutor() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        SequenceService bounded = SequenceService.builder().withExecutor(pool).build();
+        bounded.register(sequence);
+        bounded.start();
+        List<BulkResult<Integer>> results = new CopyOnWriteArrayList<>();
+        CompletableFuture<Flow.Subscription> subscribed = new CompletableFuture<>();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        bounded.executeAll(sequence.id(), IntStream.range(0, 40).boxed().toList(), BulkOptions.defaults().withWindow(4))
+                .subscribe(new Flow.Subscriber<>() {
+                    @Override
+                    public void onSubscribe(Flow.Subscription subscription) {
+                        subscribed.complete(subscription);
+                    }
+
+                    @Override
+                    public void onNext(BulkResult<Integer> item) {
+                        results.add(item);
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        done.completeExceptionally(throwable);
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        done.complete(null);
+                    }
+                });
+
+        try {
+            // With no demand the publisher's buffer fills up; delivering it later must not need a blocked thread.
+            Thread.sleep(300);
+            subscribed.get(5, TimeUnit.SECONDS).request(Long.MAX_VALUE);
+            done.get(10, TimeUnit.SECONDS);
+            assertEquals(40, results.size());
+        } finally {
+            bounded.stop();
+        }
+    }
+
+    @Test
+    void testInterruptedBackfillContinuesFromItsProgressCheckpoint() throws Exception {
+        Path progress = directory.resolve("backfill.progress");
+        BulkOptions options = BulkOptions.defaults().withWindow(4).withProgressCheckpoint(progress, 10);
+        Iterable<Integer> failingSource = () -> new Iterator<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < 100;
+            }
+
+            @Override
+            public Integer next() {
+                if (next == 55) {
+                    throw new IllegalStateException("Source failed");
+                }
+                return next++;
+            }
+        };
+        CompletableFuture<BulkSummary> interrupted = service.executeAll(sequence.id(), failingSource, options, result -> {
+        });
+        assertThrows(Exception.class, () -> interrupted.get(30, TimeUnit.SECONDS));
+        int firstRunCalls = calls.get();
+
+        BulkSummary resumed = service.executeAll(sequence.id(), IntStream.range(0, 100).boxed(), options, result -> {
+        }).get(30, TimeUnit.SECONDS);
+
+        assertTrue(resumed.skipped() >= 10 && resumed.skipped() <= firstRunCalls, "skipped " + resumed.skipped());
+        assertEquals(100L, resumed.skipped() + resumed.succeeded() + resumed.failed());
+    }
+}
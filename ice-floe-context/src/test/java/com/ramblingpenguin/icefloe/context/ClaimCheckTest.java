@@ -0,0 +1,79 @@
+package com.ramblingpenguin.icefloe.context;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ClaimCheckTest {
+
+    private static final NodeKey<String> INPUT_KEY = new NodeKey<>("input", String.class);
+    private static final NodeKey<String> COPY_KEY = new NodeKey<>("copy", String.class);
+    private static final NodeKey<Integer> LENGTH_KEY = new NodeKey<>("length", Integer.class);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testLargeValuesAreReplacedByReferencesAndLoadedOnGet() throws IOException {
+        ClaimCheck claimCheck = new ClaimCheck(new FileBlobStore(directory.resolve("blobs")), 64);
+        String large = "x".repeat(1_000);
+
+        SequenceContext result = ContextualSequence.Builder.of(INPUT_KEY)
+                .withClaimCheck(claimCheck)
+                .then(INPUT_KEY, COPY_KEY, (String s) -> new String(s))
+                .then(COPY_KEY, LENGTH_KEY, String::length)
+                .build()
+                .apply(large);
+
+        assertInstanceOf(BlobReference.class, result.getContext().get(INPUT_KEY));
+        assertInstanceOf(BlobReference.class, result.getContext().get(COPY_KEY));
+        assertEquals(1_000, result.getContext().get(LENGTH_KEY));
+        assertEquals(large, result.get(COPY_KEY).orElseThrow());
+        // Identical content is stored once.
+        assertEquals(1L, countBlobs());
+    }
+
+    @Test
+    void testPersistedContextCarriesOnlyTheReference() throws Exception {
+        ClaimCheck claimCheck = new ClaimCheck(new FileBlobStore(directory.resolve("blobs")), 64);
+        String large = "y".repeat(1_000);
+        SequenceContext context = SequenceContext.empty(ExecutionId.newRoot(), new DefaultTypeCombinerFactory())
+                .withClaimCheck(claimCheck)
+                .put(INPUT_KEY, large);
+
+        FileSequenceContextPersistence persistence = new FileSequenceContextPersistence(directory.resolve("contexts").toString());
+        persistence.saveState("execution", context);
+        SequenceContext loaded = persistence.loadState("execution");
+
+        assertInstanceOf(BlobReference.class, loaded.getContext().get(INPUT_KEY));
+        assertThrows(IllegalStateException.class, () -> loaded.get(INPUT_KEY));
+        assertEquals(large, loaded.withClaimCheck(claimCheck).get(INPUT_KEY).orElseThrow());
+    }
+
+    @Test
+    void testSmallValuesStayInline() throws IOException {
+        ClaimCheck claimCheck = new ClaimCheck(new FileBlobStore(directory.resolve("blobs")), 64);
+        SequenceContext context = SequenceContext.empty(ExecutionId.newRoot(), new DefaultTypeCombinerFactory())
+                .withClaimCheck(claimCheck)
+                .put(INPUT_KEY, "small");
+
+        assertSame("small", context.getContext().get(INPUT_KEY));
+        assertEquals(0L, countBlobs());
+    }
+
+    private long countBlobs() throws IOException {
+        Path blobs = directory.resolve("blobs");
+        try (Stream<Path> files = Files.walk(blobs)) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.ramblingpenguin.icefloe.context;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContextSizeLimitsTest {
+
+    private static final NodeKey<String> INPUT_KEY = new NodeKey<>("input", String.class);
+    private static final NodeKey<String> BLOB_KEY = new NodeKey<>("blob", String.class);
+    private static final NodeKey<Integer> LENGTH_KEY = new NodeKey<>("length", Integer.class);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testSizesAreAttributedToKeys() {
+        SequenceContext context = sequence(ContextualSequence.Builder.of(INPUT_KEY)).apply("10000");
+
+        Map<NodeKey<?>, Long> sizes = context.getRetainedSizes();
+        assertEquals(List.of(INPUT_KEY, BLOB_KEY, LENGTH_KEY), List.copyOf(sizes.keySet()));
+        assertTrue(sizes.get(BLOB_KEY) >= 10_000 && sizes.get(BLOB_KEY) < 10_100, sizes.toString());
+        assertTrue(sizes.get(LENGTH_KEY) < 100);
+        assertEquals(sizes.values().stream().mapToLong(Long::longValue).sum(), context.getRetainedSize());
+    }
+
+    @Test
+    void testHardLimitFailsTheExecution() {
+        ContextualSequence<String> sequence = sequence(ContextualSequence.Builder.of(INPUT_KEY)
+                .withSizeLimits(ContextSizeLimits.unlimited().withHardLimit(5_000)));
+
+        assertEquals(100, sequence.apply("100").get(LENGTH_KEY).orElseThrow());
+        ContextSizeExceededException e = assertThrows(ContextSizeExceededException.class, () -> sequence.apply("10000"));
+        assertEquals("blob", e.getLargestKey());
+        assertTrue(e.getRetainedBytes() > 5_000);
+    }
+
+    @Test
+    void testMergeIntoAnEmptyContextAppliesTheLimits() {
+        ExecutionId executionId = new ExecutionId("merge");
+        SequenceContext branch = SequenceContext.empty(executionId, new DefaultTypeCombinerFactory())
+                .put(BLOB_KEY, "x".repeat(10_000));
+        SequenceContext parent = SequenceContext.empty(executionId, new DefaultTypeCombinerFactory())
+                .withSizeLimits(ContextSizeLimits.unlimited().withHardLimit(5_000));
+
+        assertThrows(ContextSizeExceededException.class, () -> parent.merge(branch));
+
+        SequenceContext merged = SequenceContext.empty(executionId, new DefaultTypeCombinerFactory())
+                .withSizeLimits(ContextSizeLimits.unlimited())
+                .merge(branch);
+        assertEquals(branch.getRetainedSizes(), merged.getRetainedSizes());
+    }
+
+    @Test
+    void testSoftLimitOffloadsTheLargestValues() throws IOException {
+        // The claim check's own threshold would never offload these values.
+        ClaimCheck claimCheck = new ClaimCheck(new FileBlobStore(directory.resolve("blobs")), Integer.MAX_VALUE);
+        ContextualSequence<String> sequence = sequence(ContextualSequence.Builder.of(INPUT_KEY)
+                .withClaimCheck(claimCheck)
+                .withSizeLimits(ContextSizeLimits.unlimited()
+                        .withSoftLimit(5_000, ContextSizeLimits.SoftLimitAction.OFFLOAD)
+                        .withHardLimit(8_000)));
+
+        SequenceContext context = sequence.apply("10000");
+
+        assertInstanceOf(BlobReference.class, context.getContext().get(BLOB_KEY));
+        assertEquals(10_000, context.get(BLOB_KEY).orElseThrow().length());
+        assertEquals(10_000, context.get(LENGTH_KEY).orElseThrow());
+        assertTrue(context.getRetainedSize() <= 5_000, "retained " + context.getRetainedSize());
+    }
+
+    @Test
+    void testSoftLimitOnlyWarns() {
+        List<ContextFootprint> crossings = new CopyOnWriteArrayList<>();
+        ContextualSequence<String> sequence = sequence(ContextualSequence.Builder.of(INPUT_KEY)
+                .withSizeLimits(ContextSizeLimits.unlimited()
+                        .withSoftLimit(5_000, ContextSizeLimits.SoftLimitAction.WARN)
+                        .withSoftLimitListener(crossings::add)));
+
+        SequenceContext context = sequence.apply("10000");
+
+        assertEquals(10_000, context.get(LENGTH_KEY).orElseThrow());
+        assertTrue(context.getRetainedSize() > 5_000);
+        // Reported once, when the blob crossed the limit, not again for the length stored after it.
+        assertEquals(1, crossings.size());
+        assertEquals(context.getExecutionId().id(), crossings.get(0).executionId());
+        assertEquals("blob", crossings.get(0).largestKey());
+    }
+
+    @Test
+    void testServiceReportsItsLargestContexts() {
+        ContextualSequence<String> sequence = sequence(ContextualSequence.Builder.of(INPUT_KEY).withId("blobs"));
+        SequenceService service = SequenceService.builder().build();
+        service.register(sequence);
+        service.start();
+        String small = service.execute(sequence.id(), "10").join().getExecutionId().id();
+        String large = service.execute(sequence.id(), "50000").join().getExecutionId().id();
+        String medium = service.execute(sequence.id(), "2000").join().getExecutionId().id();
+        service.stop();
+
+        List<ContextFootprint> largest = service.getLargestContexts(2);
+        assertEquals(List.of(large, medium), largest.stream().map(ContextFootprint::executionId).toList());
+        assertEquals("blob", largest.get(0).largestKey());
+        assertTrue(largest.get(0).retainedBytes() > 50_000);
+        assertEquals(3, service.getLargestContexts(10).size());
+        assertEquals(small, service.getLargestContexts(10).get(2).executionId());
+    }
+
+    @Test
+    void testLargestContextsIncludeRunningExecutions() throws InterruptedException {
+        CountDownLatch stored = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ContextualSequence<String> sequence = ContextualSequence.Builder.of(INPUT_KEY)
+                .then(INPUT_KEY, BLOB_KEY, (String size) -> "x".repeat(Integer.parseInt(size)))
+                .then(BLOB_KEY, LENGTH_KEY, (String blob) -> {
+                    stored.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return blob.length();
+                })
+                .build();
+        SequenceService service = SequenceService.builder().build();
+        service.register(sequence);
+        service.start();
+        CompletableFuture<SequenceContext> running = service.execute(sequence.id(), "50000");
+        assertTrue(stored.await(5, TimeUnit.SECONDS));
+
+        List<ContextFootprint> largest = service.getLargestContexts(1);
+
+        assertEquals(1, largest.size());
+        assertEquals("blob", largest.get(0).largestKey());
+        assertTrue(largest.get(0).retainedBytes() > 50_000);
+        release.countDown();
+        String executionId = running.join().getExecutionId().id();
+        service.stop();
+        assertEquals(executionId, largest.get(0).executionId());
+        assertEquals(List.of(executionId), service.getLargestContexts(10).stream().map(ContextFootprint::executionId).toList());
+    }
+
+    private static ContextualSequence<String> sequence(ContextualSequence.Builder<String> builder) {
+        return builder
+                .then(INPUT_KEY, BLOB_KEY, (String size) -> "x".repeat(Integer.parseInt(size)))
+                .then(BLOB_KEY, LENGTH_KEY, String::length)
+                .build();
+    }
+}
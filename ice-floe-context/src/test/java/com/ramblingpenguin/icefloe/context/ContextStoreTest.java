@@ -0,0 +1,291 @@
+package com.ramblingpenguin.icefloe.context;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContextStoreTest {
+
+    private static final NodeKey<String> VALUE_KEY = new NodeKey<>("value", String.class);
+
+    @TempDir
+    Path directory;
+
+    private final MutableClock clock = new MutableClock();
+
+    private static SequenceContext context(String executionId) {
+        return SequenceContext.empty(new ExecutionId(executionId), new DefaultTypeCombinerFactory()).put(VALUE_KEY, executionId);
+    }
+
+    private ContextStore store(SequenceContextPersistence persistence, long maxContexts, Duration timeToLive) {
+        return new ContextStore(persistence, context -> 1, maxContexts, timeToLive, context -> context, clock, null, Runnable::run);
+    }
+
+    @Test
+    void testEvictedContextsAreSpilledAndReadThrough() throws Exception {
+        FileSequenceContextPersistence persistence = new FileSequenceContextPersistence(directory.toString());
+        ContextStore store = store(persistence, 2, null);
+        store.putCompleted("a", context("a"));
+        store.putCompleted("b", context("b"));
+        store.get("a"); // "b" is now the least recently used.
+        store.putCompleted("c", context("c"));
+
+        ContextStoreStats stats = store.stats();
+        assertEquals(2, stats.memoryEntries());
+        assertEquals(1, stats.diskEntries());
+        assertEquals(1L, stats.evictions());
+        assertTrue(persistence.listStoredExecutionIds().contains("b"));
+
+        assertEquals("b", store.get("b").get(VALUE_KEY).orElseThrow());
+        assertNull(store.get("unknown"));
+
+        stats = store.stats();
+        assertEquals(1L, stats.memoryHits());
+        assertEquals(1L, stats.diskHits());
+        assertEquals(1L, stats.misses());
+        assertEquals(2.0 / 3, stats.hitRate(), 1e-9);
+    }
+
+    @Test
+    void testWithoutPersistenceEvictedContextsAreDropped() throws Exception {
+        ContextStore store = store(null, 1, null);
+        store.putCompleted("a", context("a"));
+        store.putCompleted("b", context("b"));
+
+        assertNull(store.get("a"));
+        assertEquals("b", store.get("b").get(VALUE_KEY).orElseThrow());
+    }
+
+    @Test
+    void testCompletedExecutionsExpireFromBothTiers() throws Exception {
+        FileSequenceContextPersistence persistence = new FileSequenceContextPersistence(directory.toString());
+        ContextStore store = store(persistence, 1, Duration.ofMinutes(10));
+        store.putCompleted("a", context("a"));
+        store.putCompleted("b", context("b")); // Spills "a".
+
+        clock.advance(Duration.ofMinutes(11));
+        store.sweep();
+
+        assertNull(store.get("a"));
+        assertNull(store.get("b"));
+        assertTrue(persistence.listStoredExecutionIds().isEmpty());
+        assertEquals(2L, store.stats().expirations());
+    }
+
+    @Test
+    void testSpillsAndSweepsRunInTheBackground() throws Exception {
+        FileSequenceContextPersistence persistence = new FileSequenceContextPersistence(directory.toString());
+        List<Runnable> tasks = new ArrayList<>();
+        ContextStore store = new ContextStore(persistence, context -> 1, 1, Duration.ofMinutes(10), context -> context,
+                clock, null, tasks::add);
+        store.putCompleted("a", context("a"));
+        clock.advance(Duration.ofMinutes(11));
+        store.putCompleted("b", context("b")); // Evicts "a", which has expired.
+
+        // Nothing was written on the completing threads: the sweep scheduled by the first completion is still
+        // pending, so the second scheduled none, and so is the spill of "a".
+        assertEquals(2, tasks.size());
+        assertTrue(persistence.listStoredExecutionIds().isEmpty());
+        tasks.get(1).run();
+        assertEquals(List.of("a"), persistence.listStoredExecutionIds());
+        tasks.get(0).run();
+        assertTrue(persistence.listStoredExecutionIds().isEmpty());
+        assertEquals("b", store.get("b").get(VALUE_KEY).orElseThrow());
+        assertEquals(1L, store.stats().expirations());
+    }
+
+    @Test
+    void testSupersededSpillIsSkipped() throws Exception {
+        FileSequenceContextPersistence persistence = new FileSequenceContextPersistence(directory.toString());
+        List<Runnable> tasks = new ArrayList<>();
+        ContextStore store = new ContextStore(persistence, context -> 1, 1, null, context -> context,
+                clock, null, tasks::add);
+        store.putCompleted("a", context("old"));
+        store.putCompleted("b", context("b")); // Evicts the old "a".
+        store.putCompleted("a", context("new")); // Stores "a" again, evicting "b".
+
+        tasks.forEach(Runnable::run);
+
+        assertEquals(List.of("b"), persistence.listStoredExecutionIds());
+        assertEquals("new", store.get("a").get(VALUE_KEY).orElseThrow());
+        assertEquals(1, store.stats().diskEntries());
+        store.flush();
+        assertEquals("new", persistence.loadState("a").get(VALUE_KEY).orElseThrow());
+    }
+
+    @Test
+    void testContextsIndexedAfterRestartExpireByTheirStartTime() throws Exception {
+        FileSequenceContextPersistence persistence = new FileSequenceContextPersistence(directory.toString());
+        String executionId = Ulid.lowerBound(Instant.EPOCH.plus(Duration.ofMinutes(1))) + "0".repeat(Ulid.LENGTH - 10);
+        persistence.saveState(executionId, context(executionId));
+        persistence.saveState("legacy", context("legacy"));
+        ContextStore store = store(persistence, 10, Duration.ofMinutes(10));
+        store.index(persistence.listStoredExecutionIds());
+
+        clock.advance(Duration.ofMinutes(5));
+        assertEquals(executionId, store.get(executionId).get(VALUE_KEY).orElseThrow());
+        clock.advance(Duration.ofMinutes(7));
+        store.sweep();
+
+        assertNull(store.get(executionId));
+        assertEquals(List.of("legacy"), persistence.listStoredExecutionIds());
+    }
+
+    @Test
+    void testIndexAnswersUnknownIdsWithoutReadingPersistence() throws Exception {
+        CountingPersistence persistence = new CountingPersistence(new FileSequenceContextPersistence(directory.toString()));
+        persistence.saveState("a", context("a"));
+        ContextStore store = store(persistence, 10, null);
+        store.index(persistence.listStoredExecutionIds());
+
+        assertNull(store.get("unknown"));
+        assertEquals(0, persistence.loads.get());
+        assertEquals("a", store.get("a").get(VALUE_KEY).orElseThrow());
+        assertEquals(1, persistence.loads.get());
+    }
+
+    @Test
+    void testBloomFilterIndexKeepsStoredIdsReachable() throws Exception {
+        CountingPersistence persistence = new CountingPersistence(new FileSequenceContextPersistence(directory.toString()));
+        for (int i = 0; i < 100; i++) {
+            persistence.saveState("execution-" + i, context("execution-" + i));
+        }
+        ContextStore store = new ContextStore(persistence, context -> 1, 10, null, context -> context, clock,
+                new BloomFilter(100, 0.01), Runnable::run);
+        store.index(persistence.listStoredExecutionIds());
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals("execution-" + i, store.get("execution-" + i).get(VALUE_KEY).orElseThrow());
+        }
+        persistence.loads.set(0);
+        for (int i = 0; i < 1000; i++) {
+            assertNull(store.get("unknown-" + i));
+        }
+        assertTrue(persistence.loads.get() < 50, "too many false positives: " + persistence.loads.get());
+    }
+
+    @Test
+    void testBloomFilterIndexTracksEvictedContextsInTheFilterOnly() throws Exception {
+        FileSequenceContextPersistence persistence = new FileSequenceContextPersistence(directory.toString());
+        ContextStore store = new ContextStore(persistence, context -> 1, 1, Duration.ofMinutes(10), context -> context,
+                clock, new BloomFilter(100, 0.01), Runnable::run);
+        store.index(List.of());
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            String executionId = Ulid.lowerBound(clock.instant()) + String.valueOf(i).repeat(Ulid.LENGTH - 10);
+            ids.add(executionId);
+            store.putCompleted(executionId, context(executionId));
+        }
+
+        assertEquals(2, store.stats().diskEntries());
+        assertEquals(ids.get(0), store.get(ids.get(0)).get(VALUE_KEY).orElseThrow());
+
+        // Expiry of the evicted contexts comes from their IDs, since the store kept no expiry time for them.
+        clock.advance(Duration.ofMinutes(11));
+        store.sweep();
+        assertTrue(persistence.listStoredExecutionIds().isEmpty());
+        assertEquals(3L, store.stats().expirations());
+    }
+
+    @Test
+    void testWarmUpFillsTheMemoryTier() throws Exception {
+        FileSequenceContextPersistence persistence = new FileSequenceContextPersistence(directory.toString());
+        for (int i = 0; i < 20; i++) {
+            persistence.saveState("execution-" + i, context("execution-" + i));
+        }
+        ContextStore store = store(persistence, 5, null);
+        List<String> ids = persistence.listStoredExecutionIds();
+        store.index(ids);
+        store.warmUp(ids, 4, Executors.newVirtualThreadPerTaskExecutor());
+
+        ContextStoreStats stats = store.stats();
+        assertTrue(stats.memoryEntries() >= 5, "memory tier not filled: " + stats.memoryEntries());
+        assertEquals(0L, stats.memoryHits() + stats.diskHits());
+    }
+
+    @Test
+    void testServiceStartsWithoutLoadingContexts() throws Exception {
+        CountingPersistence persistence = new CountingPersistence(new FileSequenceContextPersistence(directory.toString()));
+        for (int i = 0; i < 10; i++) {
+            persistence.saveState("execution-" + i, context("execution-" + i));
+        }
+        SequenceService service = SequenceService.builder().withPersistence(persistence).build();
+        service.start();
+        try {
+            service.whenReady().join();
+            assertEquals(0, persistence.loads.get());
+            assertEquals("execution-4", service.loadState("execution-4").get(VALUE_KEY).orElseThrow());
+            assertEquals(1, persistence.loads.get());
+        } finally {
+            service.stop();
+        }
+    }
+
+    private static final class CountingPersistence implements SequenceContextPersistence {
+        private final SequenceContextPersistence delegate;
+        private final AtomicInteger loads = new AtomicInteger();
+
+        private CountingPersistence(SequenceContextPersistence delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void saveState(String executionId, SequenceContext context) throws IOException {
+            delegate.saveState(executionId, context);
+        }
+
+        @Override
+        public SequenceContext loadState(String executionId) throws IOException, ClassNotFoundException {
+            loads.incrementAndGet();
+            return delegate.loadState(executionId);
+        }
+
+        @Override
+        public List<String> listStoredExecutionIds() throws IOException {
+            return delegate.listStoredExecutionIds();
+        }
+
+        @Override
+        public void deleteState(String executionId) throws IOException {
+            delegate.deleteState(executionId);
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.EPOCH;
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package com.ramblingpenguin.icefloe.context;
 
 import com.ramblingpenguin.icefloe.core.Node;
+import com.ramblingpenguin.icefloe.core.intercept.NodeDescriptor;
+import com.ramblingpenguin.icefloe.core.intercept.NodeInterceptor;
 import org.junit.jupiter.api.Test;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -52,4 +56,31 @@ public class ContextualSequenceTest {
         assertEquals(3, finalContext.get(wordCounterKey).orElseThrow().count());
         assertEquals("LAMBDA TEST WORKS", finalContext.get(uppercaseKey).orElseThrow().message());
     }
+
+    @Test
+    public void testInterceptorsSeeStepsByKey() {
+        NodeKey<InitialInput> initialInputKey = new NodeKey<>("init", InitialInput.class);
+        NodeKey<WordCount> wordCounterKey = new NodeKey<>("word-counter", WordCount.class);
+        List<String> calls = new ArrayList<>();
+
+        ContextualSequence<InitialInput> sequence = ContextualSequence.Builder.of(initialInputKey)
+                .withId("words")
+                .withInterceptor(new NodeInterceptor() {
+                    @Override
+                    public <I, O> Node<I, O> intercept(NodeDescriptor descriptor, Node<I, O> node) {
+                        return input -> {
+                            calls.add(descriptor.name());
+                            return node.apply(input);
+                        };
+                    }
+                })
+                .then(initialInputKey, wordCounterKey, input -> new WordCount(input.message().split("\\s+").length))
+                .then(context -> context)
+                .build();
+
+        SequenceContext finalContext = sequence.apply(new InitialInput("Hello world"));
+
+        assertEquals(2, finalContext.get(wordCounterKey).orElseThrow().count());
+        assertEquals(List.of("words/word-counter", "words/1"), calls);
+    }
 }
@@ -0,0 +1,139 @@
+package com.ramblingpenguin.icefloe.context;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeduplicationStoreTest {
+
+    private static final NodeKey<String> VALUE_KEY = new NodeKey<>("value", String.class);
+
+    @TempDir
+    Path directory;
+
+    private final MutableClock clock = new MutableClock();
+    private final Map<String, SequenceContext> contexts = new HashMap<>();
+    private final AtomicInteger runs = new AtomicInteger();
+
+    private DeduplicationStore store(Path journalDirectory, long maxEntries) throws Exception {
+        return new DeduplicationStore(journalDirectory, maxEntries, Duration.ofMinutes(10), clock, contexts::get);
+    }
+
+    private CompletableFuture<SequenceContext> run(String executionId) {
+        runs.incrementAndGet();
+        SequenceContext context = SequenceContext.empty(new ExecutionId(executionId), new DefaultTypeCombinerFactory())
+                .put(VALUE_KEY, executionId);
+        contexts.put(executionId, context);
+        return CompletableFuture.completedFuture(context);
+    }
+
+    @Test
+    void testDuplicateJoinsRunningExecution() throws Exception {
+        DeduplicationStore store = store(null, 10);
+        CompletableFuture<SequenceContext> pending = new CompletableFuture<>();
+        CompletableFuture<SequenceContext> original = store.execute("seq", "msg-1", () -> pending);
+        CompletableFuture<SequenceContext> duplicate = store.execute("seq", "msg-1", () -> run("other"));
+
+        assertFalse(duplicate.isDone());
+        duplicate.cancel(true);
+        SequenceContext context = run("first").join();
+        pending.complete(context);
+
+        assertSame(context, original.get(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+        assertEquals(1, store.suppressedDuplicates());
+    }
+
+    @Test
+    void testDuplicateOfCompletedExecutionReturnsStoredContext() throws Exception {
+        DeduplicationStore store = store(null, 10);
+        SequenceContext first = store.execute("seq", "msg-1", () -> run("first")).get(5, TimeUnit.SECONDS);
+        SequenceContext second = store.execute("seq", "msg-1", () -> run("second")).get(5, TimeUnit.SECONDS);
+        SequenceContext otherSequence = store.execute("other-seq", "msg-1", () -> run("third")).get(5, TimeUnit.SECONDS);
+
+        assertSame(first, second);
+        assertEquals("third", otherSequence.getExecutionId().id());
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void testFailedExecutionIsNotRecorded() throws Exception {
+        DeduplicationStore store = store(null, 10);
+        CompletableFuture<SequenceContext> failed = store.execute("seq", "msg-1",
+                () -> CompletableFuture.failedFuture(new IllegalStateException("boom")));
+        assertTrue(assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS)).getCause() instanceof IllegalStateException);
+
+        store.execute("seq", "msg-1", () -> run("retry")).get(5, TimeUnit.SECONDS);
+        assertEquals(1, runs.get());
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void testKeysExpireAndAreBounded() throws Exception {
+        DeduplicationStore store = store(null, 2);
+        store.execute("seq", "a", () -> run("a")).join();
+        store.execute("seq", "b", () -> run("b")).join();
+        store.execute("seq", "c", () -> run("c")).join();
+        assertEquals(2, store.size());
+
+        store.execute("seq", "a", () -> run("a-again")).join();
+        assertEquals(4, runs.get());
+
+        clock.advance(Duration.ofMinutes(11));
+        store.execute("seq", "c", () -> run("c-again")).join();
+        assertEquals(5, runs.get());
+    }
+
+    @Test
+    void testKeysSurviveRestart() throws Exception {
+        DeduplicationStore store = store(directory, 10);
+        SequenceContext first = store.execute("seq", "msg-1", () -> run("first")).join();
+        store.close();
+
+        DeduplicationStore reopened = store(directory, 10);
+        assertSame(first, reopened.execute("seq", "msg-1", () -> run("second")).join());
+        assertEquals(1, runs.get());
+        reopened.close();
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.EPOCH;
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.ramblingpenguin.icefloe.context;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExecutionIdTest {
+
+    @TempDir
+    Path directory;
+
+    private static String ulidAt(long epochMilli, String random) {
+        return Ulid.lowerBound(Instant.ofEpochMilli(epochMilli)) + random;
+    }
+
+    @Test
+    void testRootIdsAreUniqueAndSortByCreationTime() throws Exception {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ids.add(ExecutionId.newRoot().id());
+            Thread.sleep(2);
+        }
+        Set<String> unique = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            unique.add(ExecutionId.newRoot().id());
+        }
+
+        assertEquals(10_000, unique.size());
+        assertEquals(ids.stream().sorted().toList(), ids);
+        Instant created = ExecutionId.newRoot().timestamp().orElseThrow();
+        assertTrue(Math.abs(created.toEpochMilli() - System.currentTimeMillis()) < 5_000);
+    }
+
+    @Test
+    void testChildIdsFormatLazilyAndSurviveSerialization() throws Exception {
+        ExecutionId root = new ExecutionId(ulidAt(1_000, "0000000000000000"));
+        ExecutionId child = root.createChildId(3).createChildId("retry");
+
+        assertEquals(root.id() + ":3:retry", child.id());
+        assertEquals(new ExecutionId(root.id() + ":3:retry"), child);
+        assertEquals(Instant.ofEpochMilli(1_000), child.timestamp().orElseThrow());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(child);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            ExecutionId copy = (ExecutionId) in.readObject();
+            assertEquals(child, copy);
+            assertEquals(child.hashCode(), copy.hashCode());
+            assertEquals(Instant.ofEpochMilli(1_000), copy.timestamp().orElseThrow());
+        }
+    }
+
+    @Test
+    void testPersistenceListsExecutionsByTimeRange() throws Exception {
+        FileSequenceContextPersistence persistence = new FileSequenceContextPersistence(directory.toString());
+        List<String> ids = List.of(
+                ulidAt(1_000, "0000000000000000"),
+                ulidAt(2_000, "ZZZZZZZZZZZZZZZZ"),
+                ulidAt(2_000, "0000000000000000") + ":1",
+                ulidAt(3_000, "0000000000000000"),
+                "legacy-id");
+        for (String id : ids) {
+            persistence.saveState(id, SequenceContext.empty(new ExecutionId(id), new DefaultTypeCombinerFactory()));
+        }
+
+        assertEquals(List.of(ids.get(2), ids.get(1)),
+                persistence.listStoredExecutionIds(Instant.ofEpochMilli(2_000), Instant.ofEpochMilli(3_000)));
+        assertEquals(4, persistence.listStoredExecutionIds(Instant.EPOCH, Instant.ofEpochMilli(4_000)).size());
+    }
+}
@@ -0,0 +1,135 @@
+package com.ramblingpenguin.icefloe.context;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExecutionProfilerTest {
+
+    private static final NodeKey<String> INPUT_KEY = new NodeKey<>("input", String.class);
+    @SuppressWarnings("unchecked")
+    private static final NodeKey<ArrayList<String>> WORDS_KEY = new NodeKey<>("words", (Class<ArrayList<String>>) (Class<?>) ArrayList.class);
+    private static final NodeKey<String> WORD_KEY = new NodeKey<>("word", String.class);
+    @SuppressWarnings("unchecked")
+    private static final NodeKey<ArrayList<Integer>> LENGTH_KEY = new NodeKey<>("length", (Class<ArrayList<Integer>>) (Class<?>) ArrayList.class);
+
+    private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    void testCriticalPathFollowsTheSlowestBranch() {
+        ContextualSequence<String> sequence = ContextualSequence.Builder.of(INPUT_KEY)
+                .withId("words")
+                .then(INPUT_KEY, WORDS_KEY, (String input) -> new ArrayList<>(List.of(input.split(" "))))
+                .then(new ContextualForkSequence<>(WORDS_KEY, WORD_KEY,
+                        ContextualNode.of(LENGTH_KEY, context -> context.get(WORD_KEY).orElseThrow(), ExecutionProfilerTest::length)))
+                .build();
+        SequenceService service = SequenceService.builder().build();
+        service.register(sequence);
+        service.start();
+
+        SequenceContext unprofiled = service.execute(sequence.id(), "a b c").join();
+        SequenceContext profiled = service.execute(sequence.id(), "a slow b c",
+                ExecutionOptions.defaults().withProfiling()).join();
+        service.stop();
+
+        ExecutionProfiler profiler = service.getProfiler();
+        assertFalse(profiler.getProfile(unprofiled.getExecutionId().id()).isPresent());
+        ExecutionProfile profile = profiler.getProfile(profiled.getExecutionId().id()).orElseThrow();
+
+        assertEquals(1, profile.forks().size());
+        ForkProfile fork = profile.forks().get(0);
+        assertEquals("words", fork.name());
+        assertEquals(4, fork.branches());
+        assertTrue(fork.parallel());
+        assertTrue(fork.slowestBranchNanos() >= SLOW_NANOS);
+        assertTrue(fork.skew() > 1, "skew was " + fork.skew());
+        assertTrue(fork.mergeNanos() > 0);
+
+        // The execution's own node, then the slow branch's node, then the merges of every branch.
+        List<String> path = profile.criticalPath().stream().map(ProfileSpan::name).toList();
+        assertEquals(List.of("words", "length", "merge", "merge", "merge", "merge"), path);
+        ProfileSpan straggler = profile.criticalPath().get(1);
+        assertTrue(straggler.durationNanos() >= SLOW_NANOS);
+        assertTrue(straggler.executionId().startsWith(profile.executionId() + ":"));
+        assertTrue(profile.criticalPathNanos() <= profile.totalNanos());
+        assertTrue(profile.mergeFraction() > 0 && profile.mergeFraction() < 1);
+
+        ProfileSummary summary = profiler.summary();
+        assertEquals(1, summary.executions());
+        assertEquals(fork.skew(), summary.maxForkSkew());
+        assertTrue(summary.criticalPathNanosByName().get("length") >= SLOW_NANOS);
+    }
+
+    @Test
+    void testBranchesAreAttributedToTheForkThatEnclosesThem() {
+        // Both forks of "e" number their branches from 0, so their branch and node spans share execution IDs.
+        List<ProfileSpan> spans = List.of(
+                span("e", "first", ProfileSpan.Kind.FORK, 0, 100),
+                span("e:0", "item", ProfileSpan.Kind.BRANCH, 10, 50),
+                span("e:0", "fast", ProfileSpan.Kind.NODE, 10, 50),
+                span("e:1", "item", ProfileSpan.Kind.BRANCH, 10, 90),
+                span("e:1", "slow", ProfileSpan.Kind.NODE, 10, 90),
+                span("e", "merge", ProfileSpan.Kind.MERGE, 90, 95),
+                span("e", "merge", ProfileSpan.Kind.MERGE, 95, 100),
+                span("e", "second", ProfileSpan.Kind.FORK, 100, 200),
+                span("e:0", "item", ProfileSpan.Kind.BRANCH, 110, 190),
+                span("e:0", "slow", ProfileSpan.Kind.NODE, 110, 190),
+                span("e:1", "item", ProfileSpan.Kind.BRANCH, 110, 130),
+                span("e:1", "fast", ProfileSpan.Kind.NODE, 110, 130),
+                span("e", "merge", ProfileSpan.Kind.MERGE, 190, 200));
+
+        ExecutionProfile profile = ExecutionProfile.analyze("s", "e", 200, spans);
+
+        assertEquals(List.of(10L, 90L, 95L, 110L, 190L),
+                profile.criticalPath().stream().map(ProfileSpan::startNanos).toList());
+        assertEquals(180L, profile.criticalPathNanos());
+        assertEquals(2, profile.forks().size());
+        assertEquals(2, profile.forks().get(0).branches());
+        assertEquals(10L, profile.forks().get(0).mergeNanos());
+        assertEquals(2, profile.forks().get(1).branches());
+        assertEquals(10L, profile.forks().get(1).mergeNanos());
+    }
+
+    private static ProfileSpan span(String executionId, String name, ProfileSpan.Kind kind, long start, long end) {
+        return new ProfileSpan(executionId, name, kind, start, end);
+    }
+
+    @Test
+    void testSampledExecutionsAreProfiledWithoutOptions() {
+        ContextualSequence<String> sequence = ContextualSequence.Builder.of(INPUT_KEY)
+                .withId("upper")
+                .then(INPUT_KEY, WORD_KEY, String::toUpperCase)
+                .build();
+        SequenceService service = SequenceService.builder()
+                .withProfiler(new ExecutionProfiler(1, 2))
+                .build();
+        service.register(sequence);
+        service.start();
+        for (int i = 0; i < 3; i++) {
+            service.execute(sequence.id(), "word").join();
+        }
+        service.stop();
+
+        List<ExecutionProfile> recent = service.getProfiler().getRecentProfiles();
+        assertEquals(2, recent.size());
+        assertEquals(List.of("word"), recent.get(1).criticalPath().stream().map(ProfileSpan::name).toList());
+        assertEquals(3, service.getProfiler().summary().executions());
+    }
+
+    private static ArrayList<Integer> length(String word) {
+        if (word.equals("slow")) {
+            try {
+                Thread.sleep(TimeUnit.NANOSECONDS.toMillis(SLOW_NANOS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return new ArrayList<>(List.of(word.length()));
+    }
+}
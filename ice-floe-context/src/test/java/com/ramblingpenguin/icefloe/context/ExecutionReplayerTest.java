@@ -0,0 +1,111 @@
+package com.ramblingpenguin.icefloe.context;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExecutionReplayerTest {
+
+    private static final NodeKey<String> INPUT_KEY = new NodeKey<>("input", String.class);
+    private static final NodeKey<String> FETCH_KEY = new NodeKey<>("fetch", String.class);
+    private static final NodeKey<Integer> LENGTH_KEY = new NodeKey<>("length", Integer.class);
+
+    @TempDir
+    Path directory;
+
+    private final AtomicInteger fetches = new AtomicInteger();
+
+    @Test
+    void testCaptureRecordsInputsTimingsAndExternalResponses() throws Exception {
+        Path log = capture("a", "bb", "ccc");
+
+        List<CapturedExecution> executions = ExecutionCapture.read(log);
+        assertEquals(3, executions.size());
+        CapturedExecution first = executions.stream().filter(e -> e.input().equals("a")).findFirst().orElseThrow();
+        assertEquals("replay", first.sequenceId());
+        assertEquals("A!", first.responses().get("fetch"));
+        assertEquals(Set.of("fetch"), first.responses().keySet());
+        assertTrue(first.nodeNanos().get("fetch") >= 20_000_000, first.nodeNanos().toString());
+        assertTrue(first.nodeNanos().containsKey("length"));
+        assertTrue(first.runNanos() >= first.nodeNanos().get("fetch"));
+    }
+
+    @Test
+    void testReplayStubsExternalNodes() throws Exception {
+        Path log = capture("a", "bb", "ccc");
+        fetches.set(0);
+        ExecutionReplayer replayer = ExecutionReplayer.from(log).withSpeed(Double.POSITIVE_INFINITY);
+        ContextualSequence<String> sequence = sequence(ContextualSequence.Builder.of(INPUT_KEY)
+                .withInterceptor(replayer.stubs()));
+
+        ReplayReport report;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            report = replayer.replay(sequence, executor);
+        }
+
+        assertEquals(0, fetches.get());
+        assertEquals(3, report.executions());
+        assertEquals(0, report.failed());
+        assertTrue(report.replayedNodeNanos().get("fetch") >= 20_000_000, report.toString());
+        assertEquals(3, report.replayed().count());
+
+        ReplayReport immediate;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            ExecutionReplayer fast = replayer.withoutStubLatency();
+            immediate = fast.replay(sequence(ContextualSequence.Builder.of(INPUT_KEY).withInterceptor(fast.stubs())), executor);
+        }
+        assertEquals(0, fetches.get());
+        assertTrue(immediate.replayedNodeNanos().get("fetch") < 20_000_000, immediate.toString());
+        assertTrue(immediate.speedup() > 1, immediate.toString());
+    }
+
+    @Test
+    void testStubsCallRealNodesOutsideReplay() throws Exception {
+        ExecutionReplayer replayer = ExecutionReplayer.from(capture("a"));
+        fetches.set(0);
+        ContextualSequence<String> sequence = sequence(ContextualSequence.Builder.of(INPUT_KEY)
+                .withInterceptor(replayer.stubs()));
+
+        assertEquals(4, sequence.apply("xyz").get(LENGTH_KEY).orElseThrow());
+        assertEquals(1, fetches.get());
+    }
+
+    private Path capture(String... inputs) throws Exception {
+        Path log = directory.resolve("capture.log");
+        SequenceService service = SequenceService.builder()
+                .withCapture(new ExecutionCapture(log, 1, Set.of(FETCH_KEY)))
+                .build();
+        ContextualSequence<String> sequence = sequence(ContextualSequence.Builder.of(INPUT_KEY));
+        service.register(sequence);
+        service.start();
+        for (String input : inputs) {
+            service.execute(sequence.id(), input).join();
+        }
+        service.stop();
+        return log;
+    }
+
+    private ContextualSequence<String> sequence(ContextualSequence.Builder<String> builder) {
+        return builder.withId("replay")
+                .then(INPUT_KEY, FETCH_KEY, (String input) -> {
+                    fetches.incrementAndGet();
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return input.toUpperCase() + "!";
+                })
+                .then(FETCH_KEY, LENGTH_KEY, String::length)
+                .build();
+    }
+}
@@ -0,0 +1,80 @@
+package com.ramblingpenguin.icefloe.context;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FlightEventsTest {
+
+    private static final NodeKey<String> INPUT_KEY = new NodeKey<>("input", String.class);
+    @SuppressWarnings("unchecked")
+    private static final NodeKey<ArrayList<String>> WORDS_KEY = new NodeKey<>("words", (Class<ArrayList<String>>) (Class<?>) ArrayList.class);
+    private static final NodeKey<String> WORD_KEY = new NodeKey<>("word", String.class);
+    @SuppressWarnings("unchecked")
+    private static final NodeKey<ArrayList<Integer>> LENGTH_KEY = new NodeKey<>("length", (Class<ArrayList<Integer>>) (Class<?>) ArrayList.class);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testEventsCarryExecutionAndNodeKeys() throws Exception {
+        ContextualSequence<String> sequence = ContextualSequence.Builder.of(INPUT_KEY)
+                .withId("words")
+                .then(INPUT_KEY, WORDS_KEY, (String input) -> new ArrayList<>(List.of(input.split(" "))))
+                .then(new ContextualForkSequence<>(WORDS_KEY, WORD_KEY,
+                        ContextualNode.of(LENGTH_KEY, context -> context.get(WORD_KEY).orElseThrow(),
+                                (String word) -> new ArrayList<>(List.of(word.length())))))
+                .build();
+        SequenceService service = SequenceService.builder()
+                .withPersistence(new FileSequenceContextPersistence(directory.resolve("contexts").toString()))
+                .build();
+        service.register(sequence);
+        service.start();
+
+        Path dump = directory.resolve("recording.jfr");
+        String executionId;
+        try (Recording recording = new Recording()) {
+            for (String event : List.of("NodeExecution", "ForkScatter", "ForkGather", "ContextMerge", "ContextSave", "QueueWait")) {
+                recording.enable("com.ramblingpenguin.icefloe." + event).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+            SequenceContext result = service.execute(sequence.id(), "to be or not").join();
+            executionId = result.getExecutionId().id();
+            service.saveState(executionId, result);
+            recording.stop();
+            recording.dump(dump);
+        }
+        service.stop();
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        Set<String> names = events.stream().map(event -> event.getEventType().getName()).collect(Collectors.toSet());
+        assertTrue(names.containsAll(Set.of("com.ramblingpenguin.icefloe.NodeExecution", "com.ramblingpenguin.icefloe.ForkScatter",
+                "com.ramblingpenguin.icefloe.ForkGather", "com.ramblingpenguin.icefloe.ContextMerge",
+                "com.ramblingpenguin.icefloe.ContextSave", "com.ramblingpenguin.icefloe.QueueWait")), names.toString());
+
+        RecordedEvent scatter = events.stream()
+                .filter(event -> event.getEventType().getName().endsWith("ForkScatter"))
+                .findFirst().orElseThrow();
+        assertEquals(executionId, scatter.getString("executionId"));
+        assertEquals(4, scatter.getInt("branches"));
+        assertTrue(events.stream()
+                .filter(event -> event.getEventType().getName().endsWith("NodeExecution"))
+                .anyMatch(event -> "length".equals(event.getString("nodeKey"))
+                        && event.getString("executionId").startsWith(executionId + ":")));
+        assertTrue(events.stream()
+                .filter(event -> event.getEventType().getName().endsWith("QueueWait"))
+                .anyMatch(event -> "words".equals(event.getString("sequenceKey"))));
+    }
+}
@@ -0,0 +1,206 @@
+package com.ramblingpenguin.icefloe.context;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HibernationStoreTest {
+
+    private static final NodeKey<String> ORDER_KEY = new NodeKey<>("order", String.class);
+    private static final NodeKey<String> REQUEST_KEY = new NodeKey<>("request", String.class);
+    private static final NodeKey<String> APPROVAL_KEY = new NodeKey<>("approval", String.class);
+    private static final NodeKey<String> OUTCOME_KEY = new NodeKey<>("outcome", String.class);
+
+    @TempDir
+    Path directory;
+
+    private static ContextualSequence<String> approvalSequence(HibernationStore store, Duration timeout) {
+        return ContextualSequence.Builder.of(ORDER_KEY)
+                .withId("approval")
+                .withHibernation(store)
+                .then(ORDER_KEY, REQUEST_KEY, (String order) -> "approve " + order)
+                .thenAwaitEvent(APPROVAL_KEY, context -> "approval-" + context.get(ORDER_KEY).orElseThrow(), timeout)
+                .then(OUTCOME_KEY, context -> context.get(APPROVAL_KEY).orElse("timed out"))
+                .build();
+    }
+
+    private static SequenceService startService(HibernationStore store, Duration timeout) {
+        SequenceService service = SequenceService.builder().withHibernation(store).build();
+        service.register(approvalSequence(store, timeout));
+        service.start();
+        return service;
+    }
+
+    private static ExecutionSuspendedException suspension(CompletableFuture<SequenceContext> execution) {
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> execution.get(5, TimeUnit.SECONDS));
+        return assertInstanceOf(ExecutionSuspendedException.class, failure.getCause());
+    }
+
+    @Test
+    void testSignalResumesParkedExecutionAfterRestart() throws Exception {
+        SequenceKey<String, SequenceContext> key = new SequenceKey<>(String.class, SequenceContext.class, "approval");
+        String executionId;
+
+        SequenceService first = startService(new HibernationStore(directory), null);
+        ExecutionSuspendedException suspended = suspension(first.execute(key, "42"));
+        executionId = suspended.getExecutionId();
+        assertEquals("approval-42", suspended.getCorrelationId());
+        assertEquals(1, first.getParkedExecutions());
+        first.stop();
+
+        SequenceService second = startService(new HibernationStore(directory), null);
+        assertEquals(1, second.getParkedExecutions());
+        SequenceContext result = second.signal("approval-42", "granted").get(5, TimeUnit.SECONDS);
+
+        assertEquals(executionId, result.getExecutionId().id());
+        assertEquals("approve 42", result.get(REQUEST_KEY).orElseThrow());
+        assertEquals("granted", result.get(OUTCOME_KEY).orElseThrow());
+        assertFalse(result.getContext().containsKey(HibernationStore.CONTINUATION_KEY));
+        assertEquals(0, second.getParkedExecutions());
+
+        ExecutionException duplicate = assertThrows(ExecutionException.class,
+                () -> second.signal("approval-42", "granted").get(5, TimeUnit.SECONDS));
+        assertInstanceOf(NoSuchElementException.class, duplicate.getCause());
+        second.stop();
+    }
+
+    @Test
+    void testEventOfWrongTypeLeavesExecutionParked() throws Exception {
+        SequenceService service = startService(new HibernationStore(directory), null);
+        SequenceKey<String, SequenceContext> key = new SequenceKey<>(String.class, SequenceContext.class, "approval");
+        suspension(service.execute(key, "7"));
+
+        ExecutionException failure = assertThrows(ExecutionException.class,
+                () -> service.signal("approval-7", 7).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(ClassCastException.class, failure.getCause());
+
+        assertEquals("granted", service.signal("approval-7", "granted").get(5, TimeUnit.SECONDS)
+                .get(OUTCOME_KEY).orElseThrow());
+        service.stop();
+    }
+
+    @Test
+    void testRejectedResumptionLeavesExecutionParked() throws Exception {
+        HibernationStore store = new HibernationStore(directory);
+        CountDownLatch blocking = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ContextualSequence<String> blocker = ContextualSequence.Builder.of(ORDER_KEY)
+                .withId("blocker")
+                .then(ORDER_KEY, OUTCOME_KEY, (String order) -> {
+                    blocking.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return order;
+                })
+                .build();
+        SequenceService service = SequenceService.builder()
+                .withHibernation(store)
+                .withAdmissionControl(1, 0, RejectionPolicy.FAIL_FAST)
+                .build();
+        service.register(approvalSequence(store, null));
+        service.register(blocker);
+        service.start();
+        SequenceKey<String, SequenceContext> key = new SequenceKey<>(String.class, SequenceContext.class, "approval");
+        suspension(service.execute(key, "5"));
+        awaitIdle(service);
+
+        CompletableFuture<SequenceContext> running = service.execute(blocker.id(), "busy");
+        assertTrue(blocking.await(5, TimeUnit.SECONDS));
+        ExecutionException rejected = assertThrows(ExecutionException.class,
+                () -> service.signal("approval-5", "granted").get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, rejected.getCause());
+        assertEquals(1, service.getParkedExecutions());
+
+        release.countDown();
+        running.get(5, TimeUnit.SECONDS);
+        awaitIdle(service);
+        assertEquals("granted", service.signal("approval-5", "granted").get(5, TimeUnit.SECONDS)
+                .get(OUTCOME_KEY).orElseThrow());
+        assertEquals(0, service.getParkedExecutions());
+        service.stop();
+    }
+
+    @Test
+    void testTimedOutWaitResumesWithoutEvent() throws Exception {
+        HibernationStore store = new HibernationStore(directory);
+        SequenceService service = startService(store, Duration.ofMillis(50));
+        SequenceKey<String, SequenceContext> key = new SequenceKey<>(String.class, SequenceContext.class, "approval");
+        String executionId = suspension(service.execute(key, "9")).getExecutionId();
+        assertEquals(1, store.getPendingTimers());
+
+        SequenceContext result = null;
+        long giveUp = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (result == null && System.nanoTime() < giveUp) {
+            Thread.sleep(10);
+            result = service.loadState(executionId);
+        }
+
+        assertNotNull(result);
+        assertEquals("timed out", result.get(OUTCOME_KEY).orElseThrow());
+        assertEquals(0, service.getParkedExecutions());
+        assertTrue(store.pollDueTimers().isEmpty());
+        service.stop();
+    }
+
+    @Test
+    void testDeadlineBeforeTimeoutFailsParkedExecution() throws Exception {
+        HibernationStore store = new HibernationStore(directory);
+        SequenceService service = startService(store, Duration.ofMinutes(1));
+        SequenceKey<String, SequenceContext> key = new SequenceKey<>(String.class, SequenceContext.class, "approval");
+        String executionId = suspension(service.execute(key, "10",
+                ExecutionOptions.defaults().withTimeout(Duration.ofMillis(100)))).getExecutionId();
+
+        long giveUp = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (service.getParkedExecutions() > 0 && System.nanoTime() < giveUp) {
+            Thread.sleep(10);
+        }
+        long failed = 0;
+        while (failed == 0 && System.nanoTime() < giveUp) {
+            Thread.sleep(10);
+            failed = service.getMetrics().snapshot().sequences().get("approval").failed();
+        }
+
+        assertEquals(0, service.getParkedExecutions());
+        assertEquals(1, failed);
+        assertNull(service.loadState(executionId));
+        service.stop();
+    }
+
+    @Test
+    void testWaitRequiresStore() {
+        ContextualSequence.Builder<String> builder = ContextualSequence.Builder.of(ORDER_KEY)
+                .withId("unparkable")
+                .thenAwaitEvent(APPROVAL_KEY, context -> "id", null);
+        assertThrows(IllegalStateException.class, builder::build);
+    }
+
+    /**
+     * Waits for the service's executions to give up their admission slots, which happens just after their
+     * futures complete.
+     */
+    private static void awaitIdle(SequenceService service) throws InterruptedException {
+        long giveUp = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (service.getInFlightExecutions() > 0 && System.nanoTime() < giveUp) {
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.ramblingpenguin.icefloe.context;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IncrementalExecutionTest {
+
+    record Document(String title, String body) implements Serializable {}
+    record Summary(String text) implements Serializable {}
+    record Report(String text) implements Serializable {}
+
+    private static final NodeKey<Document> DOCUMENT_KEY = new NodeKey<>("document", Document.class);
+    private static final NodeKey<String> TITLE_KEY = new NodeKey<>("title", String.class);
+    private static final NodeKey<Summary> SUMMARY_KEY = new NodeKey<>("summary", Summary.class);
+    private static final NodeKey<Report> REPORT_KEY = new NodeKey<>("report", Report.class);
+
+    private final AtomicInteger summaries = new AtomicInteger();
+    private final AtomicInteger reports = new AtomicInteger();
+
+    private ContextualSequence<Document> buildSequence() {
+        return ContextualSequence.Builder.of(DOCUMENT_KEY)
+                .withId("documents")
+                .then(DOCUMENT_KEY, TITLE_KEY, (Document document) -> document.title())
+                .then(DOCUMENT_KEY, SUMMARY_KEY, (Document document) -> {
+                    summaries.incrementAndGet();
+                    return new Summary(document.body().substring(0, 5));
+                })
+                .then(SUMMARY_KEY, REPORT_KEY, (Summary summary) -> {
+                    reports.incrementAndGet();
+                    return new Report("Report: " + summary.text());
+                })
+                .build();
+    }
+
+    @Test
+    void testUnchangedInputReusesEveryOutput() {
+        ContextualSequence<Document> sequence = buildSequence();
+        Document document = new Document("Title", "Hello world");
+
+        SequenceContext first = sequence.applyIncrementally(document, null);
+        SequenceContext second = sequence.applyIncrementally(document, first);
+
+        assertEquals(1, summaries.get());
+        assertEquals(1, reports.get());
+        assertEquals("Report: Hello", second.get(REPORT_KEY).orElseThrow().text());
+    }
+
+    @Test
+    void testOnlyNodesWithChangedInputsAreRecomputed() {
+        ContextualSequence<Document> sequence = buildSequence();
+
+        SequenceContext first = sequence.applyIncrementally(new Document("Title", "Hello world"), null);
+        SequenceContext second = sequence.applyIncrementally(new Document("Title", "Hello there"), first);
+
+        // The summary is recomputed, but it is unchanged, so the report is reused.
+        assertEquals(2, summaries.get());
+        assertEquals(1, reports.get());
+        assertEquals("Report: Hello", second.get(REPORT_KEY).orElseThrow().text());
+
+        sequence.applyIncrementally(new Document("Title", "Goodbye"), second);
+
+        assertEquals(3, summaries.get());
+        assertEquals(2, reports.get());
+    }
+
+    @Test
+    void testNonIncrementalPriorContextIsIgnored() {
+        ContextualSequence<Document> sequence = buildSequence();
+        Document document = new Document("Title", "Hello world");
+
+        SequenceContext first = sequence.apply(document);
+        sequence.applyIncrementally(document, first);
+
+        assertEquals(2, summaries.get());
+        assertEquals(2, reports.get());
+    }
+
+    @Test
+    void testServiceRunsIncrementalExecutionsLikeAnyOther() {
+        ContextualSequence<Document> sequence = buildSequence();
+        SequenceService service = SequenceService.builder()
+                .withProfiler(new ExecutionProfiler(1, 10))
+                .build();
+        service.register(sequence);
+        service.start();
+        Document document = new Document("Title", "Hello world");
+
+        SequenceContext first = service.executeIncrementally(sequence.id(), document, null).join();
+        SequenceContext second = service.executeIncrementally(sequence.id(), document, first.getExecutionId().id()).join();
+        service.stop();
+
+        assertEquals(1, summaries.get());
+        assertEquals(1, reports.get());
+        assertTrue(service.getProfiler().getProfile(second.getExecutionId().id()).isPresent());
+        assertEquals(2L, service.getMetrics().snapshot().sequences().get("documents").completed());
+    }
+}
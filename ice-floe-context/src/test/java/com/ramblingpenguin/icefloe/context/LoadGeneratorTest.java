@@ -0,0 +1,108 @@
+package com.ramblingpenguin.icefloe.context;
+
+import com.ramblingpenguin.icefloe.core.node.StubNode;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadGeneratorTest {
+
+    private static final NodeKey<String> INPUT_KEY = new NodeKey<>("input", String.class);
+    private static final NodeKey<String> FETCH_KEY = new NodeKey<>("fetch", String.class);
+
+    @Test
+    void testFixedRateWithinCapacity() {
+        SequenceService service = SequenceService.builder().build();
+        ContextualSequence<String> sequence = sequence(StubNode.returning((String input) -> input + "!")
+                .withLatency(Duration.ofMillis(5)));
+        service.register(sequence);
+        service.start();
+
+        LoadReport report = LoadGenerator.of(service, sequence.id(), n -> "input-" + n,
+                        LoadProfile.fixed(100, Duration.ofSeconds(1)))
+                .withWindow(Duration.ofMillis(500))
+                .run();
+        service.stop();
+
+        assertEquals(100, report.sent(), 2);
+        assertEquals(report.sent(), report.succeeded());
+        assertEquals(0, report.failed());
+        assertTrue(report.latency().percentile(0.5) >= 5_000_000, report.toString());
+        assertEquals(2, report.windows().size());
+        assertTrue(report.saturationPoint().isEmpty(), report.toString());
+        assertEquals(100, report.maxSustainableRate(), 5);
+    }
+
+    @Test
+    void testLatencyLongerThanAWindowIsNotSaturation() {
+        SequenceService service = SequenceService.builder().build();
+        ContextualSequence<String> sequence = sequence(StubNode.returning((String input) -> input)
+                .withLatency(Duration.ofMillis(150)));
+        service.register(sequence);
+        service.start();
+
+        LoadReport report = LoadGenerator.of(service, sequence.id(), n -> "input",
+                        LoadProfile.fixed(20, Duration.ofSeconds(1)))
+                .withWindow(Duration.ofMillis(250))
+                .run();
+        service.stop();
+
+        // Most executions complete in the window after the one they were due in, and the last ones after the run.
+        assertTrue(report.saturationPoint().isEmpty(), report.toString());
+        assertEquals(20, report.maxSustainableRate(), 2);
+    }
+
+    @Test
+    void testStubFailuresAreCounted() {
+        SequenceService service = SequenceService.builder().build();
+        ContextualSequence<String> sequence = sequence(StubNode.returning((String input) -> input).withFailureRate(1));
+        service.register(sequence);
+        service.start();
+
+        LoadReport report = LoadGenerator.of(service, sequence.id(), n -> "input",
+                LoadProfile.fixed(50, Duration.ofMillis(200))).run();
+        service.stop();
+
+        assertEquals(report.sent(), report.failed());
+        assertEquals(0, report.succeeded());
+        assertEquals(report.sent(), report.windows().get(0).failed());
+        assertEquals(0.0, report.maxSustainableRate());
+    }
+
+    @Test
+    void testLatencyIsCorrectedForCoordinatedOmission() {
+        // One execution at a time, run by the caller when busy: the generator is held up by every execution.
+        SequenceService service = SequenceService.builder()
+                .withAdmissionControl(1, 0, RejectionPolicy.CALLER_RUNS)
+                .build();
+        ContextualSequence<String> sequence = sequence(StubNode.returning((String input) -> input)
+                .withLatency(Duration.ofMillis(20)));
+        service.register(sequence);
+        service.start();
+
+        LoadReport report = LoadGenerator.of(service, sequence.id(), n -> "input",
+                        LoadProfile.ramp(40, 200, Duration.ofSeconds(2)))
+                // Windows long enough that the one execution crossing into the next does not look like saturation.
+                .withWindow(Duration.ofMillis(500))
+                .run();
+        service.stop();
+
+        // The executor and the generator together sustain at most 100 executions a second.
+        assertTrue(report.saturationPoint().isPresent(), report.toString());
+        assertTrue(report.maxSustainableRate() < 120, report.toString());
+        assertFalse(report.windows().get(0).saturated(), report.toString());
+        long corrected = report.latency().percentile(0.99);
+        long uncorrected = report.serviceTime().percentile(0.99);
+        assertTrue(corrected > 2 * uncorrected, "corrected " + corrected + ", uncorrected " + uncorrected);
+    }
+
+    private static ContextualSequence<String> sequence(StubNode<String, String> fetch) {
+        return ContextualSequence.Builder.of(INPUT_KEY)
+                .then(INPUT_KEY, FETCH_KEY, fetch)
+                .build();
+    }
+}
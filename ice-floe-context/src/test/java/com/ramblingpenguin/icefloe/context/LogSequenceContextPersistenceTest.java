@@ -0,0 +1,162 @@
+package com.ramblingpenguin.icefloe.context;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogSequenceContextPersistenceTest {
+
+    private static final NodeKey<String> VALUE_KEY = new NodeKey<>("value", String.class);
+
+    @TempDir
+    Path directory;
+
+    private static SequenceContext context(String executionId, String value) {
+        return SequenceContext.empty(new ExecutionId(executionId), new DefaultTypeCombinerFactory()).put(VALUE_KEY, value);
+    }
+
+    private static String value(SequenceContext context) {
+        return context.get(VALUE_KEY).orElseThrow();
+    }
+
+    @Test
+    void testSaveAndLoadSurviveReopening() throws Exception {
+        try (LogSequenceContextPersistence log = LogSequenceContextPersistence.open(directory)) {
+            log.saveState("a", context("a", "first"));
+            log.saveState("b", context("b", "second"));
+            log.saveState("a", context("a", "updated"));
+
+            assertEquals("updated", value(log.loadState("a")));
+            assertNull(log.loadState("missing"));
+        }
+
+        try (LogSequenceContextPersistence log = LogSequenceContextPersistence.open(directory)) {
+            assertEquals("updated", value(log.loadState("a")));
+            assertEquals("second", value(log.loadState("b")));
+            assertEquals(2, log.listStoredExecutionIds().size());
+        }
+    }
+
+    @Test
+    void testSavesFailInsteadOfHangingOnceTheWriterStops() throws Exception {
+        Set<Thread> before = Thread.getAllStackTraces().keySet();
+        try (LogSequenceContextPersistence log = LogSequenceContextPersistence.open(directory)) {
+            log.saveState("a", context("a", "first"));
+            Thread writer = Thread.getAllStackTraces().keySet().stream()
+                    .filter(thread -> !before.contains(thread) && thread.getName().equals("ice-floe-log-writer"))
+                    .findFirst().orElseThrow();
+            writer.interrupt();
+            writer.join(5_000);
+
+            assertTimeoutPreemptively(Duration.ofSeconds(5),
+                    () -> assertThrows(IOException.class, () -> log.saveState("b", context("b", "second"))));
+            assertEquals("first", value(log.loadState("a")));
+        }
+    }
+
+    @Test
+    void testListsExecutionsByTimeRangeFromTheIndex() throws Exception {
+        String early = Ulid.lowerBound(Instant.ofEpochMilli(1_000)) + "0".repeat(16);
+        String inRange = Ulid.lowerBound(Instant.ofEpochMilli(2_000)) + "Z".repeat(16);
+        String child = Ulid.lowerBound(Instant.ofEpochMilli(2_000)) + "0".repeat(16) + ":1";
+        String late = Ulid.lowerBound(Instant.ofEpochMilli(3_000)) + "0".repeat(16);
+        try (LogSequenceContextPersistence log = LogSequenceContextPersistence.open(directory)) {
+            for (String id : List.of(late, "legacy-id", inRange, early, child)) {
+                log.saveState(id, context(id, id));
+            }
+            log.deleteState(inRange);
+
+            assertEquals(List.of(child), log.listStoredExecutionIds(Instant.ofEpochMilli(2_000), Instant.ofEpochMilli(3_000)));
+            assertEquals(List.of(early, child, late), log.listStoredExecutionIds(Instant.EPOCH, Instant.ofEpochMilli(4_000)));
+            assertEquals(List.of(), log.listStoredExecutionIds(Instant.ofEpochMilli(3_000), Instant.ofEpochMilli(2_000)));
+        }
+    }
+
+    @Test
+    void testConcurrentSavesAreAllDurable() throws Exception {
+        try (LogSequenceContextPersistence log = LogSequenceContextPersistence.open(directory)) {
+            List<CompletableFuture<Void>> saves = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String id = "execution-" + i;
+                saves.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        log.saveState(id, context(id, id));
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }));
+            }
+            saves.forEach(CompletableFuture::join);
+        }
+
+        try (LogSequenceContextPersistence log = LogSequenceContextPersistence.open(directory)) {
+            assertEquals(200, log.listStoredExecutionIds().size());
+            assertEquals("execution-42", value(log.loadState("execution-42")));
+        }
+    }
+
+    @Test
+    void testCompactionRemovesSupersededSegments() throws Exception {
+        try (LogSequenceContextPersistence log = LogSequenceContextPersistence.open(directory, 1024, 0.5, 0)) {
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < 10; i++) {
+                    log.saveState("execution-" + i, context("execution-" + i, "round-" + round));
+                }
+            }
+            long before = segmentCount();
+            log.compact();
+
+            assertTrue(segmentCount() < before);
+            assertEquals("round-4", value(log.loadState("execution-7")));
+        }
+
+        try (LogSequenceContextPersistence log = LogSequenceContextPersistence.open(directory, 1024, 0.5, 0)) {
+            assertEquals(10, log.listStoredExecutionIds().size());
+            assertEquals("round-4", value(log.loadState("execution-3")));
+        }
+    }
+
+    @Test
+    void testDeletedExecutionsStayDeletedAcrossCompactionAndReopening() throws Exception {
+        try (LogSequenceContextPersistence log = LogSequenceContextPersistence.open(directory, 1024, 0.5, 0)) {
+            for (int i = 0; i < 10; i++) {
+                log.saveState("execution-" + i, context("execution-" + i, "value-" + i));
+            }
+            log.deleteState("execution-2");
+            for (int i = 0; i < 10; i++) {
+                log.saveState("filler-" + i, context("filler-" + i, "filler"));
+            }
+            log.compact();
+
+            assertNull(log.loadState("execution-2"));
+            assertEquals(19, log.listStoredExecutionIds().size());
+        }
+
+        try (LogSequenceContextPersistence log = LogSequenceContextPersistence.open(directory, 1024, 0.5, 0)) {
+            assertNull(log.loadState("execution-2"));
+            assertEquals("value-3", value(log.loadState("execution-3")));
+        }
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.toString().endsWith(".log")).count();
+        }
+    }
+}
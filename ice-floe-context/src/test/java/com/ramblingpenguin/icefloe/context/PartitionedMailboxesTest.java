@@ -0,0 +1,86 @@
+package com.ramblingpenguin.icefloe.context;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartitionedMailboxesTest {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final PartitionedMailboxes mailboxes = new PartitionedMailboxes();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testTasksOfOnePartitionRunInSubmissionOrder() throws Exception {
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            int value = i;
+            futures.add(mailboxes.submit("account-1", () -> CompletableFuture.supplyAsync(() -> {
+                order.add(value);
+                return value;
+            }, executor)));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, order.get(i));
+        }
+        assertEquals(0, mailboxes.activePartitions());
+    }
+
+    @Test
+    void testPartitionsRunConcurrently() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> blocked = mailboxes.submit("a", () -> CompletableFuture.supplyAsync(() -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "a";
+        }, executor));
+        CompletableFuture<String> queued = mailboxes.submit("a", () -> CompletableFuture.completedFuture("a-2"));
+        CompletableFuture<String> other = mailboxes.submit("b", () -> CompletableFuture.supplyAsync(() -> "b", executor));
+
+        assertEquals("b", other.get(5, TimeUnit.SECONDS));
+        assertFalse(queued.isDone());
+        assertEquals(1, mailboxes.activePartitions());
+
+        release.countDown();
+        assertEquals("a", blocked.get(5, TimeUnit.SECONDS));
+        assertEquals("a-2", queued.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testFailureDoesNotBlockThePartition() throws Exception {
+        CompletableFuture<String> failed = mailboxes.submit("a", () -> CompletableFuture.failedFuture(new IllegalArgumentException("boom")));
+        CompletableFuture<String> thrown = mailboxes.submit("a", () -> {
+            throw new IllegalStateException("not running");
+        });
+        CompletableFuture<String> next = mailboxes.submit("a", () -> CompletableFuture.completedFuture("next"));
+
+        assertTrue(assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS)).getCause() instanceof IllegalArgumentException);
+        assertTrue(assertThrows(ExecutionException.class, () -> thrown.get(5, TimeUnit.SECONDS)).getCause() instanceof IllegalStateException);
+        assertEquals("next", next.get(5, TimeUnit.SECONDS));
+        assertEquals(0, mailboxes.activePartitions());
+    }
+}
@@ -0,0 +1,195 @@
+package com.ramblingpenguin.icefloe.context;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SequenceCheckpointerTest {
+
+    private static final NodeKey<String> INPUT_KEY = new NodeKey<>("input", String.class);
+    private static final NodeKey<String> UPPER_KEY = new NodeKey<>("upper", String.class);
+    private static final NodeKey<Integer> LENGTH_KEY = new NodeKey<>("length", Integer.class);
+
+    @TempDir
+    Path directory;
+
+    private final AtomicInteger upperCalls = new AtomicInteger();
+
+    private ContextualSequence<String> buildSequence(SequenceCheckpointer checkpointer, Runnable beforeLength) {
+        return ContextualSequence.Builder.of(INPUT_KEY)
+                .withId("checkpointed")
+                .withCheckpointing(checkpointer)
+                .then(INPUT_KEY, UPPER_KEY, (String s) -> {
+                    upperCalls.incrementAndGet();
+                    return s.toUpperCase();
+                })
+                .then(UPPER_KEY, LENGTH_KEY, (String s) -> {
+                    beforeLength.run();
+                    return s.length();
+                })
+                .build();
+    }
+
+    /**
+     * Runs executions until each is in its second step, then stops the checkpointer under them, as a crash would.
+     */
+    private void crashDuringSecondStep(String... inputs) throws Exception {
+        CountDownLatch reached = new CountDownLatch(inputs.length);
+        CountDownLatch crashed = new CountDownLatch(1);
+        SequenceCheckpointer checkpointer = new SequenceCheckpointer(directory);
+        ContextualSequence<String> sequence = buildSequence(checkpointer, () -> {
+            reached.countDown();
+            try {
+                crashed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("Simulated crash");
+        });
+        List<Thread> threads = new ArrayList<>();
+        for (String input : inputs) {
+            threads.add(Thread.ofVirtual().start(() -> assertThrows(IllegalStateException.class, () -> sequence.apply(input))));
+        }
+        reached.await();
+        checkpointer.close();
+        crashed.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    @Test
+    void testInterruptedExecutionResumesAfterLastCompletedStep() throws Exception {
+        crashDuringSecondStep("hello");
+
+        try (SequenceCheckpointer checkpointer = new SequenceCheckpointer(directory)) {
+            List<ResumableExecution> executions = checkpointer.getResumableExecutions();
+            assertEquals(1, executions.size());
+            assertEquals(1, executions.get(0).completedSteps());
+
+            ContextualSequence<String> sequence = buildSequence(checkpointer, () -> { });
+            SequenceContext result = sequence.resume(executions.get(0).context(), executions.get(0).completedSteps());
+
+            assertEquals(1, upperCalls.get());
+            assertEquals(5, result.get(LENGTH_KEY).orElseThrow());
+            assertEquals("hello", result.get(INPUT_KEY).orElseThrow());
+        }
+
+        try (SequenceCheckpointer checkpointer = new SequenceCheckpointer(directory)) {
+            assertTrue(checkpointer.getResumableExecutions().isEmpty());
+        }
+    }
+
+    @Test
+    void testFailedExecutionIsNotResumed() throws IOException {
+        try (SequenceCheckpointer checkpointer = new SequenceCheckpointer(directory)) {
+            ContextualSequence<String> sequence = buildSequence(checkpointer, () -> {
+                throw new IllegalStateException("Node failure");
+            });
+            assertThrows(IllegalStateException.class, () -> sequence.apply("hello"));
+        }
+
+        try (SequenceCheckpointer checkpointer = new SequenceCheckpointer(directory)) {
+            assertTrue(checkpointer.getResumableExecutions().isEmpty());
+        }
+    }
+
+    @Test
+    void testJournalIsCompactedWhileOpen() throws Exception {
+        Path journal = directory.resolve("checkpoints.journal");
+        AtomicBoolean blockNext = new AtomicBoolean(true);
+        CountDownLatch reached = new CountDownLatch(1);
+        CountDownLatch crashed = new CountDownLatch(1);
+        SequenceCheckpointer checkpointer = new SequenceCheckpointer(directory);
+        ContextualSequence<String> sequence = buildSequence(checkpointer, () -> {
+            if (blockNext.compareAndSet(true, false)) {
+                reached.countDown();
+                try {
+                    crashed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("Simulated crash");
+            }
+        });
+        Thread unfinished = Thread.ofVirtual().start(() -> assertThrows(IllegalStateException.class, () -> sequence.apply("unfinished")));
+        reached.await();
+
+        for (int i = 0; i < 100; i++) {
+            sequence.apply("finished-" + i);
+        }
+        checkpointer.flush();
+        long uncompacted = Files.size(journal);
+        // Three records per execution: the journal passes 1,000 records and is compacted down to the unfinished one.
+        for (int i = 100; i < 400; i++) {
+            sequence.apply("finished-" + i);
+        }
+        checkpointer.flush();
+        assertTrue(Files.size(journal) < uncompacted, "journal not compacted: " + Files.size(journal) + " bytes");
+
+        checkpointer.close();
+        crashed.countDown();
+        unfinished.join();
+        try (SequenceCheckpointer reopened = new SequenceCheckpointer(directory)) {
+            List<ResumableExecution> executions = reopened.getResumableExecutions();
+            assertEquals(1, executions.size());
+            assertEquals(1, executions.get(0).completedSteps());
+            assertEquals("unfinished", executions.get(0).context().get(INPUT_KEY).orElseThrow());
+        }
+    }
+
+    @Test
+    void testServiceResumesCheckpointedExecution() throws Exception {
+        crashDuringSecondStep("resume me");
+
+        try (SequenceCheckpointer checkpointer = new SequenceCheckpointer(directory)) {
+            SequenceService service = SequenceService.builder().withCheckpointer(checkpointer).build();
+            service.register(buildSequence(checkpointer, () -> { }));
+            service.start();
+
+            ResumableExecution execution = service.getResumableExecutions().get(0);
+            SequenceContext result = service.resume(execution).get();
+
+            assertEquals(9, result.get(LENGTH_KEY).orElseThrow());
+            assertEquals(execution.executionId(), result.getExecutionId().id());
+            service.stop();
+        }
+    }
+
+    @Test
+    void testServiceRecoversInterruptedExecutionsOnStart() throws Exception {
+        crashDuringSecondStep("input-0", "input-1", "input-2", "input-3", "input-4", "input-5");
+
+        try (SequenceCheckpointer checkpointer = new SequenceCheckpointer(directory)) {
+            SequenceService service = SequenceService.builder()
+                    .withCheckpointer(checkpointer)
+                    .withRecovery(2, 1_000)
+                    .build();
+            service.register(buildSequence(checkpointer, () -> { }));
+            service.start();
+
+            RecoveryProgress progress = service.whenRecovered().get();
+            assertEquals(6, progress.total());
+            assertEquals(6, progress.resumed());
+            assertEquals(0, progress.failed());
+            assertTrue(progress.isComplete());
+            service.stop();
+        }
+
+        try (SequenceCheckpointer checkpointer = new SequenceCheckpointer(directory)) {
+            assertTrue(checkpointer.getResumableExecutions().isEmpty());
+        }
+    }
+}
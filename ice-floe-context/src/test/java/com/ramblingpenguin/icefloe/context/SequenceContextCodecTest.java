@@ -0,0 +1,106 @@
+package com.ramblingpenguin.icefloe.context;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SequenceContextCodecTest {
+
+    record Customer(String name, int age, List<String> tags) implements Serializable {}
+    record Unserializable(String value) {}
+    record Temperature(double celsius) implements Serializable {}
+
+    private static final NodeKey<Customer> CUSTOMER_KEY = new NodeKey<>("customer", Customer.class);
+    private static final NodeKey<Unserializable> UNSERIALIZABLE_KEY = new NodeKey<>("unserializable", Unserializable.class);
+    private static final NodeKey<BigDecimal> AMOUNT_KEY = new NodeKey<>("amount", BigDecimal.class);
+    private static final NodeKey<String> TEXT_KEY = new NodeKey<>("text", String.class);
+    private static final NodeKey<Temperature> TEMPERATURE_KEY = new NodeKey<>("temperature", Temperature.class);
+    @SuppressWarnings("unchecked")
+    private static final NodeKey<ArrayList<Customer>> CUSTOMERS_KEY = new NodeKey<>("customers", (Class<ArrayList<Customer>>) (Class<?>) ArrayList.class);
+
+    private static SequenceContext sampleContext() {
+        ArrayList<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            customers.add(new Customer("customer-" + i, 20 + i, List.of("tag-" + i)));
+        }
+        return SequenceContext.empty(new ExecutionId("execution"), new DefaultTypeCombinerFactory())
+                .put(CUSTOMER_KEY, new Customer("Ada", 36, List.of("vip")))
+                .put(AMOUNT_KEY, new BigDecimal("12.50"))
+                .put(TEXT_KEY, "hello")
+                .put(CUSTOMERS_KEY, customers);
+    }
+
+    @Test
+    void testRoundTrip() throws Exception {
+        SequenceContextCodec codec = new SequenceContextCodec();
+        SequenceContext context = sampleContext().put(UNSERIALIZABLE_KEY, new Unserializable("kept"));
+
+        SequenceContext decoded = codec.decode(codec.encode(context));
+
+        assertEquals("execution", decoded.getExecutionId().id());
+        assertEquals(context.get(CUSTOMER_KEY), decoded.get(CUSTOMER_KEY));
+        assertEquals(context.get(AMOUNT_KEY), decoded.get(AMOUNT_KEY));
+        assertEquals(context.get(CUSTOMERS_KEY), decoded.get(CUSTOMERS_KEY));
+        assertEquals("kept", decoded.get(UNSERIALIZABLE_KEY).orElseThrow().value());
+    }
+
+    @Test
+    void testCompressedRoundTripIsSmallerThanJavaSerialization() throws Exception {
+        SequenceContext context = sampleContext();
+        byte[] plain = new SequenceContextCodec().encode(context);
+        byte[] compressed = new SequenceContextCodec(true, 0).encode(context);
+
+        assertTrue(plain.length < javaSerialize(context).length);
+        assertTrue(compressed.length < plain.length);
+        assertEquals(context.get(CUSTOMERS_KEY), new SequenceContextCodec().decode(compressed).get(CUSTOMERS_KEY));
+    }
+
+    @Test
+    void testReadsJavaSerializedContexts() throws Exception {
+        SequenceContext context = sampleContext().asIncremental(null).put(TEMPERATURE_KEY, new Temperature(21.5), "fingerprint");
+
+        SequenceContext decoded = new SequenceContextCodec().decode(javaSerialize(context));
+
+        assertEquals(context.get(CUSTOMER_KEY), decoded.get(CUSTOMER_KEY));
+        assertEquals(Map.of(TEMPERATURE_KEY, "fingerprint"), decoded.getFingerprints());
+    }
+
+    @Test
+    void testRegisteredKeyCodecIsUsed() throws Exception {
+        SequenceContextCodec codec = new SequenceContextCodec().registerCodec(TEMPERATURE_KEY, new ValueCodec<>() {
+            @Override
+            public void write(DataOutput out, Temperature value) throws IOException {
+                out.writeShort((short) Math.round(value.celsius() * 10));
+            }
+
+            @Override
+            public Temperature read(DataInput in) throws IOException {
+                return new Temperature(in.readShort() / 10.0);
+            }
+        });
+        SequenceContext context = SequenceContext.empty(new ExecutionId("execution"), new DefaultTypeCombinerFactory())
+                .put(TEMPERATURE_KEY, new Temperature(21.5));
+
+        assertEquals(21.5, codec.decode(codec.encode(context)).get(TEMPERATURE_KEY).orElseThrow().celsius(), 0.0);
+    }
+
+    private static byte[] javaSerialize(SequenceContext context) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(context);
+        }
+        return bytes.toByteArray();
+    }
+}
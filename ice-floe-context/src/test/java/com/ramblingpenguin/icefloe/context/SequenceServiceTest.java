@@ -1,14 +1,30 @@
 package com.ramblingpenguin.icefloe.context;
 
+import com.ramblingpenguin.icefloe.core.DeadlineExceededException;
+import com.ramblingpenguin.icefloe.core.Node;
+import com.ramblingpenguin.icefloe.core.node.Cancellation;
+import com.ramblingpenguin.icefloe.core.node.EventWaitNode;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class SequenceServiceTest {
 
@@ -47,6 +63,49 @@ class SequenceServiceTest {
         assertEquals(420, context.get(resultKey).orElseThrow());
     }
 
+    @Test
+    void testStopRecordsExecutionsStillRunning(@TempDir Path directory) throws Exception {
+        NodeKey<String> inputKey = new NodeKey<>("init", String.class);
+        NodeKey<String> resultKey = new NodeKey<>("result", String.class);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        ContextualSequence<String> slowSequence = ContextualSequence.Builder.of(inputKey)
+                .withId("slow")
+                .then(inputKey, resultKey, (String s) -> {
+                    runs.incrementAndGet();
+                    started.countDown();
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return s;
+                })
+                .build();
+        ExecutionOptions options = ExecutionOptions.defaults().withIdempotencyKey("message-1");
+
+        SequenceService first = deduplicatingService(directory, slowSequence);
+        CompletableFuture<SequenceContext> running = first.execute(slowSequence.id(), "hello", options);
+        started.await();
+        first.stop();
+        String executionId = running.get().getExecutionId().id();
+
+        SequenceService second = deduplicatingService(directory, slowSequence);
+        assertEquals(executionId, second.execute(slowSequence.id(), "hello", options).get().getExecutionId().id());
+        assertEquals(1, runs.get());
+        second.stop();
+    }
+
+    private static SequenceService deduplicatingService(Path directory, ContextualSequence<String> sequence) {
+        SequenceService deduplicating = SequenceService.builder()
+                .withPersistence(new FileSequenceContextPersistence(directory.resolve("contexts").toString()))
+                .withDeduplication(directory.resolve("keys"), 100, Duration.ofMinutes(10))
+                .build();
+        deduplicating.register(sequence);
+        deduplicating.start();
+        return deduplicating;
+    }
+
     @Test
     void testExecuteSync() {
         // 1. Define keys
@@ -82,4 +141,86 @@ class SequenceServiceTest {
             service.execute(new SequenceKey<>(String.class, SequenceContext.class, "123"), "input");
         });
     }
+
+    @Test
+    void testCancellingExecutionInterruptsNestedForkBranches() throws Exception {
+        NodeKey<Integer> inputKey = new NodeKey<>("count", Integer.class);
+        @SuppressWarnings("unchecked")
+        NodeKey<ArrayList<Integer>> itemsKey = new NodeKey<>("items", (Class<ArrayList<Integer>>) (Class<?>) ArrayList.class);
+        NodeKey<Integer> itemKey = new NodeKey<>("item", Integer.class);
+        @SuppressWarnings("unchecked")
+        NodeKey<ArrayList<Integer>> subItemsKey = new NodeKey<>("sub-items", (Class<ArrayList<Integer>>) (Class<?>) ArrayList.class);
+        NodeKey<Integer> subItemKey = new NodeKey<>("sub-item", Integer.class);
+        NodeKey<String> resultKey = new NodeKey<>("result", String.class);
+        CountDownLatch started = new CountDownLatch(4);
+        CountDownLatch interrupted = new CountDownLatch(4);
+        AtomicInteger afterFork = new AtomicInteger();
+
+        Node<SequenceContext, SequenceContext> block = context -> {
+            started.countDown();
+            try {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw Cancellation.cancelled(e);
+            }
+            return context.put(resultKey, "finished");
+        };
+        // Every branch forks two branches of its own, so cancellation has to travel two levels down.
+        ContextualForkSequence<Integer> innerFork = new ContextualForkSequence<>(subItemsKey, subItemKey, block);
+        Node<SequenceContext, SequenceContext> branch = context -> {
+            int item = context.get(itemKey).orElseThrow();
+            return innerFork.apply(context.put(subItemsKey, new ArrayList<>(List.of(item * 10, item * 10 + 1))));
+        };
+        ContextualSequence<Integer> sequence = ContextualSequence.Builder.of(inputKey)
+                .then(inputKey, itemsKey, (Integer count) -> new ArrayList<>(List.of(1, 2)))
+                .then(new ContextualForkSequence<>(itemsKey, itemKey, branch))
+                .then(resultKey, context -> "after fork " + afterFork.incrementAndGet())
+                .build();
+        service.register(sequence);
+
+        CompletableFuture<SequenceContext> execution = service.execute(sequence.id(), 2);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(execution.cancel(true));
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertThrows(CancellationException.class, execution::join);
+        Thread.sleep(100);
+        assertEquals(0, afterFork.get());
+        assertEquals(0, service.getInFlightExecutions());
+    }
+
+    @Test
+    void testDeadlineReachesForkBranches() throws Exception {
+        NodeKey<Integer> inputKey = new NodeKey<>("count", Integer.class);
+        @SuppressWarnings("unchecked")
+        NodeKey<ArrayList<Integer>> itemsKey = new NodeKey<>("items", (Class<ArrayList<Integer>>) (Class<?>) ArrayList.class);
+        NodeKey<Integer> itemKey = new NodeKey<>("item", Integer.class);
+        NodeKey<String> eventKey = new NodeKey<>("event", String.class);
+        SubmissionPublisher<String> events = new SubmissionPublisher<>();
+        AtomicInteger afterFork = new AtomicInteger();
+
+        // The branches would wait a minute for an event that never comes, but only have the execution's budget.
+        ContextualSequence<Integer> sequence = ContextualSequence.Builder.of(inputKey)
+                .then(inputKey, itemsKey, (Integer count) -> new ArrayList<>(List.of(1, 2, 3)))
+                .then(new ContextualForkSequence<>(itemsKey, itemKey,
+                        ContextualNode.of(eventKey, context -> null, new EventWaitNode<Void, String>(1, TimeUnit.MINUTES, events))))
+                .then(eventKey, context -> "after fork " + afterFork.incrementAndGet())
+                .build();
+        service.register(sequence);
+
+        long start = System.nanoTime();
+        CompletableFuture<SequenceContext> execution = service.execute(sequence.id(), 3,
+                ExecutionOptions.defaults().withTimeout(Duration.ofMillis(200)));
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> execution.get(5, TimeUnit.SECONDS));
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(5)) < 0);
+        Throwable cause = failure.getCause();
+        while (!(cause instanceof DeadlineExceededException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        assertInstanceOf(DeadlineExceededException.class, cause);
+        assertEquals(0, afterFork.get());
+        events.close();
+    }
 }
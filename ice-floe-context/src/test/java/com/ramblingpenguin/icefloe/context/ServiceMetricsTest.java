@@ -0,0 +1,103 @@
+package com.ramblingpenguin.icefloe.context;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ServiceMetricsTest {
+
+    private static final NodeKey<String> INPUT_KEY = new NodeKey<>("input", String.class);
+    private static final NodeKey<Integer> LENGTH_KEY = new NodeKey<>("length", Integer.class);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testExecutionsAreCountedPerSequence() {
+        SequenceService service = SequenceService.builder().build();
+        ContextualSequence<String> lengths = sequence("lengths");
+        ContextualSequence<String> others = sequence("others");
+        service.register(lengths);
+        service.register(others);
+        service.start();
+        service.execute(lengths.id(), "abc").join();
+        service.execute(lengths.id(), "abcdef").join();
+        assertThrows(CompletionException.class, () -> service.execute(lengths.id(), "fail").join());
+        service.execute(others.id(), "x").join();
+        service.stop();
+
+        ServiceStats stats = service.getMetrics().snapshot();
+        SequenceStats lengthStats = stats.sequences().get("lengths");
+        assertEquals(3, lengthStats.submitted());
+        assertEquals(2, lengthStats.completed());
+        assertEquals(1, lengthStats.failed());
+        assertEquals(0, lengthStats.inFlight());
+        assertTrue(lengthStats.runP50Nanos() > 0);
+        assertEquals(1, stats.sequences().get("others").completed());
+        assertEquals(0, stats.inFlight());
+    }
+
+    @Test
+    void testPrometheusText() {
+        SequenceService service = SequenceService.builder().build();
+        ContextualSequence<String> sequence = sequence("say \"hi\"");
+        service.register(sequence);
+        service.start();
+        service.execute(sequence.id(), "a").join();
+        service.execute(sequence.id(), "b").join();
+        service.stop();
+
+        String text = service.getMetrics().toPrometheusText();
+        assertTrue(text.contains("# TYPE icefloe_executions_submitted_total counter\n"), text);
+        assertTrue(text.contains("icefloe_executions_submitted_total{sequence=\"say \\\"hi\\\"\"} 2\n"), text);
+        assertTrue(text.contains("icefloe_execution_run_seconds_count{sequence=\"say \\\"hi\\\"\"} 2\n"), text);
+        assertTrue(text.contains("icefloe_context_store_entries{tier=\"memory\"} 2\n"), text);
+    }
+
+    @Test
+    void testJmxAndPersistenceTimings() throws Exception {
+        SequenceService service = SequenceService.builder()
+                .withPersistence(new FileSequenceContextPersistence(directory.toString()))
+                .build();
+        ContextualSequence<String> sequence = sequence("persisted");
+        service.register(sequence);
+        service.start();
+        service.whenReady().join();
+        service.getMetrics().exposeViaJmx("metrics-test");
+        SequenceContext context = service.execute(sequence.id(), "abc").join();
+        service.saveState(context.getExecutionId().id(), context);
+
+        ObjectName serviceName = new ObjectName("com.ramblingpenguin.icefloe:type=SequenceService,name=\"metrics-test\"");
+        ObjectName sequenceName = new ObjectName("com.ramblingpenguin.icefloe:type=Sequence,service=\"metrics-test\",name=\"persisted\"");
+        var server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(1L, server.getAttribute(sequenceName, "Completed"));
+        assertEquals(1L, server.getAttribute(serviceName, "Saves"));
+        assertTrue((Long) server.getAttribute(serviceName, "SaveP99Nanos") > 0);
+        assertEquals(0L, server.getAttribute(serviceName, "PersistenceErrors"));
+
+        service.stop();
+        assertFalse(server.isRegistered(serviceName));
+        assertFalse(server.isRegistered(sequenceName));
+    }
+
+    private static ContextualSequence<String> sequence(String id) {
+        return ContextualSequence.Builder.of(INPUT_KEY)
+                .withId(id)
+                .then(INPUT_KEY, LENGTH_KEY, (String input) -> {
+                    if (input.equals("fail")) {
+                        throw new IllegalArgumentException("Failed on purpose");
+                    }
+                    return input.length();
+                })
+                .build();
+    }
+}
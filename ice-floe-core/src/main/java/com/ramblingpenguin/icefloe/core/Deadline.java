@@ -0,0 +1,134 @@
+package com.ramblingpenguin.icefloe.core;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * The point in time by which an execution must have finished.
+ * <p>
+ * The deadline of the execution running on a thread is available from {@link #current()}. Time-aware nodes
+ * clamp their waits to the time {@link #remaining()}, and sequences stop between nodes once it has passed,
+ * failing with a {@link DeadlineExceededException} rather than doing work nobody will use. Forks pass the
+ * deadline on to the threads running their branches.
+ */
+public final class Deadline {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long nanoTime;
+
+    private Deadline(long nanoTime) {
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Returns a deadline the given time from now.
+     */
+    public static Deadline after(Duration timeout) {
+        return new Deadline(System.nanoTime() + saturatedNanos(timeout));
+    }
+
+    /**
+     * Returns the deadline of the execution running on the current thread, or {@code null} if it has none.
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs an action with the given deadline as the current one. A {@code null} deadline leaves the current
+     * deadline in place, and a later deadline never extends an earlier one already in force.
+     */
+    public static <T> T callWith(Deadline deadline, Supplier<T> action) {
+        Deadline previous = CURRENT.get();
+        Deadline effective = earliest(previous, deadline);
+        if (effective == previous) {
+            return action.get();
+        }
+        CURRENT.set(effective);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Wraps an action so that it runs with the current thread's deadline, wherever it is run. Used to carry
+     * the deadline across threads.
+     */
+    public static <T> Supplier<T> propagate(Supplier<T> action) {
+        Deadline deadline = current();
+        return deadline == null ? action : () -> callWith(deadline, action);
+    }
+
+    /**
+     * Throws a {@link DeadlineExceededException} if the current thread's deadline has passed.
+     */
+    public static void throwIfExpired() {
+        Deadline deadline = current();
+        if (deadline != null && deadline.isExpired()) {
+            throw new DeadlineExceededException("The execution missed its deadline.");
+        }
+    }
+
+    /**
+     * Returns the earlier of two deadlines, either of which may be {@code null}.
+     */
+    public static Deadline earliest(Deadline first, Deadline second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        return second.nanoTime - first.nanoTime < 0 ? second : first;
+    }
+
+    /**
+     * Returns the time left, which is negative once the deadline has passed.
+     */
+    public Duration remaining() {
+        return Duration.ofNanos(nanoTime - System.nanoTime());
+    }
+
+    public boolean isExpired() {
+        return nanoTime - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Returns the given timeout shortened to the time left, if the current thread has a deadline.
+     *
+     * @throws DeadlineExceededException If the deadline has already passed.
+     */
+    public static Duration clamp(Duration timeout) {
+        Deadline deadline = current();
+        if (deadline == null) {
+            return timeout;
+        }
+        Duration remaining = deadline.remaining();
+        if (remaining.isNegative() || remaining.isZero()) {
+            throw new DeadlineExceededException("The execution missed its deadline.");
+        }
+        return remaining.compareTo(timeout) < 0 ? remaining : timeout;
+    }
+
+    private static long saturatedNanos(Duration duration) {
+        Objects.requireNonNull(duration);
+        try {
+            return duration.toNanos();
+        } catch (ArithmeticException e) {
+            return duration.isNegative() ? Long.MIN_VALUE / 2 : Long.MAX_VALUE / 2;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline[remaining=" + remaining() + "]";
+    }
+}
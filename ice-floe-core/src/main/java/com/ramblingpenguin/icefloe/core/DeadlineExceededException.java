@@ -0,0 +1,20 @@
+package com.ramblingpenguin.icefloe.core;
+
+import java.io.Serial;
+
+/**
+ * Thrown when an execution runs past its {@link Deadline}.
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+
+    public DeadlineExceededException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
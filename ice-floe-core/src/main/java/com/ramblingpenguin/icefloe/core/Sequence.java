@@ -1,5 +1,13 @@
 package com.ramblingpenguin.icefloe.core;
 
+import com.ramblingpenguin.icefloe.core.intercept.NodeDescriptor;
+import com.ramblingpenguin.icefloe.core.intercept.NodeInterceptor;
+import com.ramblingpenguin.icefloe.core.metrics.MetricsRegistry;
+import com.ramblingpenguin.icefloe.core.node.Cancellation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
 import java.util.function.Function;
 
 /**
@@ -37,22 +45,38 @@ public class Sequence<INPUT, OUTPUT> implements Node<INPUT, OUTPUT> {
 
         @Override
         public C apply(A a) {
-            return second.apply(first.apply(a));
+            B b = first.apply(a);
+            // A cancelled or late execution stops between nodes, even if none of them blocks.
+            Cancellation.throwIfCancelled();
+            Deadline.throwIfExpired();
+            return second.apply(b);
         }
     }
 
     /**
      * A fluent builder that ensures end-to-end type safety for a sequence of nodes.
+     * <p>
+     * Nodes are composed when the sequence is built, after the builder's {@link NodeInterceptor}s have been
+     * applied to each of them.
      *
      * @param <SEQUENCE_INPUT> The initial input type of the sequence.
      * @param <CURRENT_OUTPUT> The output type of the last node added to the chain.
      */
     public static class Builder<SEQUENCE_INPUT, CURRENT_OUTPUT> {
 
-        private final Node<SEQUENCE_INPUT, CURRENT_OUTPUT> composedNode;
-
-        private Builder(Node<SEQUENCE_INPUT, CURRENT_OUTPUT> composedNode) {
-            this.composedNode = composedNode;
+        private final boolean startsWithIdentity;
+        private final List<Node<?, ?>> steps;
+        private final String id;
+        private final List<NodeInterceptor> interceptors;
+
+        private Builder(boolean startsWithIdentity,
+                        List<Node<?, ?>> steps,
+                        String id,
+                        List<NodeInterceptor> interceptors) {
+            this.startsWithIdentity = startsWithIdentity;
+            this.steps = steps;
+            this.id = id;
+            this.interceptors = interceptors;
         }
 
         /**
@@ -64,12 +88,44 @@ public class Sequence<INPUT, OUTPUT> implements Node<INPUT, OUTPUT> {
          */
         public static <T> Builder<T, T> of(@SuppressWarnings("unused") Class<T> inputType) {
             // The initial node is an identity function.
-            return new Builder<>(input -> input);
+            return new Builder<>(true, List.of(), null, List.of());
         }
 
         public static <T, O> Builder<T, O> of(@SuppressWarnings("unused") Class<T> inputType, Node<T, O> func) {
-            // The initial node is an identity function.
-            return new Builder<>(func);
+            return new Builder<>(false, List.of(Objects.requireNonNull(func)), null, List.of());
+        }
+
+        /**
+         * Gives the sequence an ID, which its interceptors see in every {@link NodeDescriptor}.
+         */
+        public Builder<SEQUENCE_INPUT, CURRENT_OUTPUT> withId(String id) {
+            return new Builder<>(this.startsWithIdentity, this.steps, Objects.requireNonNull(id), this.interceptors);
+        }
+
+        /**
+         * Applies an interceptor to every node of the sequence when it is built, inside the interceptors added
+         * before it. Nodes are identified to it by their position.
+         *
+         * @param interceptor The interceptor.
+         * @return A new builder instance that applies the interceptor.
+         */
+        public Builder<SEQUENCE_INPUT, CURRENT_OUTPUT> withInterceptor(NodeInterceptor interceptor) {
+            List<NodeInterceptor> nextInterceptors = new ArrayList<>(this.interceptors);
+            nextInterceptors.add(Objects.requireNonNull(interceptor));
+            return new Builder<>(this.startsWithIdentity, this.steps, this.id, List.copyOf(nextInterceptors));
+        }
+
+        /**
+         * Gives the sequence the given name as its ID and meters every node in the given registry through its
+         * {@link MetricsRegistry#interceptor() interceptor}, under the name followed by the node's position,
+         * e.g. {@code "orders/2"}. Without a registry nodes are not wrapped at all.
+         *
+         * @param metrics The registry recording the metrics.
+         * @param name    The name of the sequence.
+         * @return A new builder instance that meters the nodes of the sequence.
+         */
+        public Builder<SEQUENCE_INPUT, CURRENT_OUTPUT> withMetrics(MetricsRegistry metrics, String name) {
+            return withId(name).withInterceptor(metrics.interceptor());
         }
 
         /**
@@ -81,7 +137,9 @@ public class Sequence<INPUT, OUTPUT> implements Node<INPUT, OUTPUT> {
          * @return A new builder instance with the updated composition.
          */
         public <NEXT_OUTPUT> Builder<SEQUENCE_INPUT, NEXT_OUTPUT> then(Node<CURRENT_OUTPUT, NEXT_OUTPUT> nextNode) {
-            return new Builder<>(new Pair<>(this.composedNode, nextNode));
+            List<Node<?, ?>> nextSteps = new ArrayList<>(this.steps);
+            nextSteps.add(nextNode);
+            return new Builder<>(this.startsWithIdentity, List.copyOf(nextSteps), this.id, this.interceptors);
         }
 
         /**
@@ -100,8 +158,16 @@ public class Sequence<INPUT, OUTPUT> implements Node<INPUT, OUTPUT> {
          *
          * @return A new, immutable, and type-safe Sequence.
          */
+        @SuppressWarnings("unchecked")
         public Sequence<SEQUENCE_INPUT, CURRENT_OUTPUT> build() {
-            return new Sequence<>(composedNode);
+            // The builder's type parameters guarantee that each node accepts the output of the one before it.
+            Node<Object, Object> composed = startsWithIdentity ? input -> input : null;
+            for (int i = 0; i < steps.size(); i++) {
+                Node<Object, Object> step = NodeInterceptor.interceptAll(interceptors,
+                        new NodeDescriptor(id, i, String.valueOf(i)), (Node<Object, Object>) steps.get(i));
+                composed = composed == null ? step : new Pair<>(composed, step);
+            }
+            return new Sequence<>((Node<SEQUENCE_INPUT, CURRENT_OUTPUT>) composed);
         }
     }
 }
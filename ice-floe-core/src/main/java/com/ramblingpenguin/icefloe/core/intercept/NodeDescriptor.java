@@ -0,0 +1,25 @@
+package com.ramblingpenguin.icefloe.core.intercept;
+
+import java.util.Objects;
+
+/**
+ * Identifies a node of a sequence to the {@link NodeInterceptor}s applied to it.
+ *
+ * @param sequenceId The ID of the sequence, or {@code null} if it has none.
+ * @param index      The position of the node in the sequence, starting at 0.
+ * @param nodeId     The ID of the node, such as the key of a contextual node, or its position.
+ */
+public record NodeDescriptor(String sequenceId, int index, String nodeId) {
+
+    public NodeDescriptor {
+        Objects.requireNonNull(nodeId);
+    }
+
+    /**
+     * Returns the name of the node qualified by its sequence, e.g. {@code "orders/total"}, or the node ID
+     * alone if the sequence has no ID.
+     */
+    public String name() {
+        return sequenceId == null ? nodeId : sequenceId + "/" + nodeId;
+    }
+}
@@ -0,0 +1,41 @@
+package com.ramblingpenguin.icefloe.core.intercept;
+
+import com.ramblingpenguin.icefloe.core.Node;
+
+import java.util.List;
+
+/**
+ * Wraps the nodes of a sequence with cross-cutting behaviour such as metrics, tracing, logging or auditing.
+ * <p>
+ * Interceptors are applied once, when the sequence is built, and never consulted again: the builder hands each
+ * node to {@link #intercept} and runs whatever node comes back. An interceptor therefore resolves everything it
+ * needs for a node, such as its metrics or a logger, up front, and returns the node itself for nodes it does not
+ * apply to, which then run without any wrapper. A sequence built without interceptors runs exactly the plan it
+ * would have run without this SPI.
+ */
+public interface NodeInterceptor {
+
+    /**
+     * Returns the node to run in place of the given one.
+     *
+     * @param descriptor Identifies the node within its sequence.
+     * @param node       The node, possibly already wrapped by the interceptors applied inside this one.
+     * @return A node wrapping the given one, or the node itself to leave it as it is.
+     */
+    <INPUT, OUTPUT> Node<INPUT, OUTPUT> intercept(NodeDescriptor descriptor, Node<INPUT, OUTPUT> node);
+
+    /**
+     * Applies interceptors to a node, the first one outermost, so it sees each call first and its result last.
+     *
+     * @return The intercepted node, or the node itself if there are no interceptors.
+     */
+    static <INPUT, OUTPUT> Node<INPUT, OUTPUT> interceptAll(List<NodeInterceptor> interceptors,
+                                                            NodeDescriptor descriptor,
+                                                            Node<INPUT, OUTPUT> node) {
+        Node<INPUT, OUTPUT> intercepted = node;
+        for (int i = interceptors.size() - 1; i >= 0; i--) {
+            intercepted = interceptors.get(i).intercept(descriptor, intercepted);
+        }
+        return intercepted;
+    }
+}
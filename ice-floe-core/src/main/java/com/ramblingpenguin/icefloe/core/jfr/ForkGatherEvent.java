@@ -0,0 +1,26 @@
+package com.ramblingpenguin.icefloe.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event spanning the reduction of a fork's branch results into its output.
+ */
+@Name("com.ramblingpenguin.icefloe.ForkGather")
+@Label("Fork Gather")
+@Category({"Ice Floe", "Fork"})
+@Description("The reduction of the results of a fork's branches into its output")
+@StackTrace(false)
+public final class ForkGatherEvent extends Event {
+
+    @Label("Execution ID")
+    @Description("The execution that forked, if the fork runs in a contextual sequence")
+    public String executionId;
+
+    @Label("Branches")
+    public int branches;
+}
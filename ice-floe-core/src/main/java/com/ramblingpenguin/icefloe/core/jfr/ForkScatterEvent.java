@@ -0,0 +1,30 @@
+package com.ramblingpenguin.icefloe.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event spanning a fork's branches, from the split of its input until the last branch has finished.
+ * Emitted by {@link com.ramblingpenguin.icefloe.core.node.ForkSequence} and the contextual fork.
+ */
+@Name("com.ramblingpenguin.icefloe.ForkScatter")
+@Label("Fork Scatter")
+@Category({"Ice Floe", "Fork"})
+@Description("The branches of a fork, from the split of its input until the last branch finished")
+@StackTrace(false)
+public final class ForkScatterEvent extends Event {
+
+    @Label("Execution ID")
+    @Description("The execution that forked, if the fork runs in a contextual sequence")
+    public String executionId;
+
+    @Label("Branches")
+    public int branches;
+
+    @Label("Parallel")
+    public boolean parallel;
+}
@@ -0,0 +1,152 @@
+package com.ramblingpenguin.icefloe.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations in nanoseconds, in the style of HdrHistogram.
+ * <p>
+ * Buckets are log-linear: every power of two is split into {@value #SUB_BUCKETS} equal buckets, so a recorded
+ * value is off by at most 12.5%, however large it is. Values above about 4.9 hours land in the last bucket.
+ * Each thread records into one of several stripes, chosen by its ID, so threads recording at the same time
+ * rarely contend for the same counter; the stripes are summed when the histogram is read.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_BIT = 44;
+    private static final long MAX_VALUE = (1L << MAX_BIT) - 1;
+    private static final int BUCKETS = (MAX_BIT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    private static final int MAX_STRIPES = 8;
+
+    private final AtomicLongArray[] stripes;
+    private final int stripeMask;
+
+    public LatencyHistogram() {
+        int stripeCount = Math.min(MAX_STRIPES, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors())));
+        this.stripes = new AtomicLongArray[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS);
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    /**
+     * Records a duration. Negative durations are recorded as zero.
+     */
+    public void record(long nanos) {
+        stripes[(int) Thread.currentThread().threadId() & stripeMask].getAndIncrement(bucket(nanos));
+    }
+
+    /**
+     * Returns the counts recorded so far. Values recorded while the snapshot is taken may or may not be
+     * included.
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += stripe.get(i);
+            }
+        }
+        return new Snapshot(counts);
+    }
+
+    static int bucket(long nanos) {
+        long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Returns the largest value counted in a bucket.
+     */
+    static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1));
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * The counts of a histogram at a point in time.
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+
+        private Snapshot(long[] counts) {
+            this.counts = counts;
+            long total = 0;
+            for (long bucketCount : counts) {
+                total += bucketCount;
+            }
+            this.count = total;
+        }
+
+        /**
+         * Returns the number of values recorded.
+         */
+        public long count() {
+            return count;
+        }
+
+        /**
+         * Returns the value below which the given fraction of the recorded values fall, e.g. {@code 0.99},
+         * or 0 if nothing was recorded.
+         */
+        public long percentile(double fraction) {
+            if (fraction < 0 || fraction > 1) {
+                throw new IllegalArgumentException("fraction must be between 0 and 1");
+            }
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(fraction * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return highestValue(i);
+                }
+            }
+            return highestValue(counts.length - 1);
+        }
+
+        /**
+         * Returns the largest value recorded, or 0 if nothing was recorded.
+         */
+        public long max() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] > 0) {
+                    return highestValue(i);
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Returns the mean of the recorded values, or 0 if nothing was recorded.
+         */
+        public double mean() {
+            if (count == 0) {
+                return 0;
+            }
+            double sum = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    // The middle of the bucket, which is as close as a bucket gets to its values.
+                    long low = i == 0 ? 0 : highestValue(i - 1) + 1;
+                    sum += counts[i] * ((low + highestValue(i)) / 2.0);
+                }
+            }
+            return sum / count;
+        }
+    }
+}
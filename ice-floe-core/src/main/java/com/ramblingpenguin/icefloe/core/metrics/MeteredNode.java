@@ -0,0 +1,31 @@
+package com.ramblingpenguin.icefloe.core.metrics;
+
+import com.ramblingpenguin.icefloe.core.Node;
+
+/**
+ * Records the latency, failures and concurrency of every call to a node.
+ */
+final class MeteredNode<INPUT, OUTPUT> implements Node<INPUT, OUTPUT> {
+
+    private final Node<INPUT, OUTPUT> delegate;
+    private final NodeMetrics metrics;
+
+    MeteredNode(Node<INPUT, OUTPUT> delegate, NodeMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public OUTPUT apply(INPUT input) {
+        metrics.started();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            OUTPUT output = delegate.apply(input);
+            failed = false;
+            return output;
+        } finally {
+            metrics.finished(start, failed);
+        }
+    }
+}
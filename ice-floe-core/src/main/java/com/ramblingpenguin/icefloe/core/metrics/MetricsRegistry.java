@@ -0,0 +1,135 @@
+package com.ramblingpenguin.icefloe.core.metrics;
+
+import com.ramblingpenguin.icefloe.core.Node;
+import com.ramblingpenguin.icefloe.core.intercept.NodeDescriptor;
+import com.ramblingpenguin.icefloe.core.intercept.NodeInterceptor;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.System.Logger.Level;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects per-node latency, error and concurrency metrics.
+ * <p>
+ * Builders meter their nodes through the registry's {@link #interceptor()}, which wraps every node they build
+ * with {@link #meter(String, Node)}; {@code withMetrics} on either sequence builder applies it. Nodes metered
+ * under the same name share their metrics. The metrics are read with {@link #snapshot()} or, once
+ * {@link #exposeViaJmx()} has been called, as one MXBean per node.
+ * <p>
+ * Metrics are opt-in per builder. Nodes built without a registry are not wrapped at all, so disabled
+ * metrics cost nothing.
+ */
+public class MetricsRegistry implements AutoCloseable {
+
+    private static final System.Logger LOGGER = System.getLogger(MetricsRegistry.class.getName());
+    private static final String JMX_DOMAIN = "com.ramblingpenguin.icefloe";
+
+    private final Map<String, NodeMetrics> nodes = new ConcurrentHashMap<>();
+    private volatile MBeanServer mbeanServer;
+
+    /**
+     * Wraps a node so that its calls are recorded under the given name.
+     */
+    public <INPUT, OUTPUT> Node<INPUT, OUTPUT> meter(String name, Node<INPUT, OUTPUT> node) {
+        return new MeteredNode<>(Objects.requireNonNull(node), metrics(name));
+    }
+
+    /**
+     * Returns an interceptor that meters every node it is applied to under the node's
+     * {@linkplain NodeDescriptor#name() qualified name}. The node's metrics are resolved when it is built.
+     */
+    public NodeInterceptor interceptor() {
+        return new NodeInterceptor() {
+            @Override
+            public <INPUT, OUTPUT> Node<INPUT, OUTPUT> intercept(NodeDescriptor descriptor, Node<INPUT, OUTPUT> node) {
+                return meter(descriptor.name(), node);
+            }
+        };
+    }
+
+    /**
+     * Returns the metrics recorded under the given name, creating them if necessary.
+     */
+    public NodeMetrics metrics(String name) {
+        NodeMetrics existing = nodes.get(Objects.requireNonNull(name));
+        if (existing != null) {
+            return existing;
+        }
+        NodeMetrics created = new NodeMetrics(name);
+        existing = nodes.putIfAbsent(name, created);
+        if (existing != null) {
+            return existing;
+        }
+        MBeanServer server = mbeanServer;
+        if (server != null) {
+            register(server, created);
+        }
+        return created;
+    }
+
+    /**
+     * Returns the metrics of every node, keyed and sorted by name.
+     */
+    public Map<String, NodeStats> snapshot() {
+        Map<String, NodeStats> snapshot = new TreeMap<>();
+        nodes.forEach((name, metrics) -> snapshot.put(name, metrics.snapshot()));
+        return snapshot;
+    }
+
+    /**
+     * Registers an MXBean for every node, now and as nodes are metered, with the platform MBean server. They
+     * are named {@code com.ramblingpenguin.icefloe:type=Node,name=<node name>}.
+     *
+     * @return This registry.
+     */
+    public synchronized MetricsRegistry exposeViaJmx() {
+        if (mbeanServer == null) {
+            mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            nodes.values().forEach(metrics -> register(mbeanServer, metrics));
+        }
+        return this;
+    }
+
+    /**
+     * Unregisters the MXBeans, if they were registered.
+     */
+    @Override
+    public synchronized void close() {
+        MBeanServer server = mbeanServer;
+        if (server == null) {
+            return;
+        }
+        mbeanServer = null;
+        for (NodeMetrics metrics : nodes.values()) {
+            try {
+                ObjectName name = objectName(metrics);
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+            } catch (JMException e) {
+                LOGGER.log(Level.WARNING, "Failed to unregister metrics of node '" + metrics.getName() + "'", e);
+            }
+        }
+    }
+
+    private static void register(MBeanServer server, NodeMetrics metrics) {
+        try {
+            ObjectName name = objectName(metrics);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(metrics, name);
+            }
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Failed to register metrics of node '" + metrics.getName() + "'", e);
+        }
+    }
+
+    private static ObjectName objectName(NodeMetrics metrics) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=Node,name=" + ObjectName.quote(metrics.getName()));
+    }
+}
@@ -0,0 +1,85 @@
+package com.ramblingpenguin.icefloe.core.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The latency histogram, error counter and in-flight gauge of one node. The number of calls is the number of
+ * latencies recorded, so a call costs two clock reads, one histogram update and three counter updates.
+ */
+public final class NodeMetrics implements NodeMetricsMXBean {
+
+    private final String name;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+
+    NodeMetrics(String name) {
+        this.name = name;
+    }
+
+    void started() {
+        inFlight.increment();
+    }
+
+    void finished(long startNanos, boolean failed) {
+        latencies.record(System.nanoTime() - startNanos);
+        if (failed) {
+            errors.increment();
+        }
+        inFlight.decrement();
+    }
+
+    /**
+     * Returns the node's metrics as of now.
+     */
+    public NodeStats snapshot() {
+        LatencyHistogram.Snapshot snapshot = latencies.snapshot();
+        return new NodeStats(name, snapshot.count(), errors.sum(), inFlight.sum(), snapshot.mean(),
+                snapshot.percentile(0.5), snapshot.percentile(0.99), snapshot.percentile(0.999), snapshot.max());
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCalls() {
+        return latencies.snapshot().count();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    @Override
+    public double getMeanNanos() {
+        return latencies.snapshot().mean();
+    }
+
+    @Override
+    public long getP50Nanos() {
+        return latencies.snapshot().percentile(0.5);
+    }
+
+    @Override
+    public long getP99Nanos() {
+        return latencies.snapshot().percentile(0.99);
+    }
+
+    @Override
+    public long getP999Nanos() {
+        return latencies.snapshot().percentile(0.999);
+    }
+
+    @Override
+    public long getMaxNanos() {
+        return latencies.snapshot().max();
+    }
+}
@@ -0,0 +1,25 @@
+package com.ramblingpenguin.icefloe.core.metrics;
+
+/**
+ * The JMX view of the metrics of one node. Latencies are in nanoseconds.
+ */
+public interface NodeMetricsMXBean {
+
+    String getName();
+
+    long getCalls();
+
+    long getErrors();
+
+    long getInFlight();
+
+    double getMeanNanos();
+
+    long getP50Nanos();
+
+    long getP99Nanos();
+
+    long getP999Nanos();
+
+    long getMaxNanos();
+}
@@ -0,0 +1,28 @@
+package com.ramblingpenguin.icefloe.core.metrics;
+
+/**
+ * The metrics of one node at a point in time. Latencies are in nanoseconds and, like the histogram they are
+ * read from, overstate the true value by at most 12.5%.
+ *
+ * @param name       The name the node was metered under.
+ * @param calls      The number of calls that have completed, successfully or not.
+ * @param errors     The number of calls that threw.
+ * @param inFlight   The number of calls running.
+ * @param meanNanos  The mean latency.
+ * @param p50Nanos   The median latency.
+ * @param p99Nanos   The 99th percentile latency.
+ * @param p999Nanos  The 99.9th percentile latency.
+ * @param maxNanos   The largest latency.
+ */
+public record NodeStats(
+        String name,
+        long calls,
+        long errors,
+        long inFlight,
+        double meanNanos,
+        long p50Nanos,
+        long p99Nanos,
+        long p999Nanos,
+        long maxNanos
+) {
+}
@@ -0,0 +1,97 @@
+package com.ramblingpenguin.icefloe.core.node;
+
+import com.ramblingpenguin.icefloe.core.Deadline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Helpers that let nodes observe cancellation.
+ * <p>
+ * An execution is cancelled by interrupting the thread running it. Blocking nodes give up their wait,
+ * looping nodes stop before their next iteration, and forks interrupt the threads running their branches,
+ * so cancellation reaches every branch however deeply forks are nested. A cancelled node throws a
+ * {@link CancellationException} and leaves the thread's interrupt status set.
+ */
+public final class Cancellation {
+
+    private Cancellation() {
+    }
+
+    /**
+     * Throws a {@link CancellationException} if the current thread has been interrupted.
+     */
+    public static void throwIfCancelled() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("The execution was cancelled.");
+        }
+    }
+
+    /**
+     * Returns whether a failure was caused by cancelling the current execution, so it must be propagated rather
+     * than retried or handled as an ordinary failure. That is decided by the current thread's interrupt status,
+     * which cancelled nodes leave set, or by an {@link InterruptedException} thrown on it; a
+     * {@link CancellationException} from some other future a node happened to wait on is an ordinary failure.
+     */
+    public static boolean isCancellation(Throwable throwable) {
+        return Thread.currentThread().isInterrupted() || throwable instanceof InterruptedException;
+    }
+
+    /**
+     * Converts an interruption into a {@link CancellationException}, restoring the interrupt status.
+     */
+    public static CancellationException cancelled(InterruptedException interruption) {
+        Thread.currentThread().interrupt();
+        CancellationException cancellation = new CancellationException("The execution was cancelled.");
+        cancellation.initCause(interruption);
+        return cancellation;
+    }
+
+    /**
+     * Runs branches on an executor, with the caller's {@link Deadline}, and returns their results in order.
+     * If the calling thread is interrupted while it waits, or a branch fails, the branches still running are
+     * interrupted, since their results can no longer be used.
+     *
+     * @return The results of the branches.
+     * @throws CancellationException If the calling thread was interrupted.
+     * @throws CompletionException   If a branch failed, with the branch's failure as its cause.
+     */
+    public static <T> List<T> forkAll(List<? extends Supplier<T>> branches, Executor executor) {
+        List<FutureTask<T>> tasks = new ArrayList<>(branches.size());
+        try {
+            for (Supplier<T> branch : branches) {
+                // Branches inherit the caller's deadline along with its cancellation.
+                FutureTask<T> task = new FutureTask<>(Deadline.propagate(branch)::get);
+                tasks.add(task);
+                executor.execute(task);
+            }
+            List<T> results = new ArrayList<>(tasks.size());
+            for (FutureTask<T> task : tasks) {
+                results.add(task.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            cancelAll(tasks);
+            throw cancelled(e);
+        } catch (ExecutionException e) {
+            cancelAll(tasks);
+            throw e.getCause() instanceof CompletionException completion ? completion : new CompletionException(e.getCause());
+        } catch (RejectedExecutionException | CancellationException e) {
+            cancelAll(tasks);
+            throw e;
+        }
+    }
+
+    private static void cancelAll(List<? extends FutureTask<?>> tasks) {
+        for (FutureTask<?> task : tasks) {
+            task.cancel(true);
+        }
+    }
+}
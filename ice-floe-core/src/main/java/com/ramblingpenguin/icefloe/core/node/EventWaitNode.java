@@ -1,7 +1,10 @@
 package com.ramblingpenguin.icefloe.core.node;
 
+import com.ramblingpenguin.icefloe.core.Deadline;
+import com.ramblingpenguin.icefloe.core.DeadlineExceededException;
 import com.ramblingpenguin.icefloe.core.Node;
 
+import java.time.Duration;
 import java.util.concurrent.*;
 
 /**
@@ -48,6 +51,9 @@ public class EventWaitNode<INPUT, EVENT> implements Node<INPUT, EVENT> {
 
     @Override
     public EVENT apply(INPUT input) {
+        Duration limit = Duration.of(this.timeout, this.timeUnit.toChronoUnit());
+        // Under a deadline, never wait longer than the time left.
+        Duration clamped = Deadline.clamp(limit);
         final CompletableFuture<EVENT> future = new CompletableFuture<>();
         // Phaser starts with one party (this thread).
         final Phaser phaser = new Phaser(1);
@@ -71,13 +77,22 @@ public class EventWaitNode<INPUT, EVENT> implements Node<INPUT, EVENT> {
             // Arrive and wait for the event to arrive (or for timeout).
             // This creates a rendezvous point. If the event thread arrives here first,
             // it will wait for this thread. If this thread arrives first, it will wait for the event.
-            phaser.awaitAdvanceInterruptibly(phaser.arrive(), this.timeout, this.timeUnit);
+            phaser.awaitAdvanceInterruptibly(phaser.arrive(), clamped.toNanos(), TimeUnit.NANOSECONDS);
             if (future.isDone()) {
                 return future.get();
             } else {
                 throw new TimeoutException("Timed out waiting for event.");
             }
-        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw Cancellation.cancelled(e);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            if (clamped.compareTo(limit) < 0) {
+                throw new DeadlineExceededException("The execution missed its deadline while waiting for an event.", e);
+            }
+            throw new RuntimeException("Failed while waiting for event.", e);
+        } catch (ExecutionException e) {
             future.cancel(true); // Ensure the future is cancelled on failure.
             throw new RuntimeException("Failed while waiting for event.", e);
         } finally {
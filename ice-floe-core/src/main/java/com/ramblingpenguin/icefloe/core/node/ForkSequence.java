@@ -1,14 +1,16 @@
 package com.ramblingpenguin.icefloe.core.node;
 
 import com.ramblingpenguin.icefloe.core.Node;
+import com.ramblingpenguin.icefloe.core.jfr.ForkGatherEvent;
+import com.ramblingpenguin.icefloe.core.jfr.ForkScatterEvent;
 
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -43,23 +45,43 @@ public class ForkSequence<INPUT, FORK_INPUT, FORK_OUTPUT, OUTPUT> implements com
     public OUTPUT apply(INPUT input) {
         Collection<FORK_INPUT> forkInputs = this.inputMapper.apply(input);
         OUTPUT initialOutput = this.initialOutputFactory.apply(input);
+        ForkScatterEvent scatter = new ForkScatterEvent();
+        scatter.begin();
 
         if (isParallel) {
-            List<CompletableFuture<FORK_OUTPUT>> futures = forkInputs.stream()
-                    .map(forkInput -> CompletableFuture.supplyAsync(() -> fork.apply(forkInput), executor))
+            List<Supplier<FORK_OUTPUT>> branches = forkInputs.stream()
+                    .<Supplier<FORK_OUTPUT>>map(forkInput -> () -> fork.apply(forkInput))
                     .collect(Collectors.toList());
 
-            return futures.stream()
-                    .map(CompletableFuture::join)
+            List<FORK_OUTPUT> results = Cancellation.forkAll(branches, executor);
+            if (scatter.shouldCommit()) {
+                scatter.branches = results.size();
+                scatter.parallel = true;
+                scatter.commit();
+            }
+            ForkGatherEvent gather = new ForkGatherEvent();
+            gather.begin();
+            OUTPUT output = results.stream()
                     .reduce(initialOutput, outputReducer, (a, b) -> {
                         throw new IllegalStateException("Combiner should not be called.");
                     });
+            if (gather.shouldCommit()) {
+                gather.branches = results.size();
+                gather.commit();
+            }
+            return output;
         } else {
-            return forkInputs.stream()
+            // Sequential branches are reduced as they finish, so the scatter event covers the gather too.
+            OUTPUT output = forkInputs.stream()
                     .map(fork::apply)
                     .reduce(initialOutput, outputReducer, (a, b) -> {
                         throw new IllegalStateException("Combiner should not be called.");
                     });
+            if (scatter.shouldCommit()) {
+                scatter.branches = forkInputs.size();
+                scatter.commit();
+            }
+            return output;
         }
     }
 
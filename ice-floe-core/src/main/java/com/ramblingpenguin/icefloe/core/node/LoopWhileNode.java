@@ -1,5 +1,6 @@
 package com.ramblingpenguin.icefloe.core.node;
 
+import com.ramblingpenguin.icefloe.core.Deadline;
 import com.ramblingpenguin.icefloe.core.Node;
 
 import java.util.function.Predicate;
@@ -34,6 +35,8 @@ public class LoopWhileNode<INPUT, OUTPUT> implements Node<INPUT, OUTPUT> {
         OUTPUT output;
         int attempt = 0;
         do {
+            Cancellation.throwIfCancelled();
+            Deadline.throwIfExpired();
             output = this.node.apply(input);
         } while (retryPredicate.test(output) && ++attempt < this.maxAttempts);
         return  output;
@@ -1,11 +1,16 @@
 package com.ramblingpenguin.icefloe.core.node;
 
+import com.ramblingpenguin.icefloe.core.Deadline;
+import com.ramblingpenguin.icefloe.core.DeadlineExceededException;
 import com.ramblingpenguin.icefloe.core.Node;
 
+import java.util.concurrent.CancellationException;
 import java.util.function.Predicate;
 
 /**
  * A node that retries a node a maximum number of times.
+ * <p>
+ * Under a {@link Deadline}, a retry is skipped when the time left is shorter than the previous attempt took.
  *
  * @param <INPUT>  the input type
  * @param <OUTPUT> the output type
@@ -40,10 +45,25 @@ public class RetryNode<INPUT, OUTPUT> extends AbstractLoopingNode<INPUT, OUTPUT>
     public OUTPUT apply(INPUT input) {
         int attempt = 0;
         Throwable lastException = null;
+        long lastAttemptNanos = 0;
         while (attempt++ < this.maximumIterations) {
+            Cancellation.throwIfCancelled();
+            Deadline deadline = Deadline.current();
+            if (deadline != null && lastException != null && deadline.remaining().toNanos() < lastAttemptNanos) {
+                // Another attempt would likely finish after the deadline, so it is not worth starting.
+                throw new DeadlineExceededException(String.format("Skipped retry %d, the remaining time cannot cover another attempt. Last failure: %s",
+                        attempt, lastException.getMessage()), lastException);
+            }
+            Deadline.throwIfExpired();
+            long start = System.nanoTime();
             try {
                 return this.toExecute.apply(input);
             } catch (Throwable throwable) {
+                lastAttemptNanos = System.nanoTime() - start;
+                if (Cancellation.isCancellation(throwable) || throwable instanceof DeadlineExceededException) {
+                    // A cancelled or late execution must stop, not be retried.
+                    throw throwable instanceof RuntimeException runtime ? runtime : new CancellationException(throwable.getMessage());
+                }
                 if (!this.shouldRetry.test(throwable)) {
                     throw new RuntimeException("Unexpected exceptional case in retry. " + throwable.getMessage(), throwable);
                 } else {
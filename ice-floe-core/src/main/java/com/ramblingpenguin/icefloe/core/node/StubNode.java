@@ -0,0 +1,87 @@
+package com.ramblingpenguin.icefloe.core.node;
+
+import com.ramblingpenguin.icefloe.core.Node;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * A node standing in for one that calls another system, such as an object store, a queue or a language model,
+ * for load tests. It takes a configurable time to answer and fails at a configurable rate, but computes its
+ * output locally. Latencies are either fixed or drawn from a log-normal distribution, whose long tail resembles
+ * that of remote calls. Instances are immutable; each {@code with} method returns a modified copy.
+ *
+ * @param <INPUT>  the input type
+ * @param <OUTPUT> the output type
+ */
+public final class StubNode<INPUT, OUTPUT> implements Node<INPUT, OUTPUT> {
+
+    // The 99th percentile of the standard normal distribution.
+    private static final double Z_99 = 2.326;
+
+    private final Function<INPUT, OUTPUT> response;
+    private final long medianNanos;
+    private final double sigma;
+    private final double failureRate;
+
+    private StubNode(Function<INPUT, OUTPUT> response, long medianNanos, double sigma, double failureRate) {
+        this.response = response;
+        this.medianNanos = medianNanos;
+        this.sigma = sigma;
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * Creates a stub that answers at once with the given function's output and never fails.
+     */
+    public static <INPUT, OUTPUT> StubNode<INPUT, OUTPUT> returning(Function<INPUT, OUTPUT> response) {
+        return new StubNode<>(Objects.requireNonNull(response), 0, 0, 0);
+    }
+
+    /**
+     * Makes every call take the given time.
+     */
+    public StubNode<INPUT, OUTPUT> withLatency(Duration latency) {
+        return withLatency(latency, latency);
+    }
+
+    /**
+     * Makes calls take a log-normally distributed time with the given median and 99th percentile.
+     */
+    public StubNode<INPUT, OUTPUT> withLatency(Duration median, Duration p99) {
+        if (median.isNegative() || p99.compareTo(median) < 0) {
+            throw new IllegalArgumentException("median must not be negative and p99 not below it");
+        }
+        double sigma = median.isZero() ? 0 : Math.log((double) p99.toNanos() / median.toNanos()) / Z_99;
+        return new StubNode<>(this.response, median.toNanos(), sigma, this.failureRate);
+    }
+
+    /**
+     * Makes the given share of calls fail with an {@link IllegalStateException}, after their latency.
+     */
+    public StubNode<INPUT, OUTPUT> withFailureRate(double failureRate) {
+        if (failureRate < 0 || failureRate > 1) {
+            throw new IllegalArgumentException("failureRate must be between 0 and 1");
+        }
+        return new StubNode<>(this.response, this.medianNanos, this.sigma, failureRate);
+    }
+
+    @Override
+    public OUTPUT apply(INPUT input) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long latency = sigma == 0 ? medianNanos : (long) (medianNanos * Math.exp(sigma * random.nextGaussian()));
+        if (latency > 0) {
+            try {
+                Thread.sleep(Duration.ofNanos(latency));
+            } catch (InterruptedException e) {
+                throw Cancellation.cancelled(e);
+            }
+        }
+        if (failureRate > 0 && random.nextDouble() < failureRate) {
+            throw new IllegalStateException("Stubbed failure");
+        }
+        return response.apply(input);
+    }
+}
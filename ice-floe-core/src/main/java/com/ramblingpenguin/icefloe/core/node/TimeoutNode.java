@@ -1,11 +1,15 @@
 package com.ramblingpenguin.icefloe.core.node;
 
+import com.ramblingpenguin.icefloe.core.Deadline;
+import com.ramblingpenguin.icefloe.core.DeadlineExceededException;
 import com.ramblingpenguin.icefloe.core.Node;
 
+import java.time.Duration;
 import java.util.concurrent.*;
+import java.util.function.Supplier;
 
 /**
- * A node that executes a node with a timeout.
+ * A node that executes a node with a timeout. Under a {@link Deadline}, the timeout is shortened to the time left.
  *
  * @param <INPUT>  the input type
  * @param <OUTPUT> the output type
@@ -31,18 +35,34 @@ public class TimeoutNode<INPUT, OUTPUT> implements Node<INPUT, OUTPUT> {
 
     @Override
     public OUTPUT apply(INPUT input) {
+        Duration limit = Duration.of(this.timeout, this.timeUnit.toChronoUnit());
+        // Under a deadline the node gets no more than the time left, and the deadline travels to its thread.
+        Duration clamped = Deadline.clamp(limit);
+        Supplier<OUTPUT> task = Deadline.propagate(() -> this.node.apply(input));
         try (ExecutorService singleThreadExecutor = Executors.newSingleThreadExecutor()) {
             CompletableFuture<OUTPUT> future = new CompletableFuture<>();
             singleThreadExecutor.execute(() -> {
-                future.complete(this.node.apply(input));
+                try {
+                    future.complete(task.get());
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
             });
-            CompletableFuture<OUTPUT> completedFuture = future.orTimeout(this.timeout, this.timeUnit);
+            CompletableFuture<OUTPUT> completedFuture = future.orTimeout(clamped.toNanos(), TimeUnit.NANOSECONDS);
             if (completedFuture.isCompletedExceptionally()) {
                 throw new RuntimeException(new TimeoutException("Node failed to execute in time limit"));
             }
             try {
                 return completedFuture.get();
-            } catch (InterruptedException | ExecutionException e) {
+            } catch (InterruptedException e) {
+                // Cancelled: interrupt the node rather than wait for it to finish.
+                singleThreadExecutor.shutdownNow();
+                throw Cancellation.cancelled(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof TimeoutException && clamped.compareTo(limit) < 0) {
+                    singleThreadExecutor.shutdownNow();
+                    throw new DeadlineExceededException("The execution missed its deadline.", e.getCause());
+                }
                 throw new RuntimeException(e);
             }
         }
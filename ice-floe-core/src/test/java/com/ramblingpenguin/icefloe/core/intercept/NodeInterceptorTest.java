@@ -0,0 +1,80 @@
+package com.ramblingpenguin.icefloe.core.intercept;
+
+import com.ramblingpenguin.icefloe.core.Node;
+import com.ramblingpenguin.icefloe.core.Sequence;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NodeInterceptorTest {
+
+    @Test
+    public void testEmptyInterceptorSetBuildsTheSamePlan() {
+        long plain = innermostStackDepth(Sequence.Builder.of(Integer.class));
+        long passThrough = innermostStackDepth(Sequence.Builder.of(Integer.class)
+                .withInterceptor(new NodeInterceptor() {
+                    @Override
+                    public <INPUT, OUTPUT> Node<INPUT, OUTPUT> intercept(NodeDescriptor descriptor, Node<INPUT, OUTPUT> node) {
+                        return node;
+                    }
+                }));
+        long wrapped = innermostStackDepth(Sequence.Builder.of(Integer.class)
+                .withInterceptor(new Recording("wrap", new ArrayList<>(), new ArrayList<>())));
+
+        // No interceptor, or one that leaves nodes as they are, adds no frame between the nodes.
+        assertEquals(plain, passThrough);
+        assertTrue(wrapped > plain);
+    }
+
+    @Test
+    public void testInterceptorsAreResolvedOnceAndNestInOrder() {
+        List<String> resolved = new ArrayList<>();
+        List<String> calls = new ArrayList<>();
+        Sequence<Integer, Integer> sequence = Sequence.Builder.of(Integer.class)
+                .withId("math")
+                .withInterceptor(new Recording("outer", resolved, calls))
+                .then(i -> i + 1)
+                .withInterceptor(new Recording("inner", resolved, calls))
+                .then(i -> i * 2)
+                .build();
+
+        assertEquals(List.of("inner math/0", "outer math/0", "inner math/1", "outer math/1"), resolved);
+        assertEquals(4, sequence.apply(1));
+        assertEquals(6, sequence.apply(2));
+        assertEquals(4, resolved.size());
+        assertEquals(List.of("outer math/0", "inner math/0", "outer math/1", "inner math/1"), calls.subList(0, 4));
+        assertEquals(8, calls.size());
+    }
+
+    private static long innermostStackDepth(Sequence.Builder<Integer, Integer> builder) {
+        long[] depth = new long[1];
+        Sequence<Integer, Integer> sequence = builder
+                .then(i -> i + 1)
+                .then(i -> i + 1)
+                .then(i -> {
+                    depth[0] = StackWalker.getInstance().walk(Stream::count);
+                    return i;
+                })
+                .build();
+        sequence.apply(0);
+        return depth[0];
+    }
+
+    private record Recording(String label, List<String> resolved, List<String> calls) implements NodeInterceptor {
+
+        @Override
+        public <INPUT, OUTPUT> Node<INPUT, OUTPUT> intercept(NodeDescriptor descriptor, Node<INPUT, OUTPUT> node) {
+            String entry = label + " " + descriptor.name();
+            resolved.add(entry);
+            return input -> {
+                calls.add(entry);
+                return node.apply(input);
+            };
+        }
+    }
+}
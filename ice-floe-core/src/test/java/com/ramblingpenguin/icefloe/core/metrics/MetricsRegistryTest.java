@@ -0,0 +1,85 @@
+package com.ramblingpenguin.icefloe.core.metrics;
+
+import com.ramblingpenguin.icefloe.core.Sequence;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void testHistogramPercentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 10_000; value++) {
+            histogram.record(value * 1_000);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(10_000, snapshot.count());
+        assertWithin(5_000_000, snapshot.percentile(0.5));
+        assertWithin(9_900_000, snapshot.percentile(0.99));
+        assertWithin(10_000_000, snapshot.max());
+        assertWithin(5_000_500, (long) snapshot.mean());
+    }
+
+    @Test
+    public void testBucketsCoverEveryValue() {
+        long previousHighest = -1;
+        for (int bucket = 0; bucket <= LatencyHistogram.bucket(Long.MAX_VALUE); bucket++) {
+            long highest = LatencyHistogram.highestValue(bucket);
+            assertEquals(bucket, LatencyHistogram.bucket(previousHighest + 1));
+            assertEquals(bucket, LatencyHistogram.bucket(highest));
+            previousHighest = highest;
+        }
+    }
+
+    @Test
+    public void testSequenceMetersEveryNodeWithMetrics() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Sequence<String, Integer> sequence = Sequence.Builder.of(String.class)
+                .then(Integer::parseInt)
+                .withMetrics(registry, "parse")
+                .then(i -> 100 / i)
+                .build();
+
+        assertEquals(50, sequence.apply("2"));
+        assertThrows(ArithmeticException.class, () -> sequence.apply("0"));
+
+        Map<String, NodeStats> stats = registry.snapshot();
+        assertEquals(2, stats.get("parse/0").calls());
+        assertEquals(0, stats.get("parse/0").errors());
+        assertEquals(2, stats.get("parse/1").calls());
+        assertEquals(1, stats.get("parse/1").errors());
+        assertEquals(0, stats.get("parse/1").inFlight());
+    }
+
+    @Test
+    public void testJmxExposesEveryNode() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.ramblingpenguin.icefloe:type=Node,name=" + ObjectName.quote("jmx/0"));
+        try (MetricsRegistry registry = new MetricsRegistry().exposeViaJmx()) {
+            Sequence<Integer, Integer> sequence = Sequence.Builder.of(Integer.class)
+                    .withMetrics(registry, "jmx")
+                    .then(i -> i + 1)
+                    .build();
+            sequence.apply(1);
+
+            assertTrue(server.isRegistered(name));
+            assertEquals(1L, server.getAttribute(name, "Calls"));
+        }
+        assertFalse(server.isRegistered(name));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected * 0.875 && actual <= expected * 1.125,
+                "expected about " + expected + " but was " + actual);
+    }
+}
@@ -1,8 +1,12 @@
 package com.ramblingpenguin.icefloe.core.node;
 
+import com.ramblingpenguin.icefloe.core.Deadline;
+import com.ramblingpenguin.icefloe.core.DeadlineExceededException;
 import com.ramblingpenguin.icefloe.core.Node;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -48,4 +52,59 @@ class RetryNodeTest {
 
         assertThrows(RuntimeException.class, () -> retryNode.apply(new TestRecord("input")));
     }
+
+    @Test
+    void testStopsRetryingWhenCancelled() {
+        AtomicInteger attempts = new AtomicInteger(0);
+        Node<TestRecord, TestRecord> node = (input) -> {
+            attempts.incrementAndGet();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("failed");
+        };
+        RetryNode<TestRecord, TestRecord> retryNode = new RetryNode<>(node, 3);
+
+        try {
+            assertThrows(RuntimeException.class, () -> retryNode.apply(new TestRecord("input")));
+            assertEquals(1, attempts.get());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    void testRetriesWhenAnUnrelatedFutureWasCancelled() {
+        AtomicInteger attempts = new AtomicInteger(0);
+        Node<TestRecord, TestRecord> node = (input) -> {
+            CompletableFuture<TestRecord> lookup = new CompletableFuture<>();
+            if (attempts.getAndIncrement() == 0) {
+                lookup.cancel(true);
+            } else {
+                lookup.complete(new TestRecord("output"));
+            }
+            return lookup.join();
+        };
+        RetryNode<TestRecord, TestRecord> retryNode = new RetryNode<>(node, 3);
+
+        assertEquals("output", retryNode.apply(new TestRecord("input")).value());
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void testSkipsRetryTheDeadlineCannotCover() {
+        AtomicInteger attempts = new AtomicInteger(0);
+        Node<TestRecord, TestRecord> node = (input) -> {
+            attempts.incrementAndGet();
+            try {
+                Thread.sleep(150);
+            } catch (InterruptedException e) {
+                throw Cancellation.cancelled(e);
+            }
+            throw new RuntimeException("failed");
+        };
+        RetryNode<TestRecord, TestRecord> retryNode = new RetryNode<>(node, 5);
+
+        assertThrows(DeadlineExceededException.class,
+                () -> Deadline.callWith(Deadline.after(Duration.ofMillis(400)), () -> retryNode.apply(new TestRecord("input"))));
+        assertEquals(2, attempts.get());
+    }
 }
@@ -1,12 +1,16 @@
 package com.ramblingpenguin.icefloe.core.node;
 
+import com.ramblingpenguin.icefloe.core.Deadline;
+import com.ramblingpenguin.icefloe.core.DeadlineExceededException;
 import com.ramblingpenguin.icefloe.core.Node;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class TimeoutNodeTest {
 
@@ -36,4 +40,22 @@ class TimeoutNodeTest {
 
         assertThrows(RuntimeException.class, () -> timeoutNode.apply(new TestRecord("input")));
     }
+
+    @Test
+    void testTimeoutIsClampedToDeadline() {
+        Node<TestRecord, TestRecord> node = (input) -> {
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                throw Cancellation.cancelled(e);
+            }
+            return new TestRecord("output");
+        };
+        TimeoutNode<TestRecord, TestRecord> timeoutNode = new TimeoutNode<>(node, 10, TimeUnit.SECONDS);
+
+        long start = System.nanoTime();
+        assertThrows(DeadlineExceededException.class,
+                () -> Deadline.callWith(Deadline.after(Duration.ofMillis(100)), () -> timeoutNode.apply(new TestRecord("input"))));
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(1)) < 0);
+    }
 }